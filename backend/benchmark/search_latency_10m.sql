@@ -0,0 +1,75 @@
+-- Full-text search latency benchmark at 10M messages.
+--
+-- Run against a scratch database (it creates and drops its own table):
+--   createdb search_bench
+--   psql -d search_bench -f backend/benchmark/search_latency_10m.sql
+--
+-- The table and index mirror search_documents / idx_search_documents_body_fts,
+-- and the timed statements use the same shape as SearchDocumentRepository.search.
+
+\timing on
+
+DROP TABLE IF EXISTS search_documents_bench;
+CREATE TABLE search_documents_bench (
+    id               bigserial PRIMARY KEY,
+    channel          varchar(16) NOT NULL,
+    conversation_key varchar(255) NOT NULL,
+    external_id      varchar(255) NOT NULL,
+    participant      varchar(255),
+    body             text,
+    sent_date        timestamp
+);
+
+-- 10M synthetic messages built from a small vocabulary, plus a rare token in every 10 000th row
+INSERT INTO search_documents_bench (channel, conversation_key, external_id, participant, body, sent_date)
+SELECT (ARRAY ['WHATSAPP', 'FACEBOOK', 'EMAIL'])[1 + g % 3],
+       'conv-' || (g % 50000),
+       'msg-' || g,
+       'user-' || (g % 50000),
+       (ARRAY ['order', 'refund', 'delivery', 'invoice', 'password', 'account', 'shipping', 'payment'])[1 + g % 8] || ' ' ||
+       (ARRAY ['delayed', 'missing', 'received', 'cancelled', 'reset', 'updated', 'failed', 'confirmed'])[1 + (g / 8) % 8] || ' ' ||
+       (ARRAY ['please', 'help', 'thanks', 'urgent', 'today', 'tomorrow', 'again', 'asap'])[1 + (g / 64) % 8] || ' ' ||
+       'ticket ' || (g % 100000) ||
+       CASE WHEN g % 10000 = 0 THEN ' chargeback' ELSE '' END,
+       now() - (g || ' seconds')::interval
+FROM generate_series(1, 10000000) AS g;
+
+CREATE INDEX idx_search_documents_bench_body_fts
+    ON search_documents_bench USING GIN (to_tsvector('english', coalesce(body, '')));
+VACUUM ANALYZE search_documents_bench;
+
+-- Selective term (~1 000 hits)
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT r.id, r.rank,
+       ts_headline('english', r.body, websearch_to_tsquery('english', 'chargeback'), 'StartSel=<mark>, StopSel=</mark>, MaxFragments=2, MaxWords=20, MinWords=5')
+FROM (SELECT d.id, d.body, d.sent_date,
+             ts_rank(to_tsvector('english', coalesce(d.body, '')), websearch_to_tsquery('english', 'chargeback')) AS rank
+      FROM search_documents_bench d
+      WHERE to_tsvector('english', coalesce(d.body, '')) @@ websearch_to_tsquery('english', 'chargeback')
+      ORDER BY rank DESC, d.sent_date DESC
+      LIMIT 20 OFFSET 0) r
+ORDER BY r.rank DESC, r.sent_date DESC;
+
+-- Two-term AND query (~150 000 hits)
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT r.id, r.rank,
+       ts_headline('english', r.body, websearch_to_tsquery('english', 'refund delayed'), 'StartSel=<mark>, StopSel=</mark>, MaxFragments=2, MaxWords=20, MinWords=5')
+FROM (SELECT d.id, d.body, d.sent_date,
+             ts_rank(to_tsvector('english', coalesce(d.body, '')), websearch_to_tsquery('english', 'refund delayed')) AS rank
+      FROM search_documents_bench d
+      WHERE to_tsvector('english', coalesce(d.body, '')) @@ websearch_to_tsquery('english', 'refund delayed')
+      ORDER BY rank DESC, d.sent_date DESC
+      LIMIT 20 OFFSET 0) r
+ORDER BY r.rank DESC, r.sent_date DESC;
+
+-- Phrase query restricted to one channel
+EXPLAIN (ANALYZE, BUFFERS)
+SELECT d.id,
+       ts_rank(to_tsvector('english', coalesce(d.body, '')), websearch_to_tsquery('english', '"password reset"')) AS rank
+FROM search_documents_bench d
+WHERE to_tsvector('english', coalesce(d.body, '')) @@ websearch_to_tsquery('english', '"password reset"')
+  AND d.channel = 'EMAIL'
+ORDER BY rank DESC, d.sent_date DESC
+LIMIT 20;
+
+DROP TABLE search_documents_bench;
@@ -0,0 +1,9 @@
+package org.velikanovdev.backend.attachment;
+
+import java.io.InputStream;
+
+// Opens the upstream stream of an attachment, only called when the attachment isn't stored yet
+@FunctionalInterface
+public interface AttachmentContent {
+    InputStream open() throws Exception;
+}
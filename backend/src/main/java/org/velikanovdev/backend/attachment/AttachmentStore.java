@@ -0,0 +1,73 @@
+package org.velikanovdev.backend.attachment;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// Content-addressed file store: every blob is written once under its sha256, so the same file received
+// twice, or on two channels, takes disk space once. Content is copied through a fixed-size buffer straight
+// from the upstream stream to disk, never held on the heap as a whole.
+@Component
+public class AttachmentStore {
+    @Value("${omnichannel.attachments.dir:attachments}")
+    private String storeDir;
+
+    private Path root;
+    private Path incoming;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(storeDir).toAbsolutePath();
+        incoming = Files.createDirectories(root.resolve("incoming"));
+    }
+
+    // Drains the stream into the store and returns its hash and size, the stream is not closed
+    public StoredBlob write(InputStream in) throws IOException {
+        Path temp = Files.createTempFile(incoming, "blob", ".part");
+        try {
+            MessageDigest digest = sha256();
+            long size;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 OutputStream out = new DigestOutputStream(Channels.newOutputStream(channel), digest)) {
+                size = in.transferTo(out);
+                out.flush();
+                channel.force(true);
+            }
+
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = path(hash);
+            if (!Files.exists(target)) {
+                // A concurrent writer of the same content is simply replaced by identical bytes
+                Files.createDirectories(target.getParent());
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return new StoredBlob(hash, size);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Blobs are fanned out over two levels of directories by hash prefix
+    public Path path(String sha256) {
+        return root.resolve(sha256.substring(0, 2)).resolve(sha256.substring(2, 4)).resolve(sha256);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
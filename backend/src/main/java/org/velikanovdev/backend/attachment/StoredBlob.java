@@ -0,0 +1,11 @@
+package org.velikanovdev.backend.attachment;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class StoredBlob {
+    private String sha256;
+    private long size;
+}
@@ -0,0 +1,134 @@
+package org.velikanovdev.backend.cache;
+
+import org.velikanovdev.backend.dto.WhatsAppMessageView;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// The newest messages of one conversation in a fixed-size circular array, oldest first. complete means the
+// ring holds every hot message of the conversation, which stays true until the first message falls out.
+class MessageRing {
+    // Rough heap cost of a view with its Date and an empty ring slot, strings are added per character
+    private static final int MESSAGE_OVERHEAD = 120;
+    private static final int RING_OVERHEAD = 96;
+
+    private final WhatsAppMessageView[] messages;
+    private int head;
+    private int size;
+    private boolean complete;
+    private long bytes;
+
+    MessageRing(int capacity, boolean complete) {
+        this.messages = new WhatsAppMessageView[capacity];
+        this.complete = complete;
+        this.bytes = RING_OVERHEAD + 8L * capacity;
+    }
+
+    // Keeps sentDate order, webhook deliveries can arrive slightly out of order. A ring loaded after a message
+    // was committed but before its after-commit add ran already holds it, the add is then skipped.
+    synchronized void add(WhatsAppMessageView message) {
+        if (contains(message.getId())) {
+            return;
+        }
+        if (size == messages.length) {
+            WhatsAppMessageView oldest = messages[head];
+            if (message.getSentDate().before(oldest.getSentDate())) {
+                // Older than everything kept, the ring just no longer has the full history
+                complete = false;
+                return;
+            }
+            bytes -= weigh(oldest);
+            messages[head] = null;
+            head = (head + 1) % messages.length;
+            size--;
+            complete = false;
+        }
+
+        int position = size;
+        while (position > 0 && at(position - 1).getSentDate().after(message.getSentDate())) {
+            messages[index(position)] = at(position - 1);
+            position--;
+        }
+        messages[index(position)] = message;
+        size++;
+        bytes += weigh(message);
+    }
+
+    // The newest limit messages, or all of them when limit is null, copied out so the caller can write them
+    // to a slow client without holding the ring. Null if the ring can't tell which those are.
+    synchronized List<WhatsAppMessageView> newest(Integer limit, Date since) {
+        if (!complete && (limit == null || limit > size)) {
+            return null;
+        }
+        int first = limit == null ? 0 : Math.max(0, size - limit);
+        List<WhatsAppMessageView> newest = new ArrayList<>(size - first);
+        for (int i = first; i < size; i++) {
+            WhatsAppMessageView message = at(i);
+            if (!message.getSentDate().before(since)) {
+                newest.add(message);
+            }
+        }
+        return newest;
+    }
+
+    // TRUE or FALSE when the ring knows, null when only the database does
+    synchronized Boolean hasMessageFrom(String sender, Date after) {
+        for (int i = size - 1; i >= 0; i--) {
+            WhatsAppMessageView message = at(i);
+            if (!message.getSentDate().after(after)) {
+                // The ring holds every message newer than its oldest one, so the whole period has been seen
+                return Boolean.FALSE;
+            }
+            if (sender.equals(message.getSender())) {
+                return Boolean.TRUE;
+            }
+        }
+        return complete ? Boolean.FALSE : null;
+    }
+
+    // Views already handed out stay as they are, read ones are replaced by copies
+    synchronized void markReadFrom(String sender) {
+        for (int i = 0; i < size; i++) {
+            WhatsAppMessageView message = at(i);
+            if (message.isUnread() && sender.equals(message.getSender())) {
+                messages[index(i)] = new WhatsAppMessageView(message.getId(), message.getSender(), message.getRecipient(),
+                        message.getMessage(), message.getMessageId(), message.getSentDate(), false,
+                        message.getDeliveryStatus());
+            }
+        }
+    }
+
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    private boolean contains(Long id) {
+        if (id == null) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (id.equals(at(i).getId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private WhatsAppMessageView at(int position) {
+        return messages[index(position)];
+    }
+
+    private int index(int position) {
+        return (head + position) % messages.length;
+    }
+
+    private static long weigh(WhatsAppMessageView message) {
+        return MESSAGE_OVERHEAD + 2L * (length(message.getSender()) + length(message.getRecipient()) + length(message.getMessage())
+                + length(message.getMessageId()));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
@@ -0,0 +1,111 @@
+package org.velikanovdev.backend.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.dto.WhatsAppMessageView;
+
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+// Recent messages of the active WhatsApp chats, one MessageRing per contact, bounded by the estimated heap
+// the rings take in total. Saves and mark-as-read write through, so reads of recent history don't touch
+// Postgres. Only used on a single node: a write on another node would never reach this node's rings.
+@Component
+public class WhatsAppHotCache {
+    private final MeterRegistry registry;
+    private Cache<String, MessageRing> rings;
+
+    @Value("${whatsapp.hotCache.maxBytes:67108864}")
+    private long maxBytes;
+
+    @Value("${whatsapp.hotCache.messagesPerConversation:200}")
+    private int messagesPerConversation;
+
+    @Value("${omnichannel.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Autowired
+    public WhatsAppHotCache(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @PostConstruct
+    public void init() {
+        rings = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String contact, MessageRing ring) -> (int) Math.min(Integer.MAX_VALUE, ring.bytes()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, rings, "whatsapp_hot");
+    }
+
+    public boolean isEnabled() {
+        return !clusterEnabled;
+    }
+
+    public int getMessagesPerConversation() {
+        return messagesPerConversation;
+    }
+
+    // The newest limit messages of the contact, all of them when limit is null, or null when the database has
+    // to answer. newestFirst loads a missing ring: the newest messagesPerConversation + 1 messages, newest
+    // first, the extra one tells whether there are more than the ring holds.
+    public List<WhatsAppMessageView> newest(String contact, Integer limit, Date since,
+                                            Function<String, List<WhatsAppMessageView>> newestFirst) {
+        boolean[] loaded = new boolean[1];
+        MessageRing ring = rings.get(contact, key -> {
+            loaded[0] = true;
+            return load(newestFirst.apply(key));
+        });
+        List<WhatsAppMessageView> newest = ring.newest(limit, since);
+        registry.counter("omnichannel.whatsapp.hotcache.reads", "result", newest != null && !loaded[0] ? "hit" : "miss")
+                .increment();
+        return newest;
+    }
+
+    private MessageRing load(List<WhatsAppMessageView> newestFirst) {
+        MessageRing ring = new MessageRing(messagesPerConversation, newestFirst.size() <= messagesPerConversation);
+        for (int i = Math.min(newestFirst.size(), messagesPerConversation) - 1; i >= 0; i--) {
+            ring.add(newestFirst.get(i));
+        }
+        return ring;
+    }
+
+    public Boolean hasMessageFrom(String contact, Date after) {
+        MessageRing ring = rings.getIfPresent(contact);
+        return ring != null ? ring.hasMessageFrom(contact, after) : null;
+    }
+
+    // Chats nobody has opened lately aren't cached, the next read loads them with this message included.
+    // compute() has the new size weighed right away.
+    public void add(String contact, WhatsAppMessageView message) {
+        rings.asMap().computeIfPresent(contact, (key, ring) -> {
+            ring.add(message);
+            return ring;
+        });
+    }
+
+    public void markReadFrom(String contact) {
+        rings.asMap().computeIfPresent(contact, (key, ring) -> {
+            ring.markReadFrom(contact);
+            return ring;
+        });
+    }
+
+    // Rows changed in place, e.g. delivery statuses, the next read reloads the chat
+    public void invalidate(String contact) {
+        rings.invalidate(contact);
+    }
+
+    // After the retention job moved a month out of the hot window
+    public void invalidateAll() {
+        rings.invalidateAll();
+    }
+}
@@ -0,0 +1,159 @@
+package org.velikanovdev.backend.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.entity.ClusterEvent;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.notification.SseStream;
+import org.velikanovdev.backend.repository.ClusterEventRepository;
+import org.velikanovdev.backend.tracing.StageTracer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+// Propagates SSE events between nodes: the publisher stores the event and NOTIFYs its id,
+// every node (the publisher included) LISTENs and delivers new events to its own subscribers.
+@Component
+@ConditionalOnProperty(name = "omnichannel.cluster.enabled", havingValue = "true")
+public class ClusterEventBus {
+    private static final String NOTIFY_CHANNEL = "omnichannel_events";
+    private static final long EVENT_RETENTION_MILLIS = 5 * 60 * 1000L;
+    // Ids come from a sequence but commit in any order, an event can show up below ids already delivered.
+    // Every read looks back this many ids behind the newest delivered one.
+    private static final long LOOKBACK_IDS = 1000;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterEventRepository eventRepository;
+    private final SseHub sseHub;
+    private final ObjectMapper objectMapper;
+    private final StageTracer stageTracer;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+    // Newest id delivered, and every id delivered within LOOKBACK_IDS of it; only used by the listener thread
+    private long lastDeliveredId;
+    private final NavigableSet<Long> deliveredIds = new TreeSet<>();
+
+    @Autowired
+    public ClusterEventBus(DataSource dataSource, ClusterEventRepository eventRepository, SseHub sseHub,
+                           ObjectMapper objectMapper, StageTracer stageTracer) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.eventRepository = eventRepository;
+        this.sseHub = sseHub;
+        this.objectMapper = objectMapper;
+        this.stageTracer = stageTracer;
+    }
+
+    @PostConstruct
+    public void start() {
+        // Only events published from now on are delivered
+        lastDeliveredId = eventRepository.findMaxId();
+        deliveredIds.addAll(eventRepository.findIdsGreaterThan(lastDeliveredId - LOOKBACK_IDS));
+        running = true;
+        listenerThread = new Thread(this::listen, "cluster-event-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+        sseHub.setRelay(this::publish);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sseHub.setRelay(null);
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    public void publish(SseStream stream, String eventName, Object data) {
+        String payload;
+        try {
+            payload = objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize " + eventName + " event", e);
+        }
+
+        ClusterEvent event = eventRepository.save(new ClusterEvent(null, stream.name(), eventName, payload, new Date(),
+                stageTracer.traceparent()));
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", NOTIFY_CHANNEL, String.valueOf(event.getId()));
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + NOTIFY_CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+                // Pick up anything published while we were (re)connecting
+                deliverNewEvents();
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications != null && notifications.length > 0) {
+                        deliverNewEvents();
+                    }
+                }
+            } catch (SQLException e) {
+                if (running) {
+                    e.printStackTrace();
+                    sleepBeforeReconnect();
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                sleepBeforeReconnect();
+            }
+        }
+    }
+
+    // Reads by id rather than trusting each notification, so coalesced or missed notifications lose nothing.
+    // Only the ids of the lookback window are read every time, payloads just for the events not delivered yet.
+    private void deliverNewEvents() {
+        List<Long> pending = new ArrayList<>();
+        for (Long id : eventRepository.findIdsGreaterThan(lastDeliveredId - LOOKBACK_IDS)) {
+            if (!deliveredIds.contains(id)) {
+                pending.add(id);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        for (ClusterEvent event : eventRepository.findByIdInOrderByIdAsc(pending)) {
+            // Continues the publisher's trace, whichever node it ran on
+            stageTracer.runInSpan("sse.deliver", event.getTraceParent(), () -> sseHub.deliverJsonLocally(
+                    SseStream.valueOf(event.getStream()), event.getEventName(), event.getPayload()));
+            deliveredIds.add(event.getId());
+            lastDeliveredId = Math.max(lastDeliveredId, event.getId());
+        }
+        deliveredIds.headSet(lastDeliveredId - LOOKBACK_IDS, true).clear();
+    }
+
+    @Scheduled(fixedRate = 60000)
+    public void purgeDeliveredEvents() {
+        eventRepository.deleteOlderThan(new Date(System.currentTimeMillis() - EVENT_RETENTION_MILLIS));
+    }
+
+    private void sleepBeforeReconnect() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
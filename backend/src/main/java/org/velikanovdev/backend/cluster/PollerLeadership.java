@@ -0,0 +1,106 @@
+package org.velikanovdev.backend.cluster;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+// Elects one node per poller with Postgres session advisory locks. A lock is held for as long as the
+// node's lock connection lives, so leadership moves to another node only when this one goes away.
+@Component
+public class PollerLeadership {
+    // Keeps our advisory lock keys apart from anyone else's using the same database
+    private static final long LOCK_NAMESPACE = 0x4F4D4E49L << 32; // "OMNI"
+
+    private final DataSource dataSource;
+    private final Set<String> heldLocks = new HashSet<>();
+    private Connection lockConnection;
+
+    @Value("${omnichannel.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Autowired
+    public PollerLeadership(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public synchronized boolean isLeader(String poller) {
+        if (!clusterEnabled) {
+            return true;
+        }
+
+        try {
+            if (lockConnection == null || !lockConnection.isValid(2)) {
+                // Locks die with the old session, start over on a fresh connection
+                closeLockConnection();
+                lockConnection = dataSource.getConnection();
+                lockConnection.setAutoCommit(true);
+            }
+
+            if (heldLocks.contains(poller)) {
+                return true;
+            }
+
+            try (PreparedStatement statement = lockConnection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                statement.setLong(1, lockKey(poller));
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next() && resultSet.getBoolean(1)) {
+                        heldLocks.add(poller);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            closeLockConnection();
+            return false;
+        }
+    }
+
+    public synchronized Set<String> getHeldLocks() {
+        return Set.copyOf(heldLocks);
+    }
+
+    static long lockKey(String poller) {
+        CRC32 crc = new CRC32();
+        crc.update(poller.getBytes(StandardCharsets.UTF_8));
+        return LOCK_NAMESPACE | crc.getValue();
+    }
+
+    @PreDestroy
+    public synchronized void release() {
+        closeLockConnection();
+    }
+
+    private void closeLockConnection() {
+        heldLocks.clear();
+        if (lockConnection == null) {
+            return;
+        }
+        try {
+            // The pool keeps the session open, so release explicitly before handing the connection back
+            try (Statement statement = lockConnection.createStatement()) {
+                statement.execute("SELECT pg_advisory_unlock_all()");
+            }
+        } catch (SQLException ignored) {
+            // Session is already gone and took its locks with it
+        }
+        try {
+            lockConnection.close();
+        } catch (SQLException ignored) {
+        }
+        lockConnection = null;
+    }
+}
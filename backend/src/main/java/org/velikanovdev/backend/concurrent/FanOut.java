@@ -0,0 +1,95 @@
+package org.velikanovdev.backend.concurrent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+// A structured fan-out in the spirit of StructuredTaskScope.ShutdownOnFailure, which is still a preview API:
+// tasks forked in the scope never outlive it. join() returns the results in fork order once all tasks are
+// done; the first failure, the deadline passing or an interrupt cancels every task still running and is
+// thrown. Closing the scope without joining cancels the tasks too. fork() waits for one of the scope's permits
+// before it submits, so tasks over the limit wait in the forking thread and never sit on a shared pool thread.
+public class FanOut<T> implements AutoCloseable {
+    private final ExecutorService executor;
+    private final long deadlineNanos;
+    private final Semaphore permits;
+    private final List<Future<T>> futures = new ArrayList<>();
+    private final CompletionService<T> completions;
+
+    FanOut(ExecutorService executor, Duration deadline, int maxConcurrency) {
+        this.executor = executor;
+        this.deadlineNanos = System.nanoTime() + deadline.toNanos();
+        this.permits = new Semaphore(maxConcurrency);
+        this.completions = new ExecutorCompletionService<>(executor);
+    }
+
+    // Blocks while maxConcurrency tasks of this scope are in flight, up to the deadline
+    public void fork(Callable<T> task) throws InterruptedException, TimeoutException {
+        try {
+            if (!permits.tryAcquire(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                throw new TimeoutException("Fan-out missed its deadline after forking " + futures.size() + " tasks");
+            }
+        } catch (InterruptedException | TimeoutException e) {
+            cancelAll();
+            throw e;
+        }
+        try {
+            futures.add(completions.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    permits.release();
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public List<T> join() throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            for (int done = 0; done < futures.size(); done++) {
+                long remaining = deadlineNanos - System.nanoTime();
+                Future<T> completed = completions.poll(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                if (completed == null) {
+                    throw new TimeoutException("Fan-out missed its deadline with " + (futures.size() - done) + " tasks left");
+                }
+                // Throws the task's failure
+                completed.get();
+            }
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            cancelAll();
+            throw e;
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    // Throws the task failure behind e if it is unchecked, e.g. a GraphThrottledException, so callers see the
+    // same exception as without the fan-out
+    public static void rethrowUnchecked(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (e.getCause() instanceof Error error) {
+            throw error;
+        }
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+    }
+
+    private void cancelAll() {
+        for (Future<T> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.velikanovdev.backend.concurrent;
+
+import io.opentelemetry.context.Context;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the blocking IMAP and Graph calls that can go out side by side. With spring.threads.virtual.enabled on
+// a Java 21+ runtime every call gets its own virtual thread, the same switch that puts Tomcat request handling
+// and @Scheduled methods on virtual threads. Otherwise, and on the Java 17 the project compiles for, calls
+// share a fixed pool of platform threads.
+@Component
+public class UpstreamExecutor {
+    private ExecutorService executor;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${omnichannel.upstream.platformThreads:16}")
+    private int platformThreads;
+
+    // Calls a single fan-out has in flight at most, whatever the thread model
+    @Value("${omnichannel.upstream.maxConcurrency:8}")
+    private int maxConcurrency;
+
+    @PostConstruct
+    public void start() {
+        // Tasks run in the trace of whoever forked them, so each upstream call is a span under its poll
+        executor = Context.taskWrapping(newWorkers("upstream", platformThreads));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    // Opens a scope whose tasks all have to finish within the deadline, see FanOut
+    public <T> FanOut<T> fanOut(Duration deadline) {
+        return new FanOut<>(executor, deadline, maxConcurrency);
+    }
+
+    // A virtual thread per task in virtual-thread mode, otherwise a fixed pool of named daemon threads
+    public ExecutorService newWorkers(String name, int size) {
+        ExecutorService virtualExecutor = virtualThreadsEnabled ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualExecutor != null) {
+            return virtualExecutor;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Looked up reflectively since the method doesn't exist in the Java 17 API; null on older runtimes
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (Runtime.version().feature() < 21) {
+            return null;
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
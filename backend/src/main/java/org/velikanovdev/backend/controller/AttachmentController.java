@@ -0,0 +1,52 @@
+package org.velikanovdev.backend.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.velikanovdev.backend.entity.Attachment;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.service.AttachmentService;
+import org.velikanovdev.backend.web.RangeFileSender;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+@RestController
+@RequestMapping("/attachments")
+public class AttachmentController {
+    private final AttachmentService attachmentService;
+    private final RangeFileSender rangeFileSender;
+
+    @Autowired
+    public AttachmentController(AttachmentService attachmentService, RangeFileSender rangeFileSender) {
+        this.attachmentService = attachmentService;
+        this.rangeFileSender = rangeFileSender;
+    }
+
+    // Attachments of one message: an email Message-ID, a WhatsApp wamid or a Messenger message id
+    @GetMapping
+    public ResponseEntity<List<Attachment>> getAttachments(@RequestParam Channel channel, @RequestParam String messageId) {
+        return ResponseEntity.ok(attachmentService.getAttachments(channel, messageId));
+    }
+
+    // Supports Range requests, so media players can seek and interrupted downloads can resume
+    @RequestMapping(value = "/{id}/content", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void download(@PathVariable Long id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Attachment attachment = attachmentService.getAttachment(id).orElse(null);
+        if (attachment == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        Path content = attachmentService.getContentPath(attachment);
+        if (!Files.exists(content)) {
+            response.sendError(HttpServletResponse.SC_GONE);
+            return;
+        }
+        rangeFileSender.send(request, response, content, attachment.getSize(), "\"" + attachment.getSha256() + "\"",
+                attachment.getContentType(), attachment.getFileName());
+    }
+}
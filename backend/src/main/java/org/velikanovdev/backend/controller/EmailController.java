@@ -2,113 +2,122 @@ package org.velikanovdev.backend.controller;
 
 import jakarta.mail.MessagingException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.velikanovdev.backend.entity.Channel;
 import org.velikanovdev.backend.entity.EmailConversation;
+import org.velikanovdev.backend.entity.MailAccount;
 import org.velikanovdev.backend.entity.ReplyEmail;
-import org.velikanovdev.backend.service.EmailReceiverService;
+import org.velikanovdev.backend.mail.MailboxConversation;
+import org.velikanovdev.backend.mail.MailboxSyncScheduler;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.notification.SseStream;
 import org.velikanovdev.backend.service.EmailSenderService;
+import org.velikanovdev.backend.service.InboxService;
+import org.velikanovdev.backend.service.MailAccountService;
+import org.velikanovdev.backend.web.ChannelVersions;
+import org.velikanovdev.backend.web.JsonStreamWriter;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 @RestController
 public class EmailController {
-    private final EmailReceiverService emailReceiverService;
-    private final EmailSenderService emailSenderService;
-    private final List<SseEmitter> emitters = Collections.synchronizedList(new ArrayList<>());
-
-    @Value("${email.receiver.host}")
-    private String host;
-
-    @Value("${email.receiver.storeType}")
-    private String storeType;
+    // Mailboxes are synced every few seconds, the first sync after startup is the one being waited for
+    private static final String SYNC_RETRY_AFTER_SECONDS = "5";
 
-    @Value("${email.receiver.username}")
-    private String user;
-
-    @Value("${email.receiver.password}")
-    private String password;
+    private final EmailSenderService emailSenderService;
+    private final InboxService inboxService;
+    private final MailAccountService mailAccountService;
+    private final MailboxSyncScheduler mailboxSyncScheduler;
+    private final SseHub sseHub;
+    private final JsonStreamWriter jsonStreamWriter;
+    private final ChannelVersions channelVersions;
 
     @Autowired
-    public EmailController(EmailReceiverService emailReceiverService, EmailSenderService emailSenderService) {
-        this.emailReceiverService = emailReceiverService;
+    public EmailController(EmailSenderService emailSenderService, InboxService inboxService,
+                           MailAccountService mailAccountService, MailboxSyncScheduler mailboxSyncScheduler,
+                           SseHub sseHub, JsonStreamWriter jsonStreamWriter, ChannelVersions channelVersions) {
         this.emailSenderService = emailSenderService;
+        this.inboxService = inboxService;
+        this.mailAccountService = mailAccountService;
+        this.mailboxSyncScheduler = mailboxSyncScheduler;
+        this.sseHub = sseHub;
+        this.jsonStreamWriter = jsonStreamWriter;
+        this.channelVersions = channelVersions;
     }
 
+    // Conversation lists are pushed by MailboxSyncScheduler whenever a mailbox changes
     @GetMapping("/email/notifications")
     public SseEmitter getEmailNotifications() {
-        SseEmitter emitter = new SseEmitter(30 * 60 * 1000L); // 30 minutes timeout
-        emitters.add(emitter);
-
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
-        emitter.onError((e) -> emitters.remove(emitter));
-
-        return emitter;
+        return sseHub.subscribe(SseStream.EMAIL_CONVERSATIONS);
     }
 
-    // Notify all clients with the latest email conversations
-    private void notifyClients(List<EmailConversation> conversations) {
-        List<SseEmitter> emittersToRemove = new ArrayList<>();
-
-        // Iterate over a snapshot of the emitters to avoid ConcurrentModificationException
-        for (SseEmitter emitter : new ArrayList<>(emitters)) {
-            try {
-                emitter.send(SseEmitter.event()
-                        .name("emailConversations")
-                        .data(conversations));
-            } catch (IOException e) {
-                emittersToRemove.add(emitter);
-            }
-        }
-
-        // Remove emitters that are no longer valid
-        emitters.removeAll(emittersToRemove);
+    // Same list as /email/conversations, kept for clients that still call it. Bodies are never part of a list.
+    @GetMapping("/fetch-emails")
+    public ResponseEntity<StreamingResponseBody> fetchEmailConversations(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                         WebRequest webRequest) {
+        return getConversationList(accept, webRequest);
     }
 
-    @Scheduled(fixedRate = 10000)
-    public void pollEmailsAndNotify() {
-        try {
-            List<EmailConversation> emailConversations =
-                    emailReceiverService.fetchEmailConversations(host, storeType, user, password);
-
-            notifyClients(emailConversations);
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Thread list with a preview of the latest email, streamed rather than rendered into one buffer
+    @GetMapping("/email/conversations")
+    public ResponseEntity<StreamingResponseBody> getConversationList(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                     WebRequest webRequest) {
+        if (channelVersions.checkNotModified(webRequest, Channel.EMAIL)) {
+            return null;
         }
+        List<EmailConversation> conversations = mailboxSyncScheduler.getConversations();
+        // Before the first sync an empty list would look like an empty mailbox
+        if (conversations.isEmpty() && !mailboxSyncScheduler.isSynced()) {
+            return notSyncedYet();
+        }
+        return jsonStreamWriter.stream(accept, sink -> conversations
+                .forEach(conversation -> sink.accept(MailboxSyncScheduler.toView(conversation))));
     }
 
-    @GetMapping("/fetch-emails")
-    public ResponseEntity<List<EmailConversation>> fetchEmailConversations() {
-        List<EmailConversation> conversations = emailReceiverService.fetchEmailConversations(host, storeType, user, password);
-        return ResponseEntity.ok(conversations);
+    // The opened thread, the only place bodies are sent. They're read from the mail server on each request.
+    @GetMapping("/email/conversations/{conversationId}")
+    public ResponseEntity<EmailConversation> getConversation(@PathVariable String conversationId, WebRequest webRequest) throws MessagingException {
+        if (channelVersions.checkNotModified(webRequest, Channel.EMAIL)) {
+            return null;
+        }
+        return mailboxSyncScheduler.openConversation(conversationId)
+                .map(mailboxConversation -> ResponseEntity.ok()
+                        .cacheControl(CacheControl.noCache())
+                        .body(mailboxConversation.getConversation()))
+                .orElseGet(() -> mailboxSyncScheduler.isSynced() ? ResponseEntity.notFound().build() : notSyncedYet());
     }
 
-
     @PostMapping("/reply-email")
     public String replyEmail(@RequestBody ReplyEmail replyEmail) throws MessagingException {
-        emailSenderService.replyToEmail(replyEmail.getRecipient(), replyEmail.getSubject(), replyEmail.getMessage(), replyEmail.getMessageId());
+        // Reply from the mailbox that received the message, or the default one for threads we don't know
+        MailAccount account = mailboxSyncScheduler.findAccountForMessage(replyEmail.getMessageId())
+                .orElseGet(mailAccountService::getDefaultAccount);
+        emailSenderService.replyToEmail(account, replyEmail.getRecipient(), replyEmail.getSubject(), replyEmail.getMessage(), replyEmail.getMessageId());
         return "Email replied successfully!";
     }
 
     @PutMapping("/mark-as-read/{conversationId}")
-    public String markConversationAsRead(@PathVariable String conversationId) {
-        List<EmailConversation> emailConversations = fetchEmailConversations().getBody();
-        EmailConversation conversation = emailConversations.stream()
-                .filter(c -> c.getConversationId().equals(conversationId))
-                .findFirst()
-                .orElse(null);
+    public ResponseEntity<String> markConversationAsRead(@PathVariable String conversationId) {
+        MailboxConversation mailboxConversation = mailboxSyncScheduler.findConversation(conversationId).orElse(null);
 
-        if (conversation == null) {
-            return "Conversation not found!";
+        if (mailboxConversation == null) {
+            return mailboxSyncScheduler.isSynced() ? ResponseEntity.ok("Conversation not found!") : notSyncedYet();
         }
-        emailSenderService.markConversationAsRead(host, storeType, user, password, conversation);
-        return "Email marked as read!";
+        emailSenderService.markConversationAsRead(mailboxConversation.getAccount(), mailboxConversation.getConversation());
+        inboxService.markAsRead(Channel.EMAIL, conversationId);
+        return ResponseEntity.ok("Email marked as read!");
+    }
+
+    private static <T> ResponseEntity<T> notSyncedYet() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, SYNC_RETRY_AFTER_SECONDS)
+                .build();
     }
 }
@@ -6,168 +6,364 @@ import com.restfb.types.Conversation;
 import com.restfb.types.Message;
 import com.restfb.types.NamedFacebookType;
 import com.restfb.types.send.SendResponse;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.velikanovdev.backend.cluster.PollerLeadership;
+import org.velikanovdev.backend.concurrent.FanOut;
+import org.velikanovdev.backend.concurrent.UpstreamExecutor;
+import org.velikanovdev.backend.entity.Channel;
 import org.velikanovdev.backend.entity.ConversationDetail;
 import org.velikanovdev.backend.entity.FBMessageDetail;
-
-import java.io.IOException;
+import org.velikanovdev.backend.entity.SearchDocument;
+import org.velikanovdev.backend.graph.GraphClientFactory;
+import org.velikanovdev.backend.graph.GraphMediaClient;
+import org.velikanovdev.backend.graph.GraphPriority;
+import org.velikanovdev.backend.graph.GraphReadCache;
+import org.velikanovdev.backend.graph.GraphThrottledException;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.notification.SseStream;
+import org.velikanovdev.backend.service.AttachmentService;
+import org.velikanovdev.backend.service.InboxService;
+import org.velikanovdev.backend.service.SearchIndexService;
+import org.velikanovdev.backend.tracing.StageTracer;
+import org.velikanovdev.backend.web.ChannelVersions;
+import org.velikanovdev.backend.web.JsonStreamWriter;
+
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RestController
 public class FBController {
-    @Value("${facebook.access.token}")
-    private String ACCESS_TOKEN;
-    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final InboxService inboxService;
+    private final SearchIndexService searchIndexService;
+    private final ChannelMetrics channelMetrics;
+    private final GraphClientFactory graphClientFactory;
+    private final SseHub sseHub;
+    private final PollerLeadership pollerLeadership;
+    private final JsonStreamWriter jsonStreamWriter;
+    private final ChannelVersions channelVersions;
+    private final AttachmentService attachmentService;
+    private final GraphMediaClient graphMediaClient;
+    private final GraphReadCache graphReadCache;
+    private final UpstreamExecutor upstreamExecutor;
+    private final StageTracer stageTracer;
+    // Newest conversation update already pushed to clients, used for the delivery latency metric
+    private Date lastNotifiedUpdate;
+    // Fingerprint of the last polled conversation list, see signature()
+    private long lastSignature;
+    // Last seen update time per conversation id, to tell which cached threads went stale
+    private Map<String, Date> lastUpdatedTimes = new HashMap<>();
+
+    // A poll that can't fetch every thread within this is dropped and the next one starts over
+    @Value("${facebook.poll.deadline:30s}")
+    private Duration pollDeadline;
+
+    @Autowired
+    public FBController(InboxService inboxService, SearchIndexService searchIndexService, ChannelMetrics channelMetrics,
+                        GraphClientFactory graphClientFactory, SseHub sseHub, PollerLeadership pollerLeadership,
+                        JsonStreamWriter jsonStreamWriter, ChannelVersions channelVersions,
+                        AttachmentService attachmentService, GraphMediaClient graphMediaClient,
+                        GraphReadCache graphReadCache, UpstreamExecutor upstreamExecutor, StageTracer stageTracer) {
+        this.inboxService = inboxService;
+        this.searchIndexService = searchIndexService;
+        this.channelMetrics = channelMetrics;
+        this.graphClientFactory = graphClientFactory;
+        this.sseHub = sseHub;
+        this.pollerLeadership = pollerLeadership;
+        this.jsonStreamWriter = jsonStreamWriter;
+        this.channelVersions = channelVersions;
+        this.attachmentService = attachmentService;
+        this.graphMediaClient = graphMediaClient;
+        this.graphReadCache = graphReadCache;
+        this.upstreamExecutor = upstreamExecutor;
+        this.stageTracer = stageTracer;
+    }
 
     // SSE endpoint for frontend to listen for unread message notifications
     @GetMapping("/facebook/notifications")
     public SseEmitter getUnreadMessageNotifications() {
-        SseEmitter emitter = new SseEmitter(30 * 60 * 1000L); // 30 minutes timeout
-        emitters.add(emitter);
-
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
-        emitter.onError((e) -> emitters.remove(emitter));
-
-        return emitter;
+        return sseHub.subscribe(SseStream.FACEBOOK_CONVERSATIONS);
     }
 
     @Scheduled(fixedRate = 10000)
     public void pollConversations() {
-        FacebookClient facebookClient = new DefaultFacebookClient(ACCESS_TOKEN, Version.LATEST);
+        // Only one node in the cluster crawls the Graph API
+        if (!pollerLeadership.isLeader("facebook-poller")) {
+            return;
+        }
+
+        Timer.Sample sample = channelMetrics.startTimer();
+        AtomicInteger graphCalls = new AtomicInteger();
+        try {
+            // One trace per poll, from the Graph crawl to the push
+            stageTracer.runInSpan("facebook.poll", () -> pollConversations(graphCalls));
+        } catch (GraphThrottledException e) {
+            // Picked up again by a later poll once usage has come down
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channelMetrics.stopPoll(sample, Channel.FACEBOOK);
+            channelMetrics.recordPollUpstreamCalls(Channel.FACEBOOK, graphCalls.get());
+        }
+    }
+
+    private void pollConversations(AtomicInteger graphCalls) throws InterruptedException {
+        // Background priority, the governor slows the crawl down before it eats the budget sends need
+        FacebookClient facebookClient = graphClientFactory.createClient(GraphPriority.BACKGROUND);
 
         // Fetch all conversations with relevant fields
-        Connection<Conversation> conversationList = facebookClient.fetchConnection(
-                "me/conversations",
-                Conversation.class,
-                Parameter.with("fields", "id,participants,updated_time,messages{message,from,to,created_time},unread_count")
-        );
+        graphCalls.incrementAndGet();
+        Connection<Conversation> conversationList = stageTracer.inSpan("graph.conversations", () ->
+                channelMetrics.recordUpstream("graph", "conversations", () ->
+                        facebookClient.fetchConnection(
+                                "me/conversations",
+                                Conversation.class,
+                                Parameter.with("fields", "id,participants,updated_time,messages{message,from,to,created_time},unread_count")
+                        )));
+
+        // Threads are fetched side by side, each one's pages still in order
+        List<List<Message>> threads = fetchAllThreads(facebookClient, conversationList.getData(), graphCalls);
+        if (threads == null) {
+            return;
+        }
 
-        List<ConversationDetail> conversationDetails = conversationList.getData().stream()
-                .map(conversation -> {
-                    // Extract primary participant
-                    NamedFacebookType primaryParticipant = conversation.getParticipants().stream()
-                            .findFirst()
-                            .orElse(null);
-
-                    String participantName = primaryParticipant != null ? primaryParticipant.getName() : "Unknown";
-                    String participantId = primaryParticipant != null ? primaryParticipant.getId() : null;
-
-                    // Fetch all messages (handle pagination)
-                    List<Message> allMessages = fetchAllMessages(facebookClient, conversation.getId());
-
-                    // Count messages from the primary participant
-                    long messagesFromPrimaryParticipant = allMessages.stream()
-                            .filter(message -> message.getFrom() != null && message.getFrom().getId().equals(participantId))
-                            .count();
-
-                    // Map messages to a simplified structure
-                    List<FBMessageDetail> FBMessageDetails = allMessages.stream()
-                            .map(message -> new FBMessageDetail(
-                                    message.getId(),
-                                    message.getMessage(),
-                                    message.getFrom() != null ? message.getFrom().getName() : "Unknown",
-                                    message.getTo().stream().map(NamedFacebookType::getName).toList(),
-                                    message.getCreatedTime()
-                            ))
-                            .toList();
-
-                    // Create a detailed conversation response object
-                    return new ConversationDetail(
-                            conversation.getId(),
-                            participantName,
-                            conversation.getUpdatedTime(),
-                            messagesFromPrimaryParticipant,
-                            FBMessageDetails
-                    );
-                })
-                .toList();
+        List<ConversationDetail> conversationDetails = new ArrayList<>();
+        for (int i = 0; i < threads.size(); i++) {
+            conversationDetails.add(toConversationDetail(conversationList.getData().get(i), threads.get(i)));
+        }
+
+        // Drop cached threads that got new messages since the last poll
+        Map<String, Date> updatedTimes = new HashMap<>();
+        for (Conversation conversation : conversationList.getData()) {
+            updatedTimes.put(conversation.getId(), conversation.getUpdatedTime());
+            if (!Objects.equals(conversation.getUpdatedTime(), lastUpdatedTimes.get(conversation.getId()))) {
+                graphReadCache.invalidateThread(conversation.getId());
+            }
+        }
+        lastUpdatedTimes = updatedTimes;
+
+        // Let conditional GETs of /conversations and the cached list see the change
+        long signature = signature(conversationList.getData());
+        if (signature != lastSignature) {
+            lastSignature = signature;
+            graphReadCache.invalidateConversations();
+            channelVersions.bump(Channel.FACEBOOK);
+        }
 
         // Notify clients with the updated list of conversations
         notifyClients(conversationDetails);
+        recordDeliveryLatency(conversationDetails);
     }
 
-    private List<Message> fetchAllMessages(FacebookClient facebookClient, String conversationId) {
-        List<Message> allMessages = new ArrayList<>();
+    private ConversationDetail toConversationDetail(Conversation conversation, List<Message> allMessages) {
+        // Extract primary participant
+        NamedFacebookType primaryParticipant = conversation.getParticipants().stream()
+                .findFirst()
+                .orElse(null);
+
+        String participantName = primaryParticipant != null ? primaryParticipant.getName() : "Unknown";
+        String participantId = primaryParticipant != null ? primaryParticipant.getId() : null;
+
+        // Count messages from the primary participant
+        long messagesFromPrimaryParticipant = allMessages.stream()
+                .filter(message -> message.getFrom() != null && message.getFrom().getId().equals(participantId))
+                .count();
+
+        // Map messages to a simplified structure
+        List<FBMessageDetail> FBMessageDetails = allMessages.stream()
+                .map(message -> new FBMessageDetail(
+                        message.getId(),
+                        message.getMessage(),
+                        message.getFrom() != null ? message.getFrom().getName() : "Unknown",
+                        message.getTo().stream().map(NamedFacebookType::getName).toList(),
+                        message.getCreatedTime()
+                ))
+                .toList();
 
-        // Fetch the first page of messages
-        Connection<Message> messages = facebookClient.fetchConnection(
-                conversationId + "/messages",
-                Message.class,
-                Parameter.with("fields", "id,message,from,to,created_time")
+        // Keep the unified inbox row for this thread up to date
+        FBMessageDetail latestMessage = FBMessageDetails.stream()
+                .filter(message -> message.getCreatedTime() != null)
+                .max(Comparator.comparing(FBMessageDetail::getCreatedTime))
+                .orElse(null);
+        stageTracer.runInSpan("db.write", () -> {
+            inboxService.syncConversation(
+                    Channel.FACEBOOK,
+                    conversation.getId(),
+                    participantName,
+                    conversation.getUpdatedTime(),
+                    latestMessage != null ? latestMessage.getMessage() : null,
+                    conversation.getUnreadCount() != null ? conversation.getUnreadCount() : 0
+            );
+
+            // Index new messages for full-text search, already indexed ones are skipped
+            int indexed = searchIndexService.indexAll(Channel.FACEBOOK, FBMessageDetails.stream()
+                    .map(message -> new SearchDocument(Channel.FACEBOOK, conversation.getId(), message.getId(),
+                            message.getFrom(), message.getMessage(), message.getCreatedTime()))
+                    .toList());
+            channelMetrics.messagesIngested(Channel.FACEBOOK, indexed);
+        });
+        allMessages.forEach(this::storeAttachments);
+
+        // Create a detailed conversation response object
+        return new ConversationDetail(
+                conversation.getId(),
+                participantName,
+                conversation.getUpdatedTime(),
+                messagesFromPrimaryParticipant,
+                FBMessageDetails
         );
+    }
 
-        // Add messages from the first page
-        allMessages.addAll(messages.getData());
+    // Cheap fingerprint of the conversation list: ids, last update times and unread counts
+    private static long signature(List<Conversation> conversations) {
+        long signature = conversations.size();
+        for (Conversation conversation : conversations) {
+            signature = 31 * signature + Objects.hash(conversation.getId(), conversation.getUpdatedTime(),
+                    conversation.getUnreadCount());
+        }
+        return signature;
+    }
 
-        // Fetch subsequent pages
-        while (messages.hasNext()) {
-            messages = facebookClient.fetchConnectionPage(messages.getNextPageUrl(), Message.class);
-            allMessages.addAll(messages.getData());
+    private void recordDeliveryLatency(List<ConversationDetail> conversations) {
+        Date newest = lastNotifiedUpdate;
+        for (ConversationDetail conversation : conversations) {
+            Date updatedTime = conversation.getUpdatedTime();
+            if (updatedTime == null) {
+                continue;
+            }
+            // Skip the first poll, everything would look like it arrived just now
+            if (lastNotifiedUpdate != null && updatedTime.after(lastNotifiedUpdate)) {
+                channelMetrics.recordDeliveryLatency(Channel.FACEBOOK, updatedTime);
+            }
+            if (newest == null || updatedTime.after(newest)) {
+                newest = updatedTime;
+            }
         }
+        lastNotifiedUpdate = newest;
+    }
 
-        return allMessages;
+    // Pages of one thread depend on each other, different threads don't; the scope cancels every fetch still
+    // running when one fails or the deadline passes, so a poll never leaves requests behind. null when the
+    // deadline passed, that poll is dropped and the next one starts over.
+    private List<List<Message>> fetchAllThreads(FacebookClient facebookClient, List<Conversation> conversations,
+                                                AtomicInteger graphCalls) throws InterruptedException {
+        try (FanOut<List<Message>> fanOut = upstreamExecutor.fanOut(pollDeadline)) {
+            for (Conversation conversation : conversations) {
+                fanOut.fork(() -> fetchAllMessages(facebookClient, conversation.getId(), graphCalls));
+            }
+            return fanOut.join();
+        } catch (ExecutionException e) {
+            FanOut.rethrowUnchecked(e);
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
-    private void notifyClients(List<ConversationDetail> conversations) {
-        List<SseEmitter> emittersToRemove = new ArrayList<>();
+    // A span per thread with a child per page, the pages of a long thread are what make a poll slow
+    private List<Message> fetchAllMessages(FacebookClient facebookClient, String conversationId, AtomicInteger graphCalls) {
+        return stageTracer.inSpan("graph.messages", () -> {
+            StageTracer.annotate("facebook.conversation_id", conversationId);
+            List<Message> allMessages = new ArrayList<>();
+
+            // Fetch the first page of messages
+            graphCalls.incrementAndGet();
+            Connection<Message> firstPage = channelMetrics.recordUpstream("graph", "messages", () ->
+                    facebookClient.fetchConnection(
+                            conversationId + "/messages",
+                            Message.class,
+                            Parameter.with("fields", "id,message,from,to,created_time,attachments{id,mime_type,name,file_url,image_data{url}}")
+                    ));
+
+            // Add messages from the first page
+            allMessages.addAll(firstPage.getData());
+
+            // Fetch subsequent pages
+            Connection<Message> messages = firstPage;
+            int pages = 1;
+            while (messages.hasNext()) {
+                String nextPageUrl = messages.getNextPageUrl();
+                graphCalls.incrementAndGet();
+                messages = stageTracer.inSpan("graph.page", () -> channelMetrics.recordUpstream("graph", "messages_page", () ->
+                        facebookClient.fetchConnectionPage(nextPageUrl, Message.class)));
+                allMessages.addAll(messages.getData());
+                pages++;
+            }
+
+            StageTracer.annotate("graph.pages", pages);
+            StageTracer.annotate("facebook.messages", allMessages.size());
+            return allMessages;
+        });
+    }
 
-        for (SseEmitter emitter : emitters) {
+    // Files and images go to the attachment store, attachments already stored are skipped without a download
+    private void storeAttachments(Message message) {
+        for (Message.Attachment attachment : message.getAttachments()) {
+            String url = attachment.getImageData() != null ? attachment.getImageData().getUrl() : attachment.getFileUrl();
+            if (attachment.getId() == null || url == null) {
+                continue;
+            }
             try {
-                emitter.send(SseEmitter.event()
-                        .name("facebookConversations")
-                        .data(conversations));
-            } catch (IOException e) {
-                // Add to the list of emitters to remove
-                emittersToRemove.add(emitter);
+                attachmentService.ingest(Channel.FACEBOOK, message.getId(), attachment.getId(), attachment.getName(),
+                        attachment.getMimeType(), () -> graphMediaClient.openUrl(url));
+            } catch (Exception e) {
+                e.printStackTrace();
             }
         }
+    }
 
-        // Remove disconnected emitters
-        emitters.removeAll(emittersToRemove);
+    private void notifyClients(List<ConversationDetail> conversations) {
+        sseHub.publish(SseStream.FACEBOOK_CONVERSATIONS, "facebookConversations", conversations);
     }
 
+    // Streams the conversation list page by page as slim views, the messages are loaded per conversation on demand
     @GetMapping("/conversations")
-    public ResponseEntity<List<Conversation>> getConversations() {
-        FacebookClient facebookClient = new DefaultFacebookClient(ACCESS_TOKEN, Version.LATEST);
-
-        // Fetch conversations using RestFB
-        Connection<Conversation> conversationList = facebookClient.fetchConnection(
-                "me/conversations",
-                Conversation.class,
-                Parameter.with("fields", "id,participants,updated_time, messages{message,from,to,created_time}")
-        );
-
-
-        return ResponseEntity.ok(conversationList.getData());
+    public ResponseEntity<StreamingResponseBody> getConversations(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                  WebRequest webRequest) {
+        // The poller bumps the version whenever a conversation changes, no need to ask Graph
+        if (channelVersions.checkNotModified(webRequest, Channel.FACEBOOK)) {
+            return null;
+        }
+        return jsonStreamWriter.stream(accept, sink -> graphReadCache.getConversations().forEach(sink));
     }
 
     @GetMapping("/conversation/{conversationId}")
-    public ResponseEntity<List<Message>> getConversation(@PathVariable String conversationId) {
-        FacebookClient facebookClient = new DefaultFacebookClient(ACCESS_TOKEN, Version.LATEST);
-        Connection<Message> messages = facebookClient.fetchConnection(conversationId + "/messages", Message.class,
-                Parameter.with("fields", "id,message,from,to,createdTime"));
-
-        return ResponseEntity.ok(messages.getData());
+    public ResponseEntity<List<Message>> getConversation(@PathVariable String conversationId, WebRequest webRequest) {
+        if (channelVersions.checkNotModified(webRequest, Channel.FACEBOOK)) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(graphReadCache.getMessages(conversationId));
     }
 
     @GetMapping("/message/{messageId}")
     public ResponseEntity<Message> getMessage(@PathVariable String messageId) {
-        FacebookClient facebookClient = new DefaultFacebookClient(ACCESS_TOKEN, Version.LATEST);
-        Message message = facebookClient.fetchObject(messageId, Message.class, Parameter.with("fields", "id,message,from,to"));
-
-        return ResponseEntity.ok(message);
+        return ResponseEntity.ok(graphReadCache.getMessage(messageId));
     }
 
     @PostMapping("/sendMessage/{recipientId}")
     public ResponseEntity<String> sendMessage(@PathVariable String recipientId, @RequestParam String messageText) {
-        FacebookClient fbClient = new DefaultFacebookClient(ACCESS_TOKEN, Version.LATEST);
+        FacebookClient fbClient = graphClientFactory.createClient();
 
         // Create recipient
         JsonObject recipient = new JsonObject();
@@ -184,11 +380,17 @@ public class FBController {
 
         // Send message
         try {
-            SendResponse response = fbClient.publish("me/messages", SendResponse.class,
-                    Parameter.with("recipient", recipient),
-                    Parameter.with("message", message));
+            SendResponse response = channelMetrics.recordUpstream("graph", "send_message", () ->
+                    fbClient.publish("me/messages", SendResponse.class,
+                            Parameter.with("recipient", recipient),
+                            Parameter.with("message", message)));
+            channelMetrics.messageSent(Channel.FACEBOOK);
+            graphReadCache.invalidateThreadsWith(recipientId);
+            channelVersions.bump(Channel.FACEBOOK);
             return ResponseEntity.ok("Message sent successfully: Recipient ID - " + response.getRecipientId() +
                     ", Message ID - " + response.getMessageId());
+        } catch (GraphThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(500).body("Error sending message: " + e.getMessage());
         }
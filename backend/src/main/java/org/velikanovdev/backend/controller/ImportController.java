@@ -0,0 +1,51 @@
+package org.velikanovdev.backend.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.velikanovdev.backend.dto.ImportRequest;
+import org.velikanovdev.backend.dto.ImportStatus;
+import org.velikanovdev.backend.importer.BulkImporter;
+import org.velikanovdev.backend.importer.ImportJob;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+
+// History backfills from export files copied to the server's import directory beforehand
+@RestController
+@RequestMapping("/admin/import")
+public class ImportController {
+    private final BulkImporter bulkImporter;
+
+    @Autowired
+    public ImportController(BulkImporter bulkImporter) {
+        this.bulkImporter = bulkImporter;
+    }
+
+    // Starts the import in the background, the returned status has the id to poll
+    @PostMapping
+    public ResponseEntity<?> startImport(@RequestBody ImportRequest request) throws IOException {
+        try {
+            ImportJob job = bulkImporter.start(request, bulkImporter.resolveInImportDir(request.getPaths()));
+            return ResponseEntity.accepted().body(job.toStatus());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<List<ImportStatus>> getImports() {
+        return ResponseEntity.ok(bulkImporter.getJobs().stream()
+                .map(ImportJob::toStatus)
+                .sorted(Comparator.comparing(ImportStatus::getStartedAt).reversed())
+                .toList());
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<ImportStatus> getImport(@PathVariable String id) {
+        return bulkImporter.getJob(id)
+                .map(job -> ResponseEntity.ok(job.toStatus()))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
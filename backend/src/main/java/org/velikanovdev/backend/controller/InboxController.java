@@ -0,0 +1,30 @@
+package org.velikanovdev.backend.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.InboxConversation;
+import org.velikanovdev.backend.service.InboxService;
+
+import java.util.List;
+
+@RestController
+public class InboxController {
+    private final InboxService inboxService;
+
+    @Autowired
+    public InboxController(InboxService inboxService) {
+        this.inboxService = inboxService;
+    }
+
+    // Unified inbox across all channels, most recent activity first
+    @GetMapping("/inbox")
+    public ResponseEntity<List<InboxConversation>> getInbox(@RequestParam(required = false) Channel channel,
+                                                            @RequestParam(defaultValue = "0") int page,
+                                                            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(inboxService.getInbox(channel, page, size));
+    }
+}
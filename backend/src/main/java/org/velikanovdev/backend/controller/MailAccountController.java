@@ -0,0 +1,50 @@
+package org.velikanovdev.backend.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.velikanovdev.backend.dto.MailAccountStatus;
+import org.velikanovdev.backend.entity.MailAccount;
+import org.velikanovdev.backend.mail.MailboxSyncScheduler;
+import org.velikanovdev.backend.service.EmailSenderService;
+import org.velikanovdev.backend.service.MailAccountService;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/email/accounts")
+public class MailAccountController {
+    private final MailAccountService mailAccountService;
+    private final MailboxSyncScheduler mailboxSyncScheduler;
+    private final EmailSenderService emailSenderService;
+
+    @Autowired
+    public MailAccountController(MailAccountService mailAccountService, MailboxSyncScheduler mailboxSyncScheduler,
+                                 EmailSenderService emailSenderService) {
+        this.mailAccountService = mailAccountService;
+        this.mailboxSyncScheduler = mailboxSyncScheduler;
+        this.emailSenderService = emailSenderService;
+    }
+
+    // Every mailbox with its sync lag, the same numbers as the omnichannel.email.sync.lag gauge
+    @GetMapping
+    public ResponseEntity<List<MailAccountStatus>> getAccounts() {
+        return ResponseEntity.ok(mailboxSyncScheduler.getStatuses());
+    }
+
+    // Picked up by the sync workers on their next tick
+    @PostMapping
+    public ResponseEntity<MailAccount> addAccount(@RequestBody MailAccount account) {
+        if (account.getAddress() == null || account.getImapHost() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(mailAccountService.addAccount(account));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteAccount(@PathVariable Long id) {
+        mailAccountService.deleteAccount(id);
+        emailSenderService.forgetAccount(id);
+        return ResponseEntity.noContent().build();
+    }
+}
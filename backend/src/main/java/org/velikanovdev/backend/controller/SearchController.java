@@ -0,0 +1,31 @@
+package org.velikanovdev.backend.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.velikanovdev.backend.dto.SearchHit;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.service.SearchIndexService;
+
+import java.util.List;
+
+@RestController
+public class SearchController {
+    private final SearchIndexService searchIndexService;
+
+    @Autowired
+    public SearchController(SearchIndexService searchIndexService) {
+        this.searchIndexService = searchIndexService;
+    }
+
+    // Ranked full-text search over WhatsApp, Messenger and email history
+    @GetMapping("/search")
+    public ResponseEntity<List<SearchHit>> search(@RequestParam("q") String query,
+                                                  @RequestParam(required = false) Channel channel,
+                                                  @RequestParam(defaultValue = "0") int page,
+                                                  @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(searchIndexService.search(query, channel, page, size));
+    }
+}
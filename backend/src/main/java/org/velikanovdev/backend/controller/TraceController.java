@@ -0,0 +1,37 @@
+package org.velikanovdev.backend.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.velikanovdev.backend.dto.TraceDetail;
+import org.velikanovdev.backend.dto.TraceSummary;
+import org.velikanovdev.backend.tracing.TraceBuffer;
+
+import java.util.List;
+
+// Traces the tail sampler kept on this node, see TailSamplingSpanProcessor
+@RestController
+@RequestMapping("/admin/traces")
+public class TraceController {
+    private final TraceBuffer traceBuffer;
+
+    @Autowired
+    public TraceController(TraceBuffer traceBuffer) {
+        this.traceBuffer = traceBuffer;
+    }
+
+    // Newest first, minMillis leaves out the faster ones
+    @GetMapping
+    public ResponseEntity<List<TraceSummary>> getTraces(@RequestParam(defaultValue = "0") double minMillis) {
+        return ResponseEntity.ok(traceBuffer.getSummaries().stream()
+                .filter(trace -> trace.getDurationMillis() >= minMillis)
+                .toList());
+    }
+
+    @GetMapping("/{traceId}")
+    public ResponseEntity<TraceDetail> getTrace(@PathVariable String traceId) {
+        return traceBuffer.find(traceId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
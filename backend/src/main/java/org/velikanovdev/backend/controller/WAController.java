@@ -2,23 +2,39 @@ package org.velikanovdev.backend.controller;
 
 import com.restfb.DefaultFacebookClient;
 import com.restfb.Parameter;
-import com.restfb.Version;
 import com.restfb.json.JsonObject;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.velikanovdev.backend.cluster.PollerLeadership;
+import org.velikanovdev.backend.datasource.ReadWriteRouting;
 import org.velikanovdev.backend.dto.WhatsAppMessageDto;
+import org.velikanovdev.backend.dto.WhatsAppMessageView;
+import org.velikanovdev.backend.entity.Channel;
 import org.velikanovdev.backend.entity.WhatsAppConversation;
 import org.velikanovdev.backend.entity.WhatsAppMessage;
+import org.velikanovdev.backend.graph.GraphClientFactory;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.notification.SseStream;
+import org.velikanovdev.backend.retention.RetentionPolicy;
+import org.velikanovdev.backend.service.InboxService;
+import org.velikanovdev.backend.service.SearchIndexService;
 import org.velikanovdev.backend.service.WhatsAppMessageService;
+import org.velikanovdev.backend.web.ChannelVersions;
+import org.velikanovdev.backend.web.JsonStreamWriter;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.UncheckedIOException;
+import java.time.YearMonth;
 import java.util.Date;
 import java.util.List;
 
@@ -27,10 +43,15 @@ import java.util.List;
 @RequestMapping("/whatsapp")
 public class WAController {
     private final WhatsAppMessageService messageService;
-    private final List<SseEmitter> emitters = Collections.synchronizedList(new ArrayList<>());
-
-    @Value("${facebook.access.token}")
-    private String ACCESS_TOKEN;
+    private final InboxService inboxService;
+    private final SearchIndexService searchIndexService;
+    private final ChannelMetrics channelMetrics;
+    private final GraphClientFactory graphClientFactory;
+    private final SseHub sseHub;
+    private final PollerLeadership pollerLeadership;
+    private final JsonStreamWriter jsonStreamWriter;
+    private final ChannelVersions channelVersions;
+    private final ReadWriteRouting readWriteRouting;
 
     @Value("${whatsapp.phone.number.id}")
     private String PHONE_NUMBER_ID;
@@ -39,64 +60,59 @@ public class WAController {
     private String PHONE_NUMBER;
 
     @Autowired
-    public WAController(WhatsAppMessageService messageService) {
+    public WAController(WhatsAppMessageService messageService, InboxService inboxService,
+                        SearchIndexService searchIndexService, ChannelMetrics channelMetrics,
+                        GraphClientFactory graphClientFactory, SseHub sseHub, PollerLeadership pollerLeadership,
+                        JsonStreamWriter jsonStreamWriter, ChannelVersions channelVersions,
+                        ReadWriteRouting readWriteRouting) {
         this.messageService = messageService;
+        this.inboxService = inboxService;
+        this.searchIndexService = searchIndexService;
+        this.channelMetrics = channelMetrics;
+        this.graphClientFactory = graphClientFactory;
+        this.sseHub = sseHub;
+        this.pollerLeadership = pollerLeadership;
+        this.jsonStreamWriter = jsonStreamWriter;
+        this.channelVersions = channelVersions;
+        this.readWriteRouting = readWriteRouting;
     }
 
     @GetMapping("/notifications")
     public SseEmitter getWhatsAppNotifications() {
-        SseEmitter emitter = new SseEmitter(30 * 60 * 1000L); // 30 minutes timeout
-        emitters.add(emitter);
-
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
-        emitter.onError((e) -> emitters.remove(emitter));
-
-        return emitter;
+        return sseHub.subscribe(SseStream.WHATSAPP_CONVERSATIONS);
     }
 
     // Scheduled task to poll WhatsApp messages
     @Scheduled(fixedRate = 10000)
     public void pollWhatsAppConversations() {
-        List<WhatsAppConversation> conversationList = messageService.getConversations();
+        // Only one node in the cluster recomputes the conversation list
+        if (!pollerLeadership.isLeader("whatsapp-poller")) {
+            return;
+        }
 
-        List<WhatsAppConversation> conversationDetails = conversationList.stream()
-                .map(conversation -> {
-                    // Retrieve unread count from unread field in the messages
-                    long unreadCount = messageService.getUnreadMessageCountBySender(conversation.getSender());
+        Timer.Sample sample = channelMetrics.startTimer();
+        try {
+            pollAndNotify();
+        } finally {
+            channelMetrics.stopPoll(sample, Channel.WHATSAPP);
+        }
+    }
 
-                    // Create a detailed conversation response object
-                    return new WhatsAppConversation(
-                            conversation.getSender(),
-                            conversation.getLastMessageDate(),
-                            (int) unreadCount
-                    );
-                })
-                .toList();
+    private void pollAndNotify() {
+        // Unread counts come with the conversation query, no per-sender count needed
+        List<WhatsAppConversation> conversationList = messageService.getConversations();
 
         // Notify clients
-        notifyWhatsAppClients(conversationDetails);
+        notifyWhatsAppClients(conversationList);
     }
 
     private void notifyWhatsAppClients(List<WhatsAppConversation> conversations) {
-        List<SseEmitter> emittersToRemove = new ArrayList<>();
-
-        for (SseEmitter emitter : emitters) {
-            try {
-                emitter.send(SseEmitter.event()
-                        .name("whatsappConversations")
-                        .data(conversations));
-            } catch (IOException e) {
-                emittersToRemove.add(emitter);
-            }
-        }
-
-        emitters.removeAll(emittersToRemove);
+        sseHub.publish(SseStream.WHATSAPP_CONVERSATIONS, "whatsappConversations", conversations);
     }
 
     @PostMapping("/sendMessage/{recipientPhone}")
     public ResponseEntity<String> sendMessage(@PathVariable String recipientPhone, @RequestBody WhatsAppMessageDto message) {
-        DefaultFacebookClient fbClient = new DefaultFacebookClient(ACCESS_TOKEN, Version.LATEST);
+        DefaultFacebookClient fbClient = graphClientFactory.createClient();
         fbClient.setHeaderAuthorization(true);
 
         // Check if the user has messaged in the last 24 hours
@@ -123,28 +139,68 @@ public class WAController {
                 Parameter.with("text", textJso)};
 
         // Send the data and get the result as JsonObject
-        JsonObject jso = fbClient.publish(PHONE_NUMBER_ID + "/messages", JsonObject.class, params);
-
-        messageService.saveMessage(msg);
+        JsonObject jso = channelMetrics.recordUpstream("graph", "whatsapp_send", () ->
+                fbClient.publish(PHONE_NUMBER_ID + "/messages", JsonObject.class, params));
+        channelMetrics.messageSent(Channel.WHATSAPP);
+        // The wamid is what the statuses webhook reports delivery against
+        msg.setMessageId(sentMessageId(jso));
+
+        WhatsAppMessage savedMsg = messageService.saveMessage(msg);
+        // Indexed under the local id like before wamids were stored, so documents indexed since keep their key
+        searchIndexService.indexMessage(Channel.WHATSAPP, recipientPhone, "local-" + savedMsg.getId(), PHONE_NUMBER,
+                savedMsg.getMessage(), savedMsg.getSentDate());
+        inboxService.recordMessage(Channel.WHATSAPP, recipientPhone, recipientPhone, msg.getSentDate(), msg.getMessage(), false);
+        // The sender reloads the chat right away, it has to see the message even with a lagging replica
+        readWriteRouting.stickToPrimary();
+        channelVersions.bump(Channel.WHATSAPP);
         return ResponseEntity.ok("Message sent");
     }
 
+    // List endpoints stream their rows, a JSON array by default or NDJSON with Accept: application/x-ndjson
     @GetMapping("/conversations")
-    public ResponseEntity<List<WhatsAppConversation>> getConversations() {
-        List<WhatsAppConversation> conversations = messageService.getConversations();
-        return ResponseEntity.ok(conversations);
+    public ResponseEntity<StreamingResponseBody> getConversations(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                  WebRequest webRequest) {
+        if (channelVersions.checkNotModified(webRequest, Channel.WHATSAPP)) {
+            return null;
+        }
+        return jsonStreamWriter.stream(accept, messageService::streamConversations);
     }
 
+    // limit returns only the newest messages, which the hot cache answers without a query
     @GetMapping("/messages/{sender}")
-    public ResponseEntity<List<WhatsAppMessage>> getMessages(@PathVariable String sender) {
-        List<WhatsAppMessage> messages = messageService.getMessages(sender);
-        return ResponseEntity.ok(messages);
+    public ResponseEntity<StreamingResponseBody> getMessages(@PathVariable String sender,
+                                                             @RequestParam(required = false) Integer limit,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                             WebRequest webRequest) {
+        if (channelVersions.checkNotModified(webRequest, Channel.WHATSAPP)) {
+            return null;
+        }
+        return jsonStreamWriter.<WhatsAppMessageView>stream(accept, sink -> messageService.streamMessages(sender, limit, sink));
+    }
+
+    // History older than the hot window, read back from the monthly archive files; from and to are yyyy-MM, both inclusive
+    @GetMapping("/messages/{sender}/archived")
+    public ResponseEntity<StreamingResponseBody> getArchivedMessages(@PathVariable String sender,
+                                                                     @RequestParam YearMonth from,
+                                                                     @RequestParam(required = false) YearMonth to,
+                                                                     @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        Date start = RetentionPolicy.startOf(from);
+        Date end = to != null ? RetentionPolicy.startOf(to.plusMonths(1)) : new Date();
+        return jsonStreamWriter.<WhatsAppMessageView>stream(accept, sink -> {
+            try {
+                messageService.streamArchivedMessages(sender, start, end, sink);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
     }
 
     @PutMapping("/mark-as-read/{sender}")
     public ResponseEntity<Void> markAsRead(@PathVariable String sender) {
         try {
             messageService.markConversationAsRead(sender);
+            inboxService.markAsRead(Channel.WHATSAPP, sender);
+            channelVersions.bump(Channel.WHATSAPP);
             return ResponseEntity.ok().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -152,13 +208,20 @@ public class WAController {
     }
 
     @GetMapping("/unread-messages")
-    public ResponseEntity<List<WhatsAppMessage>> getUnreadMessages() {
-        try {
-            List<WhatsAppMessage> unreadMessages = messageService.getAllUnreadMessages();
-            return ResponseEntity.ok(unreadMessages);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    public ResponseEntity<StreamingResponseBody> getUnreadMessages(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                   WebRequest webRequest) {
+        if (channelVersions.checkNotModified(webRequest, Channel.WHATSAPP)) {
+            return null;
+        }
+        return jsonStreamWriter.stream(accept, messageService::streamUnreadMessages);
+    }
+
+    // {"messages":[{"id":"wamid..."}], ...}
+    private static String sentMessageId(JsonObject response) {
+        if (response == null || response.get("messages") == null || response.get("messages").asArray().isEmpty()) {
+            return null;
         }
+        return response.get("messages").asArray().get(0).asObject().getString("id", null);
     }
 
     private boolean hasUserMessagedInLast24Hours(String sender) {
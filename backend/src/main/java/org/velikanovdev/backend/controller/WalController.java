@@ -0,0 +1,34 @@
+package org.velikanovdev.backend.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.velikanovdev.backend.dto.WalStatus;
+import org.velikanovdev.backend.wal.WebhookReplayer;
+import org.velikanovdev.backend.wal.WebhookWal;
+
+@RestController
+@RequestMapping("/admin/wal")
+public class WalController {
+    private final WebhookWal webhookWal;
+    private final WebhookReplayer webhookReplayer;
+
+    @Autowired
+    public WalController(WebhookWal webhookWal, WebhookReplayer webhookReplayer) {
+        this.webhookWal = webhookWal;
+        this.webhookReplayer = webhookReplayer;
+    }
+
+    @GetMapping
+    public ResponseEntity<WalStatus> getStatus() {
+        return ResponseEntity.ok(new WalStatus(webhookWal.getFirstSequence(), webhookWal.getDurableSequence(),
+                webhookReplayer.getAppliedSequence(), webhookReplayer.getCheckpointedSequence(),
+                webhookWal.getSegmentCount()));
+    }
+
+    // Feeds the kept webhook history from fromSequence on through processing again, returns the last sequence included
+    @PostMapping("/replay")
+    public ResponseEntity<Long> replay(@RequestParam long fromSequence) {
+        return ResponseEntity.accepted().body(webhookReplayer.reprocess(fromSequence));
+    }
+}
@@ -1,37 +1,34 @@
 package org.velikanovdev.backend.controller;
 
-import com.restfb.DefaultJsonMapper;
-import com.restfb.JsonMapper;
-import com.restfb.types.webhook.Change;
-import com.restfb.types.webhook.WebhookEntry;
-import com.restfb.types.webhook.WebhookObject;
-import com.restfb.types.webhook.whatsapp.WhatsappMessagesValue;
-import com.restfb.types.whatsapp.platform.message.Text;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
-import org.velikanovdev.backend.entity.WhatsAppMessage;
-import org.velikanovdev.backend.service.WhatsAppMessageService;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.notification.SseStream;
+import org.velikanovdev.backend.tracing.StageTracer;
+import org.velikanovdev.backend.wal.WebhookReplayer;
+import org.velikanovdev.backend.wal.WebhookWal;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 @RestController
 public class WhatsAppWebhookController {
-    private final WhatsAppMessageService messageService;
-    private final List<SseEmitter> whatsappEmitters = Collections.synchronizedList(new ArrayList<>());
+    private final SseHub sseHub;
+    private final WebhookWal webhookWal;
+    private final WebhookReplayer webhookReplayer;
+    private final StageTracer stageTracer;
 
-    @Value("${whatsapp.phone.number}")
-    private String PHONE_NUMBER;
     @Value("${whatsapp.verify.token}")
     private String VERIFY_TOKEN;
 
     @Autowired
-    public WhatsAppWebhookController(WhatsAppMessageService messageService) {
-        this.messageService = messageService;
+    public WhatsAppWebhookController(SseHub sseHub, WebhookWal webhookWal, WebhookReplayer webhookReplayer,
+                                     StageTracer stageTracer) {
+        this.sseHub = sseHub;
+        this.webhookWal = webhookWal;
+        this.webhookReplayer = webhookReplayer;
+        this.stageTracer = stageTracer;
     }
 
     @GetMapping("/webhook")
@@ -45,55 +42,19 @@ public class WhatsAppWebhookController {
         }
     }
 
-    @PostMapping("/webhook")
-    public void receiveWebhook(@RequestBody String payload) {
-        JsonMapper jsonMapper = new DefaultJsonMapper();
-        WebhookObject webhookObject = jsonMapper.toJavaObject(payload, WebhookObject.class);
-
-        List<WhatsAppMessage> newMessages = new ArrayList<>();
-
-        for (WebhookEntry entry : webhookObject.getEntryList()) {
-            for (Change change : entry.getChanges()) {
-                WhatsappMessagesValue value = (WhatsappMessagesValue) change.getValue();
-                if (value != null) {
-                    value.getMessages().forEach(message -> {
-                        String sender = message.getFrom();
-                        Text text = message.getText();
-                        if (sender != null && text != null) {
-                            WhatsAppMessage msg = new WhatsAppMessage();
-                            msg.setSender(sender);
-                            msg.setRecipient(PHONE_NUMBER);
-                            msg.setMessage(text.getBody());
-                            msg.setMessageId(message.getId());
-                            msg.setSentDate(message.getTimestamp());
-                            msg.setUnread(true);
-
-                            messageService.saveMessage(msg);
-                            newMessages.add(msg);
-                        }
-                    });
-                }
-            }
-        }
-
-        // Notify clients with new messages
-        notifyWhatsAppClients(newMessages);
+    // Individual inbound messages as they arrive through the webhook
+    @GetMapping("/webhook/notifications")
+    public SseEmitter getWebhookMessageNotifications() {
+        return sseHub.subscribe(SseStream.WHATSAPP_MESSAGES);
     }
 
-    private void notifyWhatsAppClients(List<WhatsAppMessage> newMessages) {
-        List<SseEmitter> emittersToRemove = new ArrayList<>();
-
-        for (SseEmitter emitter : whatsappEmitters) {
-            try {
-                emitter.send(SseEmitter.event()
-                        .name("whatsappMessages")
-                        .data(newMessages));
-            } catch (IOException e) {
-                emittersToRemove.add(emitter);
-            }
-        }
-
-        // Remove disconnected emitters
-        whatsappEmitters.removeAll(emittersToRemove);
+    // Acknowledged once the raw payload is in the local WAL; WebhookReplayer stores it in Postgres right after,
+    // so a slow or unavailable database neither holds up nor loses inbound messages
+    @PostMapping("/webhook")
+    public void receiveWebhook(@RequestBody String payload) throws IOException, InterruptedException {
+        long sequence = webhookWal.append(payload);
+        // The request's own span covers the append, processing continues its trace on the replayer thread
+        StageTracer.annotate("wal.sequence", sequence);
+        webhookReplayer.wakeUp(sequence, stageTracer.traceparent());
     }
 }
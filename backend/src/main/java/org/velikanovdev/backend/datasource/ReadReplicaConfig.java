@@ -0,0 +1,70 @@
+package org.velikanovdev.backend.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// Two pools instead of Boot's single one: spring.datasource stays the primary, which takes every write and
+// the Flyway migrations, and omnichannel.datasource.replica points at a streaming replica of it. The
+// DataSource everything else is wired with sends @Transactional(readOnly = true) work to the replica.
+@Configuration
+@ConditionalOnProperty(name = "omnichannel.datasource.replica.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+    @Value("${omnichannel.datasource.replica.url}")
+    private String replicaUrl;
+
+    // The replica is a copy of the primary, its credentials are the same unless set
+    @Value("${omnichannel.datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${omnichannel.datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Value("${omnichannel.datasource.replica.retryAfter:10s}")
+    private Duration replicaRetryAfter;
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReadWriteRoutingDataSource.PRIMARY);
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("omnichannel.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setDriverClassName(properties.determineDriverClassName());
+        dataSource.setJdbcUrl(replicaUrl);
+        dataSource.setUsername(replicaUsername);
+        dataSource.setPassword(replicaPassword);
+        dataSource.setPoolName(ReadWriteRoutingDataSource.REPLICA);
+        dataSource.setReadOnly(true);
+        // Don't fail startup when the replica is down, reads use the primary until it's back
+        dataSource.setInitializationFailTimeout(-1);
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                 ReadWriteRouting readWriteRouting, ChannelMetrics channelMetrics) {
+        return new LazyConnectionDataSourceProxy(new ReadWriteRoutingDataSource(primaryDataSource, replicaDataSource,
+                readWriteRouting, channelMetrics, replicaRetryAfter.toMillis()));
+    }
+}
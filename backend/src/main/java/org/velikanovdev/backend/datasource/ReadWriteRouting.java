@@ -0,0 +1,33 @@
+package org.velikanovdev.backend.datasource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Read-your-writes for the replica route. There are no user sessions, every agent works on the same inbox, so
+// after a send or mark-as-read all reads stay on the primary until the replica has surely caught up.
+// Always present so writers can call it, it only has an effect with omnichannel.datasource.replica.enabled.
+@Component
+public class ReadWriteRouting {
+    private volatile long primaryUntil;
+
+    @Value("${omnichannel.datasource.replica.stickiness:5s}")
+    private Duration stickiness;
+
+    public void stickToPrimary() {
+        stickToPrimarySince(System.currentTimeMillis());
+    }
+
+    // For a change made at changedAtMillis, possibly on another node; never shortens the current window
+    public void stickToPrimarySince(long changedAtMillis) {
+        long until = changedAtMillis + stickiness.toMillis();
+        if (until > primaryUntil) {
+            primaryUntil = until;
+        }
+    }
+
+    public boolean isStickyToPrimary() {
+        return System.currentTimeMillis() < primaryUntil;
+    }
+}
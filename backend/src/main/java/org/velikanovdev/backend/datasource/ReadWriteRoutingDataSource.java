@@ -0,0 +1,68 @@
+package org.velikanovdev.backend.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+// Replica connections for read-only transactions, primary ones for everything else, including reads outside a
+// transaction. Used behind a LazyConnectionDataSourceProxy, so the pool is picked at the first statement, when
+// the transaction's read-only flag is already set.
+class ReadWriteRoutingDataSource extends AbstractDataSource {
+    static final String PRIMARY = "primary";
+    static final String REPLICA = "replica";
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReadWriteRouting routing;
+    private final ChannelMetrics channelMetrics;
+    private final long replicaRetryMillis;
+    private volatile long replicaDownUntil;
+
+    ReadWriteRoutingDataSource(DataSource primary, DataSource replica, ReadWriteRouting routing,
+                               ChannelMetrics channelMetrics, long replicaRetryMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.routing = routing;
+        this.channelMetrics = channelMetrics;
+        this.replicaRetryMillis = replicaRetryMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return primary("read_write");
+        }
+        if (routing.isStickyToPrimary()) {
+            return primary("sticky");
+        }
+        if (System.currentTimeMillis() < replicaDownUntil) {
+            return primary("replica_down");
+        }
+        try {
+            Connection connection = replica.getConnection();
+            channelMetrics.connectionRouted(REPLICA, "read_only");
+            return connection;
+        } catch (SQLException e) {
+            // An unavailable replica only costs the reads their offload, they use the primary until the retry
+            e.printStackTrace();
+            replicaDownUntil = System.currentTimeMillis() + replicaRetryMillis;
+            return primary("replica_down");
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Both pools use their configured credentials");
+    }
+
+    private Connection primary(String reason) throws SQLException {
+        Connection connection = primary.getConnection();
+        channelMetrics.connectionRouted(PRIMARY, reason);
+        return connection;
+    }
+}
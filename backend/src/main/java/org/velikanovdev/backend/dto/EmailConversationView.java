@@ -0,0 +1,23 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+// One email thread without its bodies, the full thread is served by /email/conversations/{conversationId}
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class EmailConversationView {
+    private String conversationId;
+    private String sender;
+    private String subject;
+    private int messageCount;
+    private long unreadCount;
+    private Date lastEmailDate;
+    private String preview;
+}
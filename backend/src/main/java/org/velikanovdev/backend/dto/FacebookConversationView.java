@@ -0,0 +1,30 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+import java.util.List;
+
+// The fields the conversation list needs, instead of the whole RestFB Conversation with its messages
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FacebookConversationView {
+    private String id;
+    private List<Participant> participants;
+    private Date updatedTime;
+    private Long unreadCount;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Participant {
+        private String id;
+        private String name;
+    }
+}
@@ -0,0 +1,25 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.velikanovdev.backend.importer.ImportFormat;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportRequest {
+    private ImportFormat format;
+    // Files or directories, directories are read recursively
+    private List<String> paths;
+    // WHATSAPP: phone number of the other side of the chat, which the export itself doesn't contain
+    private String contact;
+    // Display name of our own account in the export, tells sent messages from received ones
+    private String ownName;
+    // WHATSAPP: whether dates in the export are day/month or month/day, depends on the phone's locale
+    private boolean dayFirst = true;
+}
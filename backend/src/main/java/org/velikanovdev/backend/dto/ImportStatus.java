@@ -0,0 +1,37 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.velikanovdev.backend.importer.ImportFormat;
+
+import java.util.Date;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportStatus {
+    private String id;
+    private ImportFormat format;
+    // RUNNING, COMPLETED or FAILED
+    private String state;
+    private int files;
+    private int filesDone;
+    // Files that couldn't be read at all, error has the first reason
+    private int filesFailed;
+    private long bytesTotal;
+    private long bytesRead;
+    // Messages read from the files, entries that couldn't be read, rows copied into staging
+    private long parsed;
+    private long skipped;
+    private long copied;
+    // Copied messages that were new, the rest were already stored
+    private long inserted;
+    private long duplicates;
+    private Date startedAt;
+    private Date finishedAt;
+    private long messagesPerMinute;
+    private String error;
+}
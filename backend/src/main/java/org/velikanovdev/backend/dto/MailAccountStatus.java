@@ -0,0 +1,24 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class MailAccountStatus {
+    private Long id;
+    private String address;
+    private boolean enabled;
+    private Date lastSyncedAt;
+    // Seconds since the last successful sync, or since the account was picked up if it never synced
+    private double lagSeconds;
+    private long lastSyncMillis;
+    private int conversations;
+    private String lastError;
+}
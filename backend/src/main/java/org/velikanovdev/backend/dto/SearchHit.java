@@ -0,0 +1,20 @@
+package org.velikanovdev.backend.dto;
+
+import java.util.Date;
+
+public interface SearchHit {
+    String getChannel();
+
+    String getConversationKey();
+
+    String getExternalId();
+
+    String getParticipant();
+
+    Date getSentDate();
+
+    Float getRank();
+
+    // Matching fragments with the search terms wrapped in <mark> tags
+    String getHighlight();
+}
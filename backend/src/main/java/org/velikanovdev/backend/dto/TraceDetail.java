@@ -0,0 +1,20 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TraceDetail {
+    private TraceSummary summary;
+    // Ordered by start time
+    private List<TraceSpan> spans;
+    // Spans left out because the trace had more than omnichannel.tracing.maxSpansPerTrace
+    private int droppedSpans;
+}
@@ -0,0 +1,23 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TraceSpan {
+    private String spanId;
+    private String parentSpanId;
+    private String name;
+    // Relative to the start of the trace
+    private double offsetMillis;
+    private double durationMillis;
+    private Map<String, String> attributes;
+    private String error;
+}
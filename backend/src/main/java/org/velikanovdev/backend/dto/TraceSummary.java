@@ -0,0 +1,24 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TraceSummary {
+    private String traceId;
+    // Name of the span the trace started with, e.g. "email.sync" or "http post /webhook"
+    private String root;
+    private Date startedAt;
+    private double durationMillis;
+    private int spans;
+    private boolean error;
+    // slow, error or sampled
+    private String keptBecause;
+}
@@ -0,0 +1,18 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class WalStatus {
+    private long firstSequence;
+    private long durableSequence;
+    private long appliedSequence;
+    private long checkpointedSequence;
+    private int segments;
+}
@@ -0,0 +1,25 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.velikanovdev.backend.entity.DeliveryStatus;
+
+import java.util.Date;
+
+// Read-only projection of msgs for list endpoints, built by the query itself so nothing is attached to a persistence context
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class WhatsAppMessageView {
+    private Long id;
+    private String sender;
+    private String recipient;
+    private String message;
+    private String messageId;
+    private Date sentDate;
+    private boolean unread;
+    private DeliveryStatus deliveryStatus;
+}
@@ -0,0 +1,21 @@
+package org.velikanovdev.backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.velikanovdev.backend.entity.DeliveryStatus;
+
+import java.util.Date;
+
+// What the whatsappStatuses event carries per message, clients patch the message they already show
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class WhatsAppStatusDelta {
+    private String messageId;
+    private String contact;
+    private DeliveryStatus status;
+    private Date timestamp;
+}
@@ -0,0 +1,40 @@
+package org.velikanovdev.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+// A file received on any channel, the content itself is in AttachmentStore under its sha256
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "attachments")
+public class Attachment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Channel channel;
+    @Column(nullable = false, length = 512)
+    private String messageId;
+    @Column(nullable = false, length = 1024)
+    private String sourceId;
+    @Column(length = 512)
+    private String fileName;
+    @Column
+    private String contentType;
+    @Column
+    private long size;
+    @Column(nullable = false, length = 64)
+    private String sha256;
+    @Column(nullable = false)
+    private Date createdAt;
+}
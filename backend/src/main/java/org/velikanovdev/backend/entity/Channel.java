@@ -0,0 +1,7 @@
+package org.velikanovdev.backend.entity;
+
+public enum Channel {
+    WHATSAPP,
+    FACEBOOK,
+    EMAIL
+}
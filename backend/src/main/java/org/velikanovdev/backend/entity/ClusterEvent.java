@@ -0,0 +1,34 @@
+package org.velikanovdev.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+// SSE event handed between cluster nodes, NOTIFY only carries the id since payloads exceed its 8000 byte limit
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "cluster_events", indexes = @Index(name = "idx_cluster_events_created_at", columnList = "created_at"))
+public class ClusterEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column
+    private Long id;
+    @Column(nullable = false, length = 64)
+    private String stream;
+    @Column(nullable = false, length = 64)
+    private String eventName;
+    @Column(columnDefinition = "text")
+    private String payload;
+    @Column(name = "created_at", nullable = false)
+    private Date createdAt;
+    // Null when the event was published outside of a trace
+    @Column(name = "trace_parent", length = 55)
+    private String traceParent;
+}
@@ -0,0 +1,29 @@
+package org.velikanovdev.backend.entity;
+
+import java.util.Locale;
+
+// Ordered: a message only moves to a later state, a late "delivered" never overwrites "read"
+public enum DeliveryStatus {
+    SENT,
+    DELIVERED,
+    READ,
+    FAILED;
+
+    // The status field of the statuses webhook; states we don't track, e.g. deleted, give null
+    public static DeliveryStatus fromWebhook(String status) {
+        if (status == null) {
+            return null;
+        }
+        return switch (status.toLowerCase(Locale.ROOT)) {
+            case "sent" -> SENT;
+            case "delivered" -> DELIVERED;
+            case "read" -> READ;
+            case "failed" -> FAILED;
+            default -> null;
+        };
+    }
+
+    public boolean isAfter(DeliveryStatus other) {
+        return other == null || ordinal() > other.ordinal();
+    }
+}
@@ -0,0 +1,41 @@
+package org.velikanovdev.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "inbox_conversations",
+        uniqueConstraints = @UniqueConstraint(name = "uk_inbox_channel_key", columnNames = {"channel", "conversation_key"}),
+        indexes = {
+                @Index(name = "idx_inbox_last_activity", columnList = "last_activity"),
+                @Index(name = "idx_inbox_channel_last_activity", columnList = "channel, last_activity")
+        })
+public class InboxConversation {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "channel", nullable = false, length = 16)
+    private Channel channel;
+    // WhatsApp phone number, Messenger conversation id or email thread key
+    @Column(name = "conversation_key", nullable = false)
+    private String conversationKey;
+    @Column
+    private String participant;
+    @Column(name = "last_activity")
+    private Date lastActivity;
+    @Column
+    private long unreadCount;
+    @Column(length = 512)
+    private String preview;
+}
@@ -0,0 +1,49 @@
+package org.velikanovdev.backend.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "mail_accounts",
+        uniqueConstraints = @UniqueConstraint(name = "uk_mail_accounts_address", columnNames = "address"))
+public class MailAccount {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column
+    private Long id;
+    // Address replies are sent from, also the account's label in metrics
+    @Column(name = "address", nullable = false)
+    private String address;
+    @Column
+    private String imapHost;
+    @Column
+    private String storeType;
+    @Column
+    private Integer imapPort;
+    @Column
+    private String sentFolder;
+    // Empty means replies go out through the application's default spring.mail server
+    @Column
+    private String smtpHost;
+    @Column
+    private Integer smtpPort;
+    @Column
+    private String username;
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    @Column
+    private String password;
+    @Column
+    private boolean enabled = true;
+    @Column
+    private Date createdAt;
+}
@@ -0,0 +1,38 @@
+package org.velikanovdev.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+// A month of msgs moved out of Postgres into a gzip CSV file, rows are written by MessageRetentionJob
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "msg_archives")
+public class MessageArchive {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column
+    private Long id;
+    @Column(nullable = false, length = 64)
+    private String partitionName;
+    // Inclusive start and exclusive end of the archived sent_date range
+    @Column(nullable = false)
+    private Date rangeStart;
+    @Column(nullable = false)
+    private Date rangeEnd;
+    @Column
+    private long rowCount;
+    @Column(nullable = false, length = 1024)
+    private String path;
+    @Column
+    private long sizeBytes;
+    @Column(nullable = false)
+    private Date archivedAt;
+}
@@ -1,5 +1,6 @@
 package org.velikanovdev.backend.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -14,6 +15,7 @@ import java.util.Date;
 public class ReceivedEmail {
     private String from;
     private String subject;
+    // Only loaded when the thread is opened, null in the synced conversation lists
     private String body;
     private String messageId;
     private String inReplyTo;
@@ -21,4 +23,11 @@ public class ReceivedEmail {
     private Date sentDate;
     private String to;
     private boolean isRead;
+    // Start of the text part, fetched once per message
+    private String preview;
+    // Where the message lives on the server, for loading the body later
+    @JsonIgnore
+    private String folder;
+    @JsonIgnore
+    private long uid;
 }
@@ -0,0 +1,42 @@
+package org.velikanovdev.backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.Date;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "search_documents",
+        uniqueConstraints = @UniqueConstraint(name = "uk_search_channel_external_id", columnNames = {"channel", "external_id"}),
+        indexes = @Index(name = "idx_search_conversation", columnList = "channel, conversation_key"))
+public class SearchDocument {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "channel", nullable = false, length = 16)
+    private Channel channel;
+    @Column(name = "conversation_key", nullable = false)
+    private String conversationKey;
+    // wamid, Graph message id or Message-ID header
+    @Column(name = "external_id", nullable = false)
+    private String externalId;
+    @Column
+    private String participant;
+    @Column(columnDefinition = "text")
+    private String body;
+    @Column
+    private Date sentDate;
+
+    public SearchDocument(Channel channel, String conversationKey, String externalId, String participant, String body, Date sentDate) {
+        this(null, channel, conversationKey, externalId, participant, body, sentDate);
+    }
+}
@@ -15,4 +15,9 @@ public class WhatsAppConversation {
     private String sender;
     private Date lastMessageDate;
     private int unreadCount;
+
+    // Target of the GROUP BY in WhatsAppMessageRepository, SUM comes back as a long
+    public WhatsAppConversation(String sender, Date lastMessageDate, long unreadCount) {
+        this(sender, lastMessageDate, (int) unreadCount);
+    }
 }
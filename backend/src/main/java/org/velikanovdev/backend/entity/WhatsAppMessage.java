@@ -1,6 +1,5 @@
 package org.velikanovdev.backend.entity;
 
-import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -15,7 +14,6 @@ import java.util.Date;
 @NoArgsConstructor
 @Entity
 @Table(name = "msgs")
-@JsonIgnoreProperties({"hibernateLazyInitializer"})
 public class WhatsAppMessage {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -33,4 +31,10 @@ public class WhatsAppMessage {
     private Date sentDate;
     @Column
     private boolean unread = true;
+    // Only set on messages we sent, from the statuses webhook
+    @Column
+    @Enumerated(EnumType.ORDINAL)
+    private DeliveryStatus deliveryStatus;
+    @Column
+    private Date deliveryUpdatedAt;
 }
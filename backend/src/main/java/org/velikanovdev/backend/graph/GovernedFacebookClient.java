@@ -0,0 +1,58 @@
+package org.velikanovdev.backend.graph;
+
+import com.restfb.*;
+
+import java.net.HttpURLConnection;
+
+// RestFB client that asks the governor before each Graph request and reports the usage headers of every
+// response back to it. The check sits in the public calls rather than the requestor because RestFB wraps
+// anything thrown there into a FacebookNetworkException.
+class GovernedFacebookClient extends DefaultFacebookClient {
+    private final GraphRequestGovernor governor;
+    private final GraphPriority priority;
+
+    GovernedFacebookClient(String accessToken, GraphRequestGovernor governor, GraphPriority priority) {
+        super(accessToken, new UsageReportingRequestor(governor), new DefaultJsonMapper(), Version.LATEST);
+        this.governor = governor;
+        this.priority = priority;
+    }
+
+    @Override
+    public <T> T fetchObject(String object, Class<T> objectType, Parameter... parameters) {
+        governor.acquire(priority);
+        return super.fetchObject(object, objectType, parameters);
+    }
+
+    @Override
+    public <T> Connection<T> fetchConnection(String connection, Class<T> connectionType, Parameter... parameters) {
+        governor.acquire(priority);
+        return super.fetchConnection(connection, connectionType, parameters);
+    }
+
+    @Override
+    public <T> Connection<T> fetchConnectionPage(String connectionPageUrl, Class<T> connectionType) {
+        governor.acquire(priority);
+        return super.fetchConnectionPage(connectionPageUrl, connectionType);
+    }
+
+    @Override
+    public <T> T publish(String connection, Class<T> objectType, Parameter... parameters) {
+        governor.acquire(priority);
+        return super.publish(connection, objectType, parameters);
+    }
+
+    private static class UsageReportingRequestor extends DefaultWebRequestor {
+        private final GraphRequestGovernor governor;
+
+        private UsageReportingRequestor(GraphRequestGovernor governor) {
+            this.governor = governor;
+        }
+
+        @Override
+        protected void fillHeaderAndDebugInfo(HttpURLConnection connection) {
+            super.fillHeaderAndDebugInfo(connection);
+            governor.recordUsage(connection.getHeaderField(GraphRequestGovernor.APP_USAGE_HEADER),
+                    connection.getHeaderField(GraphRequestGovernor.BUSINESS_USAGE_HEADER));
+        }
+    }
+}
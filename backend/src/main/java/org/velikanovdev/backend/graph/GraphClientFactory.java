@@ -0,0 +1,47 @@
+package org.velikanovdev.backend.graph;
+
+import com.restfb.DefaultFacebookClient;
+import com.restfb.FacebookEndpoints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class GraphClientFactory {
+    private final GraphRequestGovernor governor;
+
+    @Value("${facebook.access.token}")
+    private String ACCESS_TOKEN;
+
+    // Base URL of the Graph API, only overridden to point at a local stub
+    @Value("${facebook.graph.url:}")
+    private String graphUrl;
+
+    @Autowired
+    public GraphClientFactory(GraphRequestGovernor governor) {
+        this.governor = governor;
+    }
+
+    public DefaultFacebookClient createClient() {
+        return createClient(GraphPriority.INTERACTIVE);
+    }
+
+    // Every request of the client goes through the governor with the given priority
+    public DefaultFacebookClient createClient(GraphPriority priority) {
+        DefaultFacebookClient client = new GovernedFacebookClient(ACCESS_TOKEN, governor, priority);
+        if (graphUrl != null && !graphUrl.isBlank()) {
+            String endpoint = graphUrl.endsWith("/") ? graphUrl.substring(0, graphUrl.length() - 1) : graphUrl;
+            client.setFacebookEndpointUrls(new FacebookEndpoints() {
+                @Override
+                public String getGraphEndpoint() {
+                    return endpoint;
+                }
+            });
+        }
+        return client;
+    }
+
+    public String getAccessToken() {
+        return ACCESS_TOKEN;
+    }
+}
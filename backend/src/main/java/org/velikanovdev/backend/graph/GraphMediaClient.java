@@ -0,0 +1,57 @@
+package org.velikanovdev.backend.graph;
+
+import com.restfb.DefaultFacebookClient;
+import com.restfb.json.JsonObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+// Opens WhatsApp and Messenger media as streams, the body is read as the attachment store writes it
+@Component
+public class GraphMediaClient {
+    private final GraphClientFactory graphClientFactory;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+
+    @Autowired
+    public GraphMediaClient(GraphClientFactory graphClientFactory) {
+        this.graphClientFactory = graphClientFactory;
+    }
+
+    // WhatsApp media ids resolve to a short-lived URL which needs the access token as well
+    public InputStream openWhatsAppMedia(String mediaId) throws IOException, InterruptedException {
+        DefaultFacebookClient fbClient = graphClientFactory.createClient(GraphPriority.BACKGROUND);
+        fbClient.setHeaderAuthorization(true);
+        JsonObject media = fbClient.fetchObject(mediaId, JsonObject.class);
+        String url = media.getString("url", null);
+        if (url == null) {
+            throw new IOException("No download URL for WhatsApp media " + mediaId);
+        }
+        return open(HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", "Bearer " + graphClientFactory.getAccessToken()));
+    }
+
+    // Messenger attachment URLs are signed CDN links
+    public InputStream openUrl(String url) throws IOException, InterruptedException {
+        return open(HttpRequest.newBuilder(URI.create(url)));
+    }
+
+    private InputStream open(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = httpClient.send(request.timeout(Duration.ofMinutes(5)).GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("Media download failed with HTTP " + response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,7 @@
+package org.velikanovdev.backend.graph;
+
+// Sends and reads an agent is waiting for are INTERACTIVE, pollers and media downloads are BACKGROUND
+public enum GraphPriority {
+    INTERACTIVE,
+    BACKGROUND
+}
@@ -0,0 +1,189 @@
+package org.velikanovdev.backend.graph;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.restfb.Connection;
+import com.restfb.FacebookClient;
+import com.restfb.Parameter;
+import com.restfb.types.Conversation;
+import com.restfb.types.Message;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.dto.FacebookConversationView;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Graph reads behind the Messenger endpoints, shared by every agent looking at the same thread. Concurrent
+// misses for one key wait for a single Graph request. After freshTtl an entry is still served while one
+// background request refreshes it, and only after maxTtl do readers wait for Graph again.
+@Component
+public class GraphReadCache {
+    public static final String CONVERSATION_FIELDS = "id,participants,updated_time,unread_count";
+    public static final String MESSAGES_FIELDS = "id,message,from,to,createdTime";
+    public static final String MESSAGE_FIELDS = "id,message,from,to";
+
+    private final GraphClientFactory graphClientFactory;
+    private final ChannelMetrics channelMetrics;
+    private final MeterRegistry registry;
+    private LoadingCache<GraphRead, Object> cache;
+
+    @Value("${facebook.cache.maxEntries:10000}")
+    private long maxEntries;
+
+    @Value("${facebook.cache.freshTtl:30s}")
+    private Duration freshTtl;
+
+    @Value("${facebook.cache.maxTtl:10m}")
+    private Duration maxTtl;
+
+    @Autowired
+    public GraphReadCache(GraphClientFactory graphClientFactory, ChannelMetrics channelMetrics, MeterRegistry registry) {
+        this.graphClientFactory = graphClientFactory;
+        this.channelMetrics = channelMetrics;
+        this.registry = registry;
+    }
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .refreshAfterWrite(freshTtl)
+                .expireAfterWrite(maxTtl)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public Object load(GraphRead read) {
+                        return GraphReadCache.this.load(read, GraphPriority.INTERACTIVE);
+                    }
+
+                    // Nobody waits for a refresh, it yields to sends when the budget runs low
+                    @Override
+                    public Object reload(GraphRead read, Object oldValue) {
+                        return GraphReadCache.this.load(read, GraphPriority.BACKGROUND);
+                    }
+                });
+        // cache.gets by result, cache.load.duration and friends, tagged cache=graph
+        CaffeineCacheMetrics.monitor(registry, cache, "graph");
+        Gauge.builder("omnichannel.graph.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .register(registry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<FacebookConversationView> getConversations() {
+        return (List<FacebookConversationView>) cache.get(new GraphRead(Kind.CONVERSATIONS, "me/conversations", CONVERSATION_FIELDS));
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Message> getMessages(String conversationId) {
+        return (List<Message>) cache.get(new GraphRead(Kind.MESSAGES, conversationId + "/messages", MESSAGES_FIELDS));
+    }
+
+    public Message getMessage(String messageId) {
+        return (Message) cache.get(new GraphRead(Kind.MESSAGE, messageId, MESSAGE_FIELDS));
+    }
+
+    // The poller saw the conversation list change
+    public void invalidateConversations() {
+        cache.invalidate(new GraphRead(Kind.CONVERSATIONS, "me/conversations", CONVERSATION_FIELDS));
+    }
+
+    public void invalidateThread(String conversationId) {
+        cache.invalidate(new GraphRead(Kind.MESSAGES, conversationId + "/messages", MESSAGES_FIELDS));
+    }
+
+    // A send only knows the recipient, the cached list tells which threads it takes part in
+    public void invalidateThreadsWith(String participantId) {
+        Object conversations = cache.getIfPresent(new GraphRead(Kind.CONVERSATIONS, "me/conversations", CONVERSATION_FIELDS));
+        if (conversations == null) {
+            cache.asMap().keySet().removeIf(read -> read.kind == Kind.MESSAGES);
+        } else {
+            for (Object conversation : (List<?>) conversations) {
+                FacebookConversationView view = (FacebookConversationView) conversation;
+                if (view.getParticipants().stream().anyMatch(participant -> participantId.equals(participant.getId()))) {
+                    invalidateThread(view.getId());
+                }
+            }
+        }
+        invalidateConversations();
+    }
+
+    private Object load(GraphRead read, GraphPriority priority) {
+        FacebookClient facebookClient = graphClientFactory.createClient(priority);
+        Parameter fields = Parameter.with("fields", read.fields);
+        switch (read.kind) {
+            case CONVERSATIONS: {
+                List<FacebookConversationView> conversations = new ArrayList<>();
+                Connection<Conversation> page = channelMetrics.recordUpstream("graph", "conversations", () ->
+                        facebookClient.fetchConnection(read.path, Conversation.class, fields));
+                while (true) {
+                    page.getData().forEach(conversation -> conversations.add(toView(conversation)));
+                    if (!page.hasNext()) {
+                        return conversations;
+                    }
+                    String nextPageUrl = page.getNextPageUrl();
+                    page = channelMetrics.recordUpstream("graph", "conversations_page", () ->
+                            facebookClient.fetchConnectionPage(nextPageUrl, Conversation.class));
+                }
+            }
+            case MESSAGES:
+                return channelMetrics.recordUpstream("graph", "messages", () ->
+                        facebookClient.fetchConnection(read.path, Message.class, fields)).getData();
+            default:
+                return channelMetrics.recordUpstream("graph", "message", () ->
+                        facebookClient.fetchObject(read.path, Message.class, fields));
+        }
+    }
+
+    private static FacebookConversationView toView(Conversation conversation) {
+        List<FacebookConversationView.Participant> participants = conversation.getParticipants().stream()
+                .map(participant -> new FacebookConversationView.Participant(participant.getId(), participant.getName()))
+                .toList();
+        return new FacebookConversationView(conversation.getId(), participants, conversation.getUpdatedTime(),
+                conversation.getUnreadCount());
+    }
+
+    private enum Kind {
+        CONVERSATIONS,
+        MESSAGES,
+        MESSAGE
+    }
+
+    // Keyed on Graph path and requested fields, the kind only tells the loader what to parse
+    private static final class GraphRead {
+        private final Kind kind;
+        private final String path;
+        private final String fields;
+
+        private GraphRead(Kind kind, String path, String fields) {
+            this.kind = kind;
+            this.path = path;
+            this.fields = fields;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof GraphRead other)) {
+                return false;
+            }
+            return path.equals(other.path) && fields.equals(other.fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, fields);
+        }
+    }
+}
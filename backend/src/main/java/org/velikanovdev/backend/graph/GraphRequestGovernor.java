@@ -0,0 +1,130 @@
+package org.velikanovdev.backend.graph;
+
+import com.restfb.json.Json;
+import com.restfb.json.JsonObject;
+import com.restfb.json.JsonValue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+// Keeps Graph calls inside the app's rate limit. Graph reports usage as a percentage of the limit over a
+// rolling hour in X-App-Usage and X-Business-Use-Case-Usage. Background calls slow down from softLimit on
+// and stop at hardLimit, which leaves the rest of the budget to interactive calls. Interactive calls are
+// only refused once Graph itself says the app is blocked.
+@Component
+public class GraphRequestGovernor {
+    static final String APP_USAGE_HEADER = "X-App-Usage";
+    static final String BUSINESS_USAGE_HEADER = "X-Business-Use-Case-Usage";
+    private static final long WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final ChannelMetrics channelMetrics;
+
+    // Highest usage percentage in the last response that carried usage headers, and when it was seen
+    private volatile double reportedUsage;
+    private volatile long reportedAt;
+    private volatile long blockedUntil;
+
+    @Value("${facebook.governor.softLimit:60}")
+    private double softLimit;
+
+    @Value("${facebook.governor.hardLimit:90}")
+    private double hardLimit;
+
+    @Value("${facebook.governor.maxBackgroundDelay:5000}")
+    private long maxBackgroundDelay;
+
+    @Autowired
+    public GraphRequestGovernor(ChannelMetrics channelMetrics) {
+        this.channelMetrics = channelMetrics;
+        channelMetrics.registerGraphUsage(this::currentUsage);
+    }
+
+    public void acquire(GraphPriority priority) {
+        long now = System.currentTimeMillis();
+        if (now < blockedUntil) {
+            reject(priority, "Graph rate limit reached, access returns in "
+                    + TimeUnit.MILLISECONDS.toSeconds(blockedUntil - now) + "s");
+        }
+        if (priority == GraphPriority.INTERACTIVE) {
+            channelMetrics.graphGovernorDecision(priority, "allowed");
+            return;
+        }
+
+        double usage = currentUsage();
+        if (usage >= hardLimit) {
+            reject(priority, "Graph usage at " + Math.round(usage) + "%, background calls paused");
+        }
+        if (usage < softLimit) {
+            channelMetrics.graphGovernorDecision(priority, "allowed");
+            return;
+        }
+        // Back off in proportion to how far into the soft zone usage is
+        long delay = Math.round(maxBackgroundDelay * (usage - softLimit) / (hardLimit - softLimit));
+        channelMetrics.graphGovernorDecision(priority, "delayed");
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GraphThrottledException("Interrupted while backing off");
+        }
+    }
+
+    // Either header may be missing, Graph only sends the ones that apply to the call
+    public void recordUsage(String appUsage, String businessUsage) {
+        if (appUsage == null && businessUsage == null) {
+            return;
+        }
+        double usage = 0;
+        long regainMinutes = 0;
+        try {
+            if (appUsage != null) {
+                usage = Math.max(usage, maxPercentage(Json.parse(appUsage).asObject()));
+            }
+            if (businessUsage != null) {
+                // {"<business id>": [{"type": "messenger", "call_count": 12, ..., "estimated_time_to_regain_access": 0}]}
+                JsonObject businesses = Json.parse(businessUsage).asObject();
+                for (String business : businesses.names()) {
+                    for (JsonValue entry : businesses.get(business).asArray()) {
+                        JsonObject useCase = entry.asObject();
+                        usage = Math.max(usage, maxPercentage(useCase));
+                        regainMinutes = Math.max(regainMinutes, useCase.getLong("estimated_time_to_regain_access", 0));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // A header we can't read shouldn't fail the call that carried it
+            e.printStackTrace();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        reportedUsage = usage;
+        reportedAt = now;
+        if (regainMinutes > 0) {
+            blockedUntil = now + TimeUnit.MINUTES.toMillis(regainMinutes);
+        }
+    }
+
+    // Between responses the reported usage is aged linearly over the rolling window, so background polling
+    // resumes after a quiet spell even though no new header has come in yet
+    public double currentUsage() {
+        long age = System.currentTimeMillis() - reportedAt;
+        if (age >= WINDOW_MILLIS) {
+            return 0;
+        }
+        return reportedUsage * (WINDOW_MILLIS - age) / WINDOW_MILLIS;
+    }
+
+    private void reject(GraphPriority priority, String reason) {
+        channelMetrics.graphGovernorDecision(priority, "rejected");
+        throw new GraphThrottledException(reason);
+    }
+
+    private static double maxPercentage(JsonObject usage) {
+        return Math.max(usage.getDouble("call_count", 0),
+                Math.max(usage.getDouble("total_time", 0), usage.getDouble("total_cputime", 0)));
+    }
+}
@@ -0,0 +1,12 @@
+package org.velikanovdev.backend.graph;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// Thrown before the request leaves, when the governor decides the app's Graph budget can't take it
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class GraphThrottledException extends RuntimeException {
+    public GraphThrottledException(String message) {
+        super(message);
+    }
+}
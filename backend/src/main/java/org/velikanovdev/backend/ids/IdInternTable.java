@@ -0,0 +1,221 @@
+package org.velikanovdev.backend.ids;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+// Maps message ids (Message-IDs, wamids, Graph ids) to 64-bit handles without keeping a String per id. The
+// handle is a 64-bit hash of the id; should two ids hash alike, the later one takes the next value of a fixed
+// probe sequence, so a handle stays unique and stable for the life of the table. Everything lives off-heap:
+// an open-addressing table of 16-byte slots (handle, key reference) and append-only chunks holding the id
+// characters, one byte each when they all fit in Latin-1, which is what collisions are resolved against.
+// Lookups take a CharSequence range, so a token of a References header can be checked without a substring.
+//
+// Ids are only ever added; an owner that sees an open-ended stream of ids bounds it by dropping the table for a
+// new one, the direct memory goes with it. Access is synchronized, a lookup is a hash and one or two slot reads.
+public final class IdInternTable {
+    // Never a handle, returned by find for unknown ids
+    public static final long NO_HANDLE = 0;
+
+    private static final int SLOT_BYTES = 16;
+    // Slot offsets are ints, so 2^26 slots (about 47 million ids) is as far as the table grows
+    private static final int MAX_CAPACITY = 1 << 26;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int MIN_CHUNK_BYTES = 4096;
+    private static final int HEADER_BYTES = 4;
+
+    private ByteBuffer slots;
+    private int mask;
+    private int size;
+    private long collisions;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer chunk;
+    private long chunkBytes;
+    // Small tables, e.g. one per threading call, don't need a full chunk
+    private final int chunkSize;
+
+    public IdInternTable(int expectedIds) {
+        chunkSize = (int) Math.min(CHUNK_BYTES, Math.max(MIN_CHUNK_BYTES, expectedIds * 32L));
+        int wanted = (int) Math.min(MAX_CAPACITY, Math.max(16L, expectedIds * 10L / 7));
+        int capacity = Integer.highestOneBit(wanted);
+        allocateSlots(capacity < wanted ? capacity << 1 : capacity);
+    }
+
+    public long intern(CharSequence id) {
+        return intern(id, 0, id.length());
+    }
+
+    // The handle of id, which is added if it's new
+    public synchronized long intern(CharSequence id, int start, int end) {
+        long plain = hash(id, start, end);
+        long handle = plain;
+        while (true) {
+            int slot = slotOf(handle);
+            if (slots.getLong(slot) == NO_HANDLE) {
+                if (size + 1 > (mask + 1) / 10 * 7) {
+                    grow();
+                    slot = slotOf(handle);
+                }
+                slots.putLong(slot, handle);
+                slots.putLong(slot + 8, store(id, start, end));
+                size++;
+                if (handle != plain) {
+                    collisions++;
+                }
+                return handle;
+            }
+            if (keyEquals(slots.getLong(slot + 8), id, start, end)) {
+                return handle;
+            }
+            handle = next(handle);
+        }
+    }
+
+    public long find(CharSequence id) {
+        return find(id, 0, id.length());
+    }
+
+    // The handle of id, NO_HANDLE if it was never interned
+    public synchronized long find(CharSequence id, int start, int end) {
+        long handle = hash(id, start, end);
+        while (true) {
+            int slot = slotOf(handle);
+            if (slots.getLong(slot) == NO_HANDLE) {
+                return NO_HANDLE;
+            }
+            if (keyEquals(slots.getLong(slot + 8), id, start, end)) {
+                return handle;
+            }
+            handle = next(handle);
+        }
+    }
+
+    public boolean contains(CharSequence id) {
+        return find(id) != NO_HANDLE;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Ids that didn't get their plain hash as handle
+    public synchronized long getCollisions() {
+        return collisions;
+    }
+
+    // Direct memory held by the slots and the id chunks
+    public synchronized long getOffHeapBytes() {
+        return (long) slots.capacity() + chunkBytes;
+    }
+
+    // Slot offset holding handle, or the empty slot it would go in
+    private int slotOf(long handle) {
+        int index = (int) (handle ^ (handle >>> 32)) & mask;
+        while (true) {
+            int offset = index * SLOT_BYTES;
+            long stored = slots.getLong(offset);
+            if (stored == NO_HANDLE || stored == handle) {
+                return offset;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void allocateSlots(int capacity) {
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES).order(ByteOrder.nativeOrder());
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        int capacity = mask + 1;
+        if (capacity >= MAX_CAPACITY) {
+            throw new IllegalStateException("ID intern table is full at " + size + " ids");
+        }
+        // Handles are unique, so they are moved over as they are without looking at the ids again
+        ByteBuffer old = slots;
+        allocateSlots(capacity * 2);
+        for (int offset = 0; offset < old.capacity(); offset += SLOT_BYTES) {
+            long handle = old.getLong(offset);
+            if (handle != NO_HANDLE) {
+                int slot = slotOf(handle);
+                slots.putLong(slot, handle);
+                slots.putLong(slot + 8, old.getLong(offset + 8));
+            }
+        }
+    }
+
+    // Appends the id to the current chunk and returns where it went, chunk index in the high half
+    private long store(CharSequence id, int start, int end) {
+        int length = end - start;
+        boolean wide = false;
+        for (int i = start; i < end && !wide; i++) {
+            wide = id.charAt(i) > 0xFF;
+        }
+        int bytes = HEADER_BYTES + (wide ? length * 2 : length);
+        if (chunk == null || chunk.remaining() < bytes) {
+            chunk = ByteBuffer.allocateDirect(Math.max(chunkSize, bytes)).order(ByteOrder.nativeOrder());
+            chunks.add(chunk);
+            chunkBytes += chunk.capacity();
+        }
+        int offset = chunk.position();
+        chunk.putInt(length << 1 | (wide ? 1 : 0));
+        for (int i = start; i < end; i++) {
+            if (wide) {
+                chunk.putChar(id.charAt(i));
+            } else {
+                chunk.put((byte) id.charAt(i));
+            }
+        }
+        return (long) (chunks.size() - 1) << 32 | offset;
+    }
+
+    private boolean keyEquals(long reference, CharSequence id, int start, int end) {
+        ByteBuffer stored = chunks.get((int) (reference >>> 32));
+        int offset = (int) reference;
+        int header = stored.getInt(offset);
+        int length = header >>> 1;
+        if (length != end - start) {
+            return false;
+        }
+        offset += HEADER_BYTES;
+        if ((header & 1) == 0) {
+            for (int i = 0; i < length; i++) {
+                if ((stored.get(offset + i) & 0xFF) != id.charAt(start + i)) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                if (stored.getChar(offset + i * 2) != id.charAt(start + i)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // FNV-1a over the chars, finished with the MurmurHash3 mixer so every bit of the handle depends on the id
+    static long hash(CharSequence id, int start, int end) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+        }
+        long handle = mix(hash);
+        return handle != NO_HANDLE ? handle : 1;
+    }
+
+    private static long next(long handle) {
+        long next = mix(handle + 0x9E3779B97F4A7C15L);
+        return next != NO_HANDLE ? next : 1;
+    }
+
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
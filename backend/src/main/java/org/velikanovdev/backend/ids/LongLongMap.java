@@ -0,0 +1,75 @@
+package org.velikanovdev.backend.ids;
+
+// Open-addressing long to long map for per-call lookups on IdInternTable handles, without boxing. Key 0
+// (NO_HANDLE, e.g. an email without a Message-ID) is kept beside the table. Not thread-safe.
+public final class LongLongMap {
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongMap(int expectedSize) {
+        int wanted = Math.max(16, expectedSize * 2);
+        int capacity = Integer.highestOneBit(wanted);
+        allocate(capacity < wanted ? capacity << 1 : capacity);
+    }
+
+    public long get(long key, long missing) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : missing;
+        }
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : missing;
+    }
+
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : keys[indexOf(key)] == key;
+    }
+
+    public void put(long key, long value) {
+        if (key == 0) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int index = indexOf(key);
+        if (keys[index] != key) {
+            if (++size > keys.length / 2) {
+                grow();
+                index = indexOf(key);
+            }
+            keys[index] = key;
+        }
+        values[index] = value;
+    }
+
+    // Slot holding key, or the empty slot it would go in
+    private int indexOf(long key) {
+        int index = (int) IdInternTable.mix(key) & mask;
+        while (keys[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+}
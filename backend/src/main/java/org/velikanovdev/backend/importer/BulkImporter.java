@@ -0,0 +1,388 @@
+package org.velikanovdev.backend.importer;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.cache.WhatsAppHotCache;
+import org.velikanovdev.backend.dto.ImportRequest;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.web.ChannelVersions;
+
+import javax.sql.DataSource;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Backfills history from exports. Parser threads stream the files into a bounded queue, the loader drains it
+// into a temporary staging table with binary COPY and every batchRows rows merges the batch into the real
+// tables with a few set-based statements. Message ids dedupe the merge, so an import can be re-run or resumed
+// by running it again. WhatsApp messages in months that were already archived only go to the search index,
+// the archive files of those months are not rewritten.
+@Component
+public class BulkImporter {
+    private static final String STAGING_COLUMNS = "channel, conversation_key, external_id, sender, recipient, participant, body, sent_date";
+    private static final ImportedMessage END = new ImportedMessage(null, null, null, null, null, null, null, null);
+
+    private static final String CREATE_STAGING = "CREATE TEMP TABLE IF NOT EXISTS import_staging (channel varchar(16), " +
+            "conversation_key text, external_id text, sender text, recipient text, participant text, body text, " +
+            "sent_date timestamp(6)) ON COMMIT DELETE ROWS";
+    private static final String CREATE_PARTITIONS = "SELECT create_msgs_partition(months.month::date) " +
+            "FROM (SELECT DISTINCT date_trunc('month', sent_date) AS month FROM import_staging WHERE sent_date IS NOT NULL) months " +
+            "WHERE NOT EXISTS (SELECT 1 FROM msg_archives a WHERE a.range_start = months.month)";
+    // message_id together with sent_date, like existsByMessageIdAndSentDate, so the lookup hits one partition
+    private static final String INSERT_MESSAGES = "INSERT INTO msgs (sender, recipient, message, message_id, sent_date, unread) " +
+            "SELECT DISTINCT ON (s.external_id) left(s.sender, 255), left(s.recipient, 255), left(s.body, 255), " +
+            "s.external_id, s.sent_date, false FROM import_staging s " +
+            "WHERE s.sent_date IS NOT NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM msg_archives a WHERE s.sent_date >= a.range_start AND s.sent_date < a.range_end) " +
+            "AND NOT EXISTS (SELECT 1 FROM msgs m WHERE m.message_id = s.external_id AND m.sent_date = s.sent_date) " +
+            "ORDER BY s.external_id";
+    private static final String INSERT_DOCUMENTS = "INSERT INTO search_documents " +
+            "(channel, conversation_key, external_id, participant, body, sent_date) " +
+            "SELECT DISTINCT ON (s.external_id) s.channel, left(s.conversation_key, 255), left(s.external_id, 255), " +
+            "left(s.participant, 255), s.body, s.sent_date FROM import_staging s ORDER BY s.external_id " +
+            "ON CONFLICT (channel, external_id) DO NOTHING";
+    // Newest message of each conversation in the batch, a conversation only moves forward in time
+    private static final String UPSERT_INBOX = "INSERT INTO inbox_conversations " +
+            "(channel, conversation_key, participant, last_activity, unread_count, preview) " +
+            "SELECT DISTINCT ON (left(s.conversation_key, 255)) s.channel, left(s.conversation_key, 255), " +
+            "left(s.participant, 255), s.sent_date, 0, left(btrim(regexp_replace(s.body, '\\s+', ' ', 'g')), 160) " +
+            "FROM import_staging s WHERE s.sent_date IS NOT NULL ORDER BY left(s.conversation_key, 255), s.sent_date DESC " +
+            "ON CONFLICT (channel, conversation_key) DO UPDATE SET last_activity = EXCLUDED.last_activity, " +
+            "preview = EXCLUDED.preview, participant = COALESCE(inbox_conversations.participant, EXCLUDED.participant) " +
+            "WHERE inbox_conversations.last_activity IS NULL OR inbox_conversations.last_activity < EXCLUDED.last_activity";
+
+    private final DataSource dataSource;
+    private final ChannelMetrics channelMetrics;
+    private final ChannelVersions channelVersions;
+    private final WhatsAppHotCache hotCache;
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    @Value("${whatsapp.phone.number}")
+    private String PHONE_NUMBER;
+
+    // Files given to the admin API must be in here, the CLI takes any path
+    @Value("${omnichannel.import.dir:imports}")
+    private String importDir;
+
+    // 0 uses one thread per core
+    @Value("${omnichannel.import.parseThreads:0}")
+    private int parseThreads;
+
+    @Value("${omnichannel.import.batchRows:200000}")
+    private int batchRows;
+
+    @Value("${omnichannel.import.queueCapacity:20000}")
+    private int queueCapacity;
+
+    @Value("${omnichannel.import.maxMessageBytes:33554432}")
+    private int maxMessageBytes;
+
+    @Autowired
+    public BulkImporter(DataSource dataSource, ChannelMetrics channelMetrics, ChannelVersions channelVersions,
+                        WhatsAppHotCache hotCache) {
+        this.dataSource = dataSource;
+        this.channelMetrics = channelMetrics;
+        this.channelVersions = channelVersions;
+        this.hotCache = hotCache;
+    }
+
+    public ImportJob start(ImportRequest request, List<Path> paths) throws IOException {
+        if (request.getFormat() == null) {
+            throw new IllegalArgumentException("format is required");
+        }
+        if (request.getFormat() == ImportFormat.WHATSAPP && (isBlank(request.getContact()) || isBlank(request.getOwnName()))) {
+            throw new IllegalArgumentException("WhatsApp exports need contact and ownName");
+        }
+        List<Path> files = listFiles(request.getFormat(), paths);
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("No export files found");
+        }
+        long bytesTotal = 0;
+        for (Path file : files) {
+            bytesTotal += Files.size(file);
+        }
+
+        ImportJob job = new ImportJob(request.getFormat(), files.size(), bytesTotal);
+        jobs.put(job.getId(), job);
+        Thread thread = new Thread(() -> run(job, parserFor(request), files), "import-" + job.getId());
+        thread.setDaemon(true);
+        thread.start();
+        return job;
+    }
+
+    // Relative paths are taken from the import directory, nothing outside of it is accepted
+    public List<Path> resolveInImportDir(List<String> paths) {
+        Path root = Paths.get(importDir).toAbsolutePath().normalize();
+        List<Path> resolved = new ArrayList<>();
+        for (String path : paths != null ? paths : List.<String>of()) {
+            Path candidate = root.resolve(path).normalize();
+            if (!candidate.startsWith(root)) {
+                throw new IllegalArgumentException(path + " is outside of " + root);
+            }
+            resolved.add(candidate);
+        }
+        return resolved;
+    }
+
+    public Optional<ImportJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    public List<ImportJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    private ExportParser parserFor(ImportRequest request) {
+        return switch (request.getFormat()) {
+            case WHATSAPP -> new WhatsAppChatParser(request.getContact(), request.getOwnName(), PHONE_NUMBER, request.isDayFirst());
+            case MESSENGER -> new MessengerExportParser(request.getOwnName());
+            case MBOX -> new MboxParser(maxMessageBytes, threads() * 4);
+        };
+    }
+
+    private static List<Path> listFiles(ImportFormat format, List<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (!Files.isDirectory(path)) {
+                if (!Files.isRegularFile(path)) {
+                    throw new IllegalArgumentException(path + " does not exist");
+                }
+                files.add(path);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.filter(Files::isRegularFile)
+                        .filter(file -> matches(format, file.getFileName().toString()))
+                        .sorted()
+                        .forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    // Which files of an unpacked export directory hold messages
+    private static boolean matches(ImportFormat format, String name) {
+        return switch (format) {
+            case WHATSAPP -> name.endsWith(".txt");
+            case MESSENGER -> name.matches("message_\\d+\\.json");
+            case MBOX -> !name.startsWith(".");
+        };
+    }
+
+    private void run(ImportJob job, ExportParser parser, List<Path> files) {
+        BlockingQueue<ImportedMessage> queue = new ArrayBlockingQueue<>(queueCapacity);
+        ExecutorService parsers = Executors.newFixedThreadPool(threads(), daemonThreads("import-parse"));
+        ExportParser.MessageSink sink = new ExportParser.MessageSink() {
+            @Override
+            public void accept(ImportedMessage message) throws InterruptedException {
+                job.parsed();
+                queue.put(message);
+            }
+
+            @Override
+            public void skipped() {
+                job.skipped();
+            }
+        };
+        Thread reader = new Thread(() -> readAll(job, parser, files, parsers, sink, queue), "import-read-" + job.getId());
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            load(job, queue);
+            job.complete();
+        } catch (Exception e) {
+            e.printStackTrace();
+            job.fail(e);
+            reader.interrupt();
+        } finally {
+            parsers.shutdownNow();
+            channelVersions.bump(job.getFormat().getChannel());
+        }
+    }
+
+    // Files one after another when the parser spreads a file over the pool, otherwise one file per pool thread
+    private void readAll(ImportJob job, ExportParser parser, List<Path> files, ExecutorService parsers,
+                         ExportParser.MessageSink sink, BlockingQueue<ImportedMessage> queue) {
+        try {
+            try {
+                if (job.getFormat().isParallelWithinFile()) {
+                    for (Path file : files) {
+                        readFile(job, parser, file, parsers, sink);
+                    }
+                } else {
+                    List<Future<?>> reads = new ArrayList<>();
+                    for (Path file : files) {
+                        reads.add(parsers.submit(() -> {
+                            readFile(job, parser, file, null, sink);
+                            return null;
+                        }));
+                    }
+                    for (Future<?> read : reads) {
+                        read.get();
+                    }
+                }
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // The loader failed and is no longer listening
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readFile(ImportJob job, ExportParser parser, Path file, ExecutorService decoders,
+                          ExportParser.MessageSink sink) throws InterruptedException {
+        try (InputStream in = new CountingInputStream(Files.newInputStream(file), job)) {
+            parser.parse(file, in, decoders, sink);
+        } catch (IOException | RuntimeException e) {
+            // One broken file doesn't stop the rest of the import
+            e.printStackTrace();
+            job.fileFailed(file.toString(), e);
+        }
+        job.fileDone();
+    }
+
+    private void load(ImportJob job, BlockingQueue<ImportedMessage> queue) throws SQLException, InterruptedException {
+        Channel channel = job.getFormat().getChannel();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute(CREATE_STAGING);
+                }
+                connection.commit();
+                CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+                boolean done = false;
+                while (!done) {
+                    BinaryCopyWriter writer = new BinaryCopyWriter(copyManager.copyIn(
+                            "COPY import_staging (" + STAGING_COLUMNS + ") FROM STDIN (FORMAT binary)"));
+                    long copied;
+                    try {
+                        int rows = 0;
+                        while (rows < batchRows) {
+                            ImportedMessage message = queue.take();
+                            if (message == END) {
+                                done = true;
+                                break;
+                            }
+                            writeRow(writer, message);
+                            rows++;
+                        }
+                        copied = writer.finish();
+                    } catch (SQLException | InterruptedException | RuntimeException e) {
+                        writer.cancel();
+                        throw e;
+                    }
+                    if (copied > 0) {
+                        long inserted = merge(connection, channel);
+                        job.batchMerged(copied, inserted);
+                        channelMetrics.importedRows(channel, inserted, copied - inserted);
+                    } else {
+                        connection.commit();
+                    }
+                }
+            } catch (SQLException | InterruptedException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void writeRow(BinaryCopyWriter writer, ImportedMessage message) throws SQLException {
+        writer.startRow(8);
+        writer.text(message.getChannel().name());
+        writer.text(message.getConversationKey());
+        writer.text(message.getExternalId());
+        writer.text(message.getSender());
+        writer.text(message.getRecipient());
+        writer.text(message.getParticipant());
+        writer.text(message.getBody());
+        writer.timestamp(message.getSentDate());
+    }
+
+    // One transaction per batch, committing also empties the staging table
+    private long merge(Connection connection, Channel channel) throws SQLException {
+        long inserted;
+        try (Statement statement = connection.createStatement()) {
+            // A batch lost in a crash is merged again by re-running the import, no need to wait for the WAL flush
+            statement.execute("SET LOCAL synchronous_commit TO OFF");
+            statement.execute("ANALYZE import_staging");
+            if (channel == Channel.WHATSAPP) {
+                statement.execute(CREATE_PARTITIONS);
+                statement.executeUpdate(INSERT_MESSAGES);
+            }
+            inserted = statement.executeUpdate(INSERT_DOCUMENTS);
+            statement.executeUpdate(UPSERT_INBOX);
+        }
+        connection.commit();
+
+        if (channel == Channel.WHATSAPP && hotCache.isEnabled()) {
+            hotCache.invalidateAll();
+        }
+        channelVersions.bump(channel);
+        return inserted;
+    }
+
+    private int threads() {
+        return parseThreads > 0 ? parseThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private final ImportJob job;
+
+        CountingInputStream(InputStream in, ImportJob job) {
+            super(in);
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                job.bytesRead(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                job.bytesRead(read);
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.velikanovdev.backend.importer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+// Reads one export file front to back and hands every message to the sink as soon as it's complete,
+// nothing but the message being parsed is held in memory
+interface ExportParser {
+    interface MessageSink {
+        // Blocks while the loader is behind
+        void accept(ImportedMessage message) throws InterruptedException;
+
+        // An entry that couldn't be read, counted in the job's progress
+        void skipped();
+    }
+
+    // decoders is only set for formats that are parallel within a file, see ImportFormat
+    void parse(Path file, InputStream in, ExecutorService decoders, MessageSink sink) throws IOException, InterruptedException;
+}
@@ -0,0 +1,67 @@
+package org.velikanovdev.backend.importer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.dto.ImportRequest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Runs one import from the command line, prints its progress and exits when it's done:
+//   java -jar backend.jar --spring.main.web-application-type=none --import.format=MBOX --import.path=/data/inbox.mbox
+// --import.path can be repeated, --import.contact, --import.ownName and --import.dayFirst are the ImportRequest fields
+@Component
+public class ImportCommand implements ApplicationRunner {
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    private final BulkImporter bulkImporter;
+    private final ConfigurableApplicationContext context;
+
+    @Autowired
+    public ImportCommand(BulkImporter bulkImporter, ConfigurableApplicationContext context) {
+        this.bulkImporter = bulkImporter;
+        this.context = context;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!args.containsOption("import.format")) {
+            return;
+        }
+        ImportRequest request = new ImportRequest();
+        request.setFormat(ImportFormat.valueOf(option(args, "import.format").toUpperCase(Locale.ROOT)));
+        request.setPaths(args.getOptionValues("import.path"));
+        request.setContact(option(args, "import.contact"));
+        request.setOwnName(option(args, "import.ownName"));
+        request.setDayFirst(!"false".equalsIgnoreCase(option(args, "import.dayFirst")));
+        List<Path> paths = request.getPaths() != null ? request.getPaths().stream().map(Paths::get).toList() : List.of();
+
+        ImportJob job = bulkImporter.start(request, paths);
+        long nextReport = System.currentTimeMillis() + REPORT_INTERVAL;
+        while (!job.isFinished()) {
+            Thread.sleep(100);
+            if (System.currentTimeMillis() >= nextReport) {
+                System.out.println(job.describe());
+                nextReport += REPORT_INTERVAL;
+            }
+        }
+        System.out.println(job.describe());
+        if (job.toStatus().getError() != null) {
+            System.out.println(job.toStatus().getError());
+        }
+        int exitCode = SpringApplication.exit(context, () -> job.isFailed() ? 1 : 0);
+        System.exit(exitCode);
+    }
+
+    private static String option(ApplicationArguments args, String name) {
+        List<String> values = args.getOptionValues(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -0,0 +1,28 @@
+package org.velikanovdev.backend.importer;
+
+import org.velikanovdev.backend.entity.Channel;
+
+public enum ImportFormat {
+    // "Export chat" text files of one WhatsApp chat each
+    WHATSAPP(Channel.WHATSAPP, false),
+    // message_N.json files from a Facebook "Download your information" archive, one directory per thread
+    MESSENGER(Channel.FACEBOOK, false),
+    // Whole mailboxes in one file, split sequentially and decoded in parallel
+    MBOX(Channel.EMAIL, true);
+
+    private final Channel channel;
+    private final boolean parallelWithinFile;
+
+    ImportFormat(Channel channel, boolean parallelWithinFile) {
+        this.channel = channel;
+        this.parallelWithinFile = parallelWithinFile;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public boolean isParallelWithinFile() {
+        return parallelWithinFile;
+    }
+}
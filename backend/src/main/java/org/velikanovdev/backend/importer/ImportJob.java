@@ -0,0 +1,114 @@
+package org.velikanovdev.backend.importer;
+
+import org.velikanovdev.backend.dto.ImportStatus;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Progress of one import, updated by the parser threads and the loader and read by the admin API and the CLI
+public class ImportJob {
+    private final String id = UUID.randomUUID().toString();
+    private final ImportFormat format;
+    private final int files;
+    private final long bytesTotal;
+    private final Date startedAt = new Date();
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private volatile long copied;
+    private volatile long inserted;
+    private volatile String state = "RUNNING";
+    private volatile Date finishedAt;
+    private volatile long finishedNanos;
+    private volatile String error;
+
+    ImportJob(ImportFormat format, int files, long bytesTotal) {
+        this.format = format;
+        this.files = files;
+        this.bytesTotal = bytesTotal;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ImportFormat getFormat() {
+        return format;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    public boolean isFailed() {
+        return "FAILED".equals(state);
+    }
+
+    public ImportStatus toStatus() {
+        long elapsedNanos = (finishedAt != null ? finishedNanos : System.nanoTime()) - startNanos;
+        long perMinute = elapsedNanos > 0 ? copied * TimeUnit.MINUTES.toNanos(1) / elapsedNanos : 0;
+        return new ImportStatus(id, format, state, files, filesDone.get(), filesFailed.get(), bytesTotal, bytesRead.get(),
+                parsed.get(), skipped.get(), copied, inserted, copied - inserted, startedAt, finishedAt, perMinute, error);
+    }
+
+    // One line for the CLI
+    public String describe() {
+        ImportStatus status = toStatus();
+        long percent = bytesTotal > 0 ? status.getBytesRead() * 100 / bytesTotal : 100;
+        return String.format("%s %d%% of %d files: %d parsed, %d skipped, %d copied, %d new, %d duplicates, %d msgs/min",
+                state, percent, files, status.getParsed(), status.getSkipped(), status.getCopied(), status.getInserted(),
+                status.getDuplicates(), status.getMessagesPerMinute());
+    }
+
+    void bytesRead(int count) {
+        bytesRead.addAndGet(count);
+    }
+
+    void parsed() {
+        parsed.incrementAndGet();
+    }
+
+    void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    void fileDone() {
+        filesDone.incrementAndGet();
+    }
+
+    // The first failure is the one reported, later ones are usually the same problem
+    synchronized void fileFailed(String file, Exception e) {
+        filesFailed.incrementAndGet();
+        if (error == null) {
+            error = file + ": " + e.getMessage();
+        }
+    }
+
+    // Only the loader thread writes these
+    void batchMerged(long copiedRows, long insertedRows) {
+        copied += copiedRows;
+        inserted += insertedRows;
+    }
+
+    void complete() {
+        finish("COMPLETED");
+    }
+
+    synchronized void fail(Exception e) {
+        error = e.getMessage();
+        finish("FAILED");
+    }
+
+    private void finish(String finalState) {
+        finishedNanos = System.nanoTime();
+        state = finalState;
+        finishedAt = new Date();
+    }
+}
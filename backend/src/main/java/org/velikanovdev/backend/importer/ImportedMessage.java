@@ -0,0 +1,42 @@
+package org.velikanovdev.backend.importer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.velikanovdev.backend.entity.Channel;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HexFormat;
+
+// One parsed message on its way to the staging table. externalId is what the merge dedupes on.
+@Getter
+@AllArgsConstructor
+public class ImportedMessage {
+    private final Channel channel;
+    private final String conversationKey;
+    private final String externalId;
+    private final String sender;
+    private final String recipient;
+    private final String participant;
+    private final String body;
+    private final Date sentDate;
+
+    // Exports without message ids get one derived from the content, so importing the same file again
+    // produces the same ids and the merge skips everything
+    static String syntheticId(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                if (part != null) {
+                    digest.update(part.getBytes(StandardCharsets.UTF_8));
+                }
+                digest.update((byte) 0);
+            }
+            return "import:" + HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
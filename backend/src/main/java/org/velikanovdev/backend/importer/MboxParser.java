@@ -0,0 +1,243 @@
+package org.velikanovdev.backend.importer;
+
+import jakarta.mail.*;
+import jakarta.mail.internet.*;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.mail.HtmlTextExtractor;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+// A mailbox file: messages start at lines beginning with "From ", body lines that begin with ">From " (any number
+// of '>') had one '>' added when written. Splitting is a cheap byte scan on the calling thread; MIME decoding
+// is the expensive part and runs on the decoder pool, with at most inFlight raw messages held at a time.
+class MboxParser implements ExportParser {
+    private static final byte[] FROM = "From ".getBytes(StandardCharsets.US_ASCII);
+    private static final int TEXT_LIMIT = 50000;
+
+    private final Session session;
+    private final int maxMessageBytes;
+    private final int inFlight;
+
+    MboxParser(int maxMessageBytes, int inFlight) {
+        Properties properties = new Properties();
+        properties.setProperty("mail.mime.address.strict", "false");
+        this.session = Session.getInstance(properties);
+        this.maxMessageBytes = maxMessageBytes;
+        this.inFlight = inFlight;
+    }
+
+    @Override
+    public void parse(Path file, InputStream in, ExecutorService decoders, MessageSink sink) throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(inFlight);
+        LineReader lines = new LineReader(in);
+        ByteArrayOutputStream raw = null;
+        boolean oversized = false;
+
+        byte[] line;
+        while ((line = lines.next()) != null) {
+            boolean lineStart = lines.isLineStart();
+            if (lineStart && startsWith(line, 0, FROM)) {
+                if (raw != null) {
+                    submit(raw, oversized, decoders, permits, sink);
+                }
+                raw = new ByteArrayOutputStream(8192);
+                oversized = false;
+                continue;
+            }
+            if (raw == null || oversized) {
+                continue;
+            }
+            int quoted = 0;
+            while (lineStart && quoted < line.length && line[quoted] == '>') {
+                quoted++;
+            }
+            int offset = quoted > 0 && startsWith(line, quoted, FROM) ? 1 : 0;
+            if (raw.size() + line.length > maxMessageBytes) {
+                oversized = true;
+                continue;
+            }
+            raw.write(line, offset, line.length - offset);
+        }
+        if (raw != null) {
+            submit(raw, oversized, decoders, permits, sink);
+        }
+        // Everything handed to the pool is decoded before the file counts as done
+        permits.acquire(inFlight);
+    }
+
+    private void submit(ByteArrayOutputStream raw, boolean oversized, ExecutorService decoders, Semaphore permits,
+                        MessageSink sink) throws InterruptedException {
+        if (oversized) {
+            sink.skipped();
+            return;
+        }
+        permits.acquire();
+        try {
+            decoders.execute(() -> {
+                try {
+                    ImportedMessage message = decode(raw);
+                    if (message != null) {
+                        sink.accept(message);
+                    } else {
+                        sink.skipped();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (MessagingException | IOException | RuntimeException e) {
+                    sink.skipped();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw new InterruptedException("Import cancelled");
+        }
+    }
+
+    private ImportedMessage decode(ByteArrayOutputStream raw) throws MessagingException, IOException {
+        MimeMessage message = new MimeMessage(session, new ByteArrayInputStream(raw.toByteArray()));
+        Date sentDate = message.getSentDate();
+        if (sentDate == null) {
+            return null;
+        }
+        String from = firstAddress(message.getFrom());
+        String to = firstAddress(message.getRecipients(Message.RecipientType.TO));
+        String subject = message.getSubject();
+        String body = textOf(message);
+        String text = subject != null ? subject + "\n" + (body != null ? body : "") : body;
+
+        String messageId = message.getMessageID();
+        if (messageId == null) {
+            messageId = ImportedMessage.syntheticId(Channel.EMAIL.name(), from, Long.toString(sentDate.getTime()), text);
+        }
+        return new ImportedMessage(Channel.EMAIL, threadKey(message, messageId), messageId, from, to, from, text, sentDate);
+    }
+
+    // The first message of the thread, which is what live syncing groups by as long as it has seen that message
+    private static String threadKey(MimeMessage message, String messageId) throws MessagingException {
+        String references = message.getHeader("References", " ");
+        if (references != null && !references.isBlank()) {
+            return references.trim().split("\\s+")[0];
+        }
+        String inReplyTo = message.getHeader("In-Reply-To", " ");
+        return inReplyTo != null && !inReplyTo.isBlank() ? inReplyTo.trim() : messageId;
+    }
+
+    private static String firstAddress(Address[] addresses) {
+        if (addresses == null || addresses.length == 0) {
+            return null;
+        }
+        return addresses[0] instanceof InternetAddress address ? address.getAddress() : addresses[0].toString();
+    }
+
+    // Plain text is preferred over HTML within a multipart/alternative, attachments are left out
+    private static String textOf(Part part) throws MessagingException, IOException {
+        if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
+            return null;
+        }
+        if (part.isMimeType("text/plain")) {
+            String text = part.getContent().toString();
+            return text.length() > TEXT_LIMIT ? text.substring(0, TEXT_LIMIT) : text;
+        }
+        if (part.isMimeType("text/html")) {
+            try (Reader html = new InputStreamReader(part.getInputStream(), charsetOf(part))) {
+                return HtmlTextExtractor.extract(html, TEXT_LIMIT);
+            }
+        }
+        if (part.isMimeType("multipart/*")) {
+            Multipart multipart = (Multipart) part.getContent();
+            String fallback = null;
+            for (int i = 0; i < multipart.getCount(); i++) {
+                BodyPart bodyPart = multipart.getBodyPart(i);
+                String text = textOf(bodyPart);
+                if (text != null && bodyPart.isMimeType("text/plain")) {
+                    return text;
+                }
+                if (fallback == null) {
+                    fallback = text;
+                }
+            }
+            return fallback;
+        }
+        return null;
+    }
+
+    private static Charset charsetOf(Part part) throws MessagingException {
+        try {
+            String charset = new ContentType(part.getContentType()).getParameter("charset");
+            if (charset != null && Charset.isSupported(MimeUtility.javaCharset(charset))) {
+                return Charset.forName(MimeUtility.javaCharset(charset));
+            }
+        } catch (ParseException | IllegalArgumentException e) {
+            // Broken or unknown charset, read it like Jakarta Mail would
+        }
+        return Charset.forName(MimeUtility.getDefaultJavaCharset());
+    }
+
+    private static boolean startsWith(byte[] line, int offset, byte[] prefix) {
+        return line.length - offset >= prefix.length
+                && Arrays.equals(line, offset, offset + prefix.length, prefix, 0, prefix.length);
+    }
+
+    // Lines as raw bytes including their terminator, so the message is handed to Jakarta Mail byte for byte.
+    // Lines longer than the buffer come in pieces, only the first of which is at a line start.
+    private static final class LineReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[65536];
+        private int position;
+        private int limit;
+        private boolean lineStart;
+        private boolean midLine;
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        byte[] next() throws IOException {
+            int scanned = position;
+            while (true) {
+                for (; scanned < limit; scanned++) {
+                    if (buffer[scanned] == '\n') {
+                        return take(scanned + 1);
+                    }
+                }
+                if (limit - position == buffer.length) {
+                    return take(limit);
+                }
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    scanned -= position;
+                    limit -= position;
+                    position = 0;
+                }
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read == -1) {
+                    return limit > position ? take(limit) : null;
+                }
+                limit += read;
+            }
+        }
+
+        boolean isLineStart() {
+            return lineStart;
+        }
+
+        private byte[] take(int end) {
+            byte[] line = Arrays.copyOfRange(buffer, position, end);
+            position = end;
+            lineStart = !midLine;
+            midLine = line[line.length - 1] != '\n';
+            return line;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.velikanovdev.backend.importer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.velikanovdev.backend.entity.Channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+// message_N.json of a Facebook data download, read token by token:
+//   {"participants": [{"name": ...}], "messages": [{"sender_name": ..., "timestamp_ms": ..., "content": ...}], ...}
+// Threads are keyed by their directory name, which is also the last part of thread_path. Graph conversation ids
+// aren't in the export, so imported threads show up next to the live ones rather than merged into them.
+class MessengerExportParser implements ExportParser {
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final String ownName;
+
+    MessengerExportParser(String ownName) {
+        this.ownName = ownName;
+    }
+
+    @Override
+    public void parse(Path file, InputStream in, ExecutorService decoders, MessageSink sink) throws IOException, InterruptedException {
+        Path directory = file.toAbsolutePath().getParent();
+        String thread = directory != null && directory.getFileName() != null ? directory.getFileName().toString() : file.toString();
+        List<String> participants = new ArrayList<>();
+
+        try (JsonParser parser = JSON.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException(file + " is not a Messenger export");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("participants".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    // Objects with a name, plain strings in older exports
+                    JsonToken token;
+                    while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                        String name = token == JsonToken.START_OBJECT ? readObject(parser).name
+                                : token == JsonToken.VALUE_STRING ? fixEncoding(parser.getText()) : null;
+                        if (name != null) {
+                            participants.add(name);
+                        }
+                    }
+                } else if ("messages".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    String participant = otherParticipant(participants);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Entry entry = readObject(parser);
+                        if (entry.content == null || entry.timestampMs == 0) {
+                            // Photos, stickers and calls without text
+                            sink.skipped();
+                            continue;
+                        }
+                        String id = ImportedMessage.syntheticId(Channel.FACEBOOK.name(), thread, entry.name,
+                                Long.toString(entry.timestampMs), entry.content);
+                        sink.accept(new ImportedMessage(Channel.FACEBOOK, thread, id, entry.name, null, participant,
+                                entry.content, new Date(entry.timestampMs)));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    // Fields of one participant or message, nested values such as photos or reactions are skipped
+    private static Entry readObject(JsonParser parser) throws IOException {
+        Entry entry = new Entry();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "name", "sender_name" -> entry.name = value == JsonToken.VALUE_STRING ? fixEncoding(parser.getText()) : null;
+                case "content" -> entry.content = value == JsonToken.VALUE_STRING ? fixEncoding(parser.getText()) : null;
+                case "timestamp_ms" -> entry.timestampMs = value == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : 0;
+                default -> parser.skipChildren();
+            }
+        }
+        return entry;
+    }
+
+    private String otherParticipant(List<String> participants) {
+        for (String participant : participants) {
+            if (ownName == null || !ownName.equalsIgnoreCase(participant)) {
+                return participant;
+            }
+        }
+        return participants.isEmpty() ? null : participants.get(0);
+    }
+
+    // The export writes every byte of UTF-8 text as a character of its own, turning them back into bytes undoes that
+    static String fixEncoding(String text) {
+        boolean escapedBytes = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c > 0xFF) {
+                return text;
+            }
+            escapedBytes |= c >= 0x80;
+        }
+        return escapedBytes ? new String(text.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8) : text;
+    }
+
+    private static final class Entry {
+        private String name;
+        private String content;
+        private long timestampMs;
+    }
+}
@@ -0,0 +1,132 @@
+package org.velikanovdev.backend.importer;
+
+import org.velikanovdev.backend.entity.Channel;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// WhatsApp's "Export chat" text, one line per message plus continuation lines for multi-line ones:
+//   Android  12/31/23, 9:15 PM - Jane Doe: Hello      31/12/2023, 21:15 - Jane Doe: Hello
+//   iOS      [31.12.23, 21:15:03] Jane Doe: Hello
+// Exports name people instead of giving numbers, so one file is one chat with contact, and lines from ownName
+// are the ones we sent. Lines without "name: " are notices like the encryption banner and are left out.
+class WhatsAppChatParser implements ExportParser {
+    private static final Pattern HEADER = Pattern.compile("^\\u200E?\\[?(\\d{1,4})[./-](\\d{1,2})[./-](\\d{1,4}),? "
+            + "(\\d{1,2})[:.](\\d{2})(?:[:.](\\d{2}))?(?:[\\s\\u202F]?([AaPp])\\.? ?[Mm]\\.?)?\\]?(?: -)? (.*)$");
+    // A runaway message can't grow without bound, the rest of it is dropped
+    private static final int MAX_BODY = 65536;
+
+    private final String contact;
+    private final String ownName;
+    private final String ownNumber;
+    private final boolean dayFirst;
+
+    WhatsAppChatParser(String contact, String ownName, String ownNumber, boolean dayFirst) {
+        this.contact = contact;
+        this.ownName = ownName.trim();
+        this.ownNumber = ownNumber;
+        this.dayFirst = dayFirst;
+    }
+
+    @Override
+    public void parse(Path file, InputStream in, ExecutorService decoders, MessageSink sink) throws IOException, InterruptedException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+        Pending pending = null;
+        Pending emitted = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (pending == null && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                line = line.substring(1);
+            }
+            Matcher matcher = HEADER.matcher(line);
+            LocalDateTime time = matcher.matches() ? timeOf(matcher) : null;
+            if (time == null) {
+                if (pending != null && pending.body.length() < MAX_BODY) {
+                    pending.body.append('\n').append(line, 0, Math.min(line.length(), MAX_BODY - pending.body.length()));
+                }
+                continue;
+            }
+
+            if (pending != null) {
+                emit(pending, emitted, sink);
+                emitted = pending;
+            }
+            String rest = matcher.group(8);
+            int separator = rest.indexOf(": ");
+            pending = separator > 0 ? new Pending(time, rest.substring(0, separator).trim(), rest.substring(separator + 2)) : null;
+        }
+        if (pending != null) {
+            emit(pending, emitted, sink);
+        }
+    }
+
+    private LocalDateTime timeOf(Matcher matcher) {
+        int first = Integer.parseInt(matcher.group(1));
+        int second = Integer.parseInt(matcher.group(2));
+        int third = Integer.parseInt(matcher.group(3));
+        int year, month, day;
+        if (matcher.group(1).length() == 4) {
+            year = first;
+            month = second;
+            day = third;
+        } else {
+            year = third < 100 ? 2000 + third : third;
+            month = dayFirst ? second : first;
+            day = dayFirst ? first : second;
+        }
+        int hour = Integer.parseInt(matcher.group(4));
+        String meridiem = matcher.group(7);
+        if (meridiem != null) {
+            hour = hour % 12 + (meridiem.equalsIgnoreCase("p") ? 12 : 0);
+        }
+        int seconds = matcher.group(6) != null ? Integer.parseInt(matcher.group(6)) : 0;
+        try {
+            return LocalDateTime.of(year, month, day, hour, Integer.parseInt(matcher.group(5)), seconds);
+        } catch (DateTimeException e) {
+            // Not a date after all, the line continues the previous message
+            return null;
+        }
+    }
+
+    private void emit(Pending pending, Pending previous, MessageSink sink) throws InterruptedException {
+        String body = pending.body.toString().replace("\u200E", "");
+        // Exports only have minute or second precision, repeats of the same text in that time get their own ids
+        if (previous != null && previous.time.equals(pending.time) && previous.senderName.equals(pending.senderName)
+                && previous.text.equals(body)) {
+            pending.repeat = previous.repeat + 1;
+        }
+        pending.text = body;
+        boolean outgoing = ownName.equalsIgnoreCase(pending.senderName);
+        String id = ImportedMessage.syntheticId(Channel.WHATSAPP.name(), contact, pending.time.toString(),
+                pending.senderName, body, Integer.toString(pending.repeat));
+        sink.accept(new ImportedMessage(Channel.WHATSAPP, contact, id,
+                outgoing ? ownNumber : contact, outgoing ? contact : ownNumber, contact, body,
+                Date.from(pending.time.atZone(ZoneId.systemDefault()).toInstant())));
+    }
+
+    private static final class Pending {
+        private final LocalDateTime time;
+        private final String senderName;
+        private final StringBuilder body;
+        // Set once emitted, the previous message is compared against these
+        private String text;
+        private int repeat;
+
+        Pending(LocalDateTime time, String senderName, String firstLine) {
+            this.time = time;
+            this.senderName = senderName;
+            this.body = new StringBuilder(firstLine.length() > MAX_BODY ? firstLine.substring(0, MAX_BODY) : firstLine);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.velikanovdev.backend.mail;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Preview snippets by Message-ID. A message doesn't change once it's delivered, so its snippet is fetched on
+// the first sync that sees it and every later sync only reads headers and flags. After a restart or an
+// eviction the snippet is fetched again, which is one small partial FETCH.
+@Component
+public class EmailPreviewCache {
+    private final MeterRegistry registry;
+    private Cache<String, String> previews;
+
+    @Value("${email.preview.maxEntries:200000}")
+    private long maxEntries;
+
+    @Autowired
+    public EmailPreviewCache(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @PostConstruct
+    public void init() {
+        previews = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, previews, "email_preview");
+    }
+
+    public String get(String messageId) {
+        return messageId != null ? previews.getIfPresent(messageId) : null;
+    }
+
+    public void put(String messageId, String preview) {
+        if (messageId != null && preview != null) {
+            previews.put(messageId, preview);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package org.velikanovdev.backend.mail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Set;
+
+// Turns an HTML mail body into plain text in a single pass over the characters, without building a DOM.
+// script, style and title content, the head and elements hidden with the hidden attribute or an inline
+// display:none / visibility:hidden / mso-hide:all style are left out. Block elements start a new line and
+// other whitespace is collapsed the way Jsoup's text() does it. Memory stays bounded whatever the input size:
+// the read buffer, a capped tag name, attribute and entity buffer, and the output, which ends once it holds
+// maxChars characters; the rest of the input isn't read.
+public final class HtmlTextExtractor {
+    private static final int BUFFER_SIZE = 8192;
+    // Longer names aren't ones we look for, they are only kept to match start and end tags
+    private static final int MAX_NAME = 24;
+    // Enough for the style attribute of real mail, hidden markers further in are missed
+    private static final int MAX_ATTRIBUTES = 2048;
+    private static final int MAX_ENTITY = 12;
+
+    private static final Set<String> BLOCK = Set.of("address", "article", "aside", "blockquote", "br", "center",
+            "dd", "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4",
+            "h5", "h6", "header", "hr", "li", "main", "nav", "ol", "p", "pre", "section", "table", "tbody", "td",
+            "tfoot", "th", "thead", "tr", "ul");
+    // Content is skipped up to the matching end tag without looking for markup in it
+    private static final Set<String> RAW_TEXT = Set.of("script", "style", "title");
+    private static final Set<String> SKIPPED = Set.of("head", "template");
+    private static final Set<String> VOID = Set.of("area", "base", "br", "col", "embed", "hr", "img", "input",
+            "link", "meta", "param", "source", "track", "wbr");
+
+    private enum State { TEXT, ENTITY, TAG_OPEN, TAG_NAME, ATTRIBUTES, END_TAG_NAME, END_TAG_REST, BANG, COMMENT, DECLARATION, RAW_TEXT }
+
+    private final int maxChars;
+    private final StringBuilder out = new StringBuilder();
+    private final StringBuilder name = new StringBuilder(MAX_NAME);
+    private final StringBuilder attributes = new StringBuilder();
+    private final StringBuilder entity = new StringBuilder(MAX_ENTITY);
+
+    private State state = State.TEXT;
+    private boolean pendingSpace;
+    private boolean pendingNewline;
+    private char quote;
+    private boolean selfClosing;
+    private int dashes;
+    private String rawName;
+    private int rawMatched;
+    // Element whose content is being left out and how deep we are in nested elements of the same name
+    private String skipName;
+    private int skipDepth;
+
+    private HtmlTextExtractor(int maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    public static String extract(Reader html, int maxChars) throws IOException {
+        HtmlTextExtractor extractor = new HtmlTextExtractor(maxChars);
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while (!extractor.isFull() && (read = html.read(buffer)) != -1) {
+            for (int i = 0; i < read && !extractor.isFull(); i++) {
+                extractor.accept(buffer[i]);
+            }
+        }
+        extractor.finish();
+        return extractor.out.toString();
+    }
+
+    private boolean isFull() {
+        return out.length() >= maxChars;
+    }
+
+    // Text the input ended in the middle of, a tag cut off the same way is dropped
+    private void finish() {
+        if (isFull()) {
+            return;
+        }
+        if (state == State.ENTITY) {
+            emitEntity(false);
+        } else if (state == State.TAG_OPEN) {
+            emit('<');
+        }
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case TEXT -> text(c);
+            case ENTITY -> entity(c);
+            case TAG_OPEN -> tagOpen(c);
+            case TAG_NAME -> tagName(c);
+            case ATTRIBUTES -> attributes(c);
+            case END_TAG_NAME -> endTagName(c);
+            case END_TAG_REST -> {
+                if (c == '>') {
+                    finishEndTag();
+                }
+            }
+            case BANG -> bang(c);
+            case COMMENT -> comment(c);
+            case DECLARATION -> {
+                if (c == '>') {
+                    state = State.TEXT;
+                }
+            }
+            case RAW_TEXT -> rawText(c);
+        }
+    }
+
+    private void text(char c) {
+        if (c == '<') {
+            state = State.TAG_OPEN;
+        } else if (c == '&') {
+            entity.setLength(0);
+            state = State.ENTITY;
+        } else {
+            emit(c);
+        }
+    }
+
+    private void entity(char c) {
+        if (c == ';') {
+            emitEntity(true);
+            state = State.TEXT;
+        } else if ((Character.isLetterOrDigit(c) || c == '#') && entity.length() < MAX_ENTITY) {
+            entity.append(c);
+        } else {
+            // No semicolon, only the common legacy names are decoded, anything else stays as written
+            emitEntity(false);
+            state = State.TEXT;
+            text(c);
+        }
+    }
+
+    private void tagOpen(char c) {
+        if (c == '/') {
+            name.setLength(0);
+            state = State.END_TAG_NAME;
+        } else if (c == '!') {
+            dashes = 0;
+            state = State.BANG;
+        } else if (c == '?') {
+            state = State.DECLARATION;
+        } else if (Character.isLetter(c)) {
+            name.setLength(0);
+            name.append(Character.toLowerCase(c));
+            attributes.setLength(0);
+            selfClosing = false;
+            state = State.TAG_NAME;
+        } else {
+            // A lone '<' is text
+            emit('<');
+            state = State.TEXT;
+            text(c);
+        }
+    }
+
+    private void tagName(char c) {
+        if (c == '>') {
+            finishStartTag();
+        } else if (c == '/') {
+            selfClosing = true;
+            state = State.ATTRIBUTES;
+        } else if (Character.isWhitespace(c)) {
+            state = State.ATTRIBUTES;
+        } else if (name.length() < MAX_NAME) {
+            name.append(Character.toLowerCase(c));
+        }
+    }
+
+    private void attributes(char c) {
+        if (quote != 0) {
+            if (c == quote) {
+                quote = 0;
+            }
+        } else if (c == '"' || c == '\'') {
+            quote = c;
+        } else if (c == '>') {
+            finishStartTag();
+            return;
+        }
+        if (quote == 0 && !Character.isWhitespace(c)) {
+            selfClosing = c == '/';
+        }
+        if (attributes.length() < MAX_ATTRIBUTES) {
+            attributes.append(Character.toLowerCase(c));
+        }
+    }
+
+    private void endTagName(char c) {
+        if (c == '>') {
+            finishEndTag();
+        } else if (Character.isWhitespace(c) || c == '/') {
+            state = State.END_TAG_REST;
+        } else if (name.length() < MAX_NAME) {
+            name.append(Character.toLowerCase(c));
+        }
+    }
+
+    // After "<!", a comment if two dashes follow, a doctype or CDATA section otherwise
+    private void bang(char c) {
+        if (c == '-' && ++dashes == 2) {
+            dashes = 0;
+            state = State.COMMENT;
+        } else if (c != '-') {
+            state = c == '>' ? State.TEXT : State.DECLARATION;
+        }
+    }
+
+    private void comment(char c) {
+        if (c == '-') {
+            dashes++;
+        } else if (c == '>' && dashes >= 2) {
+            state = State.TEXT;
+        } else {
+            dashes = 0;
+        }
+    }
+
+    // Looks for "</" followed by the element name, case-insensitively
+    private void rawText(char c) {
+        char lower = Character.toLowerCase(c);
+        if (rawMatched == 0) {
+            rawMatched = c == '<' ? 1 : 0;
+        } else if (rawMatched == 1) {
+            rawMatched = c == '/' ? 2 : (c == '<' ? 1 : 0);
+        } else if (lower == rawName.charAt(rawMatched - 2)) {
+            rawMatched++;
+            if (rawMatched - 2 == rawName.length()) {
+                name.setLength(0);
+                name.append(rawName);
+                rawMatched = 0;
+                state = State.END_TAG_REST;
+            }
+        } else {
+            rawMatched = c == '<' ? 1 : 0;
+        }
+    }
+
+    private void finishStartTag() {
+        state = State.TEXT;
+        quote = 0;
+        String tag = name.toString();
+        boolean hasContent = !selfClosing && !VOID.contains(tag);
+
+        if (RAW_TEXT.contains(tag) && hasContent) {
+            rawName = tag;
+            rawMatched = 0;
+            state = State.RAW_TEXT;
+            return;
+        }
+        if (skipName != null) {
+            if (tag.equals(skipName) && hasContent) {
+                skipDepth++;
+            }
+            return;
+        }
+        if (BLOCK.contains(tag)) {
+            pendingNewline = true;
+        }
+        if (hasContent && (SKIPPED.contains(tag) || isHidden())) {
+            skipName = tag;
+            skipDepth = 1;
+        }
+    }
+
+    private void finishEndTag() {
+        state = State.TEXT;
+        String tag = name.toString();
+        if (skipName != null) {
+            if (tag.equals(skipName) && --skipDepth == 0) {
+                skipName = null;
+            } else {
+                return;
+            }
+        }
+        if (BLOCK.contains(tag)) {
+            pendingNewline = true;
+        }
+    }
+
+    private boolean isHidden() {
+        if (attributes.isEmpty()) {
+            return false;
+        }
+        String compact = attributes.toString().replaceAll("\\s+", "");
+        if (compact.contains("display:none") || compact.contains("visibility:hidden") || compact.contains("mso-hide:all")) {
+            return true;
+        }
+        // The boolean hidden attribute, not aria-hidden or a class or style value that mentions it
+        int from = 0;
+        int at;
+        while ((at = attributes.indexOf("hidden", from)) >= 0) {
+            int end = at + "hidden".length();
+            boolean startsName = at == 0 || Character.isWhitespace(attributes.charAt(at - 1));
+            boolean endsName = end == attributes.length() || attributes.charAt(end) == '='
+                    || attributes.charAt(end) == '/' || Character.isWhitespace(attributes.charAt(end));
+            if (startsName && endsName) {
+                return true;
+            }
+            from = end;
+        }
+        return false;
+    }
+
+    private void emitEntity(boolean terminated) {
+        String value = entity.toString();
+        int decoded = decode(value, terminated);
+        if (decoded >= 0) {
+            emit((char) decoded);
+        } else {
+            emit('&');
+            for (int i = 0; i < value.length(); i++) {
+                emit(value.charAt(i));
+            }
+            if (terminated) {
+                emit(';');
+            }
+        }
+    }
+
+    private static int decode(String value, boolean terminated) {
+        if (terminated && value.startsWith("#") && value.length() > 1) {
+            try {
+                boolean hex = value.charAt(1) == 'x' || value.charAt(1) == 'X';
+                int codePoint = hex ? Integer.parseInt(value.substring(2), 16) : Integer.parseInt(value.substring(1));
+                // Characters outside the BMP don't fit a char, the text doesn't lose anything readable without them
+                return codePoint <= Character.MAX_VALUE ? codePoint : ' ';
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return switch (value) {
+            case "nbsp" -> '\u00A0';
+            case "amp" -> '&';
+            case "lt" -> '<';
+            case "gt" -> '>';
+            case "quot" -> '"';
+            case "apos" -> terminated ? '\'' : -1;
+            case "zwnj" -> terminated ? '\u200C' : -1;
+            case "zwj" -> terminated ? '\u200D' : -1;
+            case "shy" -> terminated ? '\u00AD' : -1;
+            case "copy" -> terminated ? '\u00A9' : -1;
+            case "reg" -> terminated ? '\u00AE' : -1;
+            case "trade" -> terminated ? '\u2122' : -1;
+            case "hellip" -> terminated ? '\u2026' : -1;
+            case "mdash" -> terminated ? '\u2014' : -1;
+            case "ndash" -> terminated ? '\u2013' : -1;
+            case "lsquo" -> terminated ? '\u2018' : -1;
+            case "rsquo" -> terminated ? '\u2019' : -1;
+            case "ldquo" -> terminated ? '\u201C' : -1;
+            case "rdquo" -> terminated ? '\u201D' : -1;
+            case "bull" -> terminated ? '\u2022' : -1;
+            case "euro" -> terminated ? '\u20AC' : -1;
+            case "middot" -> terminated ? '\u00B7' : -1;
+            case "laquo" -> terminated ? '\u00AB' : -1;
+            case "raquo" -> terminated ? '\u00BB' : -1;
+            case "larr" -> terminated ? '\u2190' : -1;
+            case "rarr" -> terminated ? '\u2192' : -1;
+            default -> -1;
+        };
+    }
+
+    private void emit(char c) {
+        if (skipName != null) {
+            return;
+        }
+        // Newsletters pad their preheaders with invisible characters
+        if (c == '\u200B' || c == '\u200C' || c == '\u200D' || c == '\u00AD' || c == '\u034F' || c == '\uFEFF') {
+            return;
+        }
+        if (Character.isWhitespace(c) || c == '\u00A0') {
+            pendingSpace = true;
+            return;
+        }
+        if (!out.isEmpty()) {
+            if (pendingNewline) {
+                out.append('\n');
+            } else if (pendingSpace) {
+                out.append(' ');
+            }
+        }
+        pendingNewline = false;
+        pendingSpace = false;
+        out.append(c);
+    }
+}
@@ -0,0 +1,81 @@
+package org.velikanovdev.backend.mail;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Store;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.entity.MailAccount;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One IMAP connection per mailbox, kept open between syncs so each cycle skips the TLS handshake and login
+@Component
+public class MailStoreCache {
+    private final ChannelMetrics channelMetrics;
+    private final Map<Long, Store> stores = new ConcurrentHashMap<>();
+
+    @Value("${email.receiver.timeout:30000}")
+    private int timeout;
+
+    @Autowired
+    public MailStoreCache(ChannelMetrics channelMetrics) {
+        this.channelMetrics = channelMetrics;
+    }
+
+    // Callers must not use the same account from two threads, the sync scheduler guarantees that for its workers
+    public Store get(MailAccount account) throws MessagingException {
+        Store store = stores.get(account.getId());
+        if (store != null && store.isConnected()) {
+            return store;
+        }
+
+        close(account.getId());
+        Store connected = open(account);
+        stores.put(account.getId(), connected);
+        return connected;
+    }
+
+    // A connection of its own that the caller closes, for one-off requests outside the sync workers
+    public Store open(MailAccount account) throws MessagingException {
+        String storeType = account.getStoreType();
+        Properties properties = new Properties();
+        properties.put("mail.store.protocol", storeType);
+        properties.put("mail." + storeType + ".host", account.getImapHost());
+        properties.put("mail." + storeType + ".port", String.valueOf(account.getImapPort()));
+        properties.put("mail." + storeType + ".starttls.enable", "true");
+        // A hung server must not hold a sync worker forever
+        properties.put("mail." + storeType + ".connectiontimeout", String.valueOf(timeout));
+        properties.put("mail." + storeType + ".timeout", String.valueOf(timeout));
+
+        // Not getDefaultInstance, that session is shared JVM-wide and would keep the first account's settings
+        Session emailSession = Session.getInstance(properties);
+        Store store = emailSession.getStore(storeType);
+        channelMetrics.runUpstream("imap", "connect",
+                () -> store.connect(account.getImapHost(), account.getUsername(), account.getPassword()));
+        return store;
+    }
+
+    public void close(Long accountId) {
+        Store store = stores.remove(accountId);
+        if (store == null) {
+            return;
+        }
+        try {
+            store.close();
+        } catch (MessagingException ignored) {
+            // Already dropped by the server
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        List.copyOf(stores.keySet()).forEach(this::close);
+    }
+}
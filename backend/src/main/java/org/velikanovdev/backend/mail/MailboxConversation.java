@@ -0,0 +1,13 @@
+package org.velikanovdev.backend.mail;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.velikanovdev.backend.entity.EmailConversation;
+import org.velikanovdev.backend.entity.MailAccount;
+
+@Getter
+@AllArgsConstructor
+public class MailboxConversation {
+    private MailAccount account;
+    private EmailConversation conversation;
+}
@@ -0,0 +1,443 @@
+package org.velikanovdev.backend.mail;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Store;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.cluster.PollerLeadership;
+import org.velikanovdev.backend.concurrent.UpstreamExecutor;
+import org.velikanovdev.backend.dto.EmailConversationView;
+import org.velikanovdev.backend.dto.MailAccountStatus;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.EmailConversation;
+import org.velikanovdev.backend.entity.MailAccount;
+import org.velikanovdev.backend.entity.ReceivedEmail;
+import org.velikanovdev.backend.entity.SearchDocument;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.notification.SseStream;
+import org.velikanovdev.backend.service.EmailReceiverService;
+import org.velikanovdev.backend.service.InboxService;
+import org.velikanovdev.backend.service.MailAccountService;
+import org.velikanovdev.backend.service.SearchIndexService;
+import org.velikanovdev.backend.tracing.StageTracer;
+import org.velikanovdev.backend.web.ChannelVersions;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Syncs every enabled mailbox on a fixed-size worker pool. Each tick hands the due mailboxes to the
+// workers most overdue first, and a mailbox is never queued twice, so a slow or newly added account
+// takes one worker at most and can't push the others back by more than its own sync. Requests are served
+// from the last sync; in cluster mode the followers sync too, but only to serve their own requests.
+@Component
+public class MailboxSyncScheduler {
+    private final MailAccountService mailAccountService;
+    private final MailStoreCache mailStoreCache;
+    private final EmailReceiverService emailReceiverService;
+    private final InboxService inboxService;
+    private final SearchIndexService searchIndexService;
+    private final ChannelMetrics channelMetrics;
+    private final SseHub sseHub;
+    private final PollerLeadership pollerLeadership;
+    private final ChannelVersions channelVersions;
+    private final UpstreamExecutor upstreamExecutor;
+    private final StageTracer stageTracer;
+    private final Map<Long, AccountSync> syncs = new ConcurrentHashMap<>();
+    private ExecutorService workers;
+
+    @Value("${email.sync.workers:4}")
+    private int workerCount;
+
+    @Value("${email.sync.interval:10000}")
+    private long syncInterval;
+
+    @Value("${email.receiver.sentFolder:[Gmail]/Sent Mail}")
+    private String defaultSentFolder;
+
+    @Autowired
+    public MailboxSyncScheduler(MailAccountService mailAccountService, MailStoreCache mailStoreCache,
+                                EmailReceiverService emailReceiverService, InboxService inboxService,
+                                SearchIndexService searchIndexService, ChannelMetrics channelMetrics,
+                                SseHub sseHub, PollerLeadership pollerLeadership, ChannelVersions channelVersions,
+                                UpstreamExecutor upstreamExecutor, StageTracer stageTracer) {
+        this.mailAccountService = mailAccountService;
+        this.mailStoreCache = mailStoreCache;
+        this.emailReceiverService = emailReceiverService;
+        this.inboxService = inboxService;
+        this.searchIndexService = searchIndexService;
+        this.channelMetrics = channelMetrics;
+        this.sseHub = sseHub;
+        this.pollerLeadership = pollerLeadership;
+        this.channelVersions = channelVersions;
+        this.upstreamExecutor = upstreamExecutor;
+        this.stageTracer = stageTracer;
+    }
+
+    @PostConstruct
+    public void start() {
+        // In virtual-thread mode every due mailbox gets its own thread and workerCount no longer applies
+        workers = upstreamExecutor.newWorkers("mail-sync", workerCount);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        workers.shutdownNow();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void dispatch() {
+        // Only one node in the cluster indexes the mailboxes and pushes them to clients
+        boolean leader = pollerLeadership.isLeader("email-poller");
+
+        List<MailAccount> accounts = mailAccountService.getEnabledAccounts();
+        forgetRemovedAccounts(accounts, leader);
+
+        long now = System.currentTimeMillis();
+        List<AccountSync> due = new ArrayList<>();
+        for (MailAccount account : accounts) {
+            AccountSync sync = syncs.computeIfAbsent(account.getId(), id -> register(account));
+            sync.account = account;
+            sync.leader = leader;
+            if (!sync.inFlight && sync.nextDue <= now) {
+                due.add(sync);
+            }
+        }
+
+        due.sort(Comparator.comparingLong(sync -> sync.nextDue));
+        for (AccountSync sync : due) {
+            sync.inFlight = true;
+            workers.execute(() -> sync(sync));
+        }
+    }
+
+    private AccountSync register(MailAccount account) {
+        AccountSync sync = new AccountSync(account);
+        sync.lagGauge = channelMetrics.registerSyncLag(account.getAddress(), sync::lagSeconds);
+        return sync;
+    }
+
+    private void forgetRemovedAccounts(List<MailAccount> accounts, boolean leader) {
+        Set<Long> enabledIds = accounts.stream().map(MailAccount::getId).collect(Collectors.toSet());
+        for (Long accountId : List.copyOf(syncs.keySet())) {
+            if (enabledIds.contains(accountId)) {
+                continue;
+            }
+            AccountSync removed = syncs.remove(accountId);
+            channelMetrics.removeMeter(removed.lagGauge);
+            mailStoreCache.close(accountId);
+            if (!removed.conversations.isEmpty()) {
+                channelVersions.bump(Channel.EMAIL);
+                if (leader) {
+                    notifyClients();
+                }
+            }
+        }
+    }
+
+    private void sync(AccountSync sync) {
+        MailAccount account = sync.account;
+        long startedAt = System.currentTimeMillis();
+        Timer.Sample sample = channelMetrics.startTimer();
+        try {
+            // One trace per mailbox sync, from the IMAP fetch to the push
+            stageTracer.runInSpan("email.sync", () -> syncMailbox(sync));
+        } catch (Exception e) {
+            e.printStackTrace();
+            sync.lastError = e.getMessage();
+            // Start over on a fresh connection next time
+            mailStoreCache.close(account.getId());
+        } finally {
+            channelMetrics.stopPoll(sample, Channel.EMAIL);
+            sync.lastDuration = System.currentTimeMillis() - startedAt;
+            sync.nextDue = startedAt + syncInterval;
+            sync.attempted = true;
+            sync.inFlight = false;
+            if (!syncs.containsKey(account.getId())) {
+                // Removed while this sync ran, don't keep its reconnected store around
+                mailStoreCache.close(account.getId());
+            }
+        }
+    }
+
+    private void syncMailbox(AccountSync sync) throws MessagingException, IOException {
+        MailAccount account = sync.account;
+        StageTracer.annotate("email.account", account.getAddress());
+        Store store = mailStoreCache.get(account);
+        List<EmailConversation> conversations = emailReceiverService.fetchEmailConversations(store, sentFolder(account));
+        boolean leader = sync.leader;
+        if (leader) {
+            Map<String, String> newBodies = fetchUnindexedBodies(store, conversations);
+            stageTracer.runInSpan("db.write", () -> {
+                syncInbox(conversations);
+                indexEmails(conversations, newBodies);
+            });
+        }
+
+        long signature = signature(conversations);
+        boolean changed = sync.lastSuccess == 0 || signature != sync.signature;
+        sync.conversations = conversations;
+        sync.signature = signature;
+        sync.lastSuccess = System.currentTimeMillis();
+        sync.lastError = null;
+
+        // The list is resent to every client, only do it when this mailbox actually changed. A follower bumps the
+        // version as well, a client may have cached what it served before it caught up with the leader.
+        if (changed) {
+            channelVersions.bump(Channel.EMAIL);
+            if (leader) {
+                notifyClients();
+            }
+        }
+        if (leader) {
+            recordDeliveryLatency(sync, conversations);
+        }
+    }
+
+    // Conversations of every mailbox from their last sync on this node, none for a mailbox not synced yet
+    public List<EmailConversation> getConversations() {
+        List<EmailConversation> conversations = new ArrayList<>();
+        for (MailAccount account : mailAccountService.getEnabledAccounts()) {
+            conversations.addAll(getConversations(account));
+        }
+        return conversations;
+    }
+
+    public Optional<MailboxConversation> findConversation(String conversationId) {
+        for (MailAccount account : mailAccountService.getEnabledAccounts()) {
+            for (EmailConversation conversation : getConversations(account)) {
+                if (conversation.getConversationId().equals(conversationId)) {
+                    return Optional.of(new MailboxConversation(account, conversation));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    // The thread with every body, read over a connection of its own as a sync worker may be using the cached one
+    public Optional<MailboxConversation> openConversation(String conversationId) throws MessagingException {
+        Optional<MailboxConversation> found = findConversation(conversationId);
+        if (found.isEmpty()) {
+            return found;
+        }
+        MailAccount account = found.get().getAccount();
+        EmailConversation conversation = found.get().getConversation();
+
+        Store store = mailStoreCache.open(account);
+        try {
+            Map<String, String> bodies = channelMetrics.recordUpstream("imap", "fetch_bodies",
+                    () -> emailReceiverService.fetchBodies(store, conversation.getEmails()));
+            List<ReceivedEmail> emails = new ArrayList<>();
+            for (ReceivedEmail email : conversation.getEmails()) {
+                emails.add(new ReceivedEmail(email.getFrom(), email.getSubject(), bodies.get(email.getMessageId()),
+                        email.getMessageId(), email.getInReplyTo(), email.getReferences(), email.getSentDate(),
+                        email.getTo(), email.isRead(), email.getPreview(), email.getFolder(), email.getUid()));
+            }
+            return Optional.of(new MailboxConversation(account, new EmailConversation(conversation.getConversationId(),
+                    conversation.getSender(), emails, conversation.getUnreadCount(), conversation.getLastEmailDate())));
+        } finally {
+            try {
+                store.close();
+            } catch (MessagingException ignored) {
+            }
+        }
+    }
+
+    // Mailbox that received the message being replied to, if it is one we have synced
+    public Optional<MailAccount> findAccountForMessage(String messageId) {
+        if (messageId == null) {
+            return Optional.empty();
+        }
+        for (AccountSync sync : syncs.values()) {
+            for (EmailConversation conversation : sync.conversations) {
+                for (ReceivedEmail email : conversation.getEmails()) {
+                    if (messageId.equals(email.getMessageId())) {
+                        return Optional.of(sync.account);
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    public List<MailAccountStatus> getStatuses() {
+        List<MailAccountStatus> statuses = new ArrayList<>();
+        for (MailAccount account : mailAccountService.getAccounts()) {
+            AccountSync sync = syncs.get(account.getId());
+            statuses.add(new MailAccountStatus(
+                    account.getId(),
+                    account.getAddress(),
+                    account.isEnabled(),
+                    sync != null && sync.lastSuccess > 0 ? new Date(sync.lastSuccess) : null,
+                    sync != null ? sync.lagSeconds() : 0,
+                    sync != null ? sync.lastDuration : 0,
+                    sync != null ? sync.conversations.size() : 0,
+                    sync != null ? sync.lastError : null
+            ));
+        }
+        return statuses;
+    }
+
+    // Whether every enabled mailbox has been through its first sync on this node, a failed one included.
+    // Until then a missing thread may only not have been read yet, e.g. right after startup.
+    public boolean isSynced() {
+        for (MailAccount account : mailAccountService.getEnabledAccounts()) {
+            AccountSync sync = syncs.get(account.getId());
+            if (sync == null || !sync.attempted) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<EmailConversation> getConversations(MailAccount account) {
+        AccountSync sync = syncs.get(account.getId());
+        return sync != null ? sync.conversations : Collections.emptyList();
+    }
+
+    // Notify all clients with the latest email conversations of every mailbox, as views so the event grows
+    // with the number of threads and not with their length
+    private void notifyClients() {
+        List<EmailConversationView> conversations = new ArrayList<>();
+        for (AccountSync sync : syncs.values()) {
+            sync.conversations.forEach(conversation -> conversations.add(toView(conversation)));
+        }
+        sseHub.publish(SseStream.EMAIL_CONVERSATIONS, "emailConversations", conversations);
+    }
+
+    public static EmailConversationView toView(EmailConversation conversation) {
+        List<ReceivedEmail> emails = conversation.getEmails();
+        // Emails are sorted by date, the first one carries the subject and the last one the preview
+        ReceivedEmail firstEmail = emails.isEmpty() ? null : emails.get(0);
+        ReceivedEmail latestEmail = emails.isEmpty() ? null : emails.get(emails.size() - 1);
+        return new EmailConversationView(
+                conversation.getConversationId(),
+                conversation.getSender(),
+                firstEmail != null ? firstEmail.getSubject() : null,
+                emails.size(),
+                conversation.getUnreadCount(),
+                conversation.getLastEmailDate(),
+                latestEmail != null ? latestEmail.getPreview() : null
+        );
+    }
+
+    private void recordDeliveryLatency(AccountSync sync, List<EmailConversation> conversations) {
+        Date newest = sync.lastNotifiedEmailDate;
+        for (EmailConversation conversation : conversations) {
+            Date lastEmailDate = conversation.getLastEmailDate();
+            if (lastEmailDate == null) {
+                continue;
+            }
+            // Skip the first sync, everything would look like it arrived just now
+            if (sync.lastNotifiedEmailDate != null && lastEmailDate.after(sync.lastNotifiedEmailDate)) {
+                channelMetrics.recordDeliveryLatency(Channel.EMAIL, lastEmailDate);
+            }
+            if (newest == null || lastEmailDate.after(newest)) {
+                newest = lastEmailDate;
+            }
+        }
+        sync.lastNotifiedEmailDate = newest;
+    }
+
+    private void syncInbox(List<EmailConversation> conversations) {
+        for (EmailConversation conversation : conversations) {
+            List<ReceivedEmail> emails = conversation.getEmails();
+            // Emails are sorted by date, the last one is the most recent
+            ReceivedEmail latestEmail = emails.isEmpty() ? null : emails.get(emails.size() - 1);
+
+            inboxService.syncConversation(
+                    Channel.EMAIL,
+                    conversation.getConversationId(),
+                    conversation.getSender(),
+                    conversation.getLastEmailDate(),
+                    latestEmail != null ? latestEmail.getPreview() : null,
+                    conversation.getUnreadCount()
+            );
+        }
+    }
+
+    // Search wants the full text, which the sync doesn't load. It's fetched once, for messages not indexed yet.
+    private Map<String, String> fetchUnindexedBodies(Store store, List<EmailConversation> conversations) throws MessagingException {
+        Map<String, ReceivedEmail> emails = new HashMap<>();
+        for (EmailConversation conversation : conversations) {
+            for (ReceivedEmail email : conversation.getEmails()) {
+                emails.put(email.getMessageId(), email);
+            }
+        }
+        List<ReceivedEmail> unindexed = new ArrayList<>();
+        for (String messageId : searchIndexService.findUnindexed(Channel.EMAIL, emails.keySet())) {
+            unindexed.add(emails.get(messageId));
+        }
+        if (unindexed.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return stageTracer.inSpan("imap.fetch", () -> channelMetrics.recordUpstream("imap", "fetch_bodies",
+                () -> emailReceiverService.fetchBodies(store, unindexed)));
+    }
+
+    private void indexEmails(List<EmailConversation> conversations, Map<String, String> bodies) {
+        List<SearchDocument> documents = new ArrayList<>();
+        for (EmailConversation conversation : conversations) {
+            for (ReceivedEmail email : conversation.getEmails()) {
+                String body = bodies.get(email.getMessageId());
+                if (body == null) {
+                    continue;
+                }
+                String text = email.getSubject() != null ? email.getSubject() + "\n" + body : body;
+                documents.add(new SearchDocument(Channel.EMAIL, conversation.getConversationId(), email.getMessageId(),
+                        email.getFrom(), text, email.getSentDate()));
+            }
+        }
+        channelMetrics.messagesIngested(Channel.EMAIL, searchIndexService.indexAll(Channel.EMAIL, documents));
+    }
+
+    private String sentFolder(MailAccount account) {
+        return account.getSentFolder() != null ? account.getSentFolder() : defaultSentFolder;
+    }
+
+    // Cheap fingerprint of what clients see: thread ids, sizes, unread counts and latest dates
+    private static long signature(List<EmailConversation> conversations) {
+        long signature = conversations.size();
+        for (EmailConversation conversation : conversations) {
+            signature = 31 * signature + Objects.hash(conversation.getConversationId(), conversation.getEmails().size(),
+                    conversation.getUnreadCount(), conversation.getLastEmailDate());
+        }
+        return signature;
+    }
+
+    private static final class AccountSync {
+        private final long registeredAt = System.currentTimeMillis();
+        private volatile MailAccount account;
+        private volatile boolean leader;
+        private volatile boolean inFlight;
+        private volatile boolean attempted;
+        private volatile long nextDue;
+        private volatile long lastSuccess;
+        private volatile long lastDuration;
+        private volatile String lastError;
+        private volatile List<EmailConversation> conversations = Collections.emptyList();
+        private long signature;
+        private Date lastNotifiedEmailDate;
+        private Gauge lagGauge;
+
+        private AccountSync(MailAccount account) {
+            this.account = account;
+        }
+
+        private double lagSeconds() {
+            long since = lastSuccess > 0 ? lastSuccess : registeredAt;
+            return (System.currentTimeMillis() - since) / 1000.0;
+        }
+    }
+}
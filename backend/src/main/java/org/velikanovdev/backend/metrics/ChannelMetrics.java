@@ -0,0 +1,186 @@
+package org.velikanovdev.backend.metrics;
+
+import io.micrometer.core.instrument.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.graph.GraphPriority;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+@Component
+public class ChannelMetrics {
+    private final MeterRegistry registry;
+
+    @Autowired
+    public ChannelMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @FunctionalInterface
+    public interface UpstreamCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @FunctionalInterface
+    public interface UpstreamTask<E extends Exception> {
+        void run() throws E;
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(registry);
+    }
+
+    // Duration of one scheduled poll cycle, including upstream calls and SSE pushes
+    public void stopPoll(Timer.Sample sample, Channel channel) {
+        sample.stop(Timer.builder("omnichannel.poll")
+                .tag("channel", tagValue(channel))
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    // Number of upstream requests one poll cycle needed
+    public void recordPollUpstreamCalls(Channel channel, int calls) {
+        DistributionSummary.builder("omnichannel.poll.upstream.calls")
+                .tag("channel", tagValue(channel))
+                .register(registry)
+                .record(calls);
+    }
+
+    // Times a single IMAP, SMTP or Graph request, tagged with its outcome
+    public <T, E extends Exception> T recordUpstream(String system, String operation, UpstreamCall<T, E> call) throws E {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "success";
+        try {
+            return call.call();
+        } catch (Exception e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("omnichannel.upstream.requests")
+                    .tag("system", system)
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+    }
+
+    public <E extends Exception> void runUpstream(String system, String operation, UpstreamTask<E> task) throws E {
+        recordUpstream(system, operation, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public <T> T recordQuery(String query, Supplier<T> supplier) {
+        return Timer.builder("omnichannel.db.queries")
+                .tag("query", query)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(supplier);
+    }
+
+    // Which pool a connection was taken from and why, when reads are routed to a replica. Pool usage itself
+    // comes from the hikaricp.* meters, tagged with the pool names primary and replica.
+    public void connectionRouted(String route, String reason) {
+        registry.counter("omnichannel.db.routes", "route", route, "reason", reason).increment();
+    }
+
+    public void messagesIngested(Channel channel, int count) {
+        if (count > 0) {
+            registry.counter("omnichannel.messages.ingested", "channel", tagValue(channel)).increment(count);
+        }
+    }
+
+    // Rows merged by a bulk history import, kept apart from live ingestion
+    public void importedRows(Channel channel, long inserted, long duplicates) {
+        registry.counter("omnichannel.import.rows", "channel", tagValue(channel), "outcome", "inserted").increment(inserted);
+        registry.counter("omnichannel.import.rows", "channel", tagValue(channel), "outcome", "duplicate").increment(duplicates);
+    }
+
+    public void messageSent(Channel channel) {
+        registry.counter("omnichannel.messages.sent", "channel", tagValue(channel)).increment();
+    }
+
+    // End-to-end latency from the upstream timestamp of a message until it was pushed to SSE clients
+    public void recordDeliveryLatency(Channel channel, Date upstreamDate) {
+        if (upstreamDate == null) {
+            return;
+        }
+        long latencyMillis = Math.max(0, System.currentTimeMillis() - upstreamDate.getTime());
+        Timer.builder("omnichannel.delivery.latency")
+                .tag("channel", tagValue(channel))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(Duration.ofMillis(latencyMillis));
+    }
+
+    public void registerEmitters(Channel channel, String stream, Collection<?> emitters) {
+        Gauge.builder("omnichannel.sse.emitters", emitters, Collection::size)
+                .tag("channel", tagValue(channel))
+                .tag("stream", stream)
+                .register(registry);
+    }
+
+    public void registerQueue(String queue, Collection<?> elements) {
+        Gauge.builder("omnichannel.queue.depth", elements, Collection::size)
+                .tag("queue", queue)
+                .register(registry);
+    }
+
+    // Seconds since a mailbox last synced successfully, one series per account
+    public Gauge registerSyncLag(String account, Supplier<Number> lagSeconds) {
+        return Gauge.builder("omnichannel.email.sync.lag", lagSeconds)
+                .tag("account", account)
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    // Graph rate-limit usage in percent as the request governor sees it
+    public void registerGraphUsage(Supplier<Number> usagePercent) {
+        Gauge.builder("omnichannel.graph.usage", usagePercent)
+                .baseUnit("percent")
+                .register(registry);
+    }
+
+    public void graphGovernorDecision(GraphPriority priority, String decision) {
+        registry.counter("omnichannel.graph.governor.decisions",
+                "priority", priority.name().toLowerCase(Locale.ROOT), "decision", decision).increment();
+    }
+
+    // Webhook records acknowledged but not yet applied to Postgres
+    public void registerWalBacklog(Supplier<Number> records) {
+        Gauge.builder("omnichannel.wal.backlog", records)
+                .register(registry);
+    }
+
+    public void walRecordSkipped() {
+        registry.counter("omnichannel.wal.skipped").increment();
+    }
+
+    // What the tail sampler did with a finished trace: kept as slow, error or sampled, dropped, or never
+    // held because too many traces were pending
+    public void traceSampled(String decision) {
+        registry.counter("omnichannel.tracing.traces", "decision", decision).increment();
+    }
+
+    // Time after readiness spent creating the beans that lazy initialization deferred
+    public void recordStartupWarmup(Duration duration) {
+        Timer.builder("omnichannel.startup.warmup")
+                .register(registry)
+                .record(duration);
+    }
+
+    public void removeMeter(Meter meter) {
+        registry.remove(meter);
+    }
+
+    private static String tagValue(Channel channel) {
+        return channel.name().toLowerCase(Locale.ROOT);
+    }
+}
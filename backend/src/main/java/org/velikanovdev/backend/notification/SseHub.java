@@ -0,0 +1,111 @@
+package org.velikanovdev.backend.notification;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.tracing.StageTracer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+// Keeps the SSE emitters of every stream and pushes events to them
+@Component
+public class SseHub {
+    private static final long EMITTER_TIMEOUT = 30 * 60 * 1000L; // 30 minutes
+
+    @FunctionalInterface
+    public interface Relay {
+        void relay(SseStream stream, String eventName, Object data);
+    }
+
+    private final StageTracer stageTracer;
+    private final Map<SseStream, List<SseEmitter>> emitters = new EnumMap<>(SseStream.class);
+    // Set in cluster mode so events reach the subscribers of every node
+    private volatile Relay relay;
+
+    @Autowired
+    public SseHub(ChannelMetrics channelMetrics, StageTracer stageTracer) {
+        this.stageTracer = stageTracer;
+        for (SseStream stream : SseStream.values()) {
+            List<SseEmitter> streamEmitters = new CopyOnWriteArrayList<>();
+            emitters.put(stream, streamEmitters);
+            channelMetrics.registerEmitters(stream.getChannel(), stream.getMetricName(), streamEmitters);
+        }
+    }
+
+    public SseEmitter subscribe(SseStream stream) {
+        List<SseEmitter> streamEmitters = emitters.get(stream);
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT);
+        streamEmitters.add(emitter);
+
+        emitter.onCompletion(() -> streamEmitters.remove(emitter));
+        emitter.onTimeout(() -> streamEmitters.remove(emitter));
+        emitter.onError((e) -> streamEmitters.remove(emitter));
+
+        return emitter;
+    }
+
+    public void setRelay(Relay relay) {
+        this.relay = relay;
+    }
+
+    // Publishes an event to the subscribers of the stream, on every node when running clustered
+    public void publish(SseStream stream, String eventName, Object data) {
+        stageTracer.runInSpan("sse.publish", () -> {
+            StageTracer.annotate("sse.stream", stream.name());
+            StageTracer.annotate("sse.event", eventName);
+            Relay currentRelay = relay;
+            if (currentRelay != null) {
+                currentRelay.relay(stream, eventName, data);
+            } else {
+                deliverLocally(stream, eventName, data);
+            }
+        });
+    }
+
+    public void deliverLocally(SseStream stream, String eventName, Object data) {
+        String traceparent = stageTracer.traceparent();
+        send(stream, () -> event(traceparent).name(eventName).data(data));
+    }
+
+    // Delivers an already serialized JSON payload as is
+    public void deliverJsonLocally(SseStream stream, String eventName, String json) {
+        String traceparent = stageTracer.traceparent();
+        send(stream, () -> event(traceparent).name(eventName).data(json, MediaType.APPLICATION_JSON));
+    }
+
+    public int subscriberCount(SseStream stream) {
+        return emitters.get(stream).size();
+    }
+
+    // EventSource skips comment lines, the traceparent in one ties an event seen in the browser to /admin/traces
+    private static SseEmitter.SseEventBuilder event(String traceparent) {
+        SseEmitter.SseEventBuilder event = SseEmitter.event();
+        return traceparent != null ? event.comment("traceparent " + traceparent) : event;
+    }
+
+    // Event builders are single use, so one is built per emitter
+    private void send(SseStream stream, Supplier<SseEmitter.SseEventBuilder> event) {
+        List<SseEmitter> streamEmitters = emitters.get(stream);
+        List<SseEmitter> emittersToRemove = new ArrayList<>();
+        StageTracer.annotate("sse.subscribers", streamEmitters.size());
+
+        for (SseEmitter emitter : streamEmitters) {
+            try {
+                emitter.send(event.get());
+            } catch (IOException | IllegalStateException e) {
+                emittersToRemove.add(emitter);
+            }
+        }
+
+        // Remove disconnected emitters
+        streamEmitters.removeAll(emittersToRemove);
+    }
+}
@@ -0,0 +1,21 @@
+package org.velikanovdev.backend.notification;
+
+import lombok.Getter;
+import org.velikanovdev.backend.entity.Channel;
+
+@Getter
+public enum SseStream {
+    EMAIL_CONVERSATIONS(Channel.EMAIL, "notifications"),
+    FACEBOOK_CONVERSATIONS(Channel.FACEBOOK, "notifications"),
+    WHATSAPP_CONVERSATIONS(Channel.WHATSAPP, "notifications"),
+    WHATSAPP_MESSAGES(Channel.WHATSAPP, "webhook_messages");
+
+    private final Channel channel;
+    // Tag value for the emitter gauge
+    private final String metricName;
+
+    SseStream(Channel channel, String metricName) {
+        this.channel = channel;
+        this.metricName = metricName;
+    }
+}
@@ -0,0 +1,16 @@
+package org.velikanovdev.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.velikanovdev.backend.entity.Attachment;
+import org.velikanovdev.backend.entity.Channel;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AttachmentRepository extends JpaRepository<Attachment, Long> {
+    Optional<Attachment> findByChannelAndSourceId(Channel channel, String sourceId);
+
+    List<Attachment> findAllByChannelAndMessageIdOrderByIdAsc(Channel channel, String messageId);
+}
@@ -0,0 +1,29 @@
+package org.velikanovdev.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.velikanovdev.backend.entity.ClusterEvent;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface ClusterEventRepository extends JpaRepository<ClusterEvent, Long> {
+    @Query("SELECT e.id FROM ClusterEvent e WHERE e.id > :id ORDER BY e.id")
+    List<Long> findIdsGreaterThan(@Param("id") long id);
+
+    List<ClusterEvent> findByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @Query("SELECT COALESCE(MAX(e.id), 0) FROM ClusterEvent e")
+    long findMaxId();
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ClusterEvent e WHERE e.createdAt < :before")
+    int deleteOlderThan(@Param("before") Date before);
+}
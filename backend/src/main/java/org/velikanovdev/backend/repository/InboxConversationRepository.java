@@ -0,0 +1,41 @@
+package org.velikanovdev.backend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.InboxConversation;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface InboxConversationRepository extends JpaRepository<InboxConversation, Long> {
+    Optional<InboxConversation> findByChannelAndConversationKey(Channel channel, String conversationKey);
+
+    // For read-modify-write of the unread count, concurrent writers of one conversation take turns
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM InboxConversation c WHERE c.channel = :channel AND c.conversationKey = :conversationKey")
+    Optional<InboxConversation> findForUpdate(@Param("channel") Channel channel, @Param("conversationKey") String conversationKey);
+
+    // Creates the row unless another transaction already did, instead of failing on uk_inbox_channel_key
+    @Modifying
+    @Query(value = "INSERT INTO inbox_conversations (channel, conversation_key, participant, unread_count) " +
+            "VALUES (:channel, :conversationKey, :participant, 0) ON CONFLICT (channel, conversation_key) DO NOTHING",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("channel") String channel, @Param("conversationKey") String conversationKey,
+                       @Param("participant") String participant);
+
+    List<InboxConversation> findAllByOrderByLastActivityDesc(Pageable pageable);
+
+    List<InboxConversation> findByChannelOrderByLastActivityDesc(Channel channel, Pageable pageable);
+
+    @Modifying
+    @Query("UPDATE InboxConversation c SET c.unreadCount = 0 WHERE c.channel = :channel AND c.conversationKey = :conversationKey")
+    int markAsRead(@Param("channel") Channel channel, @Param("conversationKey") String conversationKey);
+}
@@ -0,0 +1,17 @@
+package org.velikanovdev.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.velikanovdev.backend.entity.MailAccount;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MailAccountRepository extends JpaRepository<MailAccount, Long> {
+    List<MailAccount> findByEnabledTrueOrderByIdAsc();
+
+    List<MailAccount> findAllByOrderByIdAsc();
+
+    Optional<MailAccount> findByAddress(String address);
+}
@@ -0,0 +1,18 @@
+package org.velikanovdev.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.velikanovdev.backend.entity.MessageArchive;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface MessageArchiveRepository extends JpaRepository<MessageArchive, Long> {
+    List<MessageArchive> findAllByOrderByRangeStartAsc();
+
+    @Query("SELECT a FROM MessageArchive a WHERE a.rangeStart < :to AND a.rangeEnd > :from ORDER BY a.rangeStart")
+    List<MessageArchive> findOverlapping(@Param("from") Date from, @Param("to") Date to);
+}
@@ -0,0 +1,38 @@
+package org.velikanovdev.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.velikanovdev.backend.dto.SearchHit;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.SearchDocument;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SearchDocumentRepository extends JpaRepository<SearchDocument, Long> {
+    @Query("SELECT d.externalId FROM SearchDocument d WHERE d.channel = :channel AND d.externalId IN :externalIds")
+    List<String> findExistingExternalIds(@Param("channel") Channel channel, @Param("externalIds") Collection<String> externalIds);
+
+    // The to_tsvector expression must match idx_search_documents_body_fts in db/migration/V1__baseline.sql so the GIN index is used.
+    // Ranking and limiting happen in the inner query so ts_headline only runs for the returned page.
+    @Query(value = "SELECT r.channel AS channel, r.conversation_key AS conversationKey, r.external_id AS externalId, "
+            + "r.participant AS participant, r.sent_date AS sentDate, r.rank AS rank, "
+            + "ts_headline('english', r.body, websearch_to_tsquery('english', :query), "
+            + "'StartSel=<mark>, StopSel=</mark>, MaxFragments=2, MaxWords=20, MinWords=5') AS highlight "
+            + "FROM (SELECT d.channel, d.conversation_key, d.external_id, d.participant, d.sent_date, d.body, "
+            + "ts_rank(to_tsvector('english', coalesce(d.body, '')), websearch_to_tsquery('english', :query)) AS rank "
+            + "FROM search_documents d "
+            + "WHERE to_tsvector('english', coalesce(d.body, '')) @@ websearch_to_tsquery('english', :query) "
+            + "AND (CAST(:channel AS varchar) IS NULL OR d.channel = CAST(:channel AS varchar)) "
+            + "ORDER BY rank DESC, d.sent_date DESC "
+            + "LIMIT :limit OFFSET :offset) r "
+            + "ORDER BY r.rank DESC, r.sent_date DESC",
+            nativeQuery = true)
+    List<SearchHit> search(@Param("query") String query,
+                           @Param("channel") String channel,
+                           @Param("limit") int limit,
+                           @Param("offset") int offset);
+}
@@ -1,22 +1,69 @@
 package org.velikanovdev.backend.repository;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.velikanovdev.backend.dto.WhatsAppMessageView;
+import org.velikanovdev.backend.entity.WhatsAppConversation;
 import org.velikanovdev.backend.entity.WhatsAppMessage;
 
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Stream;
 
+// msgs is partitioned by month on sent_date, every query here is bounded by it so only hot partitions are read
 @Repository
 public interface WhatsAppMessageRepository extends JpaRepository<WhatsAppMessage, Long> {
+    String FETCH_SIZE = "500";
+
     List<WhatsAppMessage> findBySenderAndSentDateAfter(String sender, Date sentDate);
-    List<WhatsAppMessage> findBySenderAndUnreadTrue(String sender);
 
-    @Query("SELECT COUNT(m) FROM WhatsAppMessage m WHERE m.sender = :sender AND m.unread = true")
-    long countUnreadMessagesBySender(@Param("sender") String sender);
+    // With sentDate the lookup only touches the partition the message would be in
+    boolean existsByMessageIdAndSentDate(String messageId, Date sentDate);
 
-    List<WhatsAppMessage> findByUnreadTrue();
-}
+    @Query("SELECT new org.velikanovdev.backend.entity.WhatsAppConversation(m.sender, MAX(m.sentDate), " +
+            "SUM(CASE WHEN m.unread = true THEN 1L ELSE 0L END)) " +
+            "FROM WhatsAppMessage m WHERE m.sentDate >= :since AND m.sender <> :ownNumber GROUP BY m.sender")
+    List<WhatsAppConversation> findConversations(@Param("ownNumber") String ownNumber, @Param("since") Date since);
+
+    @Query("SELECT COUNT(m) FROM WhatsAppMessage m WHERE m.sender = :sender AND m.unread = true AND m.sentDate >= :since")
+    long countUnreadMessagesBySender(@Param("sender") String sender, @Param("since") Date since);
+
+    @Modifying
+    @Query("UPDATE WhatsAppMessage m SET m.unread = false WHERE m.sender = :sender AND m.unread = true AND m.sentDate >= :since")
+    int markAsRead(@Param("sender") String sender, @Param("since") Date since);
 
+    // Streaming variants for the list endpoints, read through a cursor in FETCH_SIZE chunks
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query("SELECT new org.velikanovdev.backend.entity.WhatsAppConversation(m.sender, MAX(m.sentDate), " +
+            "SUM(CASE WHEN m.unread = true THEN 1L ELSE 0L END)) " +
+            "FROM WhatsAppMessage m WHERE m.sentDate >= :since AND m.sender <> :ownNumber GROUP BY m.sender")
+    Stream<WhatsAppConversation> streamConversations(@Param("ownNumber") String ownNumber, @Param("since") Date since);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query("SELECT new org.velikanovdev.backend.dto.WhatsAppMessageView(m.id, m.sender, m.recipient, m.message, m.messageId, m.sentDate, m.unread, m.deliveryStatus) " +
+            "FROM WhatsAppMessage m WHERE m.sentDate >= :since AND " +
+            "((m.sender = :contact AND m.recipient = :ownNumber) OR (m.sender = :ownNumber AND m.recipient = :contact)) " +
+            "ORDER BY m.sentDate")
+    Stream<WhatsAppMessageView> streamConversationMessages(@Param("contact") String contact, @Param("ownNumber") String ownNumber,
+                                                           @Param("since") Date since);
+
+    // Newest first, the page size bounds how many
+    @Query("SELECT new org.velikanovdev.backend.dto.WhatsAppMessageView(m.id, m.sender, m.recipient, m.message, m.messageId, m.sentDate, m.unread, m.deliveryStatus) " +
+            "FROM WhatsAppMessage m WHERE m.sentDate >= :since AND " +
+            "((m.sender = :contact AND m.recipient = :ownNumber) OR (m.sender = :ownNumber AND m.recipient = :contact)) " +
+            "ORDER BY m.sentDate DESC")
+    List<WhatsAppMessageView> findNewestConversationMessages(@Param("contact") String contact, @Param("ownNumber") String ownNumber,
+                                                             @Param("since") Date since, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = FETCH_SIZE))
+    @Query("SELECT new org.velikanovdev.backend.dto.WhatsAppMessageView(m.id, m.sender, m.recipient, m.message, m.messageId, m.sentDate, m.unread, m.deliveryStatus) " +
+            "FROM WhatsAppMessage m WHERE m.unread = true AND m.sentDate >= :since ORDER BY m.sentDate")
+    Stream<WhatsAppMessageView> streamUnreadMessages(@Param("since") Date since);
+}
@@ -0,0 +1,111 @@
+package org.velikanovdev.backend.retention;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.dto.WhatsAppMessageView;
+import org.velikanovdev.backend.entity.MessageArchive;
+import org.velikanovdev.backend.repository.MessageArchiveRepository;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+
+// Serves archived months straight from their gzip files, nothing is loaded back into Postgres
+@Component
+public class ArchivedMessageReader {
+    private final MessageArchiveRepository archiveRepository;
+
+    @Autowired
+    public ArchivedMessageReader(MessageArchiveRepository archiveRepository) {
+        this.archiveRepository = archiveRepository;
+    }
+
+    public List<MessageArchive> getArchives() {
+        return archiveRepository.findAllByOrderByRangeStartAsc();
+    }
+
+    // Streams every archive overlapping [from, to) and hands over the matching rows one by one, in sent_date order
+    public void readMessages(Date from, Date to, Predicate<WhatsAppMessageView> filter,
+                             Consumer<WhatsAppMessageView> consumer) throws IOException {
+        for (MessageArchive archive : archiveRepository.findOverlapping(from, to)) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(Paths.get(archive.getPath())), 64 * 1024),
+                    StandardCharsets.UTF_8))) {
+                List<String> record;
+                while ((record = readCsvRecord(reader)) != null) {
+                    WhatsAppMessageView message = toMessage(record);
+                    Date sentDate = message.getSentDate();
+                    if (!sentDate.before(from) && sentDate.before(to) && filter.test(message)) {
+                        consumer.accept(message);
+                    }
+                }
+            }
+        }
+    }
+
+    // Columns in the order MessageRetentionJob copies them out
+    private static WhatsAppMessageView toMessage(List<String> record) {
+        return new WhatsAppMessageView(
+                Long.parseLong(record.get(0)),
+                record.get(1),
+                record.get(2),
+                record.get(3),
+                record.get(4),
+                new Date(Timestamp.valueOf(record.get(5)).getTime()),
+                "t".equals(record.get(6)),
+                null
+        );
+    }
+
+    // One record of Postgres CSV output. Unquoted empty fields are NULL, quoted ones may span lines.
+    static List<String> readCsvRecord(BufferedReader reader) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuotes = false;
+        while (true) {
+            if (inQuotes) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        inQuotes = false;
+                        reader.reset();
+                    }
+                } else if (c == -1) {
+                    throw new EOFException("Unterminated quoted field in archive");
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                inQuotes = true;
+                quoted = true;
+            } else if (c == ',' || c == '\n' || c == -1) {
+                fields.add(quoted || field.length() > 0 ? field.toString() : null);
+                field.setLength(0);
+                quoted = false;
+                if (c != ',') {
+                    return fields;
+                }
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+}
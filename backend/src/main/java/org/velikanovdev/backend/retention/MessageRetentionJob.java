@@ -0,0 +1,166 @@
+package org.velikanovdev.backend.retention;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.cache.WhatsAppHotCache;
+import org.velikanovdev.backend.cluster.PollerLeadership;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.web.ChannelVersions;
+
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+// Keeps msgs partitions ahead of time and moves months older than the hot window into gzip CSV files
+@Component
+public class MessageRetentionJob {
+    private static final Pattern PARTITION_NAME = Pattern.compile("msgs_(\\d{4})_(\\d{2})");
+    private static final String ARCHIVE_COLUMNS = "id, sender, recipient, message, message_id, sent_date, unread";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final RetentionPolicy retentionPolicy;
+    private final PollerLeadership pollerLeadership;
+    private final ChannelVersions channelVersions;
+    private final WhatsAppHotCache hotCache;
+
+    @Value("${omnichannel.retention.archiveDir:archive}")
+    private String archiveDir;
+
+    @Value("${omnichannel.retention.monthsAhead:3}")
+    private int monthsAhead;
+
+    @Autowired
+    public MessageRetentionJob(DataSource dataSource, JdbcTemplate jdbcTemplate, RetentionPolicy retentionPolicy,
+                               PollerLeadership pollerLeadership, ChannelVersions channelVersions,
+                               WhatsAppHotCache hotCache) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.retentionPolicy = retentionPolicy;
+        this.pollerLeadership = pollerLeadership;
+        this.channelVersions = channelVersions;
+        this.hotCache = hotCache;
+    }
+
+    // Shortly after startup and then once a day
+    @Scheduled(initialDelay = 60000, fixedDelay = 86400000)
+    public void maintainPartitions() {
+        // Only one node in the cluster creates or archives partitions
+        if (!pollerLeadership.isLeader("msgs-retention")) {
+            return;
+        }
+
+        try {
+            createUpcomingPartitions();
+            if (!archiveColdPartitions().isEmpty()) {
+                // Conversation lists no longer include the archived months
+                channelVersions.bump(Channel.WHATSAPP);
+                hotCache.invalidateAll();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void createUpcomingPartitions() {
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            jdbcTemplate.queryForObject("SELECT create_msgs_partition(?)", String.class,
+                    java.sql.Date.valueOf(current.plusMonths(i).atDay(1)));
+        }
+    }
+
+    public List<String> archiveColdPartitions() throws SQLException, IOException {
+        YearMonth firstHotMonth = retentionPolicy.firstHotMonth();
+        List<String> archived = new ArrayList<>();
+        for (String partition : listPartitions()) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (!matcher.matches()) {
+                continue;
+            }
+            YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            if (month.isBefore(firstHotMonth)) {
+                archive(partition, month);
+                archived.add(partition);
+            }
+        }
+        return archived;
+    }
+
+    private List<String> listPartitions() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = 'msgs'::regclass ORDER BY c.relname", String.class);
+    }
+
+    // Everything happens in one transaction holding a write lock on the partition: a failed file write
+    // rolls back and leaves the month in Postgres, and no row can slip in between the COPY and the DROP.
+    private void archive(String partition, YearMonth month) throws SQLException, IOException {
+        Path target = Paths.get(archiveDir).resolve(partition + ".csv.gz");
+        Path temporary = target.resolveSibling(partition + ".csv.gz.tmp");
+        Files.createDirectories(target.toAbsolutePath().getParent());
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LOCK TABLE " + partition + " IN SHARE MODE");
+                }
+
+                long rowCount;
+                CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+                try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)), 64 * 1024)) {
+                    rowCount = copyManager.copyOut("COPY (SELECT " + ARCHIVE_COLUMNS + " FROM " + partition +
+                            " ORDER BY sent_date) TO STDOUT WITH (FORMAT csv)", out);
+                }
+                // The rows are about to be dropped, make sure the file survives a crash first
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "INSERT INTO msg_archives (partition_name, range_start, range_end, row_count, path, size_bytes, archived_at) " +
+                                "VALUES (?, ?, ?, ?, ?, ?, now())")) {
+                    statement.setString(1, partition);
+                    statement.setTimestamp(2, new Timestamp(RetentionPolicy.startOf(month).getTime()));
+                    statement.setTimestamp(3, new Timestamp(RetentionPolicy.startOf(month.plusMonths(1)).getTime()));
+                    statement.setLong(4, rowCount);
+                    statement.setString(5, target.toAbsolutePath().toString());
+                    statement.setLong(6, Files.size(target));
+                    statement.executeUpdate();
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ALTER TABLE msgs DETACH PARTITION " + partition);
+                    statement.execute("DROP TABLE " + partition);
+                }
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                Files.deleteIfExists(temporary);
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+}
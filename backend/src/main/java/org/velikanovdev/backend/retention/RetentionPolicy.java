@@ -0,0 +1,28 @@
+package org.velikanovdev.backend.retention;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+
+// Decides which months of msgs are hot. Queries bound sent_date by hotSince() so Postgres prunes
+// everything older, and MessageRetentionJob archives the months before it.
+@Component
+public class RetentionPolicy {
+    @Value("${omnichannel.retention.hotMonths:6}")
+    private int hotMonths;
+
+    public YearMonth firstHotMonth() {
+        return YearMonth.now().minusMonths(hotMonths);
+    }
+
+    public Date hotSince() {
+        return startOf(firstHotMonth());
+    }
+
+    public static Date startOf(YearMonth month) {
+        return Date.from(month.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,20 @@
+package org.velikanovdev.backend.service;
+
+import org.velikanovdev.backend.attachment.AttachmentContent;
+import org.velikanovdev.backend.entity.Attachment;
+import org.velikanovdev.backend.entity.Channel;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+public interface AttachmentService {
+    Attachment ingest(Channel channel, String messageId, String sourceId, String fileName, String contentType,
+                      AttachmentContent content) throws Exception;
+
+    List<Attachment> getAttachments(Channel channel, String messageId);
+
+    Optional<Attachment> getAttachment(Long id);
+
+    Path getContentPath(Attachment attachment);
+}
@@ -0,0 +1,75 @@
+package org.velikanovdev.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.velikanovdev.backend.attachment.AttachmentContent;
+import org.velikanovdev.backend.attachment.AttachmentStore;
+import org.velikanovdev.backend.attachment.StoredBlob;
+import org.velikanovdev.backend.entity.Attachment;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.repository.AttachmentRepository;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public class AttachmentServiceImpl implements AttachmentService {
+    private final AttachmentRepository attachmentRepository;
+    private final AttachmentStore attachmentStore;
+
+    @Autowired
+    public AttachmentServiceImpl(AttachmentRepository attachmentRepository, AttachmentStore attachmentStore) {
+        this.attachmentRepository = attachmentRepository;
+        this.attachmentStore = attachmentStore;
+    }
+
+    // Pollers see the same parts on every run, the upstream stream is only opened for parts not stored yet
+    @Override
+    public Attachment ingest(Channel channel, String messageId, String sourceId, String fileName, String contentType,
+                             AttachmentContent content) throws Exception {
+        Optional<Attachment> existing = attachmentRepository.findByChannelAndSourceId(channel, sourceId);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+
+        StoredBlob blob;
+        try (InputStream in = content.open()) {
+            blob = attachmentStore.write(in);
+        }
+
+        Attachment attachment = new Attachment();
+        attachment.setChannel(channel);
+        attachment.setMessageId(messageId);
+        attachment.setSourceId(sourceId);
+        attachment.setFileName(fileName);
+        attachment.setContentType(contentType);
+        attachment.setSize(blob.getSize());
+        attachment.setSha256(blob.getSha256());
+        attachment.setCreatedAt(new Date());
+        try {
+            return attachmentRepository.save(attachment);
+        } catch (DataIntegrityViolationException e) {
+            // Stored concurrently by another node, the blob is shared so nothing is left behind
+            return attachmentRepository.findByChannelAndSourceId(channel, sourceId).orElseThrow(() -> e);
+        }
+    }
+
+    @Override
+    public List<Attachment> getAttachments(Channel channel, String messageId) {
+        return attachmentRepository.findAllByChannelAndMessageIdOrderByIdAsc(channel, messageId);
+    }
+
+    @Override
+    public Optional<Attachment> getAttachment(Long id) {
+        return attachmentRepository.findById(id);
+    }
+
+    @Override
+    public Path getContentPath(Attachment attachment) {
+        return attachmentStore.path(attachment.getSha256());
+    }
+}
@@ -1,53 +1,133 @@
 package org.velikanovdev.backend.service;
 
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.BODY;
 import jakarta.mail.*;
+import jakarta.mail.internet.ContentType;
 import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.MimePart;
+import jakarta.mail.internet.MimeUtility;
+import jakarta.mail.internet.ParseException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.velikanovdev.backend.concurrent.FanOut;
+import org.velikanovdev.backend.concurrent.UpstreamExecutor;
+import org.velikanovdev.backend.entity.Channel;
 import org.velikanovdev.backend.entity.EmailConversation;
 import org.velikanovdev.backend.entity.ReceivedEmail;
-
+import org.velikanovdev.backend.ids.IdInternTable;
+import org.velikanovdev.backend.ids.LongLongMap;
+import org.velikanovdev.backend.mail.EmailPreviewCache;
+import org.velikanovdev.backend.mail.HtmlTextExtractor;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.tracing.StageTracer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class EmailReceiverService {
+    // A message whose preview takes this long to fetch and decode gets a span of its own in the fetch trace
+    private static final long SLOW_PARSE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ChannelMetrics channelMetrics;
+    private final AttachmentService attachmentService;
+    private final UpstreamExecutor upstreamExecutor;
+    private final StageTracer stageTracer;
+    private final EmailPreviewCache previewCache;
+
+    // Gmail specific default, adjust for other providers
+    @Value("${email.receiver.sentFolder:[Gmail]/Sent Mail}")
+    private String sentFolder;
+
+    // Both folders have to be read within this, otherwise the sync fails and is retried
+    @Value("${email.receiver.fetchTimeout:2m}")
+    private Duration fetchTimeout;
+
+    // Text kept from an HTML part, the extractor stops reading the part there. Initialized for instances
+    // created outside Spring, e.g. by the benchmarks
+    @Value("${email.receiver.htmlTextLimit:50000}")
+    private int htmlTextLimit = 50000;
+
+    // Bytes of the text part fetched for a preview, enough for the snippet after quotes and markup are stripped
+    @Value("${email.receiver.previewBytes:1024}")
+    private int previewBytes;
+
+    @Autowired
+    public EmailReceiverService(ChannelMetrics channelMetrics, AttachmentService attachmentService,
+                                UpstreamExecutor upstreamExecutor, StageTracer stageTracer,
+                                EmailPreviewCache previewCache) {
+        this.channelMetrics = channelMetrics;
+        this.attachmentService = attachmentService;
+        this.upstreamExecutor = upstreamExecutor;
+        this.stageTracer = stageTracer;
+        this.previewCache = previewCache;
+    }
 
-    public List<EmailConversation> fetchEmailConversations(String host, String storeType, String user, String password) {
-        try {
-            Properties properties = new Properties();
-            properties.put("mail.store.protocol", storeType);
-            properties.put("mail." + storeType + ".host", host);
-            properties.put("mail." + storeType + ".port", "993");
-            properties.put("mail." + storeType + ".starttls.enable", "true");
-
-            Session emailSession = Session.getDefaultInstance(properties);
-
-            Store store = emailSession.getStore(storeType);
-            store.connect(host, user, password);
-
-            List<ReceivedEmail> allReceivedEmails = new ArrayList<>();
-            // Fetch from Inbox
-            fetchMessagesFromFolder(store, "INBOX", allReceivedEmails);
-
-            // Fetch from Sent Items
-            fetchMessagesFromFolder(store, "[Gmail]/Sent Mail", allReceivedEmails); // Gmail specific, adjust for other providers
-
-            store.close();
-
-            // Group emails into conversations
-            return groupEmailsByConversation(allReceivedEmails);
-
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Reads over an already connected store, which is left open so the next sync can reuse it. Emails come
+    // with a preview and without a body, fetchBodies loads those when they're needed.
+    public List<EmailConversation> fetchEmailConversations(Store store, String accountSentFolder) throws MessagingException, IOException {
+        String sentFolderName = accountSentFolder != null ? accountSentFolder : sentFolder;
+
+        // Inbox and Sent Items are read side by side, the store opens a separate IMAP connection per folder
+        List<ReceivedEmail> allReceivedEmails = new ArrayList<>();
+        try (FanOut<List<ReceivedEmail>> fanOut = upstreamExecutor.fanOut(fetchTimeout)) {
+            fanOut.fork(() -> stageTracer.inSpan("imap.fetch", () -> channelMetrics.recordUpstream("imap", "fetch_inbox",
+                    () -> fetchMessagesFromFolder(store, "INBOX"))));
+            fanOut.fork(() -> stageTracer.inSpan("imap.fetch", () -> channelMetrics.recordUpstream("imap", "fetch_sent",
+                    () -> fetchMessagesFromFolder(store, sentFolderName))));
+            fanOut.join().forEach(allReceivedEmails::addAll);
+        } catch (ExecutionException e) {
+            FanOut.rethrowUnchecked(e);
+            if (e.getCause() instanceof MessagingException messagingException) {
+                throw messagingException;
+            }
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new MessagingException("Fetching mail failed", (Exception) e.getCause());
+        } catch (TimeoutException e) {
+            throw new MessagingException("Fetching mail took longer than " + fetchTimeout, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Fetching mail was interrupted", e);
         }
-        return Collections.emptyList();
+
+        // Group emails into conversations
+        return stageTracer.inSpan("email.thread", () -> {
+            List<EmailConversation> conversations = groupEmailsByConversation(allReceivedEmails);
+            StageTracer.annotate("email.messages", allReceivedEmails.size());
+            StageTracer.annotate("email.conversations", conversations.size());
+            return conversations;
+        });
     }
 
-    private void fetchMessagesFromFolder(Store store, String folderName, List<ReceivedEmail> receivedEmails) throws MessagingException, IOException {
+    private List<ReceivedEmail> fetchMessagesFromFolder(Store store, String folderName) throws MessagingException, IOException {
+        List<ReceivedEmail> receivedEmails = new ArrayList<>();
         Folder folder = store.getFolder(folderName);
+        if (!folder.exists()) {
+            // Not every server has the sent folder, don't lose the inbox because of it
+            return receivedEmails;
+        }
         folder.open(Folder.READ_ONLY);
 
         Message[] messages = folder.getMessages();
+        folder.fetch(messages, syncProfile());
+        // Only messages seen for the first time have the start of their text part fetched, this counts that
+        long parseNanos = 0;
+        int previewsFetched = 0;
         for (Message message : messages) {
             String[] references = message.getHeader("References");
             String referencesHeader = (references != null && references.length > 0) ? String.join(" ", references) : null;
@@ -57,21 +137,256 @@ public class EmailReceiverService {
 
             String fromEmail = getEmailAddress(message.getFrom()[0].toString());
             String toEmail = getEmailAddress(message.getAllRecipients()[0].toString());
+            String messageId = message.getHeader("Message-ID")[0];
+
+            // A cached preview means the message was ingested, attachments included; later syncs don't walk
+            // its MIME structure again
+            String preview = previewCache.get(messageId);
+            if (preview == null) {
+                boolean attachmentsStored = !message.isMimeType("multipart/*")
+                        || storeAttachments(messageId, (Multipart) message.getContent(), "");
+                long parseStartedAt = System.currentTimeMillis();
+                long parseStart = System.nanoTime();
+                preview = fetchPreview(folder, message);
+                long messageParseNanos = System.nanoTime() - parseStart;
+                parseNanos += messageParseNanos;
+                previewsFetched++;
+                if (messageParseNanos >= SLOW_PARSE_NANOS) {
+                    stageTracer.recordStage("mime.parse", parseStartedAt, messageParseNanos, "email.message_id", messageId);
+                }
+                // Not cached while an attachment is missing, so the next sync tries it again
+                if (attachmentsStored) {
+                    previewCache.put(messageId, preview);
+                }
+            }
 
             receivedEmails.add(new ReceivedEmail(
                     fromEmail,
                     message.getSubject(),
-                    getTextFromMessage(message),
-                    message.getHeader("Message-ID")[0],
+                    null,
+                    messageId,
                     message.getHeader("In-Reply-To") != null ? message.getHeader("In-Reply-To")[0] : null,
                     referencesHeader,
                     message.getSentDate(),
                     toEmail,
-                    isRead
+                    isRead,
+                    preview,
+                    folderName,
+                    folder instanceof UIDFolder uidFolder ? uidFolder.getUID(message) : -1
             ));
         }
 
         folder.close(false);
+        StageTracer.annotate("imap.folder", folderName);
+        StageTracer.annotate("imap.messages", messages.length);
+        StageTracer.annotate("imap.previews", previewsFetched);
+        StageTracer.annotate("mime.parse_ms", TimeUnit.NANOSECONDS.toMillis(parseNanos));
+        return receivedEmails;
+    }
+
+    // Everything a sync reads besides the text: envelope, flags, UID, the MIME structure and the threading
+    // headers, requested for the whole folder in one FETCH instead of a round trip per message and item
+    private static FetchProfile syncProfile() {
+        FetchProfile profile = new FetchProfile();
+        profile.add(FetchProfile.Item.ENVELOPE);
+        profile.add(FetchProfile.Item.FLAGS);
+        profile.add(FetchProfile.Item.CONTENT_INFO);
+        profile.add(UIDFolder.FetchProfileItem.UID);
+        profile.add("Message-ID");
+        profile.add("In-Reply-To");
+        profile.add("References");
+        return profile;
+    }
+
+    // Full text of the given emails by Message-ID, for opening a thread and for indexing what search hasn't
+    // seen yet. Messages are looked up by UID, on stores without UIDs by their Message-ID header.
+    public Map<String, String> fetchBodies(Store store, List<ReceivedEmail> emails) throws MessagingException {
+        Map<String, List<ReceivedEmail>> byFolder = new LinkedHashMap<>();
+        for (ReceivedEmail email : emails) {
+            if (email.getFolder() != null) {
+                byFolder.computeIfAbsent(email.getFolder(), folderName -> new ArrayList<>()).add(email);
+            }
+        }
+
+        Map<String, String> bodies = new HashMap<>();
+        for (Map.Entry<String, List<ReceivedEmail>> entry : byFolder.entrySet()) {
+            Folder folder = store.getFolder(entry.getKey());
+            if (!folder.exists()) {
+                continue;
+            }
+            folder.open(Folder.READ_ONLY);
+            try {
+                for (Message message : findMessages(folder, entry.getValue())) {
+                    String[] messageId = message.getHeader("Message-ID");
+                    if (messageId == null) {
+                        continue;
+                    }
+                    try {
+                        bodies.put(messageId[0], getTextFromMessage(message));
+                    } catch (IOException e) {
+                        // One body that can't be decoded shouldn't cost the others, it's left out of the result
+                        e.printStackTrace();
+                    }
+                }
+            } finally {
+                folder.close(false);
+            }
+        }
+        return bodies;
+    }
+
+    private static List<Message> findMessages(Folder folder, List<ReceivedEmail> emails) throws MessagingException {
+        FetchProfile messageIds = new FetchProfile();
+        messageIds.add("Message-ID");
+        List<Message> found = new ArrayList<>();
+        if (folder instanceof UIDFolder uidFolder) {
+            long[] uids = emails.stream().mapToLong(ReceivedEmail::getUid).toArray();
+            for (Message message : uidFolder.getMessagesByUID(uids)) {
+                // Null for messages deleted since the sync
+                if (message != null) {
+                    found.add(message);
+                }
+            }
+            folder.fetch(found.toArray(new Message[0]), messageIds);
+            return found;
+        }
+
+        Set<String> wanted = new HashSet<>();
+        emails.forEach(email -> wanted.add(email.getMessageId()));
+        Message[] messages = folder.getMessages();
+        folder.fetch(messages, messageIds);
+        for (Message message : messages) {
+            String[] messageId = message.getHeader("Message-ID");
+            if (messageId != null && wanted.contains(messageId[0])) {
+                found.add(message);
+            }
+        }
+        return found;
+    }
+
+    // The start of the message's text, cleaned like a body and cut to the inbox preview length. Null if it
+    // couldn't be read, the next sync tries again.
+    private String fetchPreview(Folder folder, Message message) {
+        try {
+            TextPart textPart = findTextPart(message);
+            if (textPart == null) {
+                return "";
+            }
+            String text = readStart(folder, message, textPart);
+            if (textPart.part.isMimeType("text/html")) {
+                text = HtmlTextExtractor.extract(new StringReader(text), previewBytes);
+            }
+            String preview = InboxServiceImpl.toPreview(cleanEmailBody(text));
+            return preview != null ? preview : "";
+        } catch (MessagingException | IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Picks the part getTextFromMessage would read first: plain text over HTML, attachments never
+    private static TextPart findTextPart(Message message) throws MessagingException, IOException {
+        if (message.isMimeType("text/plain") || message.isMimeType("text/html")) {
+            return new TextPart(message, "TEXT");
+        }
+        if (message.isMimeType("multipart/*")) {
+            return findTextPart((Multipart) message.getContent(), "");
+        }
+        return null;
+    }
+
+    private static TextPart findTextPart(Multipart multipart, String prefix) throws MessagingException, IOException {
+        TextPart html = null;
+        for (int i = 0; i < multipart.getCount(); i++) {
+            BodyPart part = multipart.getBodyPart(i);
+            String section = prefix + (i + 1);
+            if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition())) {
+                continue;
+            }
+            if (part.isMimeType("text/plain")) {
+                return new TextPart(part, section);
+            }
+            if (html != null) {
+                continue;
+            }
+            if (part.isMimeType("text/html")) {
+                html = new TextPart(part, section);
+            } else if (part.isMimeType("multipart/*")) {
+                TextPart nested = findTextPart((Multipart) part.getContent(), section + ".");
+                if (nested != null) {
+                    return nested;
+                }
+            }
+        }
+        return html;
+    }
+
+    // Over IMAP only the first previewBytes of the part are requested, as BODY.PEEK[section]<0.previewBytes>,
+    // and decoded here. That needs the com.sun.mail provider the pom declares; other stores decode the part as
+    // a stream and reading stops after previewBytes.
+    private String readStart(Folder folder, Message message, TextPart textPart) throws MessagingException, IOException {
+        InputStream decoded;
+        if (folder instanceof IMAPFolder imapFolder && textPart.part instanceof MimePart mimePart) {
+            BODY body = (BODY) channelMetrics.recordUpstream("imap", "fetch_preview", () -> imapFolder.doCommand(
+                    protocol -> protocol.peekBody(message.getMessageNumber(), textPart.section, 0, previewBytes)));
+            ByteArrayInputStream raw = body != null ? body.getByteArrayInputStream() : null;
+            if (raw == null) {
+                return "";
+            }
+            String encoding = mimePart.getEncoding();
+            decoded = encoding != null ? MimeUtility.decode(raw, encoding) : raw;
+        } else {
+            decoded = textPart.part.getInputStream();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(previewBytes);
+        try (InputStream in = decoded) {
+            int b;
+            while (bytes.size() < previewBytes && (b = in.read()) != -1) {
+                bytes.write(b);
+            }
+        } catch (IOException e) {
+            // Base64 cut off mid-group, what was decoded up to there is enough
+        }
+        String text = bytes.toString(charsetOf(textPart.part));
+        // The cut may also split a multi-byte character
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\uFFFD') {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    // Over IMAP the multipart comes from BODYSTRUCTURE and each part's input stream fetches its body in
+    // chunks from the socket, so attachments go to disk without ever being loaded whole. Parts are keyed by
+    // their position in the MIME tree, which is stable for a given Message-ID. False if a part couldn't be stored.
+    private boolean storeAttachments(String messageId, Multipart multipart, String prefix) throws MessagingException, IOException {
+        boolean stored = true;
+        for (int i = 0; i < multipart.getCount(); i++) {
+            BodyPart part = multipart.getBodyPart(i);
+            String partPath = prefix + (i + 1);
+            if (part.isMimeType("multipart/*")) {
+                stored &= storeAttachments(messageId, (Multipart) part.getContent(), partPath + ".");
+            } else if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition()) || part.getFileName() != null) {
+                try {
+                    attachmentService.ingest(Channel.EMAIL, messageId, messageId + "#" + partPath, part.getFileName(),
+                            baseContentType(part.getContentType()), part::getInputStream);
+                } catch (Exception e) {
+                    // One broken part shouldn't stop the mailbox sync, it's retried on the next run
+                    e.printStackTrace();
+                    stored = false;
+                }
+            }
+        }
+        return stored;
+    }
+
+    private static String baseContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int parameters = contentType.indexOf(';');
+        return (parameters >= 0 ? contentType.substring(0, parameters) : contentType).trim().toLowerCase(Locale.ROOT);
     }
 
     private String getEmailAddress(String fullMessageAddress) {
@@ -87,29 +402,44 @@ public class EmailReceiverService {
         return emailAddress;
     }
 
-    private List<EmailConversation> groupEmailsByConversation(List<ReceivedEmail> receivedEmails) {
-        Map<String, List<ReceivedEmail>> conversationMap = new HashMap<>();
-        Map<String, String> messageIdToThreadKey = new HashMap<>();
+    // Package-private, together with the MIME helpers below, so the benchmarks module can exercise them.
+    // Threads are keyed by Message-ID handles, References are resolved token by token without substrings.
+    // The handles only have to hold within one batch, so the table is the call's own and goes away with it.
+    List<EmailConversation> groupEmailsByConversation(List<ReceivedEmail> receivedEmails) {
+        IdInternTable messageIds = new IdInternTable(receivedEmails.size());
+        // Thread root handle of each Message-ID so far, and the conversation each root started
+        LongLongMap threadRoots = new LongLongMap(receivedEmails.size());
+        LongLongMap conversationIndex = new LongLongMap(receivedEmails.size());
+        List<String> conversationIds = new ArrayList<>();
+        List<List<ReceivedEmail>> threads = new ArrayList<>();
 
         for (ReceivedEmail email : receivedEmails) {
-            // Determine thread key for this email based on References or In-Reply-To
-            String threadKey = determineThreadKey(email, messageIdToThreadKey);
+            long handle = email.getMessageId() != null ? messageIds.intern(email.getMessageId()) : IdInternTable.NO_HANDLE;
+            // Determine thread root for this email based on References or In-Reply-To
+            long root = determineThreadRoot(email, handle, messageIds, threadRoots);
 
-            // Associate the email's Message-ID with the thread key
-            if (email.getMessageId() != null) {
-                messageIdToThreadKey.put(email.getMessageId(), threadKey);
+            // Associate the email's Message-ID with the thread root
+            if (handle != IdInternTable.NO_HANDLE) {
+                threadRoots.put(handle, root);
             }
 
-            // Add the email to the correct conversation
-            conversationMap.putIfAbsent(threadKey, new ArrayList<>());
-            conversationMap.get(threadKey).add(email);
+            // Add the email to the correct conversation. A new one is always started by its root, whose
+            // Message-ID becomes the conversation id
+            int index = (int) conversationIndex.get(root, -1);
+            if (index < 0) {
+                index = threads.size();
+                conversationIndex.put(root, index);
+                conversationIds.add(email.getMessageId());
+                threads.add(new ArrayList<>());
+            }
+            threads.get(index).add(email);
         }
 
         // Convert the grouped emails into EmailConversation objects
         List<EmailConversation> conversations = new ArrayList<>();
-        for (Map.Entry<String, List<ReceivedEmail>> entry : conversationMap.entrySet()) {
-            String conversationId = entry.getKey();
-            List<ReceivedEmail> emails = entry.getValue();
+        for (int i = 0; i < threads.size(); i++) {
+            String conversationId = conversationIds.get(i);
+            List<ReceivedEmail> emails = threads.get(i);
             long unreadMessages = emails.stream().filter(email -> !email.isRead()).count();
 
             String sender = emails.get(0).getFrom();
@@ -131,24 +461,41 @@ public class EmailReceiverService {
         return conversations;
     }
 
-    private String determineThreadKey(ReceivedEmail email, Map<String, String> messageIdToThreadKey) {
+    private long determineThreadRoot(ReceivedEmail email, long handle, IdInternTable messageIds, LongLongMap threadRoots) {
         // Check the References header first, as it gives the full chain of message IDs
-        if (email.getReferences() != null && !email.getReferences().isEmpty()) {
-            String[] references = email.getReferences().split("\\s+");
-            for (String reference : references) {
-                if (messageIdToThreadKey.containsKey(reference)) {
-                    return messageIdToThreadKey.get(reference);  // Return the existing thread key
+        String references = email.getReferences();
+        if (references != null) {
+            int end = 0;
+            while (true) {
+                int start = end;
+                while (start < references.length() && Character.isWhitespace(references.charAt(start))) {
+                    start++;
+                }
+                if (start == references.length()) {
+                    break;
+                }
+                end = start;
+                while (end < references.length() && !Character.isWhitespace(references.charAt(end))) {
+                    end++;
+                }
+                // Ids that were never interned can't be in this batch either
+                long reference = messageIds.find(references, start, end);
+                if (reference != IdInternTable.NO_HANDLE && threadRoots.containsKey(reference)) {
+                    return threadRoots.get(reference, handle);  // Return the existing thread root
                 }
             }
         }
 
         // If no match in References, check the In-Reply-To header
-        if (email.getInReplyTo() != null && messageIdToThreadKey.containsKey(email.getInReplyTo())) {
-            return messageIdToThreadKey.get(email.getInReplyTo());
+        if (email.getInReplyTo() != null) {
+            long inReplyTo = messageIds.find(email.getInReplyTo());
+            if (inReplyTo != IdInternTable.NO_HANDLE && threadRoots.containsKey(inReplyTo)) {
+                return threadRoots.get(inReplyTo, handle);
+            }
         }
 
-        // If no match in either, use the Message-ID as the thread key
-        return email.getMessageId();
+        // If no match in either, the email is the root of its own thread
+        return handle;
     }
 
     private String getTextFromMessage(Message message) throws MessagingException, IOException {
@@ -162,7 +509,7 @@ public class EmailReceiverService {
         return cleanEmailBody(content);
     }
 
-    private String getTextFromMimeMultipart(MimeMultipart mimeMultipart) throws MessagingException, IOException {
+    String getTextFromMimeMultipart(MimeMultipart mimeMultipart) throws MessagingException, IOException {
         StringBuilder result = new StringBuilder();
         int count = mimeMultipart.getCount();
         for (int i = 0; i < count; i++) {
@@ -171,16 +518,31 @@ public class EmailReceiverService {
                 result.append(bodyPart.getContent());
                 break; // Stop after getting the plain text content
             } else if (bodyPart.isMimeType("text/html")) {
-                String html = (String) bodyPart.getContent();
-                result.append(org.jsoup.Jsoup.parse(html).text());
-            } else if (bodyPart.getContent() instanceof MimeMultipart) {
+                // Streamed from the decoded part, large newsletters are never held in memory as a whole
+                try (Reader html = new InputStreamReader(bodyPart.getInputStream(), charsetOf(bodyPart))) {
+                    result.append(HtmlTextExtractor.extract(html, htmlTextLimit));
+                }
+            } else if (bodyPart.isMimeType("multipart/*")) {
+                // Checked by type, getContent() on an attachment part would download it just to look at it
                 result.append(getTextFromMimeMultipart((MimeMultipart) bodyPart.getContent()));
             }
         }
         return cleanEmailBody(result.toString());
     }
 
-    private String cleanEmailBody(String emailBody) {
+    private static Charset charsetOf(Part part) throws MessagingException {
+        try {
+            String charset = new ContentType(part.getContentType()).getParameter("charset");
+            if (charset != null && Charset.isSupported(MimeUtility.javaCharset(charset))) {
+                return Charset.forName(MimeUtility.javaCharset(charset));
+            }
+        } catch (ParseException | IllegalArgumentException e) {
+            // Broken or unknown charset, read it like Jakarta Mail would
+        }
+        return Charset.forName(MimeUtility.getDefaultJavaCharset());
+    }
+
+    String cleanEmailBody(String emailBody) {
         if (emailBody == null || emailBody.isEmpty()) {
             return emailBody;
         }
@@ -199,4 +561,15 @@ public class EmailReceiverService {
 
         return cleanedBody.toString().trim();
     }
+
+    private static final class TextPart {
+        private final Part part;
+        // IMAP section of the part, "TEXT" for a message that is a single part
+        private final String section;
+
+        private TextPart(Part part, String section) {
+            this.part = part;
+            this.section = section;
+        }
+    }
 }
@@ -4,33 +4,47 @@ import jakarta.mail.*;
 import jakarta.mail.internet.MimeMessage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
 import org.velikanovdev.backend.entity.EmailConversation;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.MailAccount;
 import org.velikanovdev.backend.entity.ReceivedEmail;
+import org.velikanovdev.backend.mail.MailStoreCache;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class EmailSenderService {
     private final JavaMailSender mailSender;
+    private final ChannelMetrics channelMetrics;
+    private final MailStoreCache mailStoreCache;
+    // SMTP senders of accounts that have their own server, built on first reply
+    private final Map<Long, JavaMailSender> accountSenders = new ConcurrentHashMap<>();
     @Value("${omnichannel.email}")
     private String myEmail;
 
     @Autowired
-    public EmailSenderService(JavaMailSender mailSender) {
+    public EmailSenderService(JavaMailSender mailSender, ChannelMetrics channelMetrics, MailStoreCache mailStoreCache) {
         this.mailSender = mailSender;
+        this.channelMetrics = channelMetrics;
+        this.mailStoreCache = mailStoreCache;
     }
 
-    public void replyToEmail(String toEmail, String subject, String body, String messageId) throws MessagingException {
-        MimeMessage mimeMessage = mailSender.createMimeMessage();
+    // account may be null, the reply then goes out from omnichannel.email
+    public void replyToEmail(MailAccount account, String toEmail, String subject, String body, String messageId) throws MessagingException {
+        JavaMailSender sender = senderFor(account);
+        MimeMessage mimeMessage = sender.createMimeMessage();
         MimeMessageHelper helper = new MimeMessageHelper(mimeMessage, true);
 
-        helper.setFrom(myEmail);
+        helper.setFrom(account != null ? account.getAddress() : myEmail);
         helper.setTo(toEmail);
         helper.setSubject(subject);
         helper.setText(body, false);
@@ -41,20 +55,13 @@ public class EmailSenderService {
             mimeMessage.setHeader("References", messageId);
         }
 
-        mailSender.send(mimeMessage);
+        channelMetrics.runUpstream("smtp", "send", () -> sender.send(mimeMessage));
+        channelMetrics.messageSent(Channel.EMAIL);
     }
 
-    public void markConversationAsRead(String host, String storeType, String user, String password, EmailConversation conversation) {
+    public void markConversationAsRead(MailAccount account, EmailConversation conversation) {
         try {
-            Properties properties = new Properties();
-            properties.put("mail.store.protocol", storeType);
-            properties.put("mail." + storeType + ".host", host);
-            properties.put("mail." + storeType + ".port", "993");
-            properties.put("mail." + storeType + ".starttls.enable", "true");
-
-            Session emailSession = Session.getDefaultInstance(properties);
-            Store store = emailSession.getStore(storeType);
-            store.connect(host, user, password);
+            Store store = mailStoreCache.open(account);
 
             Folder folder = store.getFolder("INBOX");
             folder.open(Folder.READ_WRITE);
@@ -68,12 +75,14 @@ public class EmailSenderService {
             }
 
             // Mark each message in the conversation as read
-            for (Message message : messages) {
-                String[] messageIdHeader = message.getHeader("Message-ID");
-                if (messageIdHeader != null && messageIdsToMark.contains(messageIdHeader[0])) {
-                    message.setFlag(Flags.Flag.SEEN, true);
+            channelMetrics.runUpstream("imap", "mark_read", () -> {
+                for (Message message : messages) {
+                    String[] messageIdHeader = message.getHeader("Message-ID");
+                    if (messageIdHeader != null && messageIdsToMark.contains(messageIdHeader[0])) {
+                        message.setFlag(Flags.Flag.SEEN, true);
+                    }
                 }
-            }
+            });
 
             folder.close(false);
             store.close();
@@ -81,4 +90,26 @@ public class EmailSenderService {
             e.printStackTrace();
         }
     }
+
+    public void forgetAccount(Long accountId) {
+        accountSenders.remove(accountId);
+    }
+
+    private JavaMailSender senderFor(MailAccount account) {
+        if (account == null || account.getSmtpHost() == null || account.getSmtpHost().isBlank()) {
+            return mailSender;
+        }
+        return accountSenders.computeIfAbsent(account.getId(), id -> {
+            JavaMailSenderImpl sender = new JavaMailSenderImpl();
+            sender.setHost(account.getSmtpHost());
+            sender.setPort(account.getSmtpPort() != null ? account.getSmtpPort() : 587);
+            sender.setUsername(account.getUsername());
+            sender.setPassword(account.getPassword());
+
+            Properties properties = sender.getJavaMailProperties();
+            properties.put("mail.smtp.auth", "true");
+            properties.put("mail.smtp.starttls.enable", "true");
+            return sender;
+        });
+    }
 }
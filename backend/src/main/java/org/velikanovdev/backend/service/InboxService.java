@@ -0,0 +1,17 @@
+package org.velikanovdev.backend.service;
+
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.InboxConversation;
+
+import java.util.Date;
+import java.util.List;
+
+public interface InboxService {
+    void recordMessage(Channel channel, String conversationKey, String participant, Date sentDate, String text, boolean incoming);
+
+    void syncConversation(Channel channel, String conversationKey, String participant, Date lastActivity, String preview, long unreadCount);
+
+    void markAsRead(Channel channel, String conversationKey);
+
+    List<InboxConversation> getInbox(Channel channel, int page, int size);
+}
@@ -0,0 +1,121 @@
+package org.velikanovdev.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.velikanovdev.backend.datasource.ReadWriteRouting;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.InboxConversation;
+import org.velikanovdev.backend.repository.InboxConversationRepository;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public class InboxServiceImpl implements InboxService {
+    private static final int PREVIEW_LENGTH = 160;
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private final InboxConversationRepository inboxRepository;
+    private final ReadWriteRouting readWriteRouting;
+
+    @Autowired
+    public InboxServiceImpl(InboxConversationRepository inboxRepository, ReadWriteRouting readWriteRouting) {
+        this.inboxRepository = inboxRepository;
+        this.readWriteRouting = readWriteRouting;
+    }
+
+    @Override
+    @Transactional
+    public void recordMessage(Channel channel, String conversationKey, String participant, Date sentDate, String text, boolean incoming) {
+        InboxConversation conversation = findOrCreate(channel, conversationKey, participant, true);
+
+        // Only move the conversation forward in time, webhooks may arrive out of order
+        if (conversation.getLastActivity() == null || sentDate == null || !sentDate.before(conversation.getLastActivity())) {
+            conversation.setLastActivity(sentDate != null ? sentDate : new Date());
+            conversation.setPreview(toPreview(text));
+        }
+
+        if (incoming) {
+            conversation.setUnreadCount(conversation.getUnreadCount() + 1);
+        }
+
+        inboxRepository.save(conversation);
+    }
+
+    @Override
+    @Transactional
+    public void syncConversation(Channel channel, String conversationKey, String participant, Date lastActivity, String preview, long unreadCount) {
+        InboxConversation conversation = findOrCreate(channel, conversationKey, participant, false);
+        String newPreview = toPreview(preview);
+
+        // Pollers resend every conversation each cycle, skip the write when nothing changed
+        if (conversation.getUnreadCount() == unreadCount
+                && sameDate(conversation.getLastActivity(), lastActivity)
+                && sameText(conversation.getPreview(), newPreview)
+                && sameText(conversation.getParticipant(), participant)) {
+            return;
+        }
+
+        conversation.setParticipant(participant);
+        conversation.setLastActivity(lastActivity);
+        conversation.setPreview(newPreview);
+        conversation.setUnreadCount(unreadCount);
+        inboxRepository.save(conversation);
+    }
+
+    @Override
+    @Transactional
+    public void markAsRead(Channel channel, String conversationKey) {
+        inboxRepository.markAsRead(channel, conversationKey);
+        readWriteRouting.stickToPrimary();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<InboxConversation> getInbox(Channel channel, int page, int size) {
+        Pageable pageable = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), MAX_PAGE_SIZE));
+        if (channel == null) {
+            return inboxRepository.findAllByOrderByLastActivityDesc(pageable);
+        }
+        return inboxRepository.findByChannelOrderByLastActivityDesc(channel, pageable);
+    }
+
+    // Two first messages of a conversation can arrive at once, e.g. from the poller and the webhook or on two
+    // nodes. Whichever insert wins, both go on with the same row.
+    private InboxConversation findOrCreate(Channel channel, String conversationKey, String participant, boolean forUpdate) {
+        Optional<InboxConversation> existing = find(channel, conversationKey, forUpdate);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        inboxRepository.insertIfAbsent(channel.name(), conversationKey, participant);
+        return find(channel, conversationKey, forUpdate).orElseThrow();
+    }
+
+    private Optional<InboxConversation> find(Channel channel, String conversationKey, boolean forUpdate) {
+        return forUpdate
+                ? inboxRepository.findForUpdate(channel, conversationKey)
+                : inboxRepository.findByChannelAndConversationKey(channel, conversationKey);
+    }
+
+    public static String toPreview(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        // Collapse whitespace so multi-line bodies render as a single line
+        String preview = text.replaceAll("\\s+", " ").trim();
+        return preview.length() > PREVIEW_LENGTH ? preview.substring(0, PREVIEW_LENGTH) : preview;
+    }
+
+    private static boolean sameDate(Date a, Date b) {
+        return a == null ? b == null : b != null && a.getTime() == b.getTime();
+    }
+
+    private static boolean sameText(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,17 @@
+package org.velikanovdev.backend.service;
+
+import org.velikanovdev.backend.entity.MailAccount;
+
+import java.util.List;
+
+public interface MailAccountService {
+    List<MailAccount> getAccounts();
+
+    List<MailAccount> getEnabledAccounts();
+
+    MailAccount getDefaultAccount();
+
+    MailAccount addAccount(MailAccount account);
+
+    void deleteAccount(Long id);
+}
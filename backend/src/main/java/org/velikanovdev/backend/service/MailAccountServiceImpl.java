@@ -0,0 +1,116 @@
+package org.velikanovdev.backend.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.transaction.Transactional;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.velikanovdev.backend.entity.MailAccount;
+import org.velikanovdev.backend.repository.MailAccountRepository;
+
+import java.util.Date;
+import java.util.List;
+
+@Service
+public class MailAccountServiceImpl implements MailAccountService {
+    private final MailAccountRepository mailAccountRepository;
+
+    // The single mailbox configured before accounts lived in the database
+    @Value("${omnichannel.email:}")
+    private String defaultAddress;
+
+    @Value("${email.receiver.host:}")
+    private String defaultHost;
+
+    @Value("${email.receiver.storeType:imaps}")
+    private String defaultStoreType;
+
+    @Value("${email.receiver.port:993}")
+    private int defaultPort;
+
+    @Value("${email.receiver.sentFolder:[Gmail]/Sent Mail}")
+    private String defaultSentFolder;
+
+    @Value("${email.receiver.username:}")
+    private String defaultUsername;
+
+    @Value("${email.receiver.password:}")
+    private String defaultPassword;
+
+    @Autowired
+    public MailAccountServiceImpl(MailAccountRepository mailAccountRepository) {
+        this.mailAccountRepository = mailAccountRepository;
+    }
+
+    // Keeps existing single-mailbox deployments working without touching the database by hand
+    @PostConstruct
+    public void registerDefaultAccount() {
+        if (defaultUsername.isBlank() || defaultHost.isBlank()) {
+            return;
+        }
+        String address = defaultAddressOrUsername();
+        if (mailAccountRepository.findByAddress(address).isPresent()) {
+            return;
+        }
+
+        MailAccount account = new MailAccount();
+        account.setAddress(address);
+        account.setImapHost(defaultHost);
+        account.setStoreType(defaultStoreType);
+        account.setImapPort(defaultPort);
+        account.setSentFolder(defaultSentFolder);
+        account.setUsername(defaultUsername);
+        account.setPassword(defaultPassword);
+        try {
+            addAccount(account);
+        } catch (DataIntegrityViolationException e) {
+            // Another node registered it first
+        }
+    }
+
+    @Override
+    public List<MailAccount> getAccounts() {
+        return mailAccountRepository.findAllByOrderByIdAsc();
+    }
+
+    @Override
+    public List<MailAccount> getEnabledAccounts() {
+        return mailAccountRepository.findByEnabledTrueOrderByIdAsc();
+    }
+
+    @Override
+    public MailAccount getDefaultAccount() {
+        if (defaultUsername.isBlank()) {
+            return null;
+        }
+        return mailAccountRepository.findByAddress(defaultAddressOrUsername()).orElse(null);
+    }
+
+    @Override
+    @Transactional
+    public MailAccount addAccount(MailAccount account) {
+        account.setId(null);
+        if (account.getStoreType() == null) {
+            account.setStoreType("imaps");
+        }
+        if (account.getImapPort() == null) {
+            account.setImapPort(993);
+        }
+        if (account.getUsername() == null) {
+            account.setUsername(account.getAddress());
+        }
+        account.setCreatedAt(new Date());
+        return mailAccountRepository.save(account);
+    }
+
+    @Override
+    @Transactional
+    public void deleteAccount(Long id) {
+        mailAccountRepository.deleteById(id);
+    }
+
+    private String defaultAddressOrUsername() {
+        return defaultAddress.isBlank() ? defaultUsername : defaultAddress;
+    }
+}
@@ -0,0 +1,21 @@
+package org.velikanovdev.backend.service;
+
+import org.velikanovdev.backend.dto.SearchHit;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.SearchDocument;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+public interface SearchIndexService {
+    void indexMessage(Channel channel, String conversationKey, String externalId, String participant, String body, Date sentDate);
+
+    int indexAll(Channel channel, List<SearchDocument> documents);
+
+    // The ids that have no document yet, so callers only load the text of those
+    Set<String> findUnindexed(Channel channel, Collection<String> externalIds);
+
+    List<SearchHit> search(String query, Channel channel, int page, int size);
+}
@@ -0,0 +1,133 @@
+package org.velikanovdev.backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.velikanovdev.backend.dto.SearchHit;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.SearchDocument;
+import org.velikanovdev.backend.ids.IdInternTable;
+import org.velikanovdev.backend.repository.SearchDocumentRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Service
+public class SearchIndexServiceImpl implements SearchIndexService {
+    private static final int LOOKUP_BATCH_SIZE = 500;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int EXPECTED_IDS = 1 << 14;
+
+    private final SearchDocumentRepository documentRepository;
+
+    // Ids already known to be indexed, so pollers that resend whole histories don't hit the database every
+    // cycle. One off-heap table per channel, ids cost neither Strings nor GC time. Only a cache of the index,
+    // so a table that reaches the bound is swapped for an empty one rather than growing for the life of the JVM
+    private final Map<Channel, IdInternTable> indexedIds = new ConcurrentHashMap<>();
+
+    @Value("${search.indexedIds.maxPerChannel:500000}")
+    private int maxIndexedIdsPerChannel;
+
+    @Autowired
+    public SearchIndexServiceImpl(SearchDocumentRepository documentRepository) {
+        this.documentRepository = documentRepository;
+        for (Channel channel : Channel.values()) {
+            indexedIds.put(channel, new IdInternTable(EXPECTED_IDS));
+        }
+    }
+
+    @Override
+    @Transactional
+    public void indexMessage(Channel channel, String conversationKey, String externalId, String participant, String body, Date sentDate) {
+        indexAll(channel, List.of(new SearchDocument(channel, conversationKey, externalId, participant, body, sentDate)));
+    }
+
+    @Override
+    @Transactional
+    public int indexAll(Channel channel, List<SearchDocument> documents) {
+        // Drop documents we have already seen in this process and duplicates within the batch
+        Map<String, SearchDocument> candidates = new LinkedHashMap<>();
+        for (SearchDocument document : documents) {
+            if (document.getExternalId() == null || document.getBody() == null || document.getBody().isBlank()) {
+                continue;
+            }
+            if (!indexedIds.get(channel).contains(document.getExternalId())) {
+                candidates.putIfAbsent(document.getExternalId(), document);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        removeIndexed(channel, candidates.keySet());
+        documentRepository.saveAll(candidates.values());
+        markIndexedAfterCommit(channel, candidates.keySet());
+        return candidates.size();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Set<String> findUnindexed(Channel channel, Collection<String> externalIds) {
+        Set<String> unindexed = new LinkedHashSet<>();
+        for (String externalId : externalIds) {
+            if (externalId != null && !indexedIds.get(channel).contains(externalId)) {
+                unindexed.add(externalId);
+            }
+        }
+        if (!unindexed.isEmpty()) {
+            removeIndexed(channel, unindexed);
+        }
+        return unindexed;
+    }
+
+    // Checks the ids against the index in batches and drops the ones that are in it
+    private void removeIndexed(Channel channel, Set<String> externalIds) {
+        List<String> ids = new ArrayList<>(externalIds);
+        for (int i = 0; i < ids.size(); i += LOOKUP_BATCH_SIZE) {
+            List<String> batch = ids.subList(i, Math.min(i + LOOKUP_BATCH_SIZE, ids.size()));
+            List<String> existingIds = documentRepository.findExistingExternalIds(channel, batch);
+            existingIds.forEach(externalIds::remove);
+            markIndexedAfterCommit(channel, existingIds);
+        }
+    }
+
+    // Ids seen in a transaction are only remembered once it commits, a rolled back one has to index them again
+    private void markIndexedAfterCommit(Channel channel, Collection<String> externalIds) {
+        List<String> ids = List.copyOf(externalIds);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            markIndexed(channel, ids);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                markIndexed(channel, ids);
+            }
+        });
+    }
+
+    private void markIndexed(Channel channel, Collection<String> externalIds) {
+        IdInternTable table = indexedIds.get(channel);
+        if (table.size() + externalIds.size() > maxIndexedIdsPerChannel) {
+            table = new IdInternTable(EXPECTED_IDS);
+            indexedIds.put(channel, table);
+        }
+        externalIds.forEach(table::intern);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SearchHit> search(String query, Channel channel, int page, int size) {
+        if (query == null || query.isBlank()) {
+            return Collections.emptyList();
+        }
+
+        int limit = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        int offset = Math.max(page, 0) * limit;
+        return documentRepository.search(query, channel != null ? channel.name() : null, limit, offset);
+    }
+}
@@ -1,22 +1,32 @@
 package org.velikanovdev.backend.service;
 
+import org.velikanovdev.backend.dto.WhatsAppMessageView;
 import org.velikanovdev.backend.entity.WhatsAppConversation;
 import org.velikanovdev.backend.entity.WhatsAppMessage;
 
+import java.io.IOException;
+import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface WhatsAppMessageService {
     WhatsAppMessage saveMessage(WhatsAppMessage message);
 
+    boolean isStored(String messageId, Date sentDate);
+
     List<WhatsAppConversation> getConversations();
 
-    List<WhatsAppMessage> getMessages(String sender);
+    void streamConversations(Consumer<WhatsAppConversation> consumer);
+
+    void streamMessages(String sender, Integer limit, Consumer<WhatsAppMessageView> consumer);
+
+    void streamUnreadMessages(Consumer<WhatsAppMessageView> consumer);
+
+    void streamArchivedMessages(String sender, Date from, Date to, Consumer<WhatsAppMessageView> consumer) throws IOException;
 
     boolean hasUserMessagedInLast24Hours(String sender);
 
     void markConversationAsRead(String sender);
 
     long getUnreadMessageCountBySender(String sender);
-
-    List<WhatsAppMessage> getAllUnreadMessages();
 }
@@ -1,83 +1,152 @@
 package org.velikanovdev.backend.service;
 
-import jakarta.transaction.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.velikanovdev.backend.cache.WhatsAppHotCache;
+import org.velikanovdev.backend.datasource.ReadWriteRouting;
+import org.velikanovdev.backend.dto.WhatsAppMessageView;
 import org.velikanovdev.backend.entity.WhatsAppConversation;
 import org.velikanovdev.backend.entity.WhatsAppMessage;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
 import org.velikanovdev.backend.repository.WhatsAppMessageRepository;
+import org.velikanovdev.backend.retention.ArchivedMessageReader;
+import org.velikanovdev.backend.retention.RetentionPolicy;
 
-import java.util.Comparator;
+import java.io.IOException;
 import java.util.Date;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class WhatsAppMessageServiceImpl implements WhatsAppMessageService {
     private final WhatsAppMessageRepository messageRepository;
+    private final ChannelMetrics channelMetrics;
+    private final RetentionPolicy retentionPolicy;
+    private final ArchivedMessageReader archivedMessageReader;
+    private final WhatsAppHotCache hotCache;
+    private final ReadWriteRouting readWriteRouting;
+    // Reads that run on the replica when one is configured
+    private final TransactionTemplate readOnlyTransaction;
 
     @Value("${whatsapp.phone.number}")
     private String PHONE_NUMBER;
 
     @Autowired
-    public WhatsAppMessageServiceImpl(WhatsAppMessageRepository messageRepository) {
+    public WhatsAppMessageServiceImpl(WhatsAppMessageRepository messageRepository, ChannelMetrics channelMetrics,
+                                      RetentionPolicy retentionPolicy, ArchivedMessageReader archivedMessageReader,
+                                      WhatsAppHotCache hotCache, ReadWriteRouting readWriteRouting,
+                                      PlatformTransactionManager transactionManager) {
         this.messageRepository = messageRepository;
+        this.channelMetrics = channelMetrics;
+        this.retentionPolicy = retentionPolicy;
+        this.archivedMessageReader = archivedMessageReader;
+        this.hotCache = hotCache;
+        this.readWriteRouting = readWriteRouting;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
     }
 
     @Override
     public WhatsAppMessage saveMessage(WhatsAppMessage message) {
-        return messageRepository.save(message);
+        WhatsAppMessage saved = messageRepository.save(message);
+        if (hotCache.isEnabled()) {
+            String contact = PHONE_NUMBER.equals(saved.getSender()) ? saved.getRecipient() : saved.getSender();
+            WhatsAppMessageView view = new WhatsAppMessageView(saved.getId(), saved.getSender(), saved.getRecipient(),
+                    saved.getMessage(), saved.getMessageId(), saved.getSentDate(), saved.isUnread(),
+                    saved.getDeliveryStatus());
+            afterCommit(() -> hotCache.add(contact, view));
+        }
+        return saved;
     }
 
     @Override
+    public boolean isStored(String messageId, Date sentDate) {
+        return messageId != null && messageRepository.existsByMessageIdAndSentDate(messageId, sentDate);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
     public List<WhatsAppConversation> getConversations() {
-        // Fetch all messages from the repository
-        List<WhatsAppMessage> messages = messageRepository.findAll();
-
-        // Filter out messages where the sender is the same as PHONE_NUMBER
-        return messages.stream()
-                .filter(message -> !message.getSender().equals(PHONE_NUMBER)) // Exclude own messages
-                .collect(Collectors.groupingBy(WhatsAppMessage::getSender)) // Group by sender
-                .entrySet()
-                .stream()
-                .map(entry -> {
-                    String sender = entry.getKey();
-                    List<WhatsAppMessage> senderMessages = entry.getValue();
-
-                    // Find the most recent message
-                    WhatsAppMessage latestMessage = senderMessages.stream()
-                            .max(Comparator.comparing(WhatsAppMessage::getSentDate))
-                            .orElseThrow();
-
-                    // Count unread messages for the sender
-                    long unreadCount = senderMessages.stream()
-                            .filter(WhatsAppMessage::isUnread)
-                            .count();
-
-                    // Map to WhatsAppConversation
-                    return new WhatsAppConversation(sender, latestMessage.getSentDate(), (int) unreadCount);
-                })
-                .collect(Collectors.toList());
+        // Grouped in Postgres over the hot partitions, own messages are excluded
+        return channelMetrics.recordQuery("findConversations",
+                () -> messageRepository.findConversations(PHONE_NUMBER, retentionPolicy.hotSince()));
+    }
+
+    // Repository streams need an open transaction until the last row has been consumed
+    @Override
+    @Transactional(readOnly = true)
+    public void streamConversations(Consumer<WhatsAppConversation> consumer) {
+        try (Stream<WhatsAppConversation> conversations = messageRepository.streamConversations(PHONE_NUMBER, retentionPolicy.hotSince())) {
+            conversations.forEach(consumer);
+        }
+    }
+
+    // Recent history comes from the hot cache, only older or longer reads go to Postgres. No @Transactional
+    // here, so a cache hit doesn't even borrow a connection; the full stream opens its own transaction.
+    @Override
+    public void streamMessages(String sender, Integer limit, Consumer<WhatsAppMessageView> consumer) {
+        Date since = retentionPolicy.hotSince();
+        if (hotCache.isEnabled()) {
+            List<WhatsAppMessageView> newest = hotCache.newest(sender, limit, since,
+                    contact -> findNewestMessages(contact, since, hotCache.getMessagesPerConversation() + 1));
+            if (newest != null) {
+                newest.forEach(consumer);
+                return;
+            }
+        }
+
+        if (limit != null) {
+            List<WhatsAppMessageView> newestFirst = findNewestMessages(sender, since, limit);
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                consumer.accept(newestFirst.get(i));
+            }
+            return;
+        }
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<WhatsAppMessageView> messages = messageRepository.streamConversationMessages(sender, PHONE_NUMBER, since)) {
+                messages.forEach(consumer);
+            }
+        });
+    }
+
+    private List<WhatsAppMessageView> findNewestMessages(String contact, Date since, int count) {
+        return channelMetrics.recordQuery("findNewestConversationMessages", () -> readOnlyTransaction.execute(status ->
+                messageRepository.findNewestConversationMessages(contact, PHONE_NUMBER, since, PageRequest.of(0, count))));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamUnreadMessages(Consumer<WhatsAppMessageView> consumer) {
+        try (Stream<WhatsAppMessageView> messages = messageRepository.streamUnreadMessages(retentionPolicy.hotSince())) {
+            messages.forEach(consumer);
+        }
     }
+
     @Override
-    public List<WhatsAppMessage> getMessages(String sender) {
-        // Fetch all messages from the repository
-        List<WhatsAppMessage> messages = messageRepository.findAll();
-
-        // Filter messages that are either sent or received by the given sender and the current user
-        return messages.stream()
-                .filter(message ->
-                        (message.getSender().equals(sender) && message.getRecipient().equals(PHONE_NUMBER)) ||
-                                (message.getSender().equals(PHONE_NUMBER) && message.getRecipient().equals(sender))
-                )
-                .sorted(Comparator.comparing(WhatsAppMessage::getSentDate)) // Optional: Sort by timestamp
-                .collect(Collectors.toList());
+    public void streamArchivedMessages(String sender, Date from, Date to, Consumer<WhatsAppMessageView> consumer) throws IOException {
+        archivedMessageReader.readMessages(from, to, message ->
+                (sender.equals(message.getSender()) && PHONE_NUMBER.equals(message.getRecipient())) ||
+                        (PHONE_NUMBER.equals(message.getSender()) && sender.equals(message.getRecipient())), consumer);
     }
 
+    // Gates a send, so it reads the primary rather than a replica that may not have the latest inbound message yet
     @Override
     public boolean hasUserMessagedInLast24Hours(String sender) {
         Date twentyFourHoursAgo = new Date(System.currentTimeMillis() - 24 * 60 * 60 * 1000);
+        if (hotCache.isEnabled()) {
+            Boolean cached = hotCache.hasMessageFrom(sender, twentyFourHoursAgo);
+            if (cached != null) {
+                return cached;
+            }
+        }
         List<WhatsAppMessage> messages = messageRepository.findBySenderAndSentDateAfter(sender, twentyFourHoursAgo);
         return !messages.isEmpty();
     }
@@ -85,18 +154,30 @@ public class WhatsAppMessageServiceImpl implements WhatsAppMessageService {
     @Override
     @Transactional
     public void markConversationAsRead(String sender) {
-        List<WhatsAppMessage> unreadMessages = messageRepository.findBySenderAndUnreadTrue(sender);
-        unreadMessages.forEach(message -> message.setUnread(false));
-        messageRepository.saveAll(unreadMessages);
+        messageRepository.markAsRead(sender, retentionPolicy.hotSince());
+        if (hotCache.isEnabled()) {
+            afterCommit(() -> hotCache.markReadFrom(sender));
+        }
+        readWriteRouting.stickToPrimary();
     }
 
     @Override
+    @Transactional(readOnly = true)
     public long getUnreadMessageCountBySender(String sender) {
-        return messageRepository.countUnreadMessagesBySender(sender);
+        return messageRepository.countUnreadMessagesBySender(sender, retentionPolicy.hotSince());
     }
 
-    @Override
-    public List<WhatsAppMessage> getAllUnreadMessages() {
-        return messageRepository.findByUnreadTrue();
+    // Inside a transaction the hot cache only sees a change once it is committed, a rollback leaves it as it was
+    private static void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
     }
 }
@@ -0,0 +1,125 @@
+package org.velikanovdev.backend.service;
+
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.cache.WhatsAppHotCache;
+import org.velikanovdev.backend.dto.WhatsAppStatusDelta;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.DeliveryStatus;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.notification.SseStream;
+import org.velikanovdev.backend.retention.RetentionPolicy;
+import org.velikanovdev.backend.web.ChannelVersions;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Meta sends sent, delivered and read for every outbound message, several status events per message we store.
+// They are coalesced here per wamid, keeping the furthest state, and written in one JDBC batch per flush.
+// The UPDATE only moves a message forward, so out-of-order events and WAL replays can't set it back.
+@Component
+public class WhatsAppStatusBuffer {
+    private static final String UPDATE_STATUS = "UPDATE msgs SET delivery_status = ?, delivery_updated_at = ? " +
+            "WHERE message_id = ? AND sent_date >= ? AND (delivery_status IS NULL OR delivery_status < ?)";
+    // A status can beat the send it belongs to, which only stores the wamid once Graph has answered
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RetentionPolicy retentionPolicy;
+    private final WhatsAppHotCache hotCache;
+    private final SseHub sseHub;
+    private final ChannelVersions channelVersions;
+    private final Map<String, PendingStatus> pending = new ConcurrentHashMap<>();
+
+    @Value("${whatsapp.statuses.batchSize:500}")
+    private int batchSize;
+
+    @Autowired
+    public WhatsAppStatusBuffer(JdbcTemplate jdbcTemplate, RetentionPolicy retentionPolicy, WhatsAppHotCache hotCache,
+                                SseHub sseHub, ChannelVersions channelVersions, ChannelMetrics channelMetrics) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.retentionPolicy = retentionPolicy;
+        this.hotCache = hotCache;
+        this.sseHub = sseHub;
+        this.channelVersions = channelVersions;
+        channelMetrics.registerQueue("whatsapp_statuses", pending.values());
+    }
+
+    public void record(String messageId, String contact, DeliveryStatus status, Date timestamp) {
+        pending.merge(messageId, new PendingStatus(messageId, contact, status, timestamp, 0),
+                (current, update) -> update.status.isAfter(current.status) ? update : current);
+    }
+
+    @Scheduled(fixedDelayString = "${whatsapp.statuses.flushInterval:1000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // remove() per key, a status recorded meanwhile either makes it into this batch or stays for the next
+        List<PendingStatus> batch = new ArrayList<>(pending.size());
+        for (String messageId : List.copyOf(pending.keySet())) {
+            PendingStatus status = pending.remove(messageId);
+            if (status != null) {
+                batch.add(status);
+            }
+        }
+
+        Timestamp since = new Timestamp(retentionPolicy.hotSince().getTime());
+        int[][] updated;
+        try {
+            updated = jdbcTemplate.batchUpdate(UPDATE_STATUS, batch, batchSize, (statement, status) -> {
+                statement.setShort(1, (short) status.status.ordinal());
+                statement.setTimestamp(2, new Timestamp(status.timestamp.getTime()));
+                statement.setString(3, status.messageId);
+                statement.setTimestamp(4, since);
+                statement.setShort(5, (short) status.status.ordinal());
+            });
+        } catch (RuntimeException e) {
+            // Nothing was written, the statuses are merged back and go out with the next flush
+            batch.forEach(status -> pending.merge(status.messageId, status,
+                    (current, restored) -> current.status.isAfter(restored.status) ? current : restored));
+            throw e;
+        }
+
+        List<WhatsAppStatusDelta> deltas = new ArrayList<>();
+        Set<String> contacts = new HashSet<>();
+        int index = 0;
+        for (int[] chunk : updated) {
+            for (int rows : chunk) {
+                PendingStatus status = batch.get(index++);
+                if (rows > 0) {
+                    deltas.add(new WhatsAppStatusDelta(status.messageId, status.contact, status.status, status.timestamp));
+                    if (status.contact != null) {
+                        contacts.add(status.contact);
+                    }
+                } else if (status.attempts + 1 < MAX_ATTEMPTS) {
+                    // Unknown wamid, or the message is already further along; the retry is a no-op in that case
+                    pending.putIfAbsent(status.messageId, new PendingStatus(status.messageId, status.contact,
+                            status.status, status.timestamp, status.attempts + 1));
+                }
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        contacts.forEach(hotCache::invalidate);
+        channelVersions.bump(Channel.WHATSAPP);
+        sseHub.publish(SseStream.WHATSAPP_MESSAGES, "whatsappStatuses", deltas);
+    }
+
+    @AllArgsConstructor
+    private static final class PendingStatus {
+        private final String messageId;
+        private final String contact;
+        private final DeliveryStatus status;
+        private final Date timestamp;
+        private final int attempts;
+    }
+}
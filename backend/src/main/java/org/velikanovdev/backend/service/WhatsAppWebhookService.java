@@ -0,0 +1,8 @@
+package org.velikanovdev.backend.service;
+
+public interface WhatsAppWebhookService {
+    void process(String payload);
+
+    // Writes delivery statuses still held in memory, the WAL checkpoint must not move past them
+    void flushStatuses();
+}
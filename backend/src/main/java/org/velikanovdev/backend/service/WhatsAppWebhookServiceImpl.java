@@ -0,0 +1,249 @@
+package org.velikanovdev.backend.service;
+
+import com.restfb.DefaultJsonMapper;
+import com.restfb.JsonMapper;
+import com.restfb.json.Json;
+import com.restfb.json.JsonArray;
+import com.restfb.json.JsonObject;
+import com.restfb.json.JsonValue;
+import com.restfb.types.webhook.Change;
+import com.restfb.types.webhook.WebhookEntry;
+import com.restfb.types.webhook.WebhookObject;
+import com.restfb.types.webhook.whatsapp.WhatsappMessagesValue;
+import com.restfb.types.whatsapp.platform.message.Audio;
+import com.restfb.types.whatsapp.platform.message.Document;
+import com.restfb.types.whatsapp.platform.message.Image;
+import com.restfb.types.whatsapp.platform.message.Text;
+import com.restfb.types.whatsapp.platform.message.Video;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.DeliveryStatus;
+import org.velikanovdev.backend.entity.WhatsAppMessage;
+import org.velikanovdev.backend.graph.GraphMediaClient;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.notification.SseStream;
+import org.velikanovdev.backend.tracing.StageTracer;
+import org.velikanovdev.backend.web.ChannelVersions;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+@Service
+public class WhatsAppWebhookServiceImpl implements WhatsAppWebhookService {
+    private final WhatsAppMessageService messageService;
+    private final InboxService inboxService;
+    private final SearchIndexService searchIndexService;
+    private final ChannelMetrics channelMetrics;
+    private final SseHub sseHub;
+    private final ChannelVersions channelVersions;
+    private final AttachmentService attachmentService;
+    private final GraphMediaClient graphMediaClient;
+    private final WhatsAppStatusBuffer statusBuffer;
+    private final StageTracer stageTracer;
+    // The message, its inbox entry and its search document are written together or not at all
+    private final TransactionTemplate ingestTransaction;
+
+    @Value("${whatsapp.phone.number}")
+    private String PHONE_NUMBER;
+
+    @Autowired
+    public WhatsAppWebhookServiceImpl(WhatsAppMessageService messageService, InboxService inboxService,
+                                      SearchIndexService searchIndexService, ChannelMetrics channelMetrics,
+                                      SseHub sseHub, ChannelVersions channelVersions,
+                                      AttachmentService attachmentService, GraphMediaClient graphMediaClient,
+                                      WhatsAppStatusBuffer statusBuffer, StageTracer stageTracer,
+                                      PlatformTransactionManager transactionManager) {
+        this.messageService = messageService;
+        this.inboxService = inboxService;
+        this.searchIndexService = searchIndexService;
+        this.channelMetrics = channelMetrics;
+        this.sseHub = sseHub;
+        this.channelVersions = channelVersions;
+        this.attachmentService = attachmentService;
+        this.graphMediaClient = graphMediaClient;
+        this.statusBuffer = statusBuffer;
+        this.stageTracer = stageTracer;
+        this.ingestTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    // Runs on the WAL replayer thread, reprocessing included, so the stored check and the insert never race.
+    // A message is stored in one transaction with its inbox entry and search document, so a message that is
+    // already stored has those too and a replay skips it. Media is fetched outside the transaction and again on
+    // every replay, which is a no-op once the file is there. A payload can be applied any number of times.
+    @Override
+    public void process(String payload) {
+        // Most payloads are status updates for messages we sent, they skip the typed mapping
+        if (payload.contains("\"statuses\"")) {
+            recordStatuses(payload);
+        }
+
+        JsonMapper jsonMapper = new DefaultJsonMapper();
+        WebhookObject webhookObject = jsonMapper.toJavaObject(payload, WebhookObject.class);
+
+        List<WhatsAppMessage> newMessages = new ArrayList<>();
+
+        for (WebhookEntry entry : webhookObject.getEntryList()) {
+            for (Change change : entry.getChanges()) {
+                WhatsappMessagesValue value = (WhatsappMessagesValue) change.getValue();
+                if (value != null) {
+                    value.getMessages().forEach(message -> {
+                        String sender = message.getFrom();
+                        Text text = message.getText();
+                        MediaPart media = mediaOf(message);
+                        if (sender == null || (text == null && media == null)) {
+                            return;
+                        }
+                        WhatsAppMessage msg = new WhatsAppMessage();
+                        msg.setSender(sender);
+                        msg.setRecipient(PHONE_NUMBER);
+                        msg.setMessage(text != null ? text.getBody() : media.label());
+                        msg.setMessageId(message.getId());
+                        msg.setSentDate(message.getTimestamp());
+                        msg.setUnread(true);
+
+                        boolean stored = stageTracer.inSpan("db.write", () -> {
+                            StageTracer.annotate("whatsapp.message_id", msg.getMessageId());
+                            return ingestTransaction.execute(status -> {
+                                if (messageService.isStored(msg.getMessageId(), msg.getSentDate())) {
+                                    return false;
+                                }
+                                messageService.saveMessage(msg);
+                                inboxService.recordMessage(Channel.WHATSAPP, sender, sender, msg.getSentDate(), msg.getMessage(), true);
+                                searchIndexService.indexMessage(Channel.WHATSAPP, sender, msg.getMessageId(), sender, msg.getMessage(), msg.getSentDate());
+                                return true;
+                            });
+                        });
+                        if (media != null) {
+                            stageTracer.runInSpan("media.fetch", () -> storeMedia(msg.getMessageId(), media));
+                        }
+                        if (stored) {
+                            newMessages.add(msg);
+                        }
+                    });
+                }
+            }
+        }
+
+        channelMetrics.messagesIngested(Channel.WHATSAPP, newMessages.size());
+
+        if (newMessages.isEmpty()) {
+            return;
+        }
+        channelVersions.bump(Channel.WHATSAPP);
+
+        // Notify clients with new messages
+        notifyWhatsAppClients(newMessages);
+        newMessages.forEach(msg -> channelMetrics.recordDeliveryLatency(Channel.WHATSAPP, msg.getSentDate()));
+    }
+
+    @Override
+    public void flushStatuses() {
+        statusBuffer.flush();
+    }
+
+    // entry[].changes[].value.statuses[] with the wamid, the recipient and the state as of timestamp
+    private void recordStatuses(String payload) {
+        JsonArray entries = Json.parse(payload).asObject().get("entry").asArray();
+        for (JsonValue entry : entries) {
+            JsonValue changes = entry.asObject().get("changes");
+            if (changes == null) {
+                continue;
+            }
+            for (JsonValue change : changes.asArray()) {
+                JsonValue value = change.asObject().get("value");
+                JsonValue statuses = value != null ? value.asObject().get("statuses") : null;
+                if (statuses == null) {
+                    continue;
+                }
+                for (JsonValue statusValue : statuses.asArray()) {
+                    JsonObject status = statusValue.asObject();
+                    DeliveryStatus deliveryStatus = DeliveryStatus.fromWebhook(status.getString("status", null));
+                    String messageId = status.getString("id", null);
+                    if (deliveryStatus == null || messageId == null) {
+                        continue;
+                    }
+                    statusBuffer.record(messageId, status.getString("recipient_id", null), deliveryStatus,
+                            statusDate(status.get("timestamp")));
+                }
+            }
+        }
+    }
+
+    // Unix seconds as a string. A missing or malformed timestamp is taken as now, it must not cost the rest of
+    // the payload, which may carry inbound messages.
+    private static Date statusDate(JsonValue timestamp) {
+        try {
+            long seconds = timestamp == null ? 0
+                    : timestamp.isNumber() ? timestamp.asLong() : Long.parseLong(timestamp.asString());
+            return seconds > 0 ? new Date(seconds * 1000) : new Date();
+        } catch (NumberFormatException | UnsupportedOperationException e) {
+            return new Date();
+        }
+    }
+
+    // The media travels through the same content-addressed store as email attachments
+    private void storeMedia(String messageId, MediaPart media) {
+        try {
+            attachmentService.ingest(Channel.WHATSAPP, messageId, media.id, media.fileName, media.mimeType,
+                    () -> graphMediaClient.openWhatsAppMedia(media.id));
+        } catch (Exception e) {
+            // The message itself is saved, only the file is missing
+            e.printStackTrace();
+        }
+    }
+
+    private static MediaPart mediaOf(com.restfb.types.whatsapp.platform.Message message) {
+        if (message.getImage() != null) {
+            Image image = message.getImage();
+            return new MediaPart("image", image.getId(), image.getMimeType(), null, image.getCaption());
+        }
+        if (message.getDocument() != null) {
+            Document document = message.getDocument();
+            return new MediaPart("document", document.getId(), document.getMimeType(), document.getFilename(),
+                    document.getCaption());
+        }
+        if (message.getVideo() != null) {
+            Video video = message.getVideo();
+            return new MediaPart("video", video.getId(), video.getMimeType(), null, video.getCaption());
+        }
+        if (message.getAudio() != null) {
+            Audio audio = message.getAudio();
+            return new MediaPart("audio", audio.getId(), audio.getMimeType(), null, null);
+        }
+        return null;
+    }
+
+    private static final class MediaPart {
+        private final String type;
+        private final String id;
+        private final String mimeType;
+        private final String fileName;
+        private final String caption;
+
+        private MediaPart(String type, String id, String mimeType, String fileName, String caption) {
+            this.type = type;
+            this.id = id;
+            this.mimeType = mimeType;
+            this.fileName = fileName;
+            this.caption = caption;
+        }
+
+        // What the conversation shows for a message without text
+        private String label() {
+            if (caption != null && !caption.isBlank()) {
+                return caption;
+            }
+            return fileName != null ? fileName : "[" + type + "]";
+        }
+    }
+
+    private void notifyWhatsAppClients(List<WhatsAppMessage> newMessages) {
+        sseHub.publish(SseStream.WHATSAPP_MESSAGES, "whatsappMessages", newMessages);
+    }
+}
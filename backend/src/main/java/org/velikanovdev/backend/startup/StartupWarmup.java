@@ -0,0 +1,82 @@
+package org.velikanovdev.backend.startup;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// With spring.main.lazy-initialization (the fast-startup profile) only what the first requests need is built
+// during startup. Once the app reports ready this creates the remaining beans in the background: upstream
+// clients, the WAL replayer and the pollers, whose @Scheduled methods only start once their bean exists.
+// Controllers go first so SSE reconnects that arrive meanwhile don't wait behind the pollers.
+@Component
+@Lazy(false)
+public class StartupWarmup implements ApplicationListener<AvailabilityChangeEvent<ReadinessState>> {
+    private final ConfigurableListableBeanFactory beanFactory;
+    private final ChannelMetrics channelMetrics;
+    private boolean started;
+
+    @Autowired
+    public StartupWarmup(ConfigurableListableBeanFactory beanFactory, ChannelMetrics channelMetrics) {
+        this.beanFactory = beanFactory;
+        this.channelMetrics = channelMetrics;
+    }
+
+    @Override
+    public synchronized void onApplicationEvent(AvailabilityChangeEvent<ReadinessState> event) {
+        if (started || event.getState() != ReadinessState.ACCEPTING_TRAFFIC) {
+            return;
+        }
+        started = true;
+
+        List<String> pending = lazySingletons();
+        if (pending.isEmpty()) {
+            return;
+        }
+        Thread thread = new Thread(() -> warmUp(pending), "startup-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private List<String> lazySingletons() {
+        List<String> controllers = new ArrayList<>();
+        List<String> others = new ArrayList<>();
+        for (String name : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(name);
+            if (!definition.isSingleton() || definition.isAbstract() || !definition.isLazyInit()
+                    || beanFactory.containsSingleton(name)) {
+                continue;
+            }
+            String className = definition.getBeanClassName();
+            if (className != null && className.contains(".controller.")) {
+                controllers.add(name);
+            } else {
+                others.add(name);
+            }
+        }
+        controllers.addAll(others);
+        return controllers;
+    }
+
+    private void warmUp(List<String> names) {
+        long start = System.nanoTime();
+        for (String name : names) {
+            try {
+                beanFactory.getBean(name);
+            } catch (Exception e) {
+                // A bean that can't be built now fails again on first use, where the error reaches the caller
+                e.printStackTrace();
+            }
+        }
+        channelMetrics.recordStartupWarmup(Duration.ofNanos(System.nanoTime() - start));
+    }
+}
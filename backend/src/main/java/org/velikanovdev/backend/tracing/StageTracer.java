@@ -0,0 +1,116 @@
+package org.velikanovdev.backend.tracing;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.api.trace.propagation.W3CTraceContextPropagator;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.context.propagation.TextMapGetter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Spans around the stages a message passes on its way to the SSE clients: poll or webhook, upstream fetch,
+// parsing and threading, the database write and the push. Spans nest through the current context, which
+// UpstreamExecutor carries into its tasks. Where work is handed over without it, e.g. from the webhook request
+// to the WAL replayer or between cluster nodes, the context travels as a W3C traceparent string.
+@Component
+public class StageTracer {
+    private static final String TRACEPARENT = "traceparent";
+    private static final TextMapGetter<String> TRACEPARENT_GETTER = new TextMapGetter<>() {
+        @Override
+        public Iterable<String> keys(String carrier) {
+            return List.of(TRACEPARENT);
+        }
+
+        @Override
+        public String get(String carrier, String key) {
+            return TRACEPARENT.equals(key) ? carrier : null;
+        }
+    };
+
+    private final Tracer tracer;
+
+    @Autowired
+    public StageTracer(OpenTelemetry openTelemetry) {
+        this.tracer = openTelemetry.getTracer("org.velikanovdev.backend");
+    }
+
+    // Spans that go nowhere, for instances created outside Spring, e.g. by the benchmarks
+    public static StageTracer noop() {
+        return new StageTracer(OpenTelemetry.noop());
+    }
+
+    public <T, E extends Exception> T inSpan(String name, ChannelMetrics.UpstreamCall<T, E> call) throws E {
+        return inSpan(name, Context.current(), call);
+    }
+
+    public <E extends Exception> void runInSpan(String name, ChannelMetrics.UpstreamTask<E> task) throws E {
+        inSpan(name, Context.current(), () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // Continues the trace of a traceparent from traceparent(), starts a new one if it is null or malformed
+    public <E extends Exception> void runInSpan(String name, String traceparent, ChannelMetrics.UpstreamTask<E> task) throws E {
+        Context parent = traceparent != null
+                ? W3CTraceContextPropagator.getInstance().extract(Context.root(), traceparent, TRACEPARENT_GETTER)
+                : Context.root();
+        inSpan(name, parent, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    // A stage that was timed rather than wrapped, e.g. one slow message out of a loop that isn't worth a span each
+    public void recordStage(String name, long startEpochMillis, long durationNanos, String key, String value) {
+        long startNanos = TimeUnit.MILLISECONDS.toNanos(startEpochMillis);
+        tracer.spanBuilder(name)
+                .setStartTimestamp(startNanos, TimeUnit.NANOSECONDS)
+                .setAttribute(key, value)
+                .startSpan()
+                .end(startNanos + durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // The current span as a W3C traceparent header value, null outside of a trace
+    public String traceparent() {
+        String[] traceparent = new String[1];
+        W3CTraceContextPropagator.getInstance().inject(Context.current(), traceparent, (carrier, key, value) -> {
+            if (carrier != null && TRACEPARENT.equals(key)) {
+                carrier[0] = value;
+            }
+        });
+        return traceparent[0];
+    }
+
+    // Details on the span of the stage running right now, ignored outside of a trace
+    public static void annotate(String key, String value) {
+        Span.current().setAttribute(key, value);
+    }
+
+    public static void annotate(String key, long value) {
+        Span.current().setAttribute(key, value);
+    }
+
+    private <T, E extends Exception> T inSpan(String name, Context parent, ChannelMetrics.UpstreamCall<T, E> call) throws E {
+        Span span = tracer.spanBuilder(name)
+                .setParent(parent)
+                .setAttribute("thread.name", Thread.currentThread().getName())
+                .startSpan();
+        try (Scope ignored = span.makeCurrent()) {
+            return call.call();
+        } catch (Exception e) {
+            span.recordException(e);
+            span.setStatus(StatusCode.ERROR);
+            throw e;
+        } finally {
+            span.end();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.velikanovdev.backend.tracing;
+
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Tail-based sampling: every span is recorded and held with the rest of its trace, and only once the trace is
+// complete is it kept or dropped as a whole. Slow traces and traces with an error go to the TraceBuffer, a
+// keepRatio share of the others too. A trace is complete when all of its spans have ended and none started
+// for settleTime, so the WAL replayer's spans still make it into the trace of the webhook request they
+// continue. Traces running longer than maxTraceAge are decided on what they have by then.
+@Component
+public class TailSamplingSpanProcessor implements SpanProcessor {
+    private static final long SWEEP_INTERVAL_MILLIS = 250;
+
+    private final TraceBuffer traceBuffer;
+    private final ChannelMetrics channelMetrics;
+    private final Map<String, PendingTrace> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    @Value("${omnichannel.tracing.slowThreshold:2s}")
+    private Duration slowThreshold;
+
+    @Value("${omnichannel.tracing.settleTime:1s}")
+    private Duration settleTime;
+
+    @Value("${omnichannel.tracing.maxTraceAge:5m}")
+    private Duration maxTraceAge;
+
+    // Bounds what's held while traces are undecided, spans beyond the limits are counted but not kept
+    @Value("${omnichannel.tracing.maxPendingTraces:10000}")
+    private int maxPendingTraces;
+
+    @Value("${omnichannel.tracing.maxSpansPerTrace:2000}")
+    private int maxSpansPerTrace;
+
+    @Value("${omnichannel.tracing.keepRatio:0}")
+    private double keepRatio;
+
+    @Autowired
+    public TailSamplingSpanProcessor(TraceBuffer traceBuffer, ChannelMetrics channelMetrics) {
+        this.traceBuffer = traceBuffer;
+        this.channelMetrics = channelMetrics;
+    }
+
+    @PostConstruct
+    public void start() {
+        // Its own thread rather than @Scheduled, which would trace every sweep
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "trace-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MILLIS, SWEEP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+        String traceId = span.getSpanContext().getTraceId();
+        while (true) {
+            PendingTrace trace = pending.get(traceId);
+            if (trace == null) {
+                if (pending.size() >= maxPendingTraces) {
+                    channelMetrics.traceSampled("overflow");
+                    return;
+                }
+                trace = pending.computeIfAbsent(traceId, id -> new PendingTrace());
+            }
+            if (trace.spanStarted()) {
+                return;
+            }
+            // Decided on a moment ago, the span starts the trace over
+            pending.remove(traceId, trace);
+        }
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return true;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        PendingTrace trace = pending.get(span.getSpanContext().getTraceId());
+        if (trace != null) {
+            trace.spanEnded(span.toSpanData(), maxSpansPerTrace);
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    void sweep() {
+        try {
+            long now = System.nanoTime();
+            for (Map.Entry<String, PendingTrace> entry : pending.entrySet()) {
+                PendingTrace trace = entry.getValue();
+                if (trace.closeIfComplete(now, settleTime.toNanos(), maxTraceAge.toNanos())) {
+                    pending.remove(entry.getKey(), trace);
+                    decide(entry.getKey(), trace);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keeps the sweeper alive, a failed run leaves the traces for the next one
+            e.printStackTrace();
+        }
+    }
+
+    private void decide(String traceId, PendingTrace trace) {
+        if (trace.spans.isEmpty()) {
+            return;
+        }
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        boolean error = false;
+        for (SpanData span : trace.spans) {
+            start = Math.min(start, span.getStartEpochNanos());
+            end = Math.max(end, span.getEndEpochNanos());
+            error |= span.getStatus().getStatusCode() == StatusCode.ERROR;
+        }
+
+        String keptBecause = null;
+        if (error) {
+            keptBecause = "error";
+        } else if (end - start >= slowThreshold.toNanos()) {
+            keptBecause = "slow";
+        } else if (keepRatio > 0 && ThreadLocalRandom.current().nextDouble() < keepRatio) {
+            keptBecause = "sampled";
+        }
+        channelMetrics.traceSampled(keptBecause != null ? keptBecause : "dropped");
+        if (keptBecause != null) {
+            traceBuffer.add(traceId, keptBecause, trace.spans, trace.droppedSpans);
+        }
+    }
+
+    private static final class PendingTrace {
+        private final long createdAt = System.nanoTime();
+        private final List<SpanData> spans = new ArrayList<>();
+        private int openSpans;
+        private int droppedSpans;
+        private long lastActivity = createdAt;
+        private boolean closed;
+
+        // False once the trace was decided on
+        private synchronized boolean spanStarted() {
+            if (closed) {
+                return false;
+            }
+            openSpans++;
+            lastActivity = System.nanoTime();
+            return true;
+        }
+
+        private synchronized void spanEnded(SpanData span, int maxSpans) {
+            if (closed) {
+                return;
+            }
+            openSpans--;
+            lastActivity = System.nanoTime();
+            if (spans.size() < maxSpans) {
+                spans.add(span);
+            } else {
+                droppedSpans++;
+            }
+        }
+
+        // After this the spans are only read by the sweeper
+        private synchronized boolean closeIfComplete(long now, long settleNanos, long maxAgeNanos) {
+            if ((openSpans <= 0 && now - lastActivity >= settleNanos) || now - createdAt >= maxAgeNanos) {
+                closed = true;
+            }
+            return closed;
+        }
+    }
+}
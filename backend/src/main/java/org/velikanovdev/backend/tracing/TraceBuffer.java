@@ -0,0 +1,141 @@
+package org.velikanovdev.backend.tracing;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanId;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.velikanovdev.backend.dto.TraceDetail;
+import org.velikanovdev.backend.dto.TraceSpan;
+import org.velikanovdev.backend.dto.TraceSummary;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// The traces the tail sampler kept, in a ring of fixed size where a new trace overwrites the oldest one.
+// This is the whole exporter: /admin/traces reads from here, nothing leaves the process.
+@Component
+public class TraceBuffer {
+    private static final AttributeKey<String> EXCEPTION_MESSAGE = AttributeKey.stringKey("exception.message");
+
+    @Value("${omnichannel.tracing.bufferSize:500}")
+    private int capacity;
+
+    private KeptTrace[] ring;
+    private int next;
+    private final Map<String, KeptTrace> byTraceId = new HashMap<>();
+
+    @PostConstruct
+    public void allocate() {
+        ring = new KeptTrace[capacity];
+    }
+
+    // Spans of a trace that is already in the buffer, e.g. a WAL replay that ran after its webhook was
+    // decided on, are added to it rather than taking another slot
+    public synchronized void add(String traceId, String keptBecause, List<SpanData> spans, int droppedSpans) {
+        KeptTrace kept = byTraceId.get(traceId);
+        if (kept != null) {
+            kept.spans.addAll(spans);
+            kept.droppedSpans += droppedSpans;
+            return;
+        }
+        KeptTrace overwritten = ring[next];
+        if (overwritten != null) {
+            byTraceId.remove(overwritten.traceId);
+        }
+        kept = new KeptTrace(traceId, keptBecause, new ArrayList<>(spans), droppedSpans);
+        ring[next] = kept;
+        byTraceId.put(traceId, kept);
+        next = (next + 1) % ring.length;
+    }
+
+    // Newest first
+    public synchronized List<TraceSummary> getSummaries() {
+        List<TraceSummary> summaries = new ArrayList<>();
+        for (int i = 1; i <= ring.length; i++) {
+            KeptTrace kept = ring[(next - i + ring.length) % ring.length];
+            if (kept != null) {
+                summaries.add(kept.summary());
+            }
+        }
+        return summaries;
+    }
+
+    public synchronized Optional<TraceDetail> find(String traceId) {
+        KeptTrace kept = byTraceId.get(traceId);
+        if (kept == null) {
+            return Optional.empty();
+        }
+        List<SpanData> spans = new ArrayList<>(kept.spans);
+        spans.sort(Comparator.comparingLong(SpanData::getStartEpochNanos));
+        long start = spans.get(0).getStartEpochNanos();
+        List<TraceSpan> views = new ArrayList<>();
+        for (SpanData span : spans) {
+            Map<String, String> attributes = new TreeMap<>();
+            span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), String.valueOf(value)));
+            views.add(new TraceSpan(span.getSpanId(),
+                    SpanId.isValid(span.getParentSpanId()) ? span.getParentSpanId() : null,
+                    span.getName(),
+                    millis(span.getStartEpochNanos() - start),
+                    millis(span.getEndEpochNanos() - span.getStartEpochNanos()),
+                    attributes,
+                    errorOf(span)));
+        }
+        return Optional.of(new TraceDetail(kept.summary(), views, kept.droppedSpans));
+    }
+
+    private static String errorOf(SpanData span) {
+        if (span.getStatus().getStatusCode() != StatusCode.ERROR) {
+            return null;
+        }
+        for (EventData event : span.getEvents()) {
+            String message = event.getAttributes().get(EXCEPTION_MESSAGE);
+            if (message != null) {
+                return message;
+            }
+        }
+        return span.getStatus().getDescription().isEmpty() ? "error" : span.getStatus().getDescription();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static final class KeptTrace {
+        private final String traceId;
+        private final String keptBecause;
+        private final List<SpanData> spans;
+        private int droppedSpans;
+
+        private KeptTrace(String traceId, String keptBecause, List<SpanData> spans, int droppedSpans) {
+            this.traceId = traceId;
+            this.keptBecause = keptBecause;
+            this.spans = spans;
+            this.droppedSpans = droppedSpans;
+        }
+
+        private TraceSummary summary() {
+            Set<String> spanIds = new HashSet<>();
+            spans.forEach(span -> spanIds.add(span.getSpanId()));
+            SpanData root = null;
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            boolean error = false;
+            for (SpanData span : spans) {
+                start = Math.min(start, span.getStartEpochNanos());
+                end = Math.max(end, span.getEndEpochNanos());
+                error |= span.getStatus().getStatusCode() == StatusCode.ERROR;
+                // The first span whose parent isn't part of what we have, remote parents included
+                boolean topLevel = !spanIds.contains(span.getParentSpanId());
+                if (topLevel && (root == null || span.getStartEpochNanos() < root.getStartEpochNanos())) {
+                    root = span;
+                }
+            }
+            return new TraceSummary(traceId, root != null ? root.getName() : null,
+                    new Date(TimeUnit.NANOSECONDS.toMillis(start)), millis(end - start), spans.size(), error, keptBecause);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.velikanovdev.backend.tracing;
+
+import io.micrometer.observation.ObservationPredicate;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.actuate.autoconfigure.tracing.SpanProcessors;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+
+@Configuration
+public class TracingConfig {
+    // The tail sampler is the only span processor, Spring Boot's default one would queue every span for
+    // exporters that aren't there
+    @Bean
+    public SpanProcessors spanProcessors(TailSamplingSpanProcessor tailSamplingSpanProcessor) {
+        return SpanProcessors.of(tailSamplingSpanProcessor);
+    }
+
+    // An SSE subscription is one request lasting up to half an hour, traced it would always look slow
+    @Bean
+    public ObservationPredicate skipEventStreamRequests() {
+        return (name, context) -> !(context instanceof ServerRequestObservationContext serverContext)
+                || !isEventStream(serverContext.getCarrier());
+    }
+
+    private static boolean isEventStream(HttpServletRequest request) {
+        String accept = request.getHeader("Accept");
+        return (accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE))
+                || request.getRequestURI().endsWith("/notifications");
+    }
+}
@@ -0,0 +1,11 @@
+package org.velikanovdev.backend.wal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class WalRecord {
+    private long sequence;
+    private byte[] payload;
+}
@@ -0,0 +1,119 @@
+package org.velikanovdev.backend.wal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+// One preallocated, memory-mapped WAL file. Records are laid out as
+//   int length | int crc32c(sequence, payload) | long sequence | payload
+// back to back from the start of the file; a zero length, or no room for a header, ends the segment.
+// Sequences are consecutive, starting at the one in the file name.
+class WalSegment {
+    static final int HEADER_BYTES = 16;
+    private static final int ZERO_CHUNK = 64 * 1024;
+
+    private final Path path;
+    private final long firstSequence;
+    private final MappedByteBuffer buffer;
+    // Only touched by the appender, under the WAL lock
+    private int writePosition;
+    private long nextSequence;
+
+    private WalSegment(Path path, long firstSequence, int size) throws IOException {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file, the mapping stays valid after the channel is closed
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        this.nextSequence = firstSequence;
+    }
+
+    static WalSegment create(Path path, long firstSequence, int size) throws IOException {
+        return new WalSegment(path, firstSequence, size);
+    }
+
+    // Finds the end of the valid records. Whatever follows was never acknowledged (a torn record or records
+    // written after it), it is zeroed so it can't be mistaken for data once new records are appended.
+    static WalSegment recover(Path path, long firstSequence, int size) throws IOException {
+        WalSegment segment = new WalSegment(path, firstSequence, size);
+        int position = 0;
+        WalRecord record;
+        while ((record = segment.read(position, segment.nextSequence)) != null) {
+            position += HEADER_BYTES + record.getPayload().length;
+            segment.nextSequence++;
+        }
+        segment.writePosition = position;
+
+        byte[] zeros = new byte[ZERO_CHUNK];
+        for (int offset = position; offset < size; offset += ZERO_CHUNK) {
+            segment.buffer.put(offset, zeros, 0, Math.min(ZERO_CHUNK, size - offset));
+        }
+        segment.force();
+        return segment;
+    }
+
+    boolean fits(int payloadLength) {
+        return (long) writePosition + HEADER_BYTES + payloadLength <= buffer.capacity();
+    }
+
+    long append(byte[] payload) {
+        long sequence = nextSequence++;
+        buffer.putLong(writePosition + 8, sequence);
+        buffer.put(writePosition + HEADER_BYTES, payload);
+        buffer.putInt(writePosition + 4, crc(sequence, payload));
+        // The length goes in last, a reader never sees it before the rest of the record
+        buffer.putInt(writePosition, payload.length);
+        writePosition += HEADER_BYTES + payload.length;
+        return sequence;
+    }
+
+    // The record at position if it is intact and carries the expected sequence, otherwise null
+    WalRecord read(int position, long expectedSequence) {
+        if ((long) position + HEADER_BYTES > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || (long) position + HEADER_BYTES + length > buffer.capacity()) {
+            return null;
+        }
+        long sequence = buffer.getLong(position + 8);
+        if (sequence != expectedSequence) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(position + HEADER_BYTES, payload);
+        if (buffer.getInt(position + 4) != crc(sequence, payload)) {
+            return null;
+        }
+        return new WalRecord(sequence, payload);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    private static int crc(long sequence, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(8).putLong(0, sequence));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
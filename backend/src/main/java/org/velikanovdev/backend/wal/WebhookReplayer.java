@@ -0,0 +1,190 @@
+package org.velikanovdev.backend.wal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.service.WhatsAppWebhookService;
+import org.velikanovdev.backend.tracing.StageTracer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Applies WAL records to Postgres in order on its own thread and checkpoints how far it got. While the
+// database is unreachable it keeps retrying the same record, so nothing is skipped and order is kept.
+@Component
+public class WebhookReplayer {
+    private static final int CHECKPOINT_EVERY = 100;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    // Appended records whose trace the replay continues, beyond this a backlog is replayed untraced
+    private static final int MAX_TRACED_RECORDS = 10000;
+
+    private final WebhookWal webhookWal;
+    private final WhatsAppWebhookService webhookService;
+    private final ChannelMetrics channelMetrics;
+    private final StageTracer stageTracer;
+    // traceparent of the webhook request that appended each record, only for records appended since startup
+    private final Map<Long, String> traceparents = new ConcurrentHashMap<>();
+    // Reprocess requests as {fromSequence, upToSequence}, run by the replayer thread between two records
+    private final Queue<long[]> reprocessRequests = new ConcurrentLinkedQueue<>();
+    private volatile long appliedSequence;
+    private volatile long checkpointedSequence;
+    private volatile boolean running;
+    private Thread thread;
+
+    // Applied segments are kept this long before compaction deletes them, as history to reprocess
+    @Value("${omnichannel.wal.retention:7d}")
+    private Duration retention;
+
+    @Autowired
+    public WebhookReplayer(WebhookWal webhookWal, WhatsAppWebhookService webhookService, ChannelMetrics channelMetrics,
+                           StageTracer stageTracer) {
+        this.webhookWal = webhookWal;
+        this.webhookService = webhookService;
+        this.channelMetrics = channelMetrics;
+        this.stageTracer = stageTracer;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        appliedSequence = webhookWal.readCheckpoint();
+        checkpointedSequence = appliedSequence;
+        channelMetrics.registerWalBacklog(() -> webhookWal.getDurableSequence() - appliedSequence);
+
+        running = true;
+        thread = new Thread(this::replayLoop, "wal-replayer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        checkpoint();
+    }
+
+    // Called after each append, so a record is usually applied within a millisecond of being acknowledged
+    public void wakeUp(long sequence, String traceparent) {
+        if (traceparent != null && traceparents.size() < MAX_TRACED_RECORDS) {
+            traceparents.put(sequence, traceparent);
+        }
+        LockSupport.unpark(thread);
+    }
+
+    private void replayLoop() {
+        WebhookWal.Cursor cursor = webhookWal.openCursor(appliedSequence + 1);
+        long backoff = 0;
+        WalRecord record = null;
+        while (running) {
+            try {
+                if (record == null) {
+                    runReprocessRequests();
+                    record = cursor.next();
+                }
+                if (record == null) {
+                    checkpoint();
+                    // Woken up by wakeUp, the timeout is only a safety net
+                    LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+                    continue;
+                }
+
+                // A retry after a database error stays in the same trace
+                apply(record, traceparents.get(record.getSequence()));
+                traceparents.remove(record.getSequence());
+                appliedSequence = record.getSequence();
+                record = null;
+                backoff = 0;
+                if (appliedSequence - checkpointedSequence >= CHECKPOINT_EVERY) {
+                    checkpoint();
+                }
+            } catch (DataAccessException | TransactionException e) {
+                // Database trouble, the same record is tried again
+                e.printStackTrace();
+                backoff = Math.min(MAX_BACKOFF_MILLIS, Math.max(500, backoff * 2));
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+            } catch (Exception e) {
+                e.printStackTrace();
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private void apply(WalRecord record, String traceparent) {
+        try {
+            stageTracer.runInSpan("webhook.process", traceparent, () -> {
+                StageTracer.annotate("wal.sequence", record.getSequence());
+                webhookService.process(new String(record.getPayload(), StandardCharsets.UTF_8));
+            });
+        } catch (DataAccessException | TransactionException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // A payload that can't be processed never will be, it stays in the WAL for inspection
+            e.printStackTrace();
+            channelMetrics.walRecordSkipped();
+        }
+    }
+
+    private synchronized void checkpoint() throws IOException {
+        long applied = appliedSequence;
+        if (applied > checkpointedSequence) {
+            // Coalesced statuses of the applied records go to Postgres first, a crash must not lose them
+            webhookService.flushStatuses();
+            webhookWal.writeCheckpoint(applied);
+            checkpointedSequence = applied;
+        }
+    }
+
+    // Drops applied segments past the retention period, the active one and anything not checkpointed stays
+    @Scheduled(fixedDelay = 3600000)
+    public void compact() throws IOException {
+        webhookWal.deleteSegmentsBefore(checkpointedSequence + 1, retention.toMillis());
+    }
+
+    // Runs the records from fromSequence up to now through the webhook processing again, on the replayer
+    // thread so it never races the live replay. Messages already stored are skipped, so this restores what's
+    // missing from a database that lost data.
+    public long reprocess(long fromSequence) {
+        long upTo = webhookWal.getDurableSequence();
+        reprocessRequests.add(new long[]{fromSequence, upTo});
+        LockSupport.unpark(thread);
+        return upTo;
+    }
+
+    // Live records wait meanwhile; a database error ends the request, it can be sent again
+    private void runReprocessRequests() {
+        long[] request;
+        while ((request = reprocessRequests.poll()) != null) {
+            WebhookWal.Cursor cursor = webhookWal.openCursor(request[0]);
+            WalRecord record;
+            try {
+                while (cursor.getNextSequence() <= request[1] && (record = cursor.next()) != null) {
+                    apply(record, null);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    public long getCheckpointedSequence() {
+        return checkpointedSequence;
+    }
+}
@@ -0,0 +1,307 @@
+package org.velikanovdev.backend.wal;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// Append-only log of raw inbound webhook payloads, in memory-mapped segment files. append() returns once
+// the record is on disk. Appenders only copy into the mapping; a single flusher thread forces everything
+// appended so far in one go, so concurrent webhooks share one fsync (group commit).
+@Component
+public class WebhookWal {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final List<WalSegment> segments = new CopyOnWriteArrayList<>();
+    private WalSegment active;
+    // Highest sequence that is on disk, what readers may see
+    private volatile long durableSequence;
+    private IOException flushFailure;
+    private volatile boolean running;
+    private Thread flusher;
+    private FileChannel lockChannel;
+    private FileLock dirLock;
+    private Path dir;
+
+    @Value("${omnichannel.wal.dir:wal}")
+    private String walDir;
+
+    @Value("${omnichannel.wal.segmentBytes:67108864}")
+    private int segmentBytes;
+
+    // How long the flusher lets appends pile up before forcing them, 0 forces as soon as one arrives
+    @Value("${omnichannel.wal.groupCommitMicros:500}")
+    private long groupCommitMicros;
+
+    @PostConstruct
+    public void open() throws IOException {
+        dir = Files.createDirectories(Paths.get(walDir).toAbsolutePath());
+        // Two processes appending to the same segments would corrupt them
+        lockChannel = FileChannel.open(dir.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        dirLock = lockChannel.tryLock();
+        if (dirLock == null) {
+            throw new IllegalStateException("WAL directory " + dir + " is used by another process");
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(dir)) {
+            listing.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)).sorted().forEach(files::add);
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long firstSequence = sequenceOf(file);
+            // Only the newest segment can end in a torn write, older ones were sealed when the next one began
+            segments.add(i == files.size() - 1
+                    ? WalSegment.recover(file, firstSequence, segmentBytes)
+                    : WalSegment.create(file, firstSequence, segmentBytes));
+        }
+        if (segments.isEmpty()) {
+            segments.add(WalSegment.create(segmentPath(1), 1, segmentBytes));
+        }
+        active = segments.get(segments.size() - 1);
+        durableSequence = active.getNextSequence() - 1;
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "wal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(TimeUnit.SECONDS.toMillis(5));
+        active.force();
+        dirLock.release();
+        lockChannel.close();
+    }
+
+    public long append(byte[] payload) throws IOException, InterruptedException {
+        if (payload.length == 0 || payload.length > segmentBytes - WalSegment.HEADER_BYTES) {
+            throw new IOException("WAL record of " + payload.length + " bytes doesn't fit a segment");
+        }
+        lock.lock();
+        try {
+            if (!active.fits(payload.length)) {
+                roll();
+            }
+            long sequence = active.append(payload);
+            appended.signal();
+            while (durableSequence < sequence) {
+                if (flushFailure != null) {
+                    throw new IOException("WAL flush failed", flushFailure);
+                }
+                flushed.await();
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long append(String payload) throws IOException, InterruptedException {
+        return append(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    public long getFirstSequence() {
+        return segments.get(0).getFirstSequence();
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    // Reads durable records in order starting at fromSequence, or at the oldest one still kept
+    public Cursor openCursor(long fromSequence) {
+        return new Cursor(Math.max(fromSequence, getFirstSequence()));
+    }
+
+    // Deletes sealed segments whose records are all below upToSequence and whose file is older than minAge
+    public int deleteSegmentsBefore(long upToSequence, long minAgeMillis) throws IOException {
+        int deleted = 0;
+        long cutoff = System.currentTimeMillis() - minAgeMillis;
+        for (int i = 0; i < segments.size() - 1; i++) {
+            WalSegment segment = segments.get(i);
+            WalSegment next = segments.get(i + 1);
+            if (next.getFirstSequence() > upToSequence
+                    || Files.getLastModifiedTime(segment.getPath()).toMillis() > cutoff) {
+                break;
+            }
+            segments.remove(i);
+            // On Linux the mapping stays readable for a cursor still on it until it is garbage collected
+            Files.deleteIfExists(segment.getPath());
+            deleted++;
+            i--;
+        }
+        return deleted;
+    }
+
+    public long readCheckpoint() throws IOException {
+        Path checkpoint = dir.resolve("checkpoint");
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(checkpoint).trim());
+    }
+
+    // Written to a temp file and renamed, so a crash leaves either the old or the new value
+    public void writeCheckpoint(long sequence) throws IOException {
+        Path temp = dir.resolve("checkpoint.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(StandardCharsets.US_ASCII.encode(Long.toString(sequence)));
+            channel.force(true);
+        }
+        Files.move(temp, dir.resolve("checkpoint"), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Called with the lock held. The sealed segment is forced here, so the flusher only ever has the
+    // active one to force.
+    private void roll() throws IOException {
+        active.force();
+        WalSegment next = WalSegment.create(segmentPath(active.getNextSequence()), active.getNextSequence(), segmentBytes);
+        segments.add(next);
+        active = next;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            WalSegment segment;
+            long target;
+            try {
+                lock.lock();
+                try {
+                    while (active.getNextSequence() - 1 <= durableSequence) {
+                        appended.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (groupCommitMicros > 0) {
+                    // Lets the appends arriving right behind this one join the same fsync
+                    TimeUnit.MICROSECONDS.sleep(groupCommitMicros);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            lock.lock();
+            try {
+                segment = active;
+                target = active.getNextSequence() - 1;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException failure = null;
+            try {
+                segment.force();
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            }
+
+            lock.lock();
+            try {
+                if (failure != null) {
+                    // Appends fail from here on, the webhook sender retries them against another node or later
+                    flushFailure = failure;
+                } else {
+                    durableSequence = Math.max(durableSequence, target);
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Remembers where it is, so following the log costs one record read per record
+    public class Cursor {
+        private long nextSequence;
+        private WalSegment segment;
+        private int position;
+
+        private Cursor(long fromSequence) {
+            nextSequence = fromSequence;
+        }
+
+        // The next durable record, or null when the reader has caught up
+        public WalRecord next() {
+            if (nextSequence > durableSequence) {
+                return null;
+            }
+            if (segment == null) {
+                seek();
+            }
+            WalRecord record = segment.read(position, nextSequence);
+            if (record == null) {
+                // End of a sealed segment, the record is at the start of the next one
+                seek();
+                record = segment.read(position, nextSequence);
+                if (record == null) {
+                    throw new IllegalStateException("WAL record " + nextSequence + " is missing or corrupt");
+                }
+            }
+            position += WalSegment.HEADER_BYTES + record.getPayload().length;
+            nextSequence++;
+            return record;
+        }
+
+        public long getNextSequence() {
+            return nextSequence;
+        }
+
+        // Positions on nextSequence, scanning its segment from the start
+        private void seek() {
+            WalSegment found = null;
+            for (WalSegment candidate : segments) {
+                if (candidate.getFirstSequence() <= nextSequence) {
+                    found = candidate;
+                }
+            }
+            if (found == null) {
+                throw new IllegalStateException("WAL record " + nextSequence + " was already compacted");
+            }
+            segment = found;
+            position = 0;
+            for (long sequence = found.getFirstSequence(); sequence < nextSequence; sequence++) {
+                WalRecord skipped = segment.read(position, sequence);
+                if (skipped == null) {
+                    throw new IllegalStateException("WAL record " + sequence + " is missing or corrupt");
+                }
+                position += WalSegment.HEADER_BYTES + skipped.getPayload().length;
+            }
+        }
+    }
+}
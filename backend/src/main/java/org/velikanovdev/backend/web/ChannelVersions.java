@@ -0,0 +1,77 @@
+package org.velikanovdev.backend.web;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+import org.velikanovdev.backend.datasource.ReadWriteRouting;
+import org.velikanovdev.backend.entity.Channel;
+
+import java.sql.Timestamp;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-channel change counter behind the ETag and Last-Modified of the list endpoints. Whatever changes a
+// channel's data bumps its counter, so a request can be answered with 304 before any payload is built.
+// A fresh version keeps reads on the primary: a list read from a lagging replica would otherwise be built,
+// and cached by the client, under the new ETag.
+@Component
+public class ChannelVersions {
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteRouting readWriteRouting;
+    private final Map<Channel, Version> versions = new EnumMap<>(Channel.class);
+    // Keeps ETags handed out before a restart from matching the fresh counters
+    private final long epoch = System.currentTimeMillis();
+
+    // In cluster mode the counters live in channel_versions so a write on one node invalidates every node
+    @Value("${omnichannel.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Autowired
+    public ChannelVersions(JdbcTemplate jdbcTemplate, ReadWriteRouting readWriteRouting) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readWriteRouting = readWriteRouting;
+        for (Channel channel : Channel.values()) {
+            versions.put(channel, new Version());
+        }
+    }
+
+    public void bump(Channel channel) {
+        readWriteRouting.stickToPrimary();
+        if (clusterEnabled) {
+            jdbcTemplate.update("UPDATE channel_versions SET version = version + 1, updated_at = now() WHERE channel = ?",
+                    channel.name());
+            return;
+        }
+        Version version = versions.get(channel);
+        version.counter.incrementAndGet();
+        version.modifiedAt = System.currentTimeMillis();
+    }
+
+    // Sets ETag and Last-Modified on the response and tells whether a 304 has already been sent
+    public boolean checkNotModified(WebRequest request, Channel channel) {
+        String tag;
+        long lastModified;
+        if (clusterEnabled) {
+            Map<String, Object> row = jdbcTemplate.queryForMap(
+                    "SELECT version, updated_at FROM channel_versions WHERE channel = ?", channel.name());
+            tag = "c" + row.get("version");
+            lastModified = ((Timestamp) row.get("updated_at")).getTime();
+        } else {
+            Version version = versions.get(channel);
+            tag = epoch + "-" + version.counter.get();
+            lastModified = version.modifiedAt;
+        }
+        // Covers bumps made by other nodes, whose writes this node hasn't seen
+        readWriteRouting.stickToPrimarySince(lastModified);
+        return request.checkNotModified("\"" + channel.name().toLowerCase(Locale.ROOT) + "-" + tag + "\"", lastModified);
+    }
+
+    private static final class Version {
+        private final AtomicLong counter = new AtomicLong();
+        private volatile long modifiedAt = System.currentTimeMillis();
+    }
+}
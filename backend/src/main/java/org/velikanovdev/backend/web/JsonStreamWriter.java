@@ -0,0 +1,84 @@
+package org.velikanovdev.backend.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+// Writes list responses item by item straight to the socket, so a request holds at most one item and a
+// small output buffer in memory however long the list is
+@Component
+public class JsonStreamWriter {
+    public static final String NDJSON = "application/x-ndjson";
+    private static final int FLUSH_EVERY = 200;
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public JsonStreamWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // Pushes each item to the sink, e.g. from a repository Stream inside a transaction
+    @FunctionalInterface
+    public interface Source<T> {
+        void forEach(Consumer<T> sink);
+    }
+
+    // A JSON array by default, the shape clients already parse, or one object per line when they accept NDJSON
+    public <T> ResponseEntity<StreamingResponseBody> stream(String accept, Source<T> source) {
+        boolean ndjson = accept != null && accept.contains(NDJSON);
+        StreamingResponseBody body = out -> write(out, ndjson, source);
+        // no-cache lets browsers keep the body but makes them revalidate it against the ETag every time
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .contentType(ndjson ? MediaType.parseMediaType(NDJSON) : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    public <T> void write(OutputStream out, boolean ndjson, Source<T> source) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        if (ndjson) {
+            generator.setRootValueSeparator(new SerializedString("\n"));
+        } else {
+            generator.writeStartArray();
+        }
+
+        int[] written = {0};
+        try {
+            source.forEach(item -> {
+                try {
+                    generator.writeObject(item);
+                    if (++written[0] % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Usually the client went away, stop reading from the source
+            throw e.getCause();
+        }
+
+        if (ndjson) {
+            if (written[0] > 0) {
+                generator.writeRaw('\n');
+            }
+        } else {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
+}
@@ -0,0 +1,64 @@
+-- Schema as Hibernate's ddl-auto=update left it. IF NOT EXISTS lets existing databases adopt the
+-- migrations as is, spring.flyway.baseline-version=0 makes Flyway run this file against them too.
+
+CREATE TABLE IF NOT EXISTS msgs (
+    id         bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    sender     varchar(255),
+    recipient  varchar(255),
+    message    varchar(255),
+    message_id varchar(255),
+    sent_date  timestamp(6),
+    unread     boolean NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS inbox_conversations (
+    id               bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    channel          varchar(16)  NOT NULL CHECK (channel IN ('WHATSAPP', 'FACEBOOK', 'EMAIL')),
+    conversation_key varchar(255) NOT NULL,
+    participant      varchar(255),
+    last_activity    timestamp(6),
+    unread_count     bigint       NOT NULL,
+    preview          varchar(512),
+    CONSTRAINT uk_inbox_channel_key UNIQUE (channel, conversation_key)
+);
+CREATE INDEX IF NOT EXISTS idx_inbox_last_activity ON inbox_conversations (last_activity);
+CREATE INDEX IF NOT EXISTS idx_inbox_channel_last_activity ON inbox_conversations (channel, last_activity);
+
+CREATE TABLE IF NOT EXISTS search_documents (
+    id               bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    channel          varchar(16)  NOT NULL CHECK (channel IN ('WHATSAPP', 'FACEBOOK', 'EMAIL')),
+    conversation_key varchar(255) NOT NULL,
+    external_id      varchar(255) NOT NULL,
+    participant      varchar(255),
+    body             text,
+    sent_date        timestamp(6),
+    CONSTRAINT uk_search_channel_external_id UNIQUE (channel, external_id)
+);
+CREATE INDEX IF NOT EXISTS idx_search_conversation ON search_documents (channel, conversation_key);
+CREATE INDEX IF NOT EXISTS idx_search_documents_body_fts
+    ON search_documents USING GIN (to_tsvector('english', coalesce(body, '')));
+
+CREATE TABLE IF NOT EXISTS cluster_events (
+    id         bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    stream     varchar(64)  NOT NULL,
+    event_name varchar(64)  NOT NULL,
+    payload    text,
+    created_at timestamp(6) NOT NULL
+);
+CREATE INDEX IF NOT EXISTS idx_cluster_events_created_at ON cluster_events (created_at);
+
+CREATE TABLE IF NOT EXISTS mail_accounts (
+    id          bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    address     varchar(255) NOT NULL,
+    imap_host   varchar(255),
+    store_type  varchar(255),
+    imap_port   integer,
+    sent_folder varchar(255),
+    smtp_host   varchar(255),
+    smtp_port   integer,
+    username    varchar(255),
+    password    varchar(255),
+    enabled     boolean      NOT NULL,
+    created_at  timestamp(6),
+    CONSTRAINT uk_mail_accounts_address UNIQUE (address)
+);
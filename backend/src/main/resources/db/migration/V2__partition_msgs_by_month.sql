@@ -0,0 +1,64 @@
+-- msgs becomes range partitioned by month on sent_date, so history queries bounded by date only scan
+-- the months they need and whole months can be archived by dropping a partition.
+
+ALTER TABLE msgs RENAME TO msgs_unpartitioned;
+
+-- Partitioned tables can't have identity columns before Postgres 17, keep ids on a plain sequence
+CREATE SEQUENCE msgs_pk_seq;
+SELECT setval('msgs_pk_seq', COALESCE((SELECT MAX(id) FROM msgs_unpartitioned), 0) + 1, false);
+
+-- The partition key has to be part of the primary key
+CREATE TABLE msgs (
+    id         bigint       NOT NULL DEFAULT nextval('msgs_pk_seq'),
+    sender     varchar(255),
+    recipient  varchar(255),
+    message    varchar(255),
+    message_id varchar(255),
+    sent_date  timestamp(6) NOT NULL,
+    unread     boolean      NOT NULL,
+    PRIMARY KEY (id, sent_date)
+) PARTITION BY RANGE (sent_date);
+ALTER SEQUENCE msgs_pk_seq OWNED BY msgs.id;
+
+-- Catches dates outside the created months, e.g. a badly skewed upstream timestamp
+CREATE TABLE msgs_default PARTITION OF msgs DEFAULT;
+
+-- Creates the partition for the month containing month_start, named msgs_YYYY_MM. Rows that landed in
+-- msgs_default before it existed are moved over first, attaching would fail otherwise.
+CREATE FUNCTION create_msgs_partition(month_start date) RETURNS text AS $$
+DECLARE
+    partition_name text := 'msgs_' || to_char(month_start, 'YYYY_MM');
+    range_start timestamp := date_trunc('month', month_start);
+    range_end timestamp := date_trunc('month', month_start) + interval '1 month';
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN partition_name;
+    END IF;
+
+    EXECUTE format('CREATE TABLE %I (LIKE msgs INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition_name);
+    EXECUTE format('WITH moved AS (DELETE FROM msgs_default WHERE sent_date >= %L AND sent_date < %L RETURNING *) '
+                   'INSERT INTO %I SELECT * FROM moved', range_start, range_end, partition_name);
+    EXECUTE format('ALTER TABLE msgs ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, range_start, range_end);
+    RETURN partition_name;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Every month with data so far plus three ahead, MessageRetentionJob keeps creating them from here on
+SELECT create_msgs_partition(month::date)
+FROM generate_series(
+        date_trunc('month', COALESCE((SELECT MIN(sent_date) FROM msgs_unpartitioned), now())),
+        date_trunc('month', now()) + interval '3 months',
+        interval '1 month') AS month;
+
+INSERT INTO msgs (id, sender, recipient, message, message_id, sent_date, unread)
+SELECT id, sender, recipient, message, message_id, COALESCE(sent_date, now()), unread
+FROM msgs_unpartitioned;
+
+DROP TABLE msgs_unpartitioned;
+
+-- Created on the parent, Postgres adds them to every current and future partition
+CREATE INDEX idx_msgs_sender_sent_date ON msgs (sender, sent_date);
+CREATE INDEX idx_msgs_recipient_sent_date ON msgs (recipient, sent_date);
+CREATE INDEX idx_msgs_unread_sender ON msgs (sender) WHERE unread;
+CREATE INDEX idx_msgs_message_id ON msgs (message_id);
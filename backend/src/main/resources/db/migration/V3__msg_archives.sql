@@ -0,0 +1,13 @@
+-- One row per msgs partition that MessageRetentionJob moved out of Postgres into a gzip file
+CREATE TABLE msg_archives (
+    id             bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    partition_name varchar(64)  NOT NULL,
+    range_start    timestamp(6) NOT NULL,
+    range_end      timestamp(6) NOT NULL,
+    row_count      bigint       NOT NULL,
+    path           varchar(1024) NOT NULL,
+    size_bytes     bigint       NOT NULL,
+    archived_at    timestamp(6) NOT NULL,
+    CONSTRAINT uk_msg_archives_partition UNIQUE (partition_name)
+);
+CREATE INDEX idx_msg_archives_range ON msg_archives (range_start, range_end);
@@ -0,0 +1,10 @@
+-- Change counters behind the ETags of the list endpoints, only used in cluster mode so every node sees
+-- the same version. Single nodes keep them in memory.
+CREATE TABLE channel_versions (
+    channel    varchar(16)  PRIMARY KEY,
+    version    bigint       NOT NULL,
+    updated_at timestamp(6) NOT NULL
+);
+
+INSERT INTO channel_versions (channel, version, updated_at)
+VALUES ('WHATSAPP', 0, now()), ('FACEBOOK', 0, now()), ('EMAIL', 0, now());
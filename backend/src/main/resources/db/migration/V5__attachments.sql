@@ -0,0 +1,17 @@
+-- Attachment metadata, the bytes live in the content-addressed store under omnichannel.attachments.dir.
+-- source_id identifies the upstream part (IMAP part path, WhatsApp media id, Messenger attachment id)
+-- so a poll never downloads the same part twice; identical files share one blob through sha256.
+CREATE TABLE attachments (
+    id           bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    channel      varchar(16)   NOT NULL,
+    message_id   varchar(512)  NOT NULL,
+    source_id    varchar(1024) NOT NULL,
+    file_name    varchar(512),
+    content_type varchar(255),
+    size         bigint        NOT NULL,
+    sha256       char(64)      NOT NULL,
+    created_at   timestamp(6)  NOT NULL,
+    CONSTRAINT uk_attachments_source UNIQUE (channel, source_id)
+);
+CREATE INDEX idx_attachments_message ON attachments (channel, message_id);
+CREATE INDEX idx_attachments_sha256 ON attachments (sha256);
@@ -0,0 +1,5 @@
+-- Delivery state of outbound WhatsApp messages from the statuses webhook, stored as the ordinal of
+-- DeliveryStatus so "only move forward" is a plain comparison. Status updates are keyed on the wamid,
+-- which idx_msgs_message_id from V2 already covers on every partition.
+ALTER TABLE msgs ADD COLUMN delivery_status smallint;
+ALTER TABLE msgs ADD COLUMN delivery_updated_at timestamp(6);
@@ -0,0 +1,2 @@
+-- W3C traceparent of the span that published the event, so delivery on the other nodes joins the same trace
+ALTER TABLE cluster_events ADD COLUMN trace_parent varchar(55);
@@ -0,0 +1,65 @@
+package org.velikanovdev.backend.attachment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AttachmentStoreTest {
+    // sha256 of "hello"
+    private static final String HELLO = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @TempDir
+    Path dir;
+
+    private AttachmentStore store;
+
+    @BeforeEach
+    void init() throws IOException {
+        store = new AttachmentStore();
+        ReflectionTestUtils.setField(store, "storeDir", dir.toString());
+        store.init();
+    }
+
+    @Test
+    void storesContentUnderItsHash() throws IOException {
+        StoredBlob blob = store.write(stream("hello"));
+
+        assertThat(blob.getSha256()).isEqualTo(HELLO);
+        assertThat(blob.getSize()).isEqualTo(5);
+        assertThat(store.path(HELLO)).isEqualTo(dir.resolve("2c").resolve("f2").resolve(HELLO));
+        assertThat(Files.readString(store.path(HELLO))).isEqualTo("hello");
+    }
+
+    @Test
+    void sameContentIsStoredOnce() throws IOException {
+        StoredBlob first = store.write(stream("hello"));
+        StoredBlob second = store.write(stream("hello"));
+        StoredBlob other = store.write(stream("hello!"));
+
+        assertThat(second.getSha256()).isEqualTo(first.getSha256());
+        assertThat(other.getSha256()).isNotEqualTo(first.getSha256());
+        assertThat(files(dir)).isEqualTo(2 + files(dir.resolve("incoming")));
+        // Nothing is left behind from the second copy
+        assertThat(files(dir.resolve("incoming"))).isZero();
+    }
+
+    private static long files(Path under) throws IOException {
+        try (Stream<Path> files = Files.walk(under)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
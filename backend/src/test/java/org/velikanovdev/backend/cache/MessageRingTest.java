@@ -0,0 +1,107 @@
+package org.velikanovdev.backend.cache;
+
+import org.junit.jupiter.api.Test;
+import org.velikanovdev.backend.dto.WhatsAppMessageView;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageRingTest {
+    private static final String CONTACT = "15550001111";
+    private static final String OWN = "15550009999";
+    private static final Date EPOCH = new Date(0);
+
+    @Test
+    void keepsSentDateOrderWhenDeliveriesArriveOutOfOrder() {
+        MessageRing ring = new MessageRing(5, true);
+        ring.add(message(1, 10));
+        ring.add(message(2, 30));
+        ring.add(message(3, 20));
+        ring.add(message(4, 5));
+
+        assertThat(ids(ring.newest(null, EPOCH))).containsExactly(4L, 1L, 3L, 2L);
+        assertThat(ids(ring.newest(2, EPOCH))).containsExactly(3L, 2L);
+        assertThat(ids(ring.newest(null, new Date(15)))).containsExactly(3L, 2L);
+    }
+
+    @Test
+    void fullRingEvictsTheOldestAndBecomesIncomplete() {
+        MessageRing ring = new MessageRing(3, true);
+        for (int i = 1; i <= 3; i++) {
+            ring.add(message(i, i * 10));
+        }
+        long full = ring.bytes();
+        assertThat(ids(ring.newest(null, EPOCH))).containsExactly(1L, 2L, 3L);
+
+        ring.add(message(4, 25));
+        // The newest three are still known, the whole conversation no longer is
+        assertThat(ids(ring.newest(3, EPOCH))).containsExactly(2L, 4L, 3L);
+        assertThat(ring.newest(null, EPOCH)).isNull();
+        assertThat(ring.newest(4, EPOCH)).isNull();
+        assertThat(ring.bytes()).isEqualTo(full);
+
+        // Older than everything kept, dropped
+        ring.add(message(5, 1));
+        assertThat(ids(ring.newest(3, EPOCH))).containsExactly(2L, 4L, 3L);
+    }
+
+    @Test
+    void aMessageAlreadyInTheRingIsNotAddedAgain() {
+        MessageRing ring = new MessageRing(3, true);
+        ring.add(message(1, 10));
+        ring.add(message(2, 20));
+        long bytes = ring.bytes();
+
+        // The ring was loaded after the commit, then the after-commit add came
+        ring.add(message(2, 20));
+
+        assertThat(ids(ring.newest(null, EPOCH))).containsExactly(1L, 2L);
+        assertThat(ring.bytes()).isEqualTo(bytes);
+    }
+
+    @Test
+    void hasMessageFromAnswersFromTheRingWhenItCan() {
+        MessageRing ring = new MessageRing(4, true);
+        ring.add(message(1, 10, CONTACT));
+        ring.add(message(2, 20, OWN));
+        ring.add(message(3, 30, OWN));
+
+        assertThat(ring.hasMessageFrom(CONTACT, new Date(5))).isTrue();
+        // The contact's message is before the window, the ring has seen all of the window
+        assertThat(ring.hasMessageFrom(CONTACT, new Date(15))).isFalse();
+        assertThat(ring.hasMessageFrom(CONTACT, new Date(30))).isFalse();
+        // Complete, so a conversation the contact never wrote in is known too
+        assertThat(ring.hasMessageFrom("15550002222", EPOCH)).isFalse();
+    }
+
+    @Test
+    void incompleteRingDefersToTheDatabaseWhenTheWindowGoesPastIt() {
+        MessageRing ring = new MessageRing(2, false);
+        ring.add(message(1, 20, OWN));
+        ring.add(message(2, 30, OWN));
+
+        // The window starts before the oldest kept message, the contact may have written before it
+        assertThat(ring.hasMessageFrom(CONTACT, new Date(10))).isNull();
+        // The window lies within what the ring holds
+        assertThat(ring.hasMessageFrom(CONTACT, new Date(20))).isFalse();
+
+        ring.add(message(3, 40, CONTACT));
+        assertThat(ring.hasMessageFrom(CONTACT, new Date(10))).isTrue();
+        assertThat(new MessageRing(2, false).hasMessageFrom(CONTACT, EPOCH)).isNull();
+    }
+
+    private static WhatsAppMessageView message(long id, long sentAt) {
+        return message(id, sentAt, CONTACT);
+    }
+
+    private static WhatsAppMessageView message(long id, long sentAt, String sender) {
+        String recipient = sender.equals(OWN) ? CONTACT : OWN;
+        return new WhatsAppMessageView(id, sender, recipient, "message " + id, "wamid." + id, new Date(sentAt), true, null);
+    }
+
+    private static List<Long> ids(List<WhatsAppMessageView> messages) {
+        return messages.stream().map(WhatsAppMessageView::getId).toList();
+    }
+}
@@ -0,0 +1,194 @@
+package org.velikanovdev.backend.cluster;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.velikanovdev.backend.BackendApplication;
+import org.velikanovdev.backend.notification.SseStream;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Two backend nodes on one machine sharing an embedded Postgres
+class ClusterModeTest {
+    private static EmbeddedPostgres postgres;
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        postgres = EmbeddedPostgres.builder().start();
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterAll
+    static void stopCluster() throws Exception {
+        nodeB.close();
+        nodeA.close();
+        postgres.close();
+    }
+
+    @Test
+    void exactlyOneNodeLeadsEachPoller() {
+        PollerLeadership leadershipA = nodeA.getBean(PollerLeadership.class);
+        PollerLeadership leadershipB = nodeB.getBean(PollerLeadership.class);
+
+        for (String poller : List.of("email-poller", "facebook-poller", "whatsapp-poller")) {
+            assertThat(leadershipA.isLeader(poller) ^ leadershipB.isLeader(poller))
+                    .as("single leader for %s", poller)
+                    .isTrue();
+        }
+    }
+
+    @Test
+    void leadershipMovesWhenTheLeaderLetsGo() {
+        PollerLeadership leadershipA = nodeA.getBean(PollerLeadership.class);
+        PollerLeadership leadershipB = nodeB.getBean(PollerLeadership.class);
+        String poller = "failover-test-poller";
+
+        assertThat(leadershipA.isLeader(poller)).isTrue();
+        assertThat(leadershipB.isLeader(poller)).isFalse();
+
+        leadershipA.release();
+
+        assertThat(leadershipB.isLeader(poller)).isTrue();
+        assertThat(leadershipA.isLeader(poller)).isFalse();
+    }
+
+    @Test
+    void webhookOnOneNodeReachesSubscribersOfTheOther() throws Exception {
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        HttpRequest subscribe = HttpRequest.newBuilder(URI.create(baseUrl(nodeB) + "/webhook/notifications"))
+                .header("Accept", "text/event-stream")
+                .build();
+        CompletableFuture<HttpResponse<Void>> stream = httpClient.sendAsync(subscribe,
+                HttpResponse.BodyHandlers.fromLineSubscriber(new CollectingSubscriber(lines)));
+        assertThat(stream.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+
+        HttpRequest webhook = HttpRequest.newBuilder(URI.create(baseUrl(nodeA) + "/webhook"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(webhookPayload("447000000001", "wamid.cluster-test")))
+                .build();
+        assertThat(httpClient.send(webhook, HttpResponse.BodyHandlers.discarding()).statusCode()).isEqualTo(200);
+
+        boolean received = false;
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!received && System.currentTimeMillis() < deadline) {
+            String line = lines.poll(500, TimeUnit.MILLISECONDS);
+            received = line != null && line.contains("wamid.cluster-test");
+        }
+        stream.cancel(true);
+
+        assertThat(received).as("event from node A delivered to subscriber on node B").isTrue();
+    }
+
+    @Test
+    void eventCommittedAfterANewerOneIsStillDelivered() throws Exception {
+        BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        HttpRequest subscribe = HttpRequest.newBuilder(URI.create(baseUrl(nodeB) + "/webhook/notifications"))
+                .header("Accept", "text/event-stream")
+                .build();
+        CompletableFuture<HttpResponse<Void>> stream = httpClient.sendAsync(subscribe,
+                HttpResponse.BodyHandlers.fromLineSubscriber(new CollectingSubscriber(lines)));
+        assertThat(stream.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+
+        // Takes its id first but commits last, like a slow publisher on another node
+        try (Connection slowPublisher = postgres.getPostgresDatabase().getConnection()) {
+            slowPublisher.setAutoCommit(false);
+            try (Statement statement = slowPublisher.createStatement()) {
+                statement.execute("INSERT INTO cluster_events (stream, event_name, payload, created_at) "
+                        + "VALUES ('WHATSAPP_MESSAGES', 'whatsappMessages', '\"late-event\"', now())");
+            }
+            nodeA.getBean(ClusterEventBus.class).publish(SseStream.WHATSAPP_MESSAGES, "whatsappMessages", "early-event");
+            assertThat(awaitLine(lines, "early-event")).as("newer event delivered").isTrue();
+
+            slowPublisher.commit();
+            try (Statement statement = slowPublisher.createStatement()) {
+                statement.execute("SELECT pg_notify('omnichannel_events', 'late')");
+            }
+            slowPublisher.commit();
+        }
+
+        boolean received = awaitLine(lines, "late-event");
+        stream.cancel(true);
+        assertThat(received).as("older id committed later still delivered").isTrue();
+    }
+
+    private static boolean awaitLine(BlockingQueue<String> lines, String content) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            String line = lines.poll(500, TimeUnit.MILLISECONDS);
+            if (line != null && line.contains(content)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ConfigurableApplicationContext startNode() throws IOException {
+        return new SpringApplicationBuilder(BackendApplication.class)
+                .properties(
+                        "server.port=0",
+                        // Each node has its own webhook WAL, as on separate machines
+                        "omnichannel.wal.dir=" + Files.createTempDirectory("wal"),
+                        "spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                        "spring.datasource.username=postgres",
+                        "spring.datasource.password=postgres",
+                        "omnichannel.cluster.enabled=true")
+                .run();
+    }
+
+    private static String baseUrl(ConfigurableApplicationContext node) {
+        return "http://127.0.0.1:" + node.getEnvironment().getProperty("local.server.port");
+    }
+
+    private static String webhookPayload(String from, String messageId) {
+        long timestamp = System.currentTimeMillis() / 1000;
+        return "{\"object\":\"whatsapp_business_account\",\"entry\":[{\"id\":\"1\",\"changes\":[{\"field\":\"messages\","
+                + "\"value\":{\"messaging_product\":\"whatsapp\",\"metadata\":{\"display_phone_number\":\"15550000000\","
+                + "\"phone_number_id\":\"1\"},\"messages\":[{\"from\":\"" + from + "\",\"id\":\"" + messageId + "\","
+                + "\"timestamp\":\"" + timestamp + "\",\"text\":{\"body\":\"hello from node A\"},\"type\":\"text\"}]}}]}]}";
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<String> {
+        private final BlockingQueue<String> lines;
+
+        CollectingSubscriber(BlockingQueue<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String item) {
+            lines.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
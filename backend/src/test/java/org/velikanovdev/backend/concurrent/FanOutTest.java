@@ -0,0 +1,88 @@
+package org.velikanovdev.backend.concurrent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Fan-outs on a pool smaller than the tasks they fork, the way IMAP accounts and Graph threads share it
+class FanOutTest {
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+    private final ExecutorService forker = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void stop() {
+        pool.shutdownNow();
+        forker.shutdownNow();
+    }
+
+    @Test
+    void tasksWaitingForAPermitDontHoldPoolThreads() throws Exception {
+        // The first fan-out's tasks can only finish once the second one got a task through the pool
+        CountDownLatch secondRan = new CountDownLatch(1);
+        Future<List<Integer>> first = forker.submit(() -> {
+            try (FanOut<Integer> fanOut = new FanOut<>(pool, Duration.ofSeconds(5), 2)) {
+                for (int i = 0; i < 10; i++) {
+                    int task = i;
+                    fanOut.fork(() -> {
+                        secondRan.await();
+                        return task;
+                    });
+                }
+                return fanOut.join();
+            }
+        });
+        Thread.sleep(100);
+
+        List<Integer> second;
+        try (FanOut<Integer> fanOut = new FanOut<>(pool, Duration.ofSeconds(5), 2)) {
+            for (int i = 0; i < 10; i++) {
+                int task = i;
+                fanOut.fork(() -> {
+                    secondRan.countDown();
+                    return task;
+                });
+            }
+            second = fanOut.join();
+        }
+
+        List<Integer> inOrder = IntStream.range(0, 10).boxed().toList();
+        assertThat(second).isEqualTo(inOrder);
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(inOrder);
+    }
+
+    @Test
+    void forkGivesUpAtTheDeadlineAndCancelsWhatIsRunning() {
+        CountDownLatch never = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        FanOut<Integer> fanOut = new FanOut<>(pool, Duration.ofMillis(200), 1);
+
+        assertThatThrownBy(() -> {
+            fanOut.fork(() -> {
+                try {
+                    never.await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return 1;
+            });
+            fanOut.fork(() -> 2);
+        }).isInstanceOf(TimeoutException.class);
+
+        assertThat(awaitQuietly(interrupted)).isTrue();
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.velikanovdev.backend.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.velikanovdev.backend.BackendApplication;
+import org.velikanovdev.backend.entity.Channel;
+import org.velikanovdev.backend.entity.WhatsAppConversation;
+import org.velikanovdev.backend.entity.WhatsAppMessage;
+import org.velikanovdev.backend.service.WhatsAppMessageService;
+import org.velikanovdev.backend.web.ChannelVersions;
+
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Primary and replica as two embedded Postgres instances without replication between them, so the rows a read
+// returns tell which of the two served it
+class ReadReplicaRoutingTest {
+    private static final String OWN_NUMBER = "15550000000";
+    private static final String PRIMARY_ONLY = "447000000001";
+    private static final String REPLICA_ONLY = "447000000002";
+
+    private static EmbeddedPostgres primary;
+    private static EmbeddedPostgres replica;
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void start() throws Exception {
+        primary = EmbeddedPostgres.builder().start();
+        replica = EmbeddedPostgres.builder().start();
+        // A real replica gets the schema through replication
+        Flyway.configure().dataSource(replica.getPostgresDatabase()).load().migrate();
+
+        context = new SpringApplicationBuilder(BackendApplication.class)
+                .properties(
+                        "server.port=0",
+                        "omnichannel.wal.dir=" + Files.createTempDirectory("wal"),
+                        "spring.datasource.url=" + primary.getJdbcUrl("postgres", "postgres"),
+                        "spring.datasource.username=postgres",
+                        "spring.datasource.password=postgres",
+                        "omnichannel.datasource.replica.enabled=true",
+                        "omnichannel.datasource.replica.url=" + replica.getJdbcUrl("postgres", "postgres"),
+                        "omnichannel.datasource.replica.stickiness=1s",
+                        "whatsapp.phone.number=" + OWN_NUMBER)
+                .run();
+
+        insertMessage(primary, PRIMARY_ONLY, "wamid.primary-only");
+        insertMessage(replica, REPLICA_ONLY, "wamid.replica-only");
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        context.close();
+        replica.close();
+        primary.close();
+    }
+
+    @Test
+    void readOnlyTransactionsUseTheReplica() throws InterruptedException {
+        awaitReplicaRoute();
+
+        assertThat(conversationSenders())
+                .contains(REPLICA_ONLY)
+                .doesNotContain(PRIMARY_ONLY);
+    }
+
+    @Test
+    void writesAndReadsOutsideReadOnlyTransactionsUseThePrimary() {
+        WhatsAppMessageService messageService = context.getBean(WhatsAppMessageService.class);
+        messageService.saveMessage(new WhatsAppMessage(null, OWN_NUMBER, PRIMARY_ONLY, "reply", "wamid.sent-reply",
+                new Date(), false, null, null));
+
+        assertThat(countMessages(primary, "wamid.sent-reply")).isEqualTo(1);
+        assertThat(countMessages(replica, "wamid.sent-reply")).isZero();
+        assertThat(messageService.hasUserMessagedInLast24Hours(PRIMARY_ONLY)).isTrue();
+    }
+
+    @Test
+    void readsStayOnThePrimaryAfterMarkAsRead() throws InterruptedException {
+        awaitReplicaRoute();
+        context.getBean(WhatsAppMessageService.class).markConversationAsRead(PRIMARY_ONLY);
+
+        assertThat(conversationSenders())
+                .contains(PRIMARY_ONLY)
+                .doesNotContain(REPLICA_ONLY);
+
+        awaitReplicaRoute();
+        assertThat(conversationSenders()).contains(REPLICA_ONLY);
+    }
+
+    @Test
+    void readsStayOnThePrimaryAfterAVersionBump() throws InterruptedException {
+        awaitReplicaRoute();
+        // What webhook ingest, status flushes, imports and retention do after writing
+        context.getBean(ChannelVersions.class).bump(Channel.WHATSAPP);
+
+        assertThat(conversationSenders())
+                .contains(PRIMARY_ONLY)
+                .doesNotContain(REPLICA_ONLY);
+    }
+
+    @Test
+    void eachRouteHasItsOwnPoolMetrics() throws InterruptedException {
+        awaitReplicaRoute();
+        conversationSenders();
+        context.getBean(WhatsAppMessageService.class).hasUserMessagedInLast24Hours(PRIMARY_ONLY);
+
+        MeterRegistry registry = context.getBean(MeterRegistry.class);
+        for (String route : List.of("primary", "replica")) {
+            assertThat(registry.find("hikaricp.connections").tag("pool", route).gauge())
+                    .as("pool gauge for %s", route)
+                    .isNotNull();
+            assertThat(registry.find("omnichannel.db.routes").tag("route", route).counters())
+                    .as("route counter for %s", route)
+                    .isNotEmpty();
+        }
+    }
+
+    private static List<String> conversationSenders() {
+        return context.getBean(WhatsAppMessageService.class).getConversations().stream()
+                .map(WhatsAppConversation::getSender)
+                .toList();
+    }
+
+    private static void awaitReplicaRoute() throws InterruptedException {
+        ReadWriteRouting routing = context.getBean(ReadWriteRouting.class);
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (routing.isStickyToPrimary() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private static void insertMessage(EmbeddedPostgres postgres, String sender, String messageId) {
+        new JdbcTemplate(postgres.getPostgresDatabase()).update(
+                "INSERT INTO msgs (sender, recipient, message, message_id, sent_date, unread) VALUES (?, ?, ?, ?, now(), true)",
+                sender, OWN_NUMBER, "hello", messageId);
+    }
+
+    private static int countMessages(EmbeddedPostgres postgres, String messageId) {
+        return new JdbcTemplate(postgres.getPostgresDatabase())
+                .queryForObject("SELECT COUNT(*) FROM msgs WHERE message_id = ?", Integer.class, messageId);
+    }
+}
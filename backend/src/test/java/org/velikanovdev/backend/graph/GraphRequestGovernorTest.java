@@ -0,0 +1,127 @@
+package org.velikanovdev.backend.graph;
+
+import com.restfb.json.JsonObject;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Real RestFB clients against a local Graph stub that reports whatever usage the test sets
+class GraphRequestGovernorTest {
+    private HttpServer graphStub;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicReference<String> appUsage = new AtomicReference<>();
+    private final AtomicReference<String> businessUsage = new AtomicReference<>();
+
+    private SimpleMeterRegistry registry;
+    private GraphRequestGovernor governor;
+    private GraphClientFactory clientFactory;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        graphStub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        graphStub.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            if (appUsage.get() != null) {
+                exchange.getResponseHeaders().add("X-App-Usage", appUsage.get());
+            }
+            if (businessUsage.get() != null) {
+                exchange.getResponseHeaders().add("X-Business-Use-Case-Usage", businessUsage.get());
+            }
+            byte[] body = "{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        graphStub.start();
+
+        registry = new SimpleMeterRegistry();
+        governor = new GraphRequestGovernor(new ChannelMetrics(registry));
+        ReflectionTestUtils.setField(governor, "softLimit", 60);
+        ReflectionTestUtils.setField(governor, "hardLimit", 90);
+        ReflectionTestUtils.setField(governor, "maxBackgroundDelay", 400);
+
+        clientFactory = new GraphClientFactory(governor);
+        ReflectionTestUtils.setField(clientFactory, "ACCESS_TOKEN", "test-token");
+        ReflectionTestUtils.setField(clientFactory, "graphUrl", "http://127.0.0.1:" + graphStub.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopStub() {
+        graphStub.stop(0);
+    }
+
+    @Test
+    void backgroundCallsStopNearTheLimitWhileSendsGoThrough() {
+        appUsage.set("{\"call_count\":95,\"total_time\":20,\"total_cputime\":20}");
+        fetch(GraphPriority.INTERACTIVE);
+        assertThat(governor.currentUsage()).isGreaterThan(94);
+
+        assertThatThrownBy(() -> fetch(GraphPriority.BACKGROUND)).isInstanceOf(GraphThrottledException.class);
+        assertThat(requests.get()).as("throttled call never reaches Graph").isEqualTo(1);
+
+        fetch(GraphPriority.INTERACTIVE);
+        assertThat(requests.get()).isEqualTo(2);
+        assertThat(decisions("background", "rejected")).isEqualTo(1);
+        assertThat(decisions("interactive", "allowed")).isEqualTo(2);
+    }
+
+    @Test
+    void backgroundCallsBackOffInTheSoftZone() {
+        appUsage.set("{\"call_count\":75,\"total_time\":10,\"total_cputime\":10}");
+        fetch(GraphPriority.INTERACTIVE);
+
+        long start = System.nanoTime();
+        fetch(GraphPriority.BACKGROUND);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Halfway between soft and hard limit, so about half of the maximum delay
+        assertThat(elapsedMillis).isGreaterThanOrEqualTo(150);
+        assertThat(decisions("background", "delayed")).isEqualTo(1);
+    }
+
+    @Test
+    void everythingWaitsWhileGraphReportsTheAppBlocked() {
+        businessUsage.set("{\"1234\":[{\"type\":\"messenger\",\"call_count\":100,\"total_cputime\":30,"
+                + "\"total_time\":30,\"estimated_time_to_regain_access\":5}]}");
+        fetch(GraphPriority.INTERACTIVE);
+
+        assertThatThrownBy(() -> fetch(GraphPriority.INTERACTIVE)).isInstanceOf(GraphThrottledException.class);
+        assertThatThrownBy(() -> fetch(GraphPriority.BACKGROUND)).isInstanceOf(GraphThrottledException.class);
+        assertThat(requests.get()).isEqualTo(1);
+    }
+
+    @Test
+    void usageIsExposedAsAGauge() {
+        appUsage.set("{\"call_count\":40,\"total_time\":10,\"total_cputime\":10}");
+        fetch(GraphPriority.BACKGROUND);
+
+        assertThat(registry.get("omnichannel.graph.usage").gauge().value()).isBetween(39.0, 40.0);
+    }
+
+    private void fetch(GraphPriority priority) {
+        clientFactory.createClient(priority).fetchObject("me", JsonObject.class);
+    }
+
+    private double decisions(String priority, String decision) {
+        return registry.get("omnichannel.graph.governor.decisions")
+                .tag("priority", priority)
+                .tag("decision", decision)
+                .counter()
+                .count();
+    }
+}
@@ -0,0 +1,80 @@
+package org.velikanovdev.backend.ids;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdInternTableTest {
+
+    @Test
+    void internsEachIdOnce() {
+        IdInternTable table = new IdInternTable(4);
+        long first = table.intern("<1@example.com>");
+        long second = table.intern("wamid.HBgLMTU1NTAwMDAwMDAVAgASGBQzQTk");
+
+        assertThat(table.intern(new String("<1@example.com>"))).isEqualTo(first);
+        assertThat(second).isNotEqualTo(first).isNotEqualTo(IdInternTable.NO_HANDLE);
+        assertThat(table.find("<2@example.com>")).isEqualTo(IdInternTable.NO_HANDLE);
+        assertThat(table.contains("wamid.HBgLMTU1NTAwMDAwMDAVAgASGBQzQTk")).isTrue();
+        assertThat(table.size()).isEqualTo(2);
+    }
+
+    @Test
+    void findsTokensInsideALongerString() {
+        IdInternTable table = new IdInternTable(4);
+        long handle = table.intern("<2@example.com>");
+        String references = "<1@example.com>  <2@example.com>";
+
+        assertThat(table.find(references, 17, references.length())).isEqualTo(handle);
+        assertThat(table.find(references, 0, 15)).isEqualTo(IdInternTable.NO_HANDLE);
+        assertThat(table.find(references, 16, references.length())).isEqualTo(IdInternTable.NO_HANDLE);
+    }
+
+    @Test
+    void keepsIdsOutsideLatin1Apart() {
+        IdInternTable table = new IdInternTable(4);
+        long latin1 = table.intern("<grüße@example.com>");
+        long wide = table.intern("<привет@example.com>");
+
+        assertThat(table.find("<grüße@example.com>")).isEqualTo(latin1);
+        assertThat(table.find("<привет@example.com>")).isEqualTo(wide);
+        // Same low bytes as the Cyrillic id, must not match it
+        assertThat(table.find("<?ривет@example.com>")).isEqualTo(IdInternTable.NO_HANDLE);
+    }
+
+    @Test
+    void handlesSurviveGrowing() {
+        IdInternTable table = new IdInternTable(16);
+        List<Long> handles = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            handles.add(table.intern("<" + i + "@mail.example.com>"));
+        }
+
+        Set<Long> distinct = new HashSet<>(handles);
+        assertThat(distinct).hasSize(100_000);
+        assertThat(table.size()).isEqualTo(100_000);
+        for (int i = 0; i < 100_000; i += 997) {
+            assertThat(table.find("<" + i + "@mail.example.com>")).isEqualTo(handles.get(i));
+        }
+        assertThat(table.getOffHeapBytes()).isGreaterThan(100_000L * 16);
+    }
+
+    @Test
+    void mapKeepsTheZeroKeyAndGrows() {
+        LongLongMap map = new LongLongMap(2);
+        map.put(IdInternTable.NO_HANDLE, 7);
+        for (long key = 1; key <= 1000; key++) {
+            map.put(key * 31, key);
+        }
+
+        assertThat(map.get(IdInternTable.NO_HANDLE, -1)).isEqualTo(7);
+        assertThat(map.get(31 * 500, -1)).isEqualTo(500);
+        assertThat(map.containsKey(32)).isFalse();
+        assertThat(map.get(32, -1)).isEqualTo(-1);
+    }
+}
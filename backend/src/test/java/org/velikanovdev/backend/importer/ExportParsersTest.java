@@ -0,0 +1,142 @@
+package org.velikanovdev.backend.importer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The parsers on small hand-written exports, no database involved
+class ExportParsersTest {
+    private final ExecutorService decoders = Executors.newFixedThreadPool(2);
+    private final List<ImportedMessage> messages = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final ExportParser.MessageSink sink = new ExportParser.MessageSink() {
+        @Override
+        public void accept(ImportedMessage message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void skipped() {
+            skipped.incrementAndGet();
+        }
+    };
+
+    @AfterEach
+    void stopDecoders() {
+        decoders.shutdownNow();
+    }
+
+    @Test
+    void whatsAppChatKeepsMultiLineMessagesAndDirection() throws Exception {
+        String export = "\uFEFF31/12/2023, 21:15 - Messages and calls are end-to-end encrypted.\n"
+                + "31/12/2023, 21:15 - Jane Doe: Hello\n"
+                + "second line\n"
+                + "31/12/2023, 21:16 - Support: Hi Jane\n"
+                + "31/12/2023, 21:16 - Support: Hi Jane\n";
+
+        parse(new WhatsAppChatParser("+4912345", "Support", "+4900000", true), "chat.txt", export);
+
+        assertThat(messages).hasSize(3);
+        ImportedMessage incoming = messages.get(0);
+        assertThat(incoming.getBody()).isEqualTo("Hello\nsecond line");
+        assertThat(incoming.getSender()).isEqualTo("+4912345");
+        assertThat(incoming.getRecipient()).isEqualTo("+4900000");
+        assertThat(incoming.getSentDate()).isEqualTo(date(LocalDateTime.of(2023, 12, 31, 21, 15)));
+        assertThat(messages.get(1).getSender()).isEqualTo("+4900000");
+        // The same text twice in a minute is still two messages
+        assertThat(messages.get(1).getExternalId()).isNotEqualTo(messages.get(2).getExternalId());
+    }
+
+    @Test
+    void whatsAppChatIdsAreStableAcrossImports() throws Exception {
+        String export = "[31.12.23, 21:15:03] Jane Doe: Hello\n";
+        parse(new WhatsAppChatParser("+4912345", "Support", "+4900000", true), "chat.txt", export);
+        parse(new WhatsAppChatParser("+4912345", "Support", "+4900000", true), "chat.txt", export);
+
+        assertThat(messages).hasSize(2);
+        assertThat(messages.get(0).getExternalId()).isEqualTo(messages.get(1).getExternalId());
+        assertThat(messages.get(0).getSentDate()).isEqualTo(date(LocalDateTime.of(2023, 12, 31, 21, 15, 3)));
+    }
+
+    @Test
+    void messengerExportRepairsEncodingAndSkipsMediaOnly() throws Exception {
+        String export = "{\"participants\": [{\"name\": \"J\\u00c3\\u00bcrgen\"}, {\"name\": \"Support\"}],"
+                + " \"messages\": ["
+                + "{\"sender_name\": \"J\\u00c3\\u00bcrgen\", \"timestamp_ms\": 1700000000000, \"content\": \"Gr\\u00c3\\u00bc\\u00c3\\u009fe\"},"
+                + "{\"sender_name\": \"Support\", \"timestamp_ms\": 1700000001000, \"photos\": [{\"uri\": \"a.jpg\"}]}"
+                + "], \"thread_path\": \"inbox/jurgen_123\"}";
+
+        parse(new MessengerExportParser("Support"), "inbox/jurgen_123/message_1.json", export);
+
+        assertThat(messages).hasSize(1);
+        assertThat(skipped).hasValue(1);
+        ImportedMessage message = messages.get(0);
+        assertThat(message.getBody()).isEqualTo("Grüße");
+        assertThat(message.getSender()).isEqualTo("Jürgen");
+        assertThat(message.getParticipant()).isEqualTo("Jürgen");
+        assertThat(message.getConversationKey()).isEqualTo("jurgen_123");
+    }
+
+    @Test
+    void mboxSplitsMessagesAndUnquotesFromLines() throws Exception {
+        String mbox = "From alice@example.com Mon Jan  1 00:00:00 2024\n"
+                + "Message-ID: <1@example.com>\n"
+                + "From: Alice <alice@example.com>\n"
+                + "To: support@example.com\n"
+                + "Subject: Question\n"
+                + "Date: Mon, 1 Jan 2024 10:00:00 +0000\n"
+                + "\n"
+                + ">From the start\n"
+                + "\n"
+                + "From support@example.com Mon Jan  1 00:00:00 2024\n"
+                + "Message-ID: <2@example.com>\n"
+                + "References: <1@example.com>\n"
+                + "From: support@example.com\n"
+                + "To: alice@example.com\n"
+                + "Subject: Re: Question\n"
+                + "Date: Mon, 1 Jan 2024 11:00:00 +0000\n"
+                + "Content-Type: text/html; charset=utf-8\n"
+                + "\n"
+                + "<p>Answer</p>\n"
+                + "From nobody Mon Jan  1 00:00:00 2024\n"
+                + "Subject: no date\n"
+                + "\n"
+                + "body\n";
+
+        parse(new MboxParser(1 << 20, 4), "mail.mbox", mbox);
+
+        assertThat(skipped).hasValue(1);
+        assertThat(messages).hasSize(2);
+        messages.sort(Comparator.comparing(ImportedMessage::getSentDate));
+        ImportedMessage question = messages.get(0);
+        assertThat(question.getExternalId()).isEqualTo("<1@example.com>");
+        assertThat(question.getSender()).isEqualTo("alice@example.com");
+        assertThat(question.getBody()).startsWith("Question\nFrom the start");
+        ImportedMessage answer = messages.get(1);
+        assertThat(answer.getConversationKey()).isEqualTo("<1@example.com>");
+        assertThat(answer.getBody()).contains("Answer").doesNotContain("<p>");
+    }
+
+    private void parse(ExportParser parser, String file, String content) throws Exception {
+        parser.parse(Path.of(file), new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), decoders, sink);
+    }
+
+    private static Date date(LocalDateTime time) {
+        return Date.from(time.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
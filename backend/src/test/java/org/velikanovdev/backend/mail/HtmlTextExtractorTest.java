@@ -0,0 +1,80 @@
+package org.velikanovdev.backend.mail;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HtmlTextExtractorTest {
+
+    @Test
+    void matchesJsoupTextApartFromLineBreaks() throws IOException {
+        // Jsoup's text() puts a space where the extractor starts a new line
+        List<String> samples = List.of(
+                "<p>Fish &amp; chips &lt;3 &quot;today&quot; &copy; 2024 &mdash; it&#8217;s &#x41;&#66;</p>",
+                "<html><head><style>p { color: red }</style></head><body><script>var a = '</p>';</script><p>Visible</p></body></html>",
+                "<SCRIPT>alert(1)</ScRiPt>Text<STYLE>x</style>",
+                "<p>one<p>two<div>three",
+                "<b>bold <i>both",
+                "a < b and <3 <",
+                "  <p>  lots \n\t of   space  </p>\n\n <p>next</p>  ",
+                "line<br>break<br/>again",
+                "<ul><li>one</li><li>two</li></ul><table><tr><td>a</td><td>b</td></tr></table>",
+                "before<!-- a -- comment > still -->after");
+
+        for (String html : samples) {
+            assertThat(extract(html).replace('\n', ' ')).as(html).isEqualTo(Jsoup.parse(html).text());
+        }
+    }
+
+    @Test
+    void decodesEntities() throws IOException {
+        assertThat(extract("Fish &amp; chips &lt;3 &quot;today&quot; &copy; 2024 &mdash; it&#8217;s &#x41;&#66;"))
+                .isEqualTo("Fish & chips <3 \"today\" © 2024 — it’s AB");
+        // Legacy names work without the semicolon, unknown ones are left as written
+        assertThat(extract("AT&amp T 5 &lt 6 &foo; &bar")).isEqualTo("AT& T 5 < 6 &foo; &bar");
+        // A non-breaking space collapses like any other, zero-width padding disappears
+        assertThat(extract("a&nbsp;&nbsp;b x&zwnj;y")).isEqualTo("a b xy");
+    }
+
+    @Test
+    void skipsScriptStyleHeadAndHiddenElements() throws IOException {
+        assertThat(extract("<html><head><title>Subject</title><style>p { color: red }</style></head>"
+                + "<body><script>var a = '</p>';</script><p>Visible</p></body></html>")).isEqualTo("Visible");
+        assertThat(extract("<div hidden>secret</div><div style=\"display: none\">preheader</div>"
+                + "<span style=\"mso-hide:all\">outlook</span><div aria-hidden=\"true\">shown</div><p>body</p>"))
+                .isEqualTo("shown\nbody");
+        // The hidden element ends at its own end tag, not at the first nested one of the same name
+        assertThat(extract("<div style='display:none'><div>nested</div>still hidden</div>after")).isEqualTo("after");
+    }
+
+    @Test
+    void toleratesUnclosedTags() throws IOException {
+        assertThat(extract("<p>one<p>two<div>three")).isEqualTo("one\ntwo\nthree");
+        assertThat(extract("<b>bold <i>both")).isEqualTo("bold both");
+        // A tag cut off by the end of the input contributes nothing
+        assertThat(extract("<div>unterminated <a href=\"x")).isEqualTo("unterminated");
+        assertThat(extract("a < b and <3 <")).isEqualTo("a < b and <3 <");
+    }
+
+    @Test
+    void collapsesWhitespaceAndBreaksLinesAtBlocks() throws IOException {
+        assertThat(extract("  <p>  lots \n\t of   space  </p>\n\n <p>next</p>  ")).isEqualTo("lots of space\nnext");
+        assertThat(extract("line<br>break<br/>again")).isEqualTo("line\nbreak\nagain");
+        assertThat(extract("<ul><li>one</li><li>two</li></ul><table><tr><td>a</td><td>b</td></tr></table>"))
+                .isEqualTo("one\ntwo\na\nb");
+    }
+
+    @Test
+    void stopsReadingAtTheLimit() throws IOException {
+        assertThat(HtmlTextExtractor.extract(new StringReader("<p>abcdef</p><p>ghij</p>"), 4)).isEqualTo("abcd");
+    }
+
+    private static String extract(String html) throws IOException {
+        return HtmlTextExtractor.extract(new StringReader(html), Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,59 @@
+package org.velikanovdev.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.velikanovdev.backend.entity.EmailConversation;
+import org.velikanovdev.backend.entity.ReceivedEmail;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.tracing.StageTracer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Threading on Message-ID handles interned per call, no mail server involved
+class EmailThreadingTest {
+    private final EmailReceiverService receiverService = new EmailReceiverService(
+            new ChannelMetrics(new SimpleMeterRegistry()), null, null, StageTracer.noop(), null);
+
+    @Test
+    void groupsRepliesByReferencesAndInReplyTo() {
+        List<ReceivedEmail> emails = new ArrayList<>(List.of(
+                email("<1@example.com>", null, null, 1),
+                email("<2@example.com>", null, " <0@example.com>\t<1@example.com> ", 2),
+                email("<3@example.com>", "<2@example.com>", null, 3),
+                email("<4@example.com>", "<unknown@example.com>", "<unknown@example.com>", 4),
+                // The sent copy of a message that is in the inbox too
+                email("<3@example.com>", "<2@example.com>", null, 3)
+        ));
+
+        List<EmailConversation> conversations = receiverService.groupEmailsByConversation(emails);
+        conversations.sort(Comparator.comparing(EmailConversation::getConversationId));
+
+        assertThat(conversations).extracting(EmailConversation::getConversationId)
+                .containsExactly("<1@example.com>", "<4@example.com>");
+        assertThat(conversations.get(0).getEmails()).extracting(ReceivedEmail::getMessageId)
+                .containsExactly("<1@example.com>", "<2@example.com>", "<3@example.com>", "<3@example.com>");
+        assertThat(conversations.get(0).getUnreadCount()).isEqualTo(4);
+        assertThat(conversations.get(0).getLastEmailDate()).isEqualTo(new Date(3));
+    }
+
+    @Test
+    void threadsOfAnEarlierBatchDontLeakIntoTheNext() {
+        receiverService.groupEmailsByConversation(new ArrayList<>(List.of(email("<a@example.com>", null, null, 1))));
+
+        // Threaded by the first call, but not part of this batch
+        List<EmailConversation> conversations = receiverService.groupEmailsByConversation(new ArrayList<>(List.of(
+                email("<b@example.com>", "<a@example.com>", "<a@example.com>", 2))));
+
+        assertThat(conversations).extracting(EmailConversation::getConversationId).containsExactly("<b@example.com>");
+    }
+
+    private static ReceivedEmail email(String messageId, String inReplyTo, String references, long sentAt) {
+        return new ReceivedEmail("customer@example.com", "Question", null, messageId, inReplyTo, references,
+                new Date(sentAt), "support@example.com", false, "Hello", "INBOX", sentAt);
+    }
+}
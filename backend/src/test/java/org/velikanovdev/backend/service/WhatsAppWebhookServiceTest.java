@@ -0,0 +1,75 @@
+package org.velikanovdev.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.velikanovdev.backend.entity.DeliveryStatus;
+import org.velikanovdev.backend.entity.WhatsAppMessage;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.notification.SseHub;
+import org.velikanovdev.backend.tracing.StageTracer;
+import org.velikanovdev.backend.web.ChannelVersions;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+// Webhook payloads as Meta delivers them, with the database side replaced by mocks
+class WhatsAppWebhookServiceTest {
+    private static final String OWN_NUMBER = "15550009999";
+
+    private final WhatsAppMessageService messageService = mock(WhatsAppMessageService.class);
+    private final WhatsAppStatusBuffer statusBuffer = mock(WhatsAppStatusBuffer.class);
+    private WhatsAppWebhookServiceImpl webhookService;
+
+    @BeforeEach
+    void init() {
+        webhookService = new WhatsAppWebhookServiceImpl(messageService, mock(InboxService.class),
+                mock(SearchIndexService.class), new ChannelMetrics(new SimpleMeterRegistry()), mock(SseHub.class),
+                mock(ChannelVersions.class), null, null, statusBuffer, StageTracer.noop(),
+                mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(webhookService, "PHONE_NUMBER", OWN_NUMBER);
+    }
+
+    @Test
+    void aMalformedStatusTimestampDoesntCostTheMessagesBesideIt() {
+        long before = System.currentTimeMillis();
+        webhookService.process(payload("\"not-a-number\""));
+
+        ArgumentCaptor<WhatsAppMessage> saved = ArgumentCaptor.forClass(WhatsAppMessage.class);
+        verify(messageService).saveMessage(saved.capture());
+        assertThat(saved.getValue().getMessageId()).isEqualTo("wamid.inbound");
+        assertThat(saved.getValue().getMessage()).isEqualTo("Hello");
+
+        // The status is kept, as of when it arrived
+        ArgumentCaptor<Date> timestamp = ArgumentCaptor.forClass(Date.class);
+        verify(statusBuffer).record(eq("wamid.outbound"), eq("15550001111"), eq(DeliveryStatus.DELIVERED), timestamp.capture());
+        assertThat(timestamp.getValue().getTime()).isGreaterThanOrEqualTo(before);
+    }
+
+    @Test
+    void statusTimestampIsReadAsUnixSeconds() {
+        webhookService.process(payload("\"1700000000\""));
+
+        verify(statusBuffer).record(eq("wamid.outbound"), any(), eq(DeliveryStatus.DELIVERED), eq(new Date(1_700_000_000_000L)));
+        verify(messageService).saveMessage(any());
+    }
+
+    // A delivery status for a message we sent and an inbound message, in one change
+    private static String payload(String statusTimestamp) {
+        return "{\"object\":\"whatsapp_business_account\",\"entry\":[{\"id\":\"200000000000001\",\"changes\":[{"
+                + "\"field\":\"messages\",\"value\":{\"messaging_product\":\"whatsapp\","
+                + "\"metadata\":{\"display_phone_number\":\"" + OWN_NUMBER + "\",\"phone_number_id\":\"100000000000001\"},"
+                + "\"statuses\":[{\"id\":\"wamid.outbound\",\"status\":\"delivered\",\"timestamp\":" + statusTimestamp + ","
+                + "\"recipient_id\":\"15550001111\"}],"
+                + "\"messages\":[{\"from\":\"15550001111\",\"id\":\"wamid.inbound\",\"timestamp\":\"1700000100\","
+                + "\"text\":{\"body\":\"Hello\"},\"type\":\"text\"}]}}]}]}";
+    }
+}
@@ -0,0 +1,112 @@
+package org.velikanovdev.backend.tracing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.velikanovdev.backend.dto.TraceDetail;
+import org.velikanovdev.backend.dto.TraceSummary;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Real SDK spans through the sampler, sweeps are run by hand instead of on the sampler thread
+class TailSamplingSpanProcessorTest {
+    private SimpleMeterRegistry registry;
+    private TraceBuffer traceBuffer;
+    private TailSamplingSpanProcessor sampler;
+    private SdkTracerProvider tracerProvider;
+    private StageTracer stageTracer;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        traceBuffer = new TraceBuffer();
+        ReflectionTestUtils.setField(traceBuffer, "capacity", 2);
+        traceBuffer.allocate();
+
+        sampler = new TailSamplingSpanProcessor(traceBuffer, new ChannelMetrics(registry));
+        ReflectionTestUtils.setField(sampler, "slowThreshold", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(sampler, "settleTime", Duration.ZERO);
+        ReflectionTestUtils.setField(sampler, "maxTraceAge", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(sampler, "maxPendingTraces", 100);
+        ReflectionTestUtils.setField(sampler, "maxSpansPerTrace", 100);
+        ReflectionTestUtils.setField(sampler, "keepRatio", 0.0);
+
+        tracerProvider = SdkTracerProvider.builder().addSpanProcessor(sampler).build();
+        stageTracer = new StageTracer(OpenTelemetrySdk.builder().setTracerProvider(tracerProvider).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracerProvider.close();
+    }
+
+    @Test
+    void keepsSlowTracesWholeAndDropsFastOnes() throws Exception {
+        stageTracer.runInSpan("fast.poll", () -> stageTracer.runInSpan("db.write", () -> {
+        }));
+        stageTracer.runInSpan("slow.poll", () -> {
+            stageTracer.runInSpan("graph.messages", () -> Thread.sleep(60));
+            // Still running, nothing is decided yet
+            sampler.sweep();
+            assertThat(traceBuffer.getSummaries()).isEmpty();
+        });
+        sampler.sweep();
+
+        List<TraceSummary> traces = traceBuffer.getSummaries();
+        assertThat(traces).hasSize(1);
+        assertThat(traces.get(0).getRoot()).isEqualTo("slow.poll");
+        assertThat(traces.get(0).getSpans()).isEqualTo(2);
+        assertThat(traces.get(0).getKeptBecause()).isEqualTo("slow");
+        assertThat(traces.get(0).getDurationMillis()).isGreaterThanOrEqualTo(50);
+        assertThat(registry.counter("omnichannel.tracing.traces", "decision", "dropped").count()).isEqualTo(1);
+        assertThat(registry.counter("omnichannel.tracing.traces", "decision", "slow").count()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsFailedTracesWithTheError() {
+        assertThatThrownBy(() -> stageTracer.runInSpan("email.sync", () -> stageTracer.runInSpan("imap.fetch", () -> {
+            throw new IllegalStateException("connection reset");
+        }))).isInstanceOf(IllegalStateException.class);
+        sampler.sweep();
+
+        TraceSummary summary = traceBuffer.getSummaries().get(0);
+        assertThat(summary.getKeptBecause()).isEqualTo("error");
+        TraceDetail detail = traceBuffer.find(summary.getTraceId()).orElseThrow();
+        assertThat(detail.getSpans()).extracting("name").containsExactly("email.sync", "imap.fetch");
+        assertThat(detail.getSpans().get(1).getError()).isEqualTo("connection reset");
+        assertThat(detail.getSpans().get(1).getParentSpanId()).isEqualTo(detail.getSpans().get(0).getSpanId());
+    }
+
+    @Test
+    void handedOverWorkJoinsTheTraceItContinues() throws Exception {
+        String[] traceparent = new String[1];
+        stageTracer.runInSpan("http post /webhook", () -> traceparent[0] = stageTracer.traceparent());
+        stageTracer.runInSpan("webhook.process", traceparent[0], () -> Thread.sleep(60));
+        sampler.sweep();
+
+        List<TraceSummary> traces = traceBuffer.getSummaries();
+        assertThat(traces).hasSize(1);
+        assertThat(traces.get(0).getRoot()).isEqualTo("http post /webhook");
+        assertThat(traces.get(0).getSpans()).isEqualTo(2);
+        assertThat(traceparent[0]).contains(traces.get(0).getTraceId());
+    }
+
+    @Test
+    void overwritesTheOldestTraceWhenFull() throws Exception {
+        for (String name : List.of("first", "second", "third")) {
+            stageTracer.runInSpan(name, () -> Thread.sleep(60));
+            sampler.sweep();
+        }
+
+        assertThat(traceBuffer.getSummaries()).extracting("root").containsExactly("third", "second");
+    }
+}
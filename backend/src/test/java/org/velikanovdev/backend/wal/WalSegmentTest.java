@@ -0,0 +1,82 @@
+package org.velikanovdev.backend.wal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WalSegmentTest {
+    private static final int SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsRecordsBackByPositionAndSequence() throws IOException {
+        WalSegment segment = WalSegment.create(dir.resolve("segment"), 7, SIZE);
+        assertThat(segment.append(bytes("first"))).isEqualTo(7);
+        assertThat(segment.append(bytes("second"))).isEqualTo(8);
+
+        int secondPosition = WalSegment.HEADER_BYTES + "first".length();
+        assertThat(text(segment.read(0, 7))).isEqualTo("first");
+        assertThat(text(segment.read(secondPosition, 8))).isEqualTo("second");
+        // A record is only returned for the sequence the reader expects there
+        assertThat(segment.read(0, 8)).isNull();
+        assertThat(segment.read(secondPosition + WalSegment.HEADER_BYTES + "second".length(), 9)).isNull();
+        assertThat(segment.getNextSequence()).isEqualTo(9);
+    }
+
+    @Test
+    void recoveryStopsAtATornRecordAndReusesItsSpace() throws IOException {
+        Path path = dir.resolve("segment");
+        WalSegment segment = WalSegment.create(path, 1, SIZE);
+        segment.append(bytes("one"));
+        segment.append(bytes("two"));
+        segment.append(bytes("three"));
+        segment.force();
+
+        // The crash hit while the third record's payload was being written
+        int thirdPosition = 2 * WalSegment.HEADER_BYTES + "one".length() + "two".length();
+        overwrite(path, thirdPosition + WalSegment.HEADER_BYTES + 1, "X");
+
+        WalSegment recovered = WalSegment.recover(path, 1, SIZE);
+        assertThat(recovered.getNextSequence()).isEqualTo(3);
+        assertThat(recovered.read(thirdPosition, 3)).isNull();
+
+        assertThat(recovered.append(bytes("3"))).isEqualTo(3);
+        assertThat(text(recovered.read(thirdPosition, 3))).isEqualTo("3");
+        // The zeroed tail can't be read as a leftover of the torn record
+        assertThat(recovered.read(thirdPosition + WalSegment.HEADER_BYTES + 1, 4)).isNull();
+    }
+
+    @Test
+    void recordsThatDontFitAreRefused() throws IOException {
+        WalSegment segment = WalSegment.create(dir.resolve("segment"), 1, 64);
+
+        assertThat(segment.fits(64 - WalSegment.HEADER_BYTES)).isTrue();
+        segment.append(new byte[24]);
+        assertThat(segment.fits(8)).isTrue();
+        assertThat(segment.fits(9)).isFalse();
+    }
+
+    private static void overwrite(Path path, int position, String content) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes(content)), position);
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(WalRecord record) {
+        return new String(record.getPayload(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package org.velikanovdev.backend.wal;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.service.WhatsAppWebhookService;
+import org.velikanovdev.backend.tracing.StageTracer;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The replayer over a real WAL, with a webhook service that only records what it was given and where
+class WebhookReplayerTest {
+    @TempDir
+    Path dir;
+
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+    private final List<String> threads = new CopyOnWriteArrayList<>();
+    private final AtomicInteger statusFlushes = new AtomicInteger();
+    private final WhatsAppWebhookService webhookService = new WhatsAppWebhookService() {
+        @Override
+        public void process(String payload) {
+            processed.add(payload);
+            threads.add(Thread.currentThread().getName());
+        }
+
+        @Override
+        public void flushStatuses() {
+            statusFlushes.incrementAndGet();
+        }
+    };
+
+    private WebhookWal wal;
+    private WebhookReplayer replayer;
+
+    @BeforeEach
+    void openWal() throws Exception {
+        wal = new WebhookWal();
+        ReflectionTestUtils.setField(wal, "walDir", dir.toString());
+        ReflectionTestUtils.setField(wal, "segmentBytes", 1 << 20);
+        ReflectionTestUtils.setField(wal, "groupCommitMicros", 0L);
+        wal.open();
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        if (replayer != null) {
+            replayer.stop();
+        }
+        wal.close();
+    }
+
+    @Test
+    void appliesRecordsInOrderAndCheckpointsOnStop() throws Exception {
+        replayer = startReplayer();
+        for (int i = 1; i <= 5; i++) {
+            replayer.wakeUp(wal.append("payload-" + i), null);
+        }
+
+        await(() -> replayer.getAppliedSequence() == 5);
+        replayer.stop();
+        replayer = null;
+
+        assertThat(processed).containsExactly("payload-1", "payload-2", "payload-3", "payload-4", "payload-5");
+        assertThat(wal.readCheckpoint()).isEqualTo(5);
+        // Buffered statuses are written before the checkpoint moves past their records
+        assertThat(statusFlushes.get()).isPositive();
+    }
+
+    @Test
+    void restartReplaysOnlyWhatsPastTheCheckpoint() throws Exception {
+        replayer = startReplayer();
+        for (int i = 1; i <= 5; i++) {
+            replayer.wakeUp(wal.append("payload-" + i), null);
+        }
+        await(() -> replayer.getAppliedSequence() == 5);
+        replayer.stop();
+        // The process died after applying 4 and 5 but before checkpointing them
+        wal.writeCheckpoint(3);
+        processed.clear();
+
+        replayer = startReplayer();
+        await(() -> replayer.getAppliedSequence() == 5);
+
+        // Applied again, which the webhook service has to take as a no-op
+        assertThat(processed).containsExactly("payload-4", "payload-5");
+    }
+
+    @Test
+    void reprocessingRunsOnTheReplayerThread() throws Exception {
+        replayer = startReplayer();
+        for (int i = 1; i <= 3; i++) {
+            replayer.wakeUp(wal.append("payload-" + i), null);
+        }
+        await(() -> replayer.getAppliedSequence() == 3);
+
+        assertThat(replayer.reprocess(2)).isEqualTo(3);
+        await(() -> processed.size() == 5);
+        replayer.wakeUp(wal.append("payload-4"), null);
+        await(() -> replayer.getAppliedSequence() == 4);
+
+        assertThat(processed).containsExactly("payload-1", "payload-2", "payload-3", "payload-2", "payload-3", "payload-4");
+        assertThat(threads).containsOnly("wal-replayer");
+    }
+
+    private WebhookReplayer startReplayer() throws Exception {
+        WebhookReplayer started = new WebhookReplayer(wal, webhookService, new ChannelMetrics(new SimpleMeterRegistry()),
+                StageTracer.noop());
+        ReflectionTestUtils.setField(started, "retention", Duration.ofDays(7));
+        started.start();
+        return started;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("waiting for the replayer").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
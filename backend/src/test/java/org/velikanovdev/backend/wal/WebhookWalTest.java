@@ -0,0 +1,137 @@
+package org.velikanovdev.backend.wal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebhookWalTest {
+    @TempDir
+    Path dir;
+
+    private final List<WebhookWal> opened = new ArrayList<>();
+
+    @AfterEach
+    void close() throws Exception {
+        for (WebhookWal wal : opened) {
+            wal.close();
+        }
+    }
+
+    @Test
+    void concurrentAppendsShareOneFlush() throws Exception {
+        // Long enough that appends forced one by one would take seconds
+        long groupCommitMicros = 200_000;
+        WebhookWal wal = open(4 << 20, groupCommitMicros);
+        int appenders = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(appenders);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> sequences = new ArrayList<>();
+        for (int i = 0; i < appenders; i++) {
+            String payload = "webhook-" + i;
+            sequences.add(executor.submit(() -> {
+                start.await();
+                return wal.append(payload);
+            }));
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        List<Long> appended = new ArrayList<>();
+        for (Future<Long> sequence : sequences) {
+            appended.add(sequence.get(10, TimeUnit.SECONDS));
+        }
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        executor.shutdown();
+
+        assertThat(appended).containsExactlyInAnyOrderElementsOf(LongStream.rangeClosed(1, appenders).boxed().toList());
+        assertThat(wal.getDurableSequence()).isEqualTo(appenders);
+        assertThat(elapsedMicros).isLessThan(appenders * groupCommitMicros / 2);
+    }
+
+    @Test
+    void reopeningDropsATornTailAndAppendsAfterTheLastIntactRecord() throws Exception {
+        WebhookWal wal = open(4096, 0);
+        wal.append("one");
+        wal.append("two");
+        wal.append("three");
+        wal.close();
+        opened.remove(wal);
+
+        // The third record was acknowledged by nobody, the crash came in the middle of it
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            int thirdPayload = 3 * WalSegment.HEADER_BYTES + "one".length() + "two".length();
+            channel.write(ByteBuffer.wrap("X".getBytes(StandardCharsets.UTF_8)), thirdPayload);
+        }
+
+        WebhookWal reopened = open(4096, 0);
+        assertThat(reopened.getDurableSequence()).isEqualTo(2);
+        assertThat(reopened.append("3")).isEqualTo(3);
+        assertThat(payloads(reopened.openCursor(1))).containsExactly("one", "two", "3");
+    }
+
+    @Test
+    void checkpointSurvivesReopenAndCompactionKeepsWhatsAfterIt() throws Exception {
+        // One 30-byte record per segment
+        WebhookWal wal = open(64, 0);
+        for (int i = 1; i <= 4; i++) {
+            wal.append(String.format("record-%023d", i));
+        }
+        assertThat(wal.getSegmentCount()).isEqualTo(4);
+
+        wal.writeCheckpoint(2);
+        assertThat(wal.deleteSegmentsBefore(3, 0)).isEqualTo(2);
+        assertThat(wal.getFirstSequence()).isEqualTo(3);
+        // A cursor asked for compacted records starts at the oldest one left
+        assertThat(payloads(wal.openCursor(1))).hasSize(2);
+        wal.close();
+        opened.remove(wal);
+
+        WebhookWal reopened = open(64, 0);
+        assertThat(reopened.readCheckpoint()).isEqualTo(2);
+        assertThat(reopened.getFirstSequence()).isEqualTo(3);
+        assertThat(reopened.getDurableSequence()).isEqualTo(4);
+        assertThat(Files.exists(dir.resolve("checkpoint.tmp"))).isFalse();
+    }
+
+    private WebhookWal open(int segmentBytes, long groupCommitMicros) throws IOException {
+        WebhookWal wal = new WebhookWal();
+        ReflectionTestUtils.setField(wal, "walDir", dir.toString());
+        ReflectionTestUtils.setField(wal, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(wal, "groupCommitMicros", groupCommitMicros);
+        wal.open();
+        opened.add(wal);
+        return wal;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+
+    private static List<String> payloads(WebhookWal.Cursor cursor) {
+        List<String> payloads = new ArrayList<>();
+        WalRecord record;
+        while ((record = cursor.next()) != null) {
+            payloads.add(new String(record.getPayload(), StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,107 @@
+package org.velikanovdev.backend.web;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RangeFileSenderTest {
+    private static final String CONTENT = "0123456789";
+    private static final String ETAG = "\"abc123\"";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void parsesSingleRanges() {
+        assertThat(RangeFileSender.parseRange("bytes=2-5", 10)).containsExactly(2, 5);
+        // The end is clamped to the last byte
+        assertThat(RangeFileSender.parseRange("bytes=8-100", 10)).containsExactly(8, 9);
+        assertThat(RangeFileSender.parseRange("bytes= 3 - 4 ", 10)).containsExactly(3, 4);
+    }
+
+    @Test
+    void parsesOpenEndedAndSuffixRanges() {
+        assertThat(RangeFileSender.parseRange("bytes=4-", 10)).containsExactly(4, 9);
+        assertThat(RangeFileSender.parseRange("bytes=-3", 10)).containsExactly(7, 9);
+        // A suffix longer than the file is the whole file
+        assertThat(RangeFileSender.parseRange("bytes=-50", 10)).containsExactly(0, 9);
+    }
+
+    @Test
+    void rangesOutsideTheFileAreUnsatisfiable() {
+        assertThat(RangeFileSender.parseRange("bytes=10-", 10)).isEmpty();
+        assertThat(RangeFileSender.parseRange("bytes=12-20", 10)).isEmpty();
+        assertThat(RangeFileSender.parseRange("bytes=-0", 10)).isEmpty();
+        assertThat(RangeFileSender.parseRange("bytes=-5", 0)).isEmpty();
+    }
+
+    @Test
+    void multipleOrMalformedRangesFallBackToTheWholeFile() {
+        assertThat(RangeFileSender.parseRange("bytes=0-1,4-5", 10)).isNull();
+        assertThat(RangeFileSender.parseRange("bytes=5-2", 10)).isNull();
+        assertThat(RangeFileSender.parseRange("bytes=abc", 10)).isNull();
+        assertThat(RangeFileSender.parseRange("bytes=x-3", 10)).isNull();
+        assertThat(RangeFileSender.parseRange("items=0-1", 10)).isNull();
+    }
+
+    @Test
+    void sendsThePartialContentAsked() throws IOException {
+        MockHttpServletResponse response = send("bytes=2-5", null);
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_PARTIAL_CONTENT);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-5/10");
+        assertThat(response.getContentAsString()).isEqualTo("2345");
+    }
+
+    @Test
+    void answersAnUnsatisfiableRangeWith416() throws IOException {
+        MockHttpServletResponse response = send("bytes=20-", null);
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    @Test
+    void multipleRangesGetTheWholeFile() throws IOException {
+        MockHttpServletResponse response = send("bytes=0-1,4-5", null);
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    void rangeIsOnlyHonouredWhenIfRangeMatches() throws IOException {
+        MockHttpServletResponse current = send("bytes=-2", ETAG);
+        assertThat(current.getStatus()).isEqualTo(HttpServletResponse.SC_PARTIAL_CONTENT);
+        assertThat(current.getContentAsString()).isEqualTo("89");
+
+        // The client's partial copy is of other content
+        MockHttpServletResponse stale = send("bytes=-2", "\"other\"");
+        assertThat(stale.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(stale.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(stale.getContentAsString()).isEqualTo(CONTENT);
+    }
+
+    private MockHttpServletResponse send(String range, String ifRange) throws IOException {
+        Path file = Files.writeString(dir.resolve("file"), CONTENT);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/attachments/1");
+        request.addHeader(HttpHeaders.RANGE, range);
+        if (ifRange != null) {
+            request.addHeader(HttpHeaders.IF_RANGE, ifRange);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        new RangeFileSender().send(request, response, file, CONTENT.length(), ETAG, "text/plain", null);
+        return response;
+    }
+}
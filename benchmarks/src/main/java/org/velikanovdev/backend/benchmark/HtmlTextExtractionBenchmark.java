@@ -0,0 +1,49 @@
+package org.velikanovdev.backend.benchmark;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.*;
+import org.velikanovdev.backend.mail.HtmlTextExtractor;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+// Text of large HTML newsletters: the former Jsoup DOM path against the streaming extractor, once reading the
+// whole document and once with the default email.receiver.htmlTextLimit. Run with -prof gc to compare the
+// allocation per mail as well.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlTextExtractionBenchmark {
+
+    @Param({"20000", "500000", "5000000"})
+    public int htmlChars;
+
+    @Param({"50000"})
+    public int textLimit;
+
+    private String html;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        html = SyntheticData.htmlNewsletter(htmlChars);
+    }
+
+    @Benchmark
+    public String jsoup() {
+        return Jsoup.parse(html).text();
+    }
+
+    @Benchmark
+    public String streaming() throws IOException {
+        return HtmlTextExtractor.extract(new StringReader(html), Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public String streamingWithLimit() throws IOException {
+        return HtmlTextExtractor.extract(new StringReader(html), textLimit);
+    }
+}
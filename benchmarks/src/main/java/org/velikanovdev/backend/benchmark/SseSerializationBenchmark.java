@@ -0,0 +1,63 @@
+package org.velikanovdev.backend.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.velikanovdev.backend.dto.EmailConversationView;
+import org.velikanovdev.backend.mail.MailboxSyncScheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Cost of turning one conversation list push into the bytes written to a single SSE client. The push carries
+// views with a preview, so it should barely move with emailsPerConversation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SseSerializationBenchmark {
+
+    @Param({"10", "500", "5000"})
+    public int conversationCount;
+
+    @Param({"5", "50"})
+    public int emailsPerConversation;
+
+    private ObjectMapper objectMapper;
+    private List<EmailConversationView> conversations;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Same defaults Spring Boot applies to the MappingJackson2HttpMessageConverter used by SseEmitter
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        conversations = SyntheticData.emailConversations(conversationCount, emailsPerConversation).stream()
+                .map(MailboxSyncScheduler::toView)
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] serializeEvent() throws IOException {
+        Set<SseEmitter.DataWithMediaType> parts = SseEmitter.event()
+                .name("emailConversations")
+                .data(conversations)
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (SseEmitter.DataWithMediaType part : parts) {
+            Object data = part.getData();
+            if (data instanceof String text) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            } else {
+                objectMapper.writeValue(out, data);
+            }
+        }
+        return out.toByteArray();
+    }
+}
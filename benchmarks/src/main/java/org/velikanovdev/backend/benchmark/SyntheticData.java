@@ -0,0 +1,136 @@
+package org.velikanovdev.backend.benchmark;
+
+import org.velikanovdev.backend.entity.EmailConversation;
+import org.velikanovdev.backend.entity.ReceivedEmail;
+
+import java.util.*;
+
+// Deterministic synthetic data shared by the benchmarks
+public final class SyntheticData {
+    public static final String OWN_EMAIL = "support@example.com";
+
+    private static final long START = 1_700_000_000_000L;
+
+    private SyntheticData() {
+    }
+
+    // Gmail-style Message-IDs and wamids, half each
+    public static List<String> messageIds(int count) {
+        Random random = new Random(13);
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(i % 2 == 0
+                    ? "<CAF" + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()) + "@mail.gmail.com>"
+                    : "wamid.HBgLMTU1NTAwMDAwMDAVAgASGBQzQTk" + Long.toHexString(random.nextLong()));
+        }
+        return ids;
+    }
+
+    // Email threads where every reply references its chain, with threads interleaved
+    public static List<ReceivedEmail> emailThreads(int emailCount, int threadCount) {
+        Random random = new Random(7);
+        List<List<ReceivedEmail>> threads = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            threads.add(new ArrayList<>());
+        }
+
+        List<ReceivedEmail> emails = new ArrayList<>(emailCount);
+        for (int i = 0; i < emailCount; i++) {
+            int threadIndex = random.nextInt(threadCount);
+            List<ReceivedEmail> thread = threads.get(threadIndex);
+            String messageId = "<" + UUID.nameUUIDFromBytes(("msg-" + i).getBytes()) + "@mail.example.com>";
+            String customer = "customer" + threadIndex + "@example.org";
+            boolean fromUs = !thread.isEmpty() && random.nextBoolean();
+
+            String inReplyTo = null;
+            String references = null;
+            if (!thread.isEmpty()) {
+                inReplyTo = thread.get(thread.size() - 1).getMessageId();
+                // Mail clients keep the thread root plus the most recent ancestors
+                StringJoiner joiner = new StringJoiner(" ");
+                joiner.add(thread.get(0).getMessageId());
+                for (int p = Math.max(1, thread.size() - 9); p < thread.size(); p++) {
+                    joiner.add(thread.get(p).getMessageId());
+                }
+                references = joiner.toString();
+            }
+
+            ReceivedEmail email = new ReceivedEmail(
+                    fromUs ? OWN_EMAIL : customer,
+                    (thread.isEmpty() ? "" : "Re: ") + "Question about invoice " + threadIndex,
+                    "Hello,\nthis is email " + i + " in the thread.\nRegards",
+                    messageId,
+                    inReplyTo,
+                    references,
+                    new Date(START + i * 60_000L),
+                    fromUs ? customer : OWN_EMAIL,
+                    random.nextInt(4) != 0,
+                    "Hello, this is email " + i + " in the thread. Regards",
+                    fromUs ? "[Gmail]/Sent Mail" : "INBOX",
+                    i + 1
+            );
+            thread.add(email);
+            emails.add(email);
+        }
+        return emails;
+    }
+
+    public static List<EmailConversation> emailConversations(int conversationCount, int emailsPerConversation) {
+        List<EmailConversation> conversations = new ArrayList<>(conversationCount);
+        List<ReceivedEmail> emails = emailThreads(conversationCount * emailsPerConversation, conversationCount);
+        Map<String, List<ReceivedEmail>> bySubject = new LinkedHashMap<>();
+        for (ReceivedEmail email : emails) {
+            bySubject.computeIfAbsent(email.getSubject().replace("Re: ", ""), key -> new ArrayList<>()).add(email);
+        }
+        bySubject.forEach((subject, thread) -> conversations.add(new EmailConversation(
+                thread.get(0).getMessageId(),
+                thread.get(0).getFrom(),
+                thread,
+                thread.stream().filter(email -> !email.isRead()).count(),
+                thread.get(thread.size() - 1).getSentDate()
+        )));
+        return conversations;
+    }
+
+    // A table-based marketing mail the way email builders produce them: a head with a large style block,
+    // a hidden preheader, nested layout tables with inline styles, tracking pixels, entities and a script.
+    // Product rows repeat until the document reaches the requested size
+    public static String htmlNewsletter(int targetChars) {
+        Random random = new Random(11);
+        StringBuilder html = new StringBuilder(targetChars + 4096);
+        html.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Transitional//EN\">\n<html><head>")
+                .append("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">")
+                .append("<title>Weekly deals</title><style type=\"text/css\">");
+        for (int i = 0; i < 60; i++) {
+            html.append(".col-").append(i).append(" { width: ").append(i * 10).append("px !important; padding: 0 8px; }\n");
+        }
+        html.append("@media only screen and (max-width: 600px) { .stack { display: block !important; } }</style></head>")
+                .append("<body style=\"margin:0;padding:0;background-color:#f4f4f4\">")
+                .append("<div style=\"display:none;font-size:1px;max-height:0;overflow:hidden\">Save up to 40% this week")
+                .append("&nbsp;&zwnj;".repeat(80)).append("</div>")
+                .append("<!--[if mso]><table role=\"presentation\" width=\"600\"><tr><td><![endif]-->")
+                .append("<table role=\"presentation\" width=\"100%\" cellpadding=\"0\" cellspacing=\"0\" border=\"0\">");
+        int row = 0;
+        while (html.length() < targetChars) {
+            html.append("<tr><td class=\"stack\" align=\"left\" style=\"padding:16px 24px;font-family:Helvetica,Arial,sans-serif;")
+                    .append("font-size:14px;line-height:20px;color:#333333\">")
+                    .append("<table role=\"presentation\" width=\"100%\"><tr><td width=\"120\">")
+                    .append("<img src=\"https://cdn.example.com/products/").append(random.nextInt(1_000_000))
+                    .append(".jpg\" width=\"120\" alt=\"Product ").append(row).append("\" style=\"display:block;border:0\"></td>")
+                    .append("<td style=\"padding-left:16px\"><h3 style=\"margin:0 0 8px 0;font-size:18px\">Product ").append(row)
+                    .append(" &ndash; limited edition</h3><p style=\"margin:0\">Only &euro;").append(10 + random.nextInt(490))
+                    .append(".99 instead of &euro;").append(500 + random.nextInt(500))
+                    .append(".99. Free shipping on orders over &euro;50 &amp; 30&nbsp;days returns.</p>")
+                    .append("<a href=\"https://click.example.com/track?u=").append(Long.toHexString(random.nextLong()))
+                    .append("\" style=\"color:#0066cc;text-decoration:underline\">Shop now &rarr;</a></td></tr></table>")
+                    .append("</td></tr>\n");
+            row++;
+        }
+        html.append("</table><!--[if mso]></td></tr></table><![endif]-->")
+                .append("<p style=\"font-size:11px;color:#999999\">You receive this email because you subscribed. ")
+                .append("<a href=\"https://example.com/unsubscribe\">Unsubscribe</a> &copy; 2024 Example Shop</p>")
+                .append("<img src=\"https://open.example.com/pixel.gif\" width=\"1\" height=\"1\" alt=\"\">")
+                .append("<script type=\"text/javascript\">var t = 1 < 2 && \"</p>\";</script></body></html>");
+        return html.toString();
+    }
+}
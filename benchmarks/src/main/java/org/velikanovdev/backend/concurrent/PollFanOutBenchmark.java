@@ -0,0 +1,119 @@
+package org.velikanovdev.backend.concurrent;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// One Messenger poll cycle against a simulated Graph API: every conversation has a few pages that each
+// block for the upstream latency. serial is the poller before the fan-out, platform and virtual run the
+// threads through FanOut on the fixed upstream pool and on virtual threads. The virtual mode needs a Java 21+
+// JVM and fails its setup otherwise. peakThreads reports the most live platform threads seen in an iteration,
+// virtual threads don't count towards it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PollFanOutBenchmark {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({"serial", "platform", "virtual"})
+    public String mode;
+
+    @Param({"20", "200"})
+    public int conversationCount;
+
+    @Param({"3"})
+    public int pagesPerConversation;
+
+    @Param({"20"})
+    public int upstreamLatencyMillis;
+
+    // omnichannel.upstream.platformThreads
+    @Param({"16"})
+    public int platformThreads;
+
+    // omnichannel.upstream.maxConcurrency; above platformThreads only virtual threads get more calls out
+    @Param({"8", "64"})
+    public int maxConcurrency;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (mode.equals("platform")) {
+            executor = Executors.newFixedThreadPool(platformThreads, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else if (mode.equals("virtual")) {
+            executor = UpstreamExecutor.newVirtualThreadPerTaskExecutor();
+            if (executor == null) {
+                throw new IllegalStateException("Virtual threads need a Java 21+ JVM");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ThreadCounters {
+        public int peakThreads;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            THREADS.resetPeakThreadCount();
+            peakThreads = 0;
+        }
+
+        void sample() {
+            peakThreads = Math.max(peakThreads, THREADS.getPeakThreadCount());
+        }
+    }
+
+    @Benchmark
+    public int pollCycle(ThreadCounters counters) throws Exception {
+        int messages = 0;
+        if (executor == null) {
+            for (int i = 0; i < conversationCount; i++) {
+                messages += fetchThread();
+            }
+        } else {
+            try (FanOut<Integer> fanOut = new FanOut<>(executor, Duration.ofMinutes(1), maxConcurrency)) {
+                for (int i = 0; i < conversationCount; i++) {
+                    fanOut.fork(this::fetchThread);
+                }
+                for (int threadMessages : fanOut.join()) {
+                    messages += threadMessages;
+                }
+            }
+        }
+        counters.sample();
+        return messages;
+    }
+
+    // Pages come one after the other, like following the next links of a thread
+    private int fetchThread() throws InterruptedException {
+        List<Integer> messages = new ArrayList<>();
+        for (int page = 0; page < pagesPerConversation; page++) {
+            Thread.sleep(upstreamLatencyMillis);
+            messages.add(page);
+        }
+        return messages.size();
+    }
+}
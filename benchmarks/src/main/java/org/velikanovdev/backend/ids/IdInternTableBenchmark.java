@@ -0,0 +1,145 @@
+package org.velikanovdev.backend.ids;
+
+import org.openjdk.jmh.annotations.*;
+import org.velikanovdev.backend.benchmark.SyntheticData;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// IdInternTable against the String sets and maps it replaced in the search dedup and email threading.
+// footprint reports MB per million ids (the same number as bytes per id), heap and off-heap together; the
+// lookups take ids the way the code gets them, as strings and as tokens of a References header.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IdInternTableBenchmark {
+    private static final int PROBES = 4096;
+    private static final int REFERENCES_PER_HEADER = 10;
+
+    @Param({"1000000"})
+    public int idCount;
+
+    private List<String> ids;
+    private IdInternTable table;
+    private Set<String> set;
+    private String[] probes;
+    private String[] headers;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ids = SyntheticData.messageIds(idCount);
+        table = new IdInternTable(idCount);
+        set = ConcurrentHashMap.newKeySet();
+        for (String id : ids) {
+            table.intern(id);
+            set.add(id);
+        }
+
+        // Half of the probes are ids that were never added, copies so no String is shared with the set
+        Random random = new Random(3);
+        probes = new String[PROBES];
+        headers = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            String id = ids.get(random.nextInt(idCount));
+            probes[i] = i % 2 == 0 ? new String(id.toCharArray()) : id + "x";
+            StringJoiner header = new StringJoiner(" ");
+            for (int r = 0; r < REFERENCES_PER_HEADER; r++) {
+                header.add(ids.get(random.nextInt(idCount)));
+            }
+            headers[i] = header.toString();
+        }
+    }
+
+    @Benchmark
+    public long internTableFind() {
+        return table.find(probes[next++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean stringSetContains() {
+        return set.contains(probes[next++ & (PROBES - 1)]);
+    }
+
+    // The threading lookup, every token checked in place
+    @Benchmark
+    public int internTableReferences() {
+        String references = headers[next++ & (PROBES - 1)];
+        int found = 0;
+        int end = 0;
+        while (true) {
+            int start = end;
+            while (start < references.length() && Character.isWhitespace(references.charAt(start))) {
+                start++;
+            }
+            if (start == references.length()) {
+                return found;
+            }
+            end = start;
+            while (end < references.length() && !Character.isWhitespace(references.charAt(end))) {
+                end++;
+            }
+            if (table.find(references, start, end) != IdInternTable.NO_HANDLE) {
+                found++;
+            }
+        }
+    }
+
+    // What threading did before, split the header and look each token up
+    @Benchmark
+    public int stringSetReferences() {
+        int found = 0;
+        for (String reference : headers[next++ & (PROBES - 1)].split("\\s+")) {
+            if (set.contains(reference)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // One shot per structure: built from fresh copies of the ids, measured as used heap after a full GC plus
+    // direct memory
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public void footprint(Footprint footprint) {
+        long before = usedHeap();
+        Set<String> strings = ConcurrentHashMap.newKeySet();
+        for (String id : ids) {
+            strings.add(new String(id.toCharArray()));
+        }
+        footprint.stringSetMbPerMillionIds = (double) (usedHeap() - before) / idCount;
+        Reference.reachabilityFence(strings);
+
+        before = usedHeap();
+        IdInternTable interned = new IdInternTable(idCount);
+        for (String id : ids) {
+            interned.intern(id);
+        }
+        footprint.internTableMbPerMillionIds = (double) (usedHeap() - before + interned.getOffHeapBytes()) / idCount;
+        footprint.internTableCollisions = interned.getCollisions();
+        Reference.reachabilityFence(interned);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public double stringSetMbPerMillionIds;
+        public double internTableMbPerMillionIds;
+        public long internTableCollisions;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
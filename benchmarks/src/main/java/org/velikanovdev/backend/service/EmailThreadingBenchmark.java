@@ -0,0 +1,45 @@
+package org.velikanovdev.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.velikanovdev.backend.benchmark.SyntheticData;
+import org.velikanovdev.backend.entity.EmailConversation;
+import org.velikanovdev.backend.entity.ReceivedEmail;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.tracing.StageTracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Lives in the service package to reach the package-private threading method
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailThreadingBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int emailCount;
+
+    @Param({"10", "1000"})
+    public int threadCount;
+
+    private EmailReceiverService receiverService;
+    private List<ReceivedEmail> emails;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        receiverService = new EmailReceiverService(new ChannelMetrics(new SimpleMeterRegistry()), null, null,
+                StageTracer.noop(), null);
+        emails = SyntheticData.emailThreads(emailCount, threadCount);
+    }
+
+    @Benchmark
+    public List<EmailConversation> groupEmailsByConversation() {
+        // groupEmailsByConversation sorts the per-thread lists it builds, the input list is left alone
+        return receiverService.groupEmailsByConversation(new ArrayList<>(emails));
+    }
+}
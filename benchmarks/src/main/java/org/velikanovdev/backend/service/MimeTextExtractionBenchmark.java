@@ -0,0 +1,63 @@
+package org.velikanovdev.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import org.openjdk.jmh.annotations.*;
+import org.velikanovdev.backend.metrics.ChannelMetrics;
+import org.velikanovdev.backend.tracing.StageTracer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+// Lives in the service package to reach the package-private MIME helpers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MimeTextExtractionBenchmark {
+
+    @Param({"reply-thread.eml", "newsletter-html.eml", "mixed-attachment.eml"})
+    public String fixture;
+
+    private EmailReceiverService receiverService;
+    private Session session;
+    private byte[] rawMessage;
+    private String plainBody;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        receiverService = new EmailReceiverService(new ChannelMetrics(new SimpleMeterRegistry()), null, null,
+                StageTracer.noop(), null);
+        session = Session.getInstance(new Properties());
+        try (InputStream in = MimeTextExtractionBenchmark.class.getResourceAsStream("/fixtures/" + fixture)) {
+            if (in == null) {
+                throw new IOException("Missing fixture " + fixture);
+            }
+            rawMessage = in.readAllBytes();
+        }
+        plainBody = receiverService.getTextFromMimeMultipart(parse());
+    }
+
+    // Parses the raw message each time, as a freshly fetched IMAP message would be
+    @Benchmark
+    public String getTextFromMimeMultipart() throws Exception {
+        return receiverService.getTextFromMimeMultipart(parse());
+    }
+
+    @Benchmark
+    public String cleanEmailBody() {
+        return receiverService.cleanEmailBody(plainBody);
+    }
+
+    private MimeMultipart parse() throws Exception {
+        MimeMessage message = new MimeMessage(session, new ByteArrayInputStream(rawMessage));
+        return (MimeMultipart) message.getContent();
+    }
+}
@@ -11,6 +11,7 @@ import {
 } from '../services/FacebookService';
 import {
     fetchEmailConversations,
+    fetchEmailConversation,
     sendEmailMessage
 } from '../services/EmailService';
 import {
@@ -115,7 +116,8 @@ const MainContent = ({channels, selectedChannel, loadingConversations, setLoadin
             data = await fetchWhatsAppMessages(conversationId);
             handleWhatsAppConversation(data);
         } else if (conversation.channel === 'Email') {
-            handleEmailConversation(index);
+            data = await fetchEmailConversation(conversationId);
+            handleEmailConversation(data, conversation);
         }
 
         setLoadingMessages(false);
@@ -139,9 +141,9 @@ const MainContent = ({channels, selectedChannel, loadingConversations, setLoadin
         setMessageFrom(data[0].recipient);
     };
 
-    const handleEmailConversation = (conversationId) => {
-        setMessages(conversations[conversationId].emails);
-        setRecipient(conversations[conversationId].sender);
+    const handleEmailConversation = (data, conversation) => {
+        setMessages(data ? data.emails : []);
+        setRecipient(conversation.sender);
     };
 
     const handleSendMessage = async () => {
@@ -297,6 +299,12 @@ const MainContent = ({channels, selectedChannel, loadingConversations, setLoadin
             )}
             <br />
             <span className="text-black">{dateFormatted}</span>
+            {conversation.channel === 'Email' && conversation.preview && (
+                <>
+                    <br />
+                    <span className="text-muted">{conversation.preview}</span>
+                </>
+            )}
         </>;
     };
     const renderMessages = () => (
@@ -12,7 +12,7 @@ const axiosInstance = axios.create({
 
 export const fetchEmailConversations = async () => {
     try {
-        const response = await axiosInstance.get(`${API_BASE_URL}/fetch-emails`);
+        const response = await axiosInstance.get(`${API_BASE_URL}/email/conversations`);
         return response.data;
     } catch (error) {
         console.error("Failed to fetch email conversations: ", error);
@@ -20,6 +20,17 @@ export const fetchEmailConversations = async () => {
     }
 }
 
+// The list only has previews, the bodies of a thread are loaded when it's opened
+export const fetchEmailConversation = async (conversationId) => {
+    try {
+        const response = await axiosInstance.get(`${API_BASE_URL}/email/conversations/${encodeURIComponent(conversationId)}`);
+        return response.data;
+    } catch (error) {
+        console.error("Failed to fetch email conversation: ", error);
+        return null;
+    }
+}
+
 export const sendEmailMessage = async (recipient, subject, message, messageId) => {
     try {
         const response = await axiosInstance.post(`${API_BASE_URL}/reply-email`, {
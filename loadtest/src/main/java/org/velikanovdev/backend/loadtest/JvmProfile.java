@@ -0,0 +1,96 @@
+package org.velikanovdev.backend.loadtest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Heap and GC activity during one scenario. The backend runs in the same JVM as the harness.
+public class JvmProfile implements AutoCloseable {
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "heap-sampler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong peakHeapBytes = new AtomicLong();
+    private final long startHeapBytes;
+    private final long startGcCount;
+    private final long startGcMillis;
+    private final int startThreads;
+
+    private long endHeapBytes;
+    private long gcCount;
+    private long gcMillis;
+    private int peakThreads;
+    private boolean closed;
+
+    public JvmProfile() {
+        startHeapBytes = memory.getHeapMemoryUsage().getUsed();
+        startGcCount = totalGcCount();
+        startGcMillis = totalGcMillis();
+        startThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        peakHeapBytes.set(startHeapBytes);
+        sampler.scheduleAtFixedRate(() ->
+                peakHeapBytes.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max), 0, 50, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        sampler.shutdownNow();
+        endHeapBytes = memory.getHeapMemoryUsage().getUsed();
+        gcCount = totalGcCount() - startGcCount;
+        gcMillis = totalGcMillis() - startGcMillis;
+        peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    public double startHeapMb() {
+        return startHeapBytes / 1048576.0;
+    }
+
+    public double peakHeapMb() {
+        return peakHeapBytes.get() / 1048576.0;
+    }
+
+    public double endHeapMb() {
+        return endHeapBytes / 1048576.0;
+    }
+
+    public long gcCount() {
+        return gcCount;
+    }
+
+    public long gcMillis() {
+        return gcMillis;
+    }
+
+    public int startThreads() {
+        return startThreads;
+    }
+
+    public int peakThreads() {
+        return peakThreads;
+    }
+
+    private static long totalGcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                .filter(count -> count > 0)
+                .sum();
+    }
+
+    private static long totalGcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(time -> time > 0)
+                .sum();
+    }
+}
@@ -0,0 +1,193 @@
+package org.velikanovdev.backend.loadtest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.velikanovdev.backend.BackendApplication;
+
+import java.io.IOException;
+import java.util.*;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+
+// Local stand-ins for every upstream the backend talks to, plus the backend itself
+public class LoadTestEnvironment implements AutoCloseable {
+    public static final String OWN_PHONE_NUMBER = "15550000000";
+    public static final String PHONE_NUMBER_ID = "100000000000001";
+    public static final String MAILBOX = "support@example.com";
+    public static final String MAILBOX_PASSWORD = "loadtest";
+
+    private static final ServerSetup SMTP = ServerSetupTest.SMTP.dynamicPort();
+    private static final ServerSetup IMAP = ServerSetupTest.IMAP.dynamicPort();
+
+    private EmbeddedPostgres postgres;
+    private GreenMail greenMail;
+    private GreenMailUser mailboxUser;
+    private WireMockServer graph;
+    private ConfigurableApplicationContext backend;
+    private int backendPort;
+
+    public void start(int mailboxSize, int facebookConversations) throws Exception {
+        startUpstreams(mailboxSize, facebookConversations);
+
+        backend = new SpringApplicationBuilder(BackendApplication.class)
+                .properties(backendProperties())
+                .run();
+        backendPort = Integer.parseInt(Objects.requireNonNull(backend.getEnvironment().getProperty("local.server.port")));
+    }
+
+    // Only the stand-ins, for runs that start the backend in a JVM of its own
+    public void startUpstreams(int mailboxSize, int facebookConversations) throws Exception {
+        postgres = EmbeddedPostgres.builder().start();
+
+        greenMail = new GreenMail(new ServerSetup[]{SMTP, IMAP});
+        greenMail.start();
+        mailboxUser = greenMail.setUser(MAILBOX, MAILBOX, MAILBOX_PASSWORD);
+        seedMailbox(mailboxSize);
+
+        graph = new WireMockServer(options().dynamicPort());
+        graph.start();
+        stubGraph(facebookConversations);
+    }
+
+    public String backendUrl() {
+        return "http://127.0.0.1:" + backendPort;
+    }
+
+    public Properties backendProperties() {
+        Properties properties = new Properties();
+        properties.put("server.port", "0");
+        properties.put("server.tomcat.max-connections", "20000");
+        properties.put("server.tomcat.threads.max", "400");
+        properties.put("logging.level.root", "WARN");
+        properties.put("spring.application.name", "loadtest");
+
+        properties.put("spring.datasource.url", postgres.getJdbcUrl("postgres", "postgres"));
+        properties.put("spring.datasource.username", "postgres");
+        properties.put("spring.datasource.password", "postgres");
+
+        properties.put("facebook.access.token", "loadtest-token");
+        properties.put("facebook.graph.url", graph.baseUrl());
+        properties.put("whatsapp.phone.number.id", PHONE_NUMBER_ID);
+        properties.put("whatsapp.phone.number", OWN_PHONE_NUMBER);
+        properties.put("whatsapp.verify.token", "loadtest-verify");
+
+        properties.put("omnichannel.email", MAILBOX);
+        properties.put("spring.mail.host", "127.0.0.1");
+        properties.put("spring.mail.port", String.valueOf(greenMail.getSmtp().getPort()));
+        properties.put("spring.mail.username", MAILBOX);
+        properties.put("spring.mail.password", MAILBOX_PASSWORD);
+        properties.put("spring.mail.properties.mail.smtp.starttls.enable", "false");
+        properties.put("email.receiver.host", "127.0.0.1");
+        properties.put("email.receiver.storeType", "imap");
+        properties.put("email.receiver.port", String.valueOf(greenMail.getImap().getPort()));
+        properties.put("email.receiver.username", MAILBOX);
+        properties.put("email.receiver.password", MAILBOX_PASSWORD);
+        properties.put("email.receiver.sentFolder", "Sent");
+        return properties;
+    }
+
+    // Threads of five messages each, every reply carrying In-Reply-To and References
+    private void seedMailbox(int size) throws MessagingException, IOException {
+        Session session = Session.getInstance(new Properties());
+        long start = System.currentTimeMillis() - size * 60_000L;
+        List<String> thread = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (i % 5 == 0) {
+                thread.clear();
+            }
+            String customer = "customer" + (i / 5) + "@example.org";
+            String messageId = "<loadtest-" + i + "@example.org>";
+
+            MimeMessage message = new FixedIdMimeMessage(session);
+            message.setHeader("Message-ID", messageId);
+            message.setFrom(new InternetAddress(customer));
+            message.setRecipient(Message.RecipientType.TO, new InternetAddress(MAILBOX));
+            message.setSubject((thread.isEmpty() ? "" : "Re: ") + "Order " + (i / 5) + " question");
+            message.setSentDate(new Date(start + i * 60_000L));
+            if (!thread.isEmpty()) {
+                message.setHeader("In-Reply-To", thread.get(thread.size() - 1));
+                message.setHeader("References", String.join(" ", thread));
+            }
+            message.setText("Hello,\n\nthis is message " + i + " of the load-test mailbox.\n\nRegards\n"
+                    + "On Mon, Jan 1, 2024 at 10:00 AM Support <" + MAILBOX + "> wrote:\n> earlier reply");
+            mailboxUser.deliver(message);
+            thread.add(messageId);
+        }
+    }
+
+    private void stubGraph(int conversationCount) {
+        // WhatsApp Cloud API send
+        graph.stubFor(post(urlPathMatching("/v[0-9.]+/" + PHONE_NUMBER_ID + "/messages"))
+                .willReturn(okJson("{\"messaging_product\":\"whatsapp\",\"contacts\":[{\"input\":\"x\",\"wa_id\":\"x\"}],"
+                        + "\"messages\":[{\"id\":\"wamid.loadtest\"}]}")));
+
+        // Messenger send
+        graph.stubFor(post(urlPathMatching("/v[0-9.]+/me/messages"))
+                .willReturn(okJson("{\"recipient_id\":\"2000\",\"message_id\":\"m_loadtest\"}")));
+
+        StringJoiner conversations = new StringJoiner(",");
+        for (int i = 0; i < conversationCount; i++) {
+            String conversationId = "t_" + i;
+            conversations.add("{\"id\":\"" + conversationId + "\",\"updated_time\":\"2024-10-01T10:00:00+0000\","
+                    + "\"unread_count\":1,\"participants\":{\"data\":[{\"name\":\"Customer " + i + "\",\"id\":\"" + (1000 + i) + "\"},"
+                    + "{\"name\":\"Example Page\",\"id\":\"1\"}]}}");
+            graph.stubFor(get(urlPathMatching("/v[0-9.]+/" + conversationId + "/messages"))
+                    .willReturn(okJson(messagesPage(i))));
+        }
+        graph.stubFor(get(urlPathMatching("/v[0-9.]+/me/conversations"))
+                .willReturn(okJson("{\"data\":[" + conversations + "]}")));
+    }
+
+    private static String messagesPage(int conversation) {
+        StringJoiner messages = new StringJoiner(",");
+        for (int m = 0; m < 20; m++) {
+            boolean fromCustomer = m % 2 == 0;
+            String customer = "{\"name\":\"Customer " + conversation + "\",\"id\":\"" + (1000 + conversation) + "\"}";
+            String page = "{\"name\":\"Example Page\",\"id\":\"1\"}";
+            messages.add("{\"id\":\"m_" + conversation + "_" + m + "\",\"message\":\"Message " + m + " in conversation " + conversation + "\","
+                    + "\"from\":" + (fromCustomer ? customer : page) + ","
+                    + "\"to\":{\"data\":[" + (fromCustomer ? page : customer) + "]},"
+                    + "\"created_time\":\"2024-10-01T09:" + String.format("%02d", m) + ":00+0000\"}");
+        }
+        return "{\"data\":[" + messages + "]}";
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (backend != null) {
+            backend.close();
+        }
+        if (graph != null) {
+            graph.stop();
+        }
+        if (greenMail != null) {
+            greenMail.stop();
+        }
+        if (postgres != null) {
+            postgres.close();
+        }
+    }
+
+    // Keeps the Message-ID we set instead of generating a new one on save
+    private static class FixedIdMimeMessage extends MimeMessage {
+        FixedIdMimeMessage(Session session) {
+            super(session);
+        }
+
+        @Override
+        protected void updateMessageID() {
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.velikanovdev.backend.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+public class LoadTestRunner {
+    private static final String USAGE = """
+            Usage: java -Xmx2g -jar loadtest/target/loadtest-0.0.1-SNAPSHOT.jar [--name=value ...]
+              --webhooks=10000         inbound WhatsApp webhooks in the webhook burst
+              --sends=2000             WhatsApp sends
+              --email-sends=1000       email replies
+              --history-reads=2000     WhatsApp history reads
+              --mailbox-fetches=20     full mailbox fetches
+              --sse=2000               concurrent SSE subscribers
+              --concurrency=64         requests in flight per burst
+              --contacts=500           distinct WhatsApp contacts
+              --mailbox=5000           messages in the GreenMail mailbox
+              --fb-conversations=50    conversations served by the Graph stub
+              --report=loadtest-report.json
+
+            Startup times of the packaged backend instead, each run in a fresh JVM
+            (build with mvn -pl backend,loadtest -am package):
+              --startup-runs=5         restarts per mode, default and fast-startup
+              --backend-jar=backend/target/backend-0.0.1-SNAPSHOT-exec.jar
+              --aot=false              the jar was built with -Pfast-startup
+              --cds-archive=<file>     CDS archive for the fast-startup runs
+              --report=startup-report.json
+            """;
+    private final Map<String, String> options;
+    private final List<ScenarioResult> results = new ArrayList<>();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(Executors.newFixedThreadPool(32))
+            .build();
+    private String baseUrl;
+
+    public LoadTestRunner(Map<String, String> options) {
+        this.options = options;
+    }
+
+    // Options are passed as --name=value, see the defaults below
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.equals("--help")) {
+                System.out.print(USAGE);
+                return;
+            }
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+
+        LoadTestRunner runner = new LoadTestRunner(options);
+        if (options.containsKey("startup-runs")) {
+            runner.runStartup();
+            System.exit(0);
+        }
+        try (LoadTestEnvironment environment = new LoadTestEnvironment()) {
+            environment.start(runner.intOption("mailbox", 5000), runner.intOption("fb-conversations", 50));
+            runner.baseUrl = environment.backendUrl();
+            runner.runAll();
+        }
+        runner.report();
+        System.exit(0);
+    }
+
+    private void runAll() throws Exception {
+        int concurrency = intOption("concurrency", 64);
+        int contacts = intOption("contacts", 500);
+
+        // Webhook burst, also makes every contact eligible for the 24h send window
+        results.add(burst("webhook-burst", intOption("webhooks", 10000), concurrency, i ->
+                post("/webhook", WebhookPayloads.textMessage(contact(i % contacts), "wamid.loadtest." + i, "Load test message " + i))));
+
+        results.add(burst("whatsapp-send-burst", intOption("sends", 2000), concurrency, i ->
+                post("/whatsapp/sendMessage/" + contact(i % contacts), "{\"messageText\":\"Reply " + i + "\"}")));
+
+        results.add(burst("email-send-burst", intOption("email-sends", 1000), concurrency, i ->
+                post("/reply-email", "{\"recipient\":\"customer" + i + "@example.org\",\"subject\":\"Re: Order " + i
+                        + "\",\"message\":\"Thanks for your message\",\"messageId\":\"<loadtest-" + i + "@example.org>\"}")));
+
+        results.add(burst("history-reads", intOption("history-reads", 2000), concurrency, i ->
+                get("/whatsapp/messages/" + contact(i % contacts))));
+
+        // The list is served from the mailbox sync, which answers 503 until its first pass over the mailbox
+        awaitMailboxSync();
+        results.add(burst("large-mailbox-fetch", intOption("mailbox-fetches", 20), 2, i -> get("/fetch-emails")));
+
+        results.add(sseFanOut(intOption("sse", 2000)));
+    }
+
+    // Restarts the packaged backend instead of running the load scenarios, once as built and once with the
+    // fast-startup profile; pass --aot=true for a jar built with -Pfast-startup and --cds-archive for its archive
+    private void runStartup() throws Exception {
+        int runs = intOption("startup-runs", 5);
+        List<StartupResult> startupResults = new ArrayList<>();
+        try (LoadTestEnvironment environment = new LoadTestEnvironment()) {
+            environment.startUpstreams(intOption("mailbox", 5000), intOption("fb-conversations", 50));
+            StartupBenchmark benchmark = new StartupBenchmark(environment,
+                    new File(options.getOrDefault("backend-jar", "backend/target/backend-0.0.1-SNAPSHOT-exec.jar")));
+
+            startupResults.add(benchmark.run("default", List.of(), runs));
+
+            List<String> fastStartup = new ArrayList<>(List.of("-Dspring.profiles.active=fast-startup"));
+            if (Boolean.parseBoolean(options.getOrDefault("aot", "false"))) {
+                fastStartup.add("-Dspring.aot.enabled=true");
+            }
+            if (options.containsKey("cds-archive")) {
+                fastStartup.add("-XX:SharedArchiveFile=" + new File(options.get("cds-archive")).getAbsolutePath());
+            }
+            startupResults.add(benchmark.run("fast-startup", fastStartup, runs));
+        }
+
+        System.out.println();
+        System.out.printf("%-22s %6s %9s %14s %14s %14s %14s%n",
+                "mode", "runs", "failures", "ready p50 ms", "ready max ms", "event p50 ms", "event max ms");
+        for (StartupResult result : startupResults) {
+            System.out.printf("%-22s %6d %9d %14.1f %14.1f %14.1f %14.1f%n",
+                    result.getMode(), result.getRuns(), result.getFailures(), result.getReadyP50Millis(),
+                    result.getReadyMaxMillis(), result.getFirstEventP50Millis(), result.getFirstEventMaxMillis());
+        }
+
+        File reportFile = new File(options.getOrDefault("report", "startup-report.json"));
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, startupResults);
+        System.out.println("Report written to " + reportFile.getAbsolutePath());
+    }
+
+    private void awaitMailboxSync() throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+        while (httpClient.send(get("/fetch-emails"), HttpResponse.BodyHandlers.discarding()).statusCode() == 503) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("The mailbox wasn't synced within 5 minutes");
+            }
+            Thread.sleep(500);
+        }
+    }
+
+    private ScenarioResult burst(String name, int requests, int concurrency, IntFunction<HttpRequest> requestFactory)
+            throws InterruptedException {
+        LatencyRecorder latencies = new LatencyRecorder();
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+
+        System.out.printf("Running %s (%d requests, concurrency %d)%n", name, requests, concurrency);
+        try (JvmProfile profile = new JvmProfile()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                inFlight.acquire();
+                long sent = System.nanoTime();
+                httpClient.sendAsync(requestFactory.apply(i), HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, error) -> {
+                            if (error != null || response.statusCode() >= 400) {
+                                latencies.recordError();
+                            } else {
+                                latencies.record(System.nanoTime() - sent);
+                            }
+                            inFlight.release();
+                            done.countDown();
+                        });
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+            profile.close();
+            return ScenarioResult.of(name, latencies, elapsed, profile);
+        }
+    }
+
+    // Opens many SSE subscribers, then measures how far apart they receive the same scheduled push
+    private ScenarioResult sseFanOut(int subscribers) throws Exception {
+        System.out.printf("Running sse-fan-out (%d subscribers)%n", subscribers);
+        LatencyRecorder connectLatencies = new LatencyRecorder();
+        LatencyRecorder spread = new LatencyRecorder();
+        List<CompletableFuture<HttpResponse<Void>>> streams = new ArrayList<>();
+        Map<Integer, Long> firstEventAt = new ConcurrentHashMap<>();
+        AtomicLong allConnectedAt = new AtomicLong();
+
+        try (JvmProfile profile = new JvmProfile()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < subscribers; i++) {
+                int subscriber = i;
+                long opened = System.nanoTime();
+                HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/whatsapp/notifications"))
+                        .header("Accept", "text/event-stream")
+                        .GET()
+                        .build();
+                CompletableFuture<HttpResponse<Void>> stream = httpClient.sendAsync(request,
+                        HttpResponse.BodyHandlers.fromLineSubscriber(new SseLineSubscriber(line -> {
+                            // Only count events that were pushed after every subscriber was connected
+                            long connectedAt = allConnectedAt.get();
+                            if (connectedAt > 0 && line.startsWith("event:") && line.contains("whatsappConversations")) {
+                                firstEventAt.putIfAbsent(subscriber, System.nanoTime());
+                            }
+                        })));
+                // Response headers arrive once the emitter is registered
+                stream.whenComplete((response, error) -> {
+                    if (error != null) {
+                        connectLatencies.recordError();
+                    } else {
+                        connectLatencies.record(System.nanoTime() - opened);
+                    }
+                });
+                streams.add(stream);
+            }
+
+            // sendAsync completes with the headers, the body keeps streaming
+            CompletableFuture.allOf(streams.stream()
+                    .map(future -> future.handle((response, error) -> null))
+                    .toArray(CompletableFuture[]::new)).get(2, TimeUnit.MINUTES);
+            allConnectedAt.set(System.nanoTime());
+
+            // The WhatsApp poller pushes every 10 seconds
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(25);
+            while (firstEventAt.size() < connectLatencies.count() && System.nanoTime() < deadline) {
+                Thread.sleep(100);
+            }
+
+            long earliest = firstEventAt.values().stream().mapToLong(Long::longValue).min().orElse(0);
+            firstEventAt.values().forEach(at -> spread.record(at - earliest));
+            for (int i = firstEventAt.size(); i < connectLatencies.count(); i++) {
+                spread.recordError();
+            }
+
+            long elapsed = System.nanoTime() - start;
+            streams.forEach(stream -> stream.cancel(true));
+            profile.close();
+
+            System.out.printf("  connect p50 %.1f ms, p99 %.1f ms, %d failed%n",
+                    connectLatencies.percentileMillis(50), connectLatencies.percentileMillis(99), connectLatencies.errors());
+            return ScenarioResult.of("sse-fan-out", spread, elapsed, profile);
+        }
+    }
+
+    private void report() throws Exception {
+        System.out.println();
+        System.out.printf("%-22s %8s %7s %9s %10s %9s %9s %9s %9s %6s %7s %8s%n",
+                "scenario", "ops", "errors", "seconds", "ops/s", "p50 ms", "p99 ms", "max ms", "peak MB", "GCs", "GC ms", "threads");
+        for (ScenarioResult result : results) {
+            System.out.printf("%-22s %8d %7d %9.2f %10.1f %9.2f %9.2f %9.2f %9.1f %6d %7d %8d%n",
+                    result.getScenario(), result.getOperations(), result.getErrors(), result.getDurationSeconds(),
+                    result.getThroughputPerSecond(), result.getP50Millis(), result.getP99Millis(), result.getMaxMillis(),
+                    result.getPeakHeapMb(), result.getGcCount(), result.getGcMillis(), result.getPeakThreads());
+        }
+
+        File reportFile = new File(options.getOrDefault("report", "loadtest-report.json"));
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, results);
+        System.out.println("Report written to " + reportFile.getAbsolutePath());
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(120))
+                .GET()
+                .build();
+    }
+
+    private static String contact(int index) {
+        return "4470000" + String.format("%05d", index);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+}
@@ -0,0 +1,47 @@
+package org.velikanovdev.backend.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScenarioResult {
+    private String scenario;
+    private long operations;
+    private long errors;
+    private double durationSeconds;
+    private double throughputPerSecond;
+    private double p50Millis;
+    private double p99Millis;
+    private double maxMillis;
+    private double startHeapMb;
+    private double peakHeapMb;
+    private double endHeapMb;
+    private long gcCount;
+    private long gcMillis;
+    private int peakThreads;
+
+    public static ScenarioResult of(String scenario, LatencyRecorder latencies, long elapsedNanos, JvmProfile profile) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        return new ScenarioResult(
+                scenario,
+                latencies.count(),
+                latencies.errors(),
+                seconds,
+                seconds > 0 ? latencies.count() / seconds : 0,
+                latencies.percentileMillis(50),
+                latencies.percentileMillis(99),
+                latencies.maxMillis(),
+                profile.startHeapMb(),
+                profile.peakHeapMb(),
+                profile.endHeapMb(),
+                profile.gcCount(),
+                profile.gcMillis(),
+                profile.peakThreads()
+        );
+    }
+}
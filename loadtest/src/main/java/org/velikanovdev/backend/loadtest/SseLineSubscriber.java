@@ -0,0 +1,31 @@
+package org.velikanovdev.backend.loadtest;
+
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+// Hands every SSE line to a callback without buffering the stream
+public class SseLineSubscriber implements Flow.Subscriber<String> {
+    private final Consumer<String> onLine;
+
+    public SseLineSubscriber(Consumer<String> onLine) {
+        this.onLine = onLine;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+        onLine.accept(line);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+    }
+
+    @Override
+    public void onComplete() {
+    }
+}
@@ -0,0 +1,170 @@
+package org.velikanovdev.backend.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Cold starts of the packaged backend, each in a fresh JVM against the local upstreams. Time to ready is until
+// /actuator/health/readiness answers 200, time to first event until an SSE client that connected as early as
+// it could receives the first WhatsApp conversation push. Both count from launching the java process.
+public class StartupBenchmark {
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(3);
+
+    private final LoadTestEnvironment environment;
+    private final File backendJar;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(1))
+            .build();
+
+    public StartupBenchmark(LoadTestEnvironment environment, File backendJar) {
+        this.environment = environment;
+        this.backendJar = backendJar.getAbsoluteFile();
+    }
+
+    // The first start also migrates the schema, it runs before the measured ones and isn't counted
+    public StartupResult run(String mode, List<String> jvmArguments, int runs) throws Exception {
+        System.out.printf("Running startup-%s (%d runs)%n", mode, runs);
+        LatencyRecorder ready = new LatencyRecorder();
+        LatencyRecorder firstEvent = new LatencyRecorder();
+        startOnce(jvmArguments, new LatencyRecorder(), new LatencyRecorder());
+        for (int i = 0; i < runs; i++) {
+            startOnce(jvmArguments, ready, firstEvent);
+        }
+        return StartupResult.of(mode, ready, firstEvent);
+    }
+
+    private void startOnce(List<String> jvmArguments, LatencyRecorder ready, LatencyRecorder firstEvent) throws Exception {
+        int port = freePort();
+        String baseUrl = "http://127.0.0.1:" + port;
+        Path workDir = Files.createTempDirectory("startup-benchmark");
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArguments);
+        Properties properties = environment.backendProperties();
+        properties.put("server.port", String.valueOf(port));
+        properties.forEach((name, value) -> command.add("-D" + name + "=" + value));
+        command.add("-jar");
+        command.add(backendJar.getPath());
+
+        long launched = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(workDir.toFile())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            CountDownLatch eventReceived = new CountDownLatch(1);
+            long[] eventAt = new long[1];
+            CompletableFuture<HttpResponse<Void>> stream = subscribeWhenListening(baseUrl, line -> {
+                if (line.startsWith("event:") && line.contains("whatsappConversations") && eventReceived.getCount() > 0) {
+                    eventAt[0] = System.nanoTime();
+                    eventReceived.countDown();
+                }
+            }, launched);
+
+            if (awaitReady(baseUrl, launched)) {
+                ready.record(System.nanoTime() - launched);
+            } else {
+                ready.recordError();
+            }
+
+            // The WhatsApp poller pushes every 10 seconds once it runs
+            if (stream != null && eventReceived.await(30, TimeUnit.SECONDS)) {
+                firstEvent.record(eventAt[0] - launched);
+            } else {
+                firstEvent.recordError();
+            }
+            if (stream != null) {
+                stream.cancel(true);
+            }
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+            deleteRecursively(workDir.toFile());
+        }
+    }
+
+    // Retries until Tomcat accepts connections, the way reconnecting SSE clients do after a restart
+    private CompletableFuture<HttpResponse<Void>> subscribeWhenListening(String baseUrl, Consumer<String> onLine, long launched) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/whatsapp/notifications"))
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+        while (System.nanoTime() - launched < START_TIMEOUT.toNanos()) {
+            CompletableFuture<HttpResponse<Void>> stream = httpClient.sendAsync(request,
+                    HttpResponse.BodyHandlers.fromLineSubscriber(new SseLineSubscriber(onLine)));
+            try {
+                HttpResponse<Void> response = stream.get(START_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                if (response.statusCode() == 200) {
+                    return stream;
+                }
+            } catch (Exception e) {
+                if (!(rootCause(e) instanceof ConnectException)) {
+                    return null;
+                }
+            }
+            Thread.sleep(20);
+        }
+        return null;
+    }
+
+    private boolean awaitReady(String baseUrl, long launched) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+        while (System.nanoTime() - launched < START_TIMEOUT.toNanos()) {
+            try {
+                if (httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return true;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    private static Throwable rootCause(Throwable throwable) {
+        while (throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,32 @@
+package org.velikanovdev.backend.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class StartupResult {
+    private String mode;
+    private long runs;
+    private long failures;
+    private double readyP50Millis;
+    private double readyMaxMillis;
+    private double firstEventP50Millis;
+    private double firstEventMaxMillis;
+
+    public static StartupResult of(String mode, LatencyRecorder ready, LatencyRecorder firstEvent) {
+        return new StartupResult(
+                mode,
+                ready.count() + ready.errors(),
+                ready.errors() + firstEvent.errors(),
+                ready.percentileMillis(50),
+                ready.maxMillis(),
+                firstEvent.percentileMillis(50),
+                firstEvent.maxMillis()
+        );
+    }
+}
@@ -0,0 +1,19 @@
+package org.velikanovdev.backend.loadtest;
+
+// Minimal WhatsApp Cloud API webhook bodies, shaped like the ones Meta delivers
+public final class WebhookPayloads {
+
+    private WebhookPayloads() {
+    }
+
+    public static String textMessage(String from, String messageId, String text) {
+        long timestamp = System.currentTimeMillis() / 1000;
+        return "{\"object\":\"whatsapp_business_account\",\"entry\":[{\"id\":\"200000000000001\",\"changes\":[{"
+                + "\"field\":\"messages\",\"value\":{\"messaging_product\":\"whatsapp\","
+                + "\"metadata\":{\"display_phone_number\":\"" + LoadTestEnvironment.OWN_PHONE_NUMBER + "\","
+                + "\"phone_number_id\":\"" + LoadTestEnvironment.PHONE_NUMBER_ID + "\"},"
+                + "\"contacts\":[{\"profile\":{\"name\":\"Load Test " + from + "\"},\"wa_id\":\"" + from + "\"}],"
+                + "\"messages\":[{\"from\":\"" + from + "\",\"id\":\"" + messageId + "\",\"timestamp\":\"" + timestamp + "\","
+                + "\"text\":{\"body\":\"" + text + "\"},\"type\":\"text\"}]}}]}]}";
+    }
+}